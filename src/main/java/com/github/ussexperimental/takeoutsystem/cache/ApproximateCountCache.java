@@ -0,0 +1,204 @@
+package com.github.ussexperimental.takeoutsystem.cache;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 列表总数的近似值缓存，按 (查询, 所有者) 缓存 COUNT(*) 结果
+ * <p>
+ * 读取从不阻塞在 COUNT 查询上：缓存过期或不存在时提交后台刷新，本次返回旧值（不存在时返回 -1）。
+ * 另外每隔半个 TTL 主动刷新最近一个 TTL 内被读取过、已超过半个 TTL 的缓存项，经常读取的键不会读到过期的值；
+ * 不再被读取的键不刷新，下次读取时再按过期处理。
+ * 同一个键同时最多只有一个刷新任务。缓存项总数有上限，超出后按 LRU 淘汰。
+ */
+@Slf4j
+@Component
+public class ApproximateCountCache {
+
+    // 缓存中尚无该键时的返回值
+    public static final long UNKNOWN = -1L;
+
+    private final long ttlNanos;
+
+    private final Executor refresher;
+
+    // accessOrder = true，按访问顺序排列，实现 LRU；所有访问在 synchronized (entries) 中进行
+    private final LinkedHashMap<Key, Entry> entries;
+
+    private final Set<Key> refreshing = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "count-cache-schedule");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public ApproximateCountCache(@Value("${count.cache.ttl-seconds:60}") long ttlSeconds,
+                                 @Value("${count.cache.max-entries:10000}") int maxEntries) {
+        this(ttlSeconds, maxEntries, newRefresher(maxEntries));
+    }
+
+    ApproximateCountCache(long ttlSeconds, int maxEntries, Executor refresher) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("计数缓存容量必须大于0");
+        }
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.refresher = refresher;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    // 单线程刷新，COUNT 查询不会占满连接池；队列满时丢弃，下次读取会重新提交
+    private static ExecutorService newRefresher(int maxEntries) {
+        return new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.min(maxEntries, 1024)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "count-cache-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PostConstruct
+    public void start() {
+        long period = Math.max(1, TimeUnit.NANOSECONDS.toMillis(ttlNanos / 2));
+        scheduler.scheduleWithFixedDelay(this::refreshLive, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 获取近似总数
+     * @param query 查询名称，如 "customer-orders"
+     * @param owner 所有者ID，如顾客ID；无所有者时传 null
+     * @param counter 执行精确 COUNT 的查询，只在后台线程中调用
+     * @return 最近一次统计的总数，尚未统计过时返回 {@link #UNKNOWN}
+     */
+    public long get(String query, Long owner, LongSupplier counter) {
+        Key key = new Key(query, owner);
+        long now = System.nanoTime();
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null) {
+                entry.readAt = now;
+            }
+        }
+        if (entry == null || now - entry.refreshedAt >= ttlNanos) {
+            refresh(key, counter);
+        }
+        return entry != null ? entry.count : UNKNOWN;
+    }
+
+    /**
+     * 写入一个精确值，例如最后一页时已知道准确的总数
+     */
+    public void put(String query, Long owner, long count) {
+        store(new Key(query, owner), count, null);
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * 刷新最近一个 TTL 内被读取过、已超过半个 TTL 的缓存项
+     */
+    void refreshLive() {
+        long now = System.nanoTime();
+        Map<Key, LongSupplier> live = new LinkedHashMap<>();
+        synchronized (entries) {
+            entries.forEach((key, entry) -> {
+                if (entry.counter != null && now - entry.readAt < ttlNanos && now - entry.refreshedAt >= ttlNanos / 2) {
+                    live.put(key, entry.counter);
+                }
+            });
+        }
+        live.forEach(this::refresh);
+    }
+
+    // 写入统计结果；counter 为 null（外部写入的精确值）时沿用原缓存项的查询，定时刷新仍可使用
+    private void store(Key key, long count, LongSupplier counter) {
+        long now = System.nanoTime();
+        synchronized (entries) {
+            Entry previous = entries.get(key);
+            LongSupplier refreshCounter = counter != null ? counter : previous != null ? previous.counter : null;
+            Entry entry = new Entry(count, now, refreshCounter);
+            entry.readAt = previous != null ? previous.readAt : now;
+            entries.put(key, entry);
+        }
+    }
+
+    private void refresh(Key key, LongSupplier counter) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            refresher.execute(() -> {
+                try {
+                    store(key, counter.getAsLong(), counter);
+                } catch (RuntimeException e) {
+                    log.warn("刷新近似总数失败: {}", key, e);
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        if (refresher instanceof ExecutorService executorService) {
+            executorService.shutdownNow();
+        }
+    }
+
+    private record Key(String query, Long owner) {
+    }
+
+    private static final class Entry {
+
+        final long count;
+
+        final long refreshedAt;
+
+        // 用于定时刷新的 COUNT 查询
+        final LongSupplier counter;
+
+        // 最近一次读取的时间，在 synchronized (entries) 中读写
+        long readAt;
+
+        Entry(long count, long refreshedAt, LongSupplier counter) {
+            this.count = count;
+            this.refreshedAt = refreshedAt;
+            this.counter = counter;
+        }
+    }
+}
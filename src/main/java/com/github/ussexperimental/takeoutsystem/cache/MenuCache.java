@@ -0,0 +1,190 @@
+package com.github.ussexperimental.takeoutsystem.cache;
+
+import com.github.ussexperimental.takeoutsystem.dto.PageResponse;
+import com.github.ussexperimental.takeoutsystem.entity.Dish;
+import com.github.ussexperimental.takeoutsystem.event.DishChangedEvent;
+import com.github.ussexperimental.takeoutsystem.repository.MerchantRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 菜单缓存，按 (商家ID, 页码, 每页大小) 缓存菜单分页结果
+ * <p>
+ * 菜单版本号保存在 merchant 表中，菜品写操作在同一事务中递增（见 MerchantRepository.incrementMenuVersion）；
+ * 缓存项记录加载前读取的版本号，读取时与当前版本号比较，不一致即视为未命中。
+ * 当前版本号在本节点按商家缓存，缓存命中和 304 响应都不访问数据库：
+ * 本节点的菜品写操作提交后清除该商家的版本号和缓存项，下次读取时从数据库重新加载；
+ * 其他节点的修改要等版本号超过 menu.cache.version-ttl-seconds 重新加载后才能看到，期间可能返回旧菜单。
+ * 版本号最终都来自数据库，各节点的 ETag 一致。缓存项和版本号的总数各有上限，超出后按 LRU 淘汰。
+ */
+@Component
+public class MenuCache implements MeterBinder {
+
+    private final int maxEntries;
+
+    // accessOrder = true，按访问顺序排列，实现 LRU；所有访问在 synchronized (entries) 中进行
+    private final LinkedHashMap<Key, Entry> entries;
+
+    // 与 entries 一样按 LRU 淘汰；所有访问在 synchronized (versions) 中进行
+    private final LinkedHashMap<Long, Version> versions;
+
+    // 清除版本号的次数，用于丢弃与清除并发、可能读到旧值的加载结果
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @Value("${menu.cache.version-ttl-seconds:5}")
+    private long versionTtlSeconds = 5;
+
+    @Autowired
+    private MerchantRepository merchantRepository;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public MenuCache(@Value("${menu.cache.max-entries:1000}") int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("菜单缓存容量必须大于0");
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > MenuCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.versions = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Version> eldest) {
+                return size() > MenuCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * 获取商家当前的菜单版本号，优先使用本节点缓存的值，不存在或超过 TTL 时按主键查询 merchant 表
+     * 加载菜单前应先读取版本号，再用该版本号写入缓存，避免加载期间的修改被掩盖
+     */
+    public long version(Long merchantId) {
+        long now = System.nanoTime();
+        synchronized (versions) {
+            Version version = versions.get(merchantId);
+            if (version != null && now - version.loadedAt < TimeUnit.SECONDS.toNanos(versionTtlSeconds)) {
+                return version.value;
+            }
+        }
+        long generation = invalidations.get();
+        long value = merchantRepository.findMenuVersionById(merchantId).orElse(0L);
+        synchronized (versions) {
+            // 加载期间版本号被清除过，读到的可能是提交前的旧值，不写入
+            if (invalidations.get() == generation) {
+                versions.put(merchantId, new Version(value, now));
+            }
+        }
+        return value;
+    }
+
+    /**
+     * 计算菜单分页的强 ETag，只读取菜单版本号，不加载菜品
+     * 应在加载菜单之前计算：若加载期间菜单被修改，ETag 只会比内容旧，下次请求必然重新下发
+     */
+    public String eTag(Long merchantId, int page, int size) {
+        return "\"menu-" + merchantId + "-" + version(merchantId) + "-" + page + "-" + size + "\"";
+    }
+
+    /**
+     * 查询缓存的菜单分页
+     * @return 命中且版本一致时返回缓存结果，否则返回 null
+     */
+    public PageResponse<Dish> get(Long merchantId, int page, int size) {
+        long current = version(merchantId);
+        Key key = new Key(merchantId, page, size);
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.version == current) {
+                hits.increment();
+                return entry.menu;
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 写入菜单分页
+     * @param version 加载菜单前读取的版本号；若加载期间版本已变化，该缓存项在读取时不会命中
+     */
+    public void put(Long merchantId, int page, int size, long version, PageResponse<Dish> menu) {
+        synchronized (entries) {
+            entries.put(new Key(merchantId, page, size), new Entry(version, menu));
+        }
+    }
+
+    /**
+     * 清除商家在本节点的版本号和缓存项，版本号已由菜品写操作在数据库中递增，下次读取时重新加载
+     */
+    public void invalidate(Long merchantId) {
+        synchronized (versions) {
+            invalidations.incrementAndGet();
+            versions.remove(merchantId);
+        }
+        synchronized (entries) {
+            entries.keySet().removeIf(key -> key.merchantId.equals(merchantId));
+        }
+    }
+
+    // 菜品写操作提交后再失效，保证失效后读到的一定是已提交的数据
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDishChanged(DishChangedEvent event) {
+        invalidate(event.merchantId());
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cache.gets", hits, LongAdder::sum)
+                .tags("cache", "menu", "result", "hit")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", misses, LongAdder::sum)
+                .tags("cache", "menu", "result", "miss")
+                .register(registry);
+        FunctionCounter.builder("cache.evictions", evictions, LongAdder::sum)
+                .tags("cache", "menu")
+                .register(registry);
+        Gauge.builder("cache.size", this, MenuCache::size)
+                .tags("cache", "menu")
+                .register(registry);
+    }
+
+    private record Key(Long merchantId, int page, int size) {
+    }
+
+    private record Entry(long version, PageResponse<Dish> menu) {
+    }
+
+    private record Version(long value, long loadedAt) {
+    }
+}
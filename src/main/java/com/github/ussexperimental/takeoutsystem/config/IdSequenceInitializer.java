@@ -0,0 +1,31 @@
+package com.github.ussexperimental.takeoutsystem.config;
+
+import com.github.ussexperimental.takeoutsystem.entity.IdSequences;
+import com.github.ussexperimental.takeoutsystem.repository.IdSequenceRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * 启动时把 id_sequence 中各序列对齐到对应表的 max(id) + 1
+ * <p>
+ * 从自增主键迁移过来的库、以及 data.sql 显式写入主键的初始数据，都不会经过序列表；
+ * 不对齐的话 Hibernate 会从 1 开始分配，与已有主键冲突。
+ * 在所有单例（包括 schema 和 data.sql 初始化）完成后、开始处理请求之前执行。
+ */
+@Slf4j
+@Component
+public class IdSequenceInitializer implements SmartInitializingSingleton {
+
+    @Autowired
+    private IdSequenceRepository idSequenceRepository;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        IdSequences.TABLES.forEach((sequence, table) -> {
+            long next = idSequenceRepository.alignToMaxId(sequence, table);
+            log.debug("主键序列 {} 已对齐，下一个主键不小于 {}", sequence, next);
+        });
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.ussexperimental.takeoutsystem.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.ResultSet;
+
+/**
+ * 启动时把旧版本 order_dish 关联表中的订单菜品迁移到 order_item 明细表
+ * <p>
+ * 旧版本每个订单的菜品保存在 order_dish（订单ID, 菜品ID）中，没有数量和单价。迁移时同一订单的同一菜品合并为一行，
+ * 行数即数量；名称和单价只能取菜品当前的值，已删除的菜品无法迁移。已有明细的订单跳过，重复执行没有影响；
+ * 多个实例同时启动时最多一个插入成功，其余的因主键冲突放弃。order_dish 表保留不删除，确认无误后可手工删除。
+ */
+@Slf4j
+@Component
+public class OrderItemInitializer implements SmartInitializingSingleton {
+
+    private static final String BACKFILL = "insert into order_item (order_id, line_no, dish_id, dish_name, quantity, unit_price_cents)"
+            + " select g.order_id, row_number() over (partition by g.order_id order by g.dish_id) - 1,"
+            + " g.dish_id, d.name, g.quantity, round(coalesce(d.price, 0) * 100)"
+            + " from (select order_id, dish_id, count(*) as quantity from order_dish group by order_id, dish_id) g"
+            + " join dish d on d.id = g.dish_id"
+            + " where not exists (select 1 from order_item i where i.order_id = g.order_id)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!tableExists("order_dish")) {
+            return;
+        }
+        try {
+            int rows = jdbcTemplate.update(BACKFILL);
+            if (rows > 0) {
+                log.info("已从 order_dish 迁移 {} 行订单明细", rows);
+            }
+        } catch (DataIntegrityViolationException e) {
+            log.info("订单明细已由其他实例迁移");
+        }
+    }
+
+    private boolean tableExists(String table) {
+        return Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            // 未加引号的表名在 MySQL 中保持原样，在 H2 中转为大写
+            for (String name : new String[]{table, table.toUpperCase()}) {
+                try (ResultSet tables = connection.getMetaData()
+                        .getTables(connection.getCatalog(), null, name, new String[]{"TABLE"})) {
+                    if (tables.next()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }));
+    }
+}
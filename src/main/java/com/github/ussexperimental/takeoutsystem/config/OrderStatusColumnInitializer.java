@@ -0,0 +1,55 @@
+package com.github.ussexperimental.takeoutsystem.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 启动时把 MySQL 中保存订单状态的 enum 列改为 varchar
+ * <p>
+ * 旧版本按 Hibernate 默认映射建成 enum('PENDING', ..., 'REVIEWED') 列，ddl-auto=update 不会修改已有列的定义，
+ * 写入新增的状态（如 CANCELLED、COMPLETED）会失败。这些列现在映射为 varchar，新建的库不受影响；
+ * 已经是 varchar 的列不做修改，多个实例同时启动也是安全的。
+ */
+@Slf4j
+@Component
+public class OrderStatusColumnInitializer implements SmartInitializingSingleton {
+
+    // 表名 -> 订单状态列
+    private static final Map<String, List<String>> COLUMNS = Map.of(
+            "orders", List.of("status"),
+            "order_event", List.of("from_status", "to_status"),
+            "order_status_history", List.of("from_status", "to_status"));
+
+    private static final String FIND_ENUM_COLUMN = "select is_nullable from information_schema.columns"
+            + " where table_schema = database() and table_name = ? and column_name = ? and data_type = 'enum'";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        String database = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        if (!"MySQL".equalsIgnoreCase(database)) {
+            return;
+        }
+        COLUMNS.forEach((table, columns) -> {
+            for (String column : columns) {
+                List<String> nullable = jdbcTemplate.queryForList(FIND_ENUM_COLUMN, String.class, table, column);
+                if (nullable.isEmpty()) {
+                    continue;
+                }
+                jdbcTemplate.execute("alter table " + table + " modify column " + column + " varchar(32)"
+                        + ("NO".equals(nullable.get(0)) ? " not null" : ""));
+                log.info("订单状态列 {}.{} 已从 enum 改为 varchar", table, column);
+            }
+        });
+    }
+}
@@ -2,6 +2,7 @@ package com.github.ussexperimental.takeoutsystem.controller;
 
 import com.github.ussexperimental.takeoutsystem.dto.PageResponse;
 import com.github.ussexperimental.takeoutsystem.dto.UserDTO;
+import com.github.ussexperimental.takeoutsystem.dto.UserRow;
 import com.github.ussexperimental.takeoutsystem.dto.UserUpdateDTO;
 import com.github.ussexperimental.takeoutsystem.entity.User;
 import com.github.ussexperimental.takeoutsystem.service.AdminService;
@@ -22,7 +23,7 @@ public class AdminController {
      * POST /admin/users
      */
     @PostMapping
-    public ResponseEntity<User> createUser(@RequestBody UserDTO userDTO) {
+    public ResponseEntity<UserRow> createUser(@RequestBody UserDTO userDTO) {
         try {
             User user = adminService.createUser(
                     userDTO.getUsername(),
@@ -32,7 +33,7 @@ public class AdminController {
                     userDTO.getAddress(),
                     userDTO.getRoleType()
             );
-            return new ResponseEntity<>(user, HttpStatus.CREATED);
+            return new ResponseEntity<>(UserRow.from(user), HttpStatus.CREATED);
         } catch (IllegalArgumentException e) {
             return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
         }
@@ -41,18 +42,31 @@ public class AdminController {
     /**
      * 获取所有用户
      * GET /admin/users?page={page}&size={size}
+     * 传 after 时为游标分页（after 为空串表示第一页），响应中 nextCursor 即下一页的 after
+     * withTotal=false 时不执行 COUNT 查询，总数为缓存的近似值
      */
     @GetMapping
-    public ResponseEntity<PageResponse<User>> getAllUsers(
+    public ResponseEntity<PageResponse<UserRow>> getAllUsers(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "true") boolean withTotal
     ) {
         try {
-            PageResponse<User> response = adminService.getAllUsers(page, size);
+            PageResponse<User> response;
+            if (after != null) {
+                response = adminService.getAllUsers(after, size);
+            } else if (!withTotal) {
+                response = adminService.getAllUsers(page, size, false);
+            } else {
+                response = adminService.getAllUsers(page, size);
+            }
             if (response.getContent().isEmpty()) {
                 return new ResponseEntity<>(HttpStatus.NO_CONTENT);
             }
-            return new ResponseEntity<>(response, HttpStatus.OK);
+            return new ResponseEntity<>(response.map(UserRow::from), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
         } catch (Exception e) {
             return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
         }
@@ -63,10 +77,10 @@ public class AdminController {
      * GET /admin/users/{userId}
      */
     @GetMapping("/{userId}")
-    public ResponseEntity<User> getUserById(@PathVariable Long userId) {
+    public ResponseEntity<UserRow> getUserById(@PathVariable Long userId) {
         try {
             User user = adminService.getUserById(userId);
-            return new ResponseEntity<>(user, HttpStatus.OK);
+            return new ResponseEntity<>(UserRow.from(user), HttpStatus.OK);
         } catch (IllegalArgumentException e) {
             return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
         }
@@ -77,7 +91,7 @@ public class AdminController {
      * PUT /admin/users/{userId}
      */
     @PutMapping("/{userId}")
-    public ResponseEntity<User> updateUser(
+    public ResponseEntity<UserRow> updateUser(
             @PathVariable Long userId,
             @RequestBody UserUpdateDTO userUpdateDTO
     ) {
@@ -89,7 +103,7 @@ public class AdminController {
                     userUpdateDTO.getAddress(),
                     userUpdateDTO.getRoleType()
             );
-            return new ResponseEntity<>(updatedUser, HttpStatus.OK);
+            return new ResponseEntity<>(UserRow.from(updatedUser), HttpStatus.OK);
         } catch (IllegalArgumentException e) {
             return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
         }
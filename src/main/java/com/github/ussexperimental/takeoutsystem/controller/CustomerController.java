@@ -1,16 +1,32 @@
 package com.github.ussexperimental.takeoutsystem.controller;
 
+import com.github.ussexperimental.takeoutsystem.dto.DishCard;
 import com.github.ussexperimental.takeoutsystem.dto.OrderCreateDTO;
+import com.github.ussexperimental.takeoutsystem.dto.OrderDetail;
+import com.github.ussexperimental.takeoutsystem.dto.OrderIntakeStatus;
+import com.github.ussexperimental.takeoutsystem.dto.OrderSummary;
 import com.github.ussexperimental.takeoutsystem.dto.PageResponse;
 import com.github.ussexperimental.takeoutsystem.dto.ReviewDTO;
+import com.github.ussexperimental.takeoutsystem.dto.ReviewSummary;
 import com.github.ussexperimental.takeoutsystem.entity.Dish;
 import com.github.ussexperimental.takeoutsystem.entity.Order;
 import com.github.ussexperimental.takeoutsystem.entity.Review;
+import com.github.ussexperimental.takeoutsystem.ratelimit.RateLimiter;
 import com.github.ussexperimental.takeoutsystem.service.CustomerService;
+import com.github.ussexperimental.takeoutsystem.service.OrderIntakeService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.math.BigDecimal;
+import java.net.URI;
 
 @RestController
 @RequestMapping("/customers")
@@ -19,22 +35,77 @@ public class CustomerController {
     @Autowired
     private CustomerService customerService;
 
+    @Autowired
+    private OrderIntakeService orderIntakeService;
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
     /**
      * 查看菜单
      * GET /customers/menu?page={page}&size={size}
+     * 支持 If-None-Match 条件请求，菜单未变化时返回 304
      */
     @GetMapping("/menu")
-    public ResponseEntity<PageResponse<Dish>> viewMenu(
+    public ResponseEntity<PageResponse<DishCard>> viewMenu(
             @RequestParam Long merchantId,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size
+            @RequestParam(defaultValue = "10") int size,
+            WebRequest webRequest
     ) {
         try {
+            // 菜单未变化时直接返回 304，不查询数据库也不序列化响应
+            if (webRequest.checkNotModified(customerService.menuETag(merchantId, page, size))) {
+                return null;
+            }
             PageResponse<Dish> menu = customerService.viewMenu(merchantId, page, size);
             if (menu.getContent().isEmpty()) {
                 return new ResponseEntity<>(HttpStatus.NO_CONTENT);
             }
-            return new ResponseEntity<>(menu, HttpStatus.OK);
+            return new ResponseEntity<>(menu.map(DishCard::from), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * 搜索菜品
+     * GET /customers/dishes/search?keyword={keyword}&page={page}&size={size}
+     */
+    @GetMapping("/dishes/search")
+    public ResponseEntity<PageResponse<DishCard>> searchDishes(
+            @RequestParam String keyword,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size
+    ) {
+        try {
+            PageResponse<Dish> dishes = customerService.searchDishes(keyword, page, size);
+            if (dishes.getContent().isEmpty()) {
+                return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+            }
+            return new ResponseEntity<>(dishes.map(DishCard::from), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * 按价格浏览菜品（价格升序），不传价格区间即为最便宜的菜品
+     * GET /customers/dishes?minPrice={minPrice}&maxPrice={maxPrice}&page={page}&size={size}
+     */
+    @GetMapping("/dishes")
+    public ResponseEntity<PageResponse<DishCard>> browseDishesByPrice(
+            @RequestParam(required = false) BigDecimal minPrice,
+            @RequestParam(required = false) BigDecimal maxPrice,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size
+    ) {
+        try {
+            PageResponse<Dish> dishes = customerService.browseDishesByPrice(minPrice, maxPrice, page, size);
+            if (dishes.getContent().isEmpty()) {
+                return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+            }
+            return new ResponseEntity<>(dishes.map(DishCard::from), HttpStatus.OK);
         } catch (IllegalArgumentException e) {
             return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
         }
@@ -43,39 +114,130 @@ public class CustomerController {
     /**
      * 创建订单
      * POST /customers/orders
+     * 带 Idempotency-Key 请求头时，同一顾客用同一个键重复提交只创建一次，重试返回第一次创建的订单；
+     * 同一个键用于参数不同的请求时返回 422；超过下单频率时返回 429 和 Retry-After
      */
     @PostMapping("/orders")
-    public ResponseEntity<Order> createOrder(@RequestBody OrderCreateDTO orderCreateDTO) {
+    public ResponseEntity<OrderDetail> createOrder(
+            @RequestBody OrderCreateDTO orderCreateDTO,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            HttpServletRequest request
+    ) {
+        long wait = throttleOrder(orderCreateDTO, request);
+        if (wait > 0) {
+            return new ResponseEntity<>(null, retryAfter(wait), HttpStatus.TOO_MANY_REQUESTS);
+        }
+        try {
+            Order order = idempotencyKey == null
+                    ? customerService.createOrder(
+                            orderCreateDTO.getCustomerId(),
+                            orderCreateDTO.getMerchantId(),
+                            orderCreateDTO.getDishIds(),
+                            orderCreateDTO.getDeliveryTime(),
+                            orderCreateDTO.getDeliveryLocation())
+                    : customerService.createOrder(
+                            orderCreateDTO.getCustomerId(),
+                            orderCreateDTO.getMerchantId(),
+                            orderCreateDTO.getDishIds(),
+                            orderCreateDTO.getDeliveryTime(),
+                            orderCreateDTO.getDeliveryLocation(),
+                            idempotencyKey);
+            return new ResponseEntity<>(OrderDetail.from(order), HttpStatus.CREATED);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        } catch (IllegalStateException e) {
+            return new ResponseEntity<>(null, HttpStatus.UNPROCESSABLE_ENTITY);
+        }
+    }
+
+    /**
+     * 异步创建订单
+     * POST /customers/orders，请求头 Prefer: respond-async
+     * 请求入队后立即返回 202、下单令牌和状态查询地址（Location），订单由后台批量写入；
+     * 排队已满时返回 503 和 Retry-After，客户端稍后重试。未启用异步下单时同步创建，返回 201 和已创建的状态。
+     * 带 Idempotency-Key 的请求不匹配本接口，按同步方式处理（见上一个接口）。超过下单频率时返回 429 和 Retry-After。
+     */
+    @PostMapping(value = "/orders", headers = {"Prefer=respond-async", "!Idempotency-Key"})
+    public ResponseEntity<OrderIntakeStatus> submitOrder(@RequestBody OrderCreateDTO orderCreateDTO,
+                                                         HttpServletRequest request) {
+        long wait = throttleOrder(orderCreateDTO, request);
+        if (wait > 0) {
+            return new ResponseEntity<>(null, retryAfter(wait), HttpStatus.TOO_MANY_REQUESTS);
+        }
         try {
-            Order order = customerService.createOrder(
-                    orderCreateDTO.getCustomerId(),
-                    orderCreateDTO.getMerchantId(),
-                    orderCreateDTO.getDishIds(),
-                    orderCreateDTO.getDeliveryTime(),
-                    orderCreateDTO.getDeliveryLocation()
-            );
-            return new ResponseEntity<>(order, HttpStatus.CREATED);
+            OrderIntakeStatus status = orderIntakeService.submit(orderCreateDTO);
+            if (status.state() != OrderIntakeStatus.State.QUEUED) {
+                return new ResponseEntity<>(status, HttpStatus.CREATED);
+            }
+            HttpHeaders headers = new HttpHeaders();
+            headers.setLocation(URI.create("/customers/orders/intake/" + status.token()
+                    + "?customerId=" + orderCreateDTO.getCustomerId()));
+            headers.set("Preference-Applied", "respond-async");
+            return new ResponseEntity<>(status, headers, HttpStatus.ACCEPTED);
         } catch (IllegalArgumentException e) {
             return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        } catch (IllegalStateException e) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(HttpHeaders.RETRY_AFTER, "1");
+            return new ResponseEntity<>(null, headers, HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    // 下单的顾客ID在请求体中，限流过滤器拿不到，绑定参数后按顾客ID限流（见 RateLimitFilter）
+    private long throttleOrder(OrderCreateDTO orderCreateDTO, HttpServletRequest request) {
+        return rateLimiter.tryAcquire(RateLimiter.Group.CUSTOMER, orderCreateDTO.getCustomerId(), request.getRemoteAddr());
+    }
+
+    private static HttpHeaders retryAfter(long waitNanos) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(RateLimiter.retryAfterSeconds(waitNanos)));
+        return headers;
+    }
+
+    /**
+     * 查询异步下单的处理状态
+     * GET /customers/orders/intake/{token}?customerId={customerId}
+     * 状态为 CREATED 后可订阅订单状态推送；令牌不存在或结果已过期时返回 404
+     */
+    @GetMapping("/orders/intake/{token}")
+    public ResponseEntity<OrderIntakeStatus> getOrderIntakeStatus(
+            @PathVariable String token,
+            @RequestParam Long customerId
+    ) {
+        try {
+            return new ResponseEntity<>(orderIntakeService.getStatus(customerId, token), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
         }
     }
 
     /**
      * 查看顾客所有订单
      * GET /customers/orders?customerId={customerId}&page={page}&size={size}
+     * 传 after 时为游标分页（after 为空串表示第一页），响应中 nextCursor 即下一页的 after
+     * withTotal=false 时不执行 COUNT 查询，总数为缓存的近似值
      */
     @GetMapping("/orders")
-    public ResponseEntity<PageResponse<Order>> getMyOrders(
+    public ResponseEntity<PageResponse<OrderSummary>> getMyOrders(
             @RequestParam Long customerId,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "true") boolean withTotal
     ) {
         try {
-            PageResponse<Order> orders = customerService.getMyOrders(customerId, page, size);
+            PageResponse<Order> orders;
+            if (after != null) {
+                orders = customerService.getMyOrders(customerId, after, size);
+            } else if (!withTotal) {
+                orders = customerService.getMyOrders(customerId, page, size, false);
+            } else {
+                orders = customerService.getMyOrders(customerId, page, size);
+            }
             if (orders.getContent().isEmpty()) {
                 return new ResponseEntity<>(HttpStatus.NO_CONTENT);
             }
-            return new ResponseEntity<>(orders, HttpStatus.OK);
+            return new ResponseEntity<>(orders.map(OrderSummary::from), HttpStatus.OK);
         } catch (IllegalArgumentException e) {
             return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
         }
@@ -86,38 +248,66 @@ public class CustomerController {
      * GET /customers/orders/{orderId}?customerId={customerId}
      */
     @GetMapping("/orders/{orderId}")
-    public ResponseEntity<Order> getOrderDetails(
+    public ResponseEntity<OrderDetail> getOrderDetails(
             @PathVariable Long orderId,
             @RequestParam Long customerId
     ) {
         try {
             Order order = customerService.getOrderDetails(customerId, orderId);
-            return new ResponseEntity<>(order, HttpStatus.OK);
+            return new ResponseEntity<>(OrderDetail.from(order), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
+        }
+    }
+
+    /**
+     * 订阅订单状态推送（SSE），替代轮询订单详情
+     * GET /customers/orders/{orderId}/stream?customerId={customerId}
+     * 连接后先收到订单当前状态，之后每次状态变更推送 status 事件（数据为订单ID、原状态和新状态）；
+     * 断线重连时浏览器自动带上 Last-Event-ID，补发期间错过的状态变更
+     *
+     * @return SSE 连接，当前节点或该订单的连接数已达上限时返回 503
+     */
+    @GetMapping(value = "/orders/{orderId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamOrderStatus(
+            @PathVariable Long orderId,
+            @RequestParam Long customerId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId
+    ) {
+        try {
+            return new ResponseEntity<>(customerService.subscribeOrderStatus(customerId, orderId, lastEventId), HttpStatus.OK);
         } catch (IllegalArgumentException e) {
             return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
+        } catch (IllegalStateException e) {
+            return new ResponseEntity<>(null, HttpStatus.SERVICE_UNAVAILABLE);
         }
     }
 
     /**
      * 评价订单
      * POST /customers/orders/{orderId}/reviews?customerId={customerId}
+     * 支持 Idempotency-Key 请求头，规则同创建订单
      */
     @PostMapping("/orders/{orderId}/reviews")
-    public ResponseEntity<Review> reviewOrder(
+    public ResponseEntity<ReviewSummary> reviewOrder(
             @PathVariable Long orderId,
             @RequestParam Long customerId,
-            @RequestBody ReviewDTO   reviewDTO
+            @RequestBody ReviewDTO   reviewDTO,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey
     ) {
         try {
-            Review review = customerService.reviewOrder(
-                    customerId,
-                    orderId,
-                    reviewDTO.getRating(),
-                    reviewDTO.getComment()
-            );
-            return new ResponseEntity<>(review, HttpStatus.CREATED);
+            Review review = idempotencyKey == null
+                    ? customerService.reviewOrder(customerId, orderId, reviewDTO.getRating(), reviewDTO.getComment())
+                    : customerService.reviewOrder(customerId, orderId, reviewDTO.getRating(), reviewDTO.getComment(),
+                            idempotencyKey);
+            return new ResponseEntity<>(ReviewSummary.from(review), HttpStatus.CREATED);
         } catch (IllegalArgumentException e) {
             return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        } catch (IllegalStateException e) {
+            return new ResponseEntity<>(null, HttpStatus.UNPROCESSABLE_ENTITY);
+        } catch (OptimisticLockingFailureException e) {
+            // 多次重试后仍与其他请求的修改冲突
+            return new ResponseEntity<>(null, HttpStatus.CONFLICT);
         }
     }
 }
@@ -1,12 +1,15 @@
 package com.github.ussexperimental.takeoutsystem.controller;
 
+import com.github.ussexperimental.takeoutsystem.dto.OrderSummary;
 import com.github.ussexperimental.takeoutsystem.dto.PageResponse;
 import com.github.ussexperimental.takeoutsystem.entity.Order;
 import com.github.ussexperimental.takeoutsystem.service.DeliveryManService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @RestController
 @RequestMapping("/deliverymen")
@@ -25,13 +28,13 @@ public class DeliveryManController {
      * @return 可接单的订单列表
      */
     @GetMapping("/orders/available")
-    public ResponseEntity<PageResponse<Order>> viewAvailableOrders(
+    public ResponseEntity<PageResponse<OrderSummary>> viewAvailableOrders(
             @RequestParam Long deliveryManId,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size
     ) {
         try {
-            PageResponse<Order> availableOrders = deliveryManService.viewAvailableOrders(deliveryManId, page, size);
+            PageResponse<OrderSummary> availableOrders = deliveryManService.viewAvailableOrders(deliveryManId, page, size);
             if (availableOrders.getContent().isEmpty()) {
                 return new ResponseEntity<>(HttpStatus.NO_CONTENT);
             }
@@ -41,24 +44,48 @@ public class DeliveryManController {
         }
     }
 
+    /**
+     * 订阅可接单订单推送（SSE），替代轮询可接单列表
+     * GET /deliverymen/orders/available/stream?deliveryManId={deliveryManId}
+     * 连接后先收到当前最新的可接单订单，之后新的可接单订单推送 added 事件（数据为订单），
+     * 订单被接走时推送 removed 事件（数据为订单ID）；读取过慢的连接会被断开，客户端应重连
+     *
+     * @param deliveryManId 外卖员ID
+     * @return SSE 连接，当前节点连接数已达上限时返回 503
+     */
+    @GetMapping(value = "/orders/available/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamAvailableOrders(@RequestParam Long deliveryManId) {
+        try {
+            return new ResponseEntity<>(deliveryManService.subscribeAvailableOrders(deliveryManId), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        } catch (IllegalStateException e) {
+            return new ResponseEntity<>(null, HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+
     /**
      * 确认取餐，将订单状态更新为“送餐中”
      * PUT /deliverymen/orders/{orderId}/pickup?deliveryManId={deliveryManId}
+     * 多名外卖员同时接单时只有一人成功，其余返回 409
      *
      * @param orderId        订单ID
      * @param deliveryManId 外卖员ID
      * @return 更新后的订单信息
      */
     @PutMapping("/orders/{orderId}/pickup")
-    public ResponseEntity<Order> confirmPickup(
+    public ResponseEntity<OrderSummary> confirmPickup(
             @PathVariable Long orderId,
             @RequestParam Long deliveryManId
     ) {
         try {
             Order order = deliveryManService.confirmPickup(deliveryManId, orderId);
-            return new ResponseEntity<>(order, HttpStatus.OK);
+            return new ResponseEntity<>(OrderSummary.from(order), HttpStatus.OK);
         } catch (IllegalArgumentException e) {
             return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        } catch (IllegalStateException e) {
+            // 订单已被其他外卖员接单
+            return new ResponseEntity<>(null, HttpStatus.CONFLICT);
         }
     }
 
@@ -71,13 +98,13 @@ public class DeliveryManController {
      * @return 更新后的订单信息
      */
     @PutMapping("/orders/{orderId}/deliver")
-    public ResponseEntity<Order> confirmDelivery(
+    public ResponseEntity<OrderSummary> confirmDelivery(
             @PathVariable Long orderId,
             @RequestParam Long deliveryManId
     ) {
         try {
             Order order = deliveryManService.confirmDelivery(deliveryManId, orderId);
-            return new ResponseEntity<>(order, HttpStatus.OK);
+            return new ResponseEntity<>(OrderSummary.from(order), HttpStatus.OK);
         } catch (IllegalArgumentException e) {
             return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
         }
@@ -90,20 +117,31 @@ public class DeliveryManController {
      * @param deliveryManId 外卖员ID
      * @param page          页码（从0开始）
      * @param size          每页大小
+     * @param after         游标分页时上一页返回的 nextCursor，空串表示第一页；不传则按页码分页
+     * @param withTotal     为 false 时不执行 COUNT 查询，总数为缓存的近似值
      * @return 当前外卖员的所有送餐订单
      */
     @GetMapping("/orders")
-    public ResponseEntity<PageResponse<Order>> viewMyDeliveries(
+    public ResponseEntity<PageResponse<OrderSummary>> viewMyDeliveries(
             @RequestParam Long deliveryManId,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "true") boolean withTotal
     ) {
         try {
-            PageResponse<Order> deliveries = deliveryManService.viewMyDeliveries(deliveryManId, page, size);
+            PageResponse<Order> deliveries;
+            if (after != null) {
+                deliveries = deliveryManService.viewMyDeliveries(deliveryManId, after, size);
+            } else if (!withTotal) {
+                deliveries = deliveryManService.viewMyDeliveries(deliveryManId, page, size, false);
+            } else {
+                deliveries = deliveryManService.viewMyDeliveries(deliveryManId, page, size);
+            }
             if (deliveries.getContent().isEmpty()) {
                 return new ResponseEntity<>(HttpStatus.NO_CONTENT);
             }
-            return new ResponseEntity<>(deliveries, HttpStatus.OK);
+            return new ResponseEntity<>(deliveries.map(OrderSummary::from), HttpStatus.OK);
         } catch (IllegalArgumentException e) {
             return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
         }
@@ -1,22 +1,40 @@
 package com.github.ussexperimental.takeoutsystem.controller;
 
+import com.github.ussexperimental.takeoutsystem.dto.DishCard;
 import com.github.ussexperimental.takeoutsystem.dto.DishCreateDTO;
+import com.github.ussexperimental.takeoutsystem.dto.DishImportResult;
+import com.github.ussexperimental.takeoutsystem.dto.DishSales;
 import com.github.ussexperimental.takeoutsystem.dto.DishUpdateDTO;
+import com.github.ussexperimental.takeoutsystem.dto.OrderStatusChange;
+import com.github.ussexperimental.takeoutsystem.dto.OrderSummary;
 import com.github.ussexperimental.takeoutsystem.dto.PageResponse;
 import com.github.ussexperimental.takeoutsystem.dto.RequestDeliveryDTO;
+import com.github.ussexperimental.takeoutsystem.dto.StageDuration;
 import com.github.ussexperimental.takeoutsystem.entity.Dish;
 import com.github.ussexperimental.takeoutsystem.entity.Order;
 import com.github.ussexperimental.takeoutsystem.service.ImageService;
+import com.github.ussexperimental.takeoutsystem.service.MenuImportService;
 import com.github.ussexperimental.takeoutsystem.service.MerchantService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
+import java.util.List;
 
 @RestController
 @RequestMapping("/merchants")
@@ -28,12 +46,15 @@ public class MerchantController {
     @Autowired
     private ImageService imageService;
 
+    @Autowired
+    private MenuImportService menuImportService;
+
     /**
      * 创建菜品
      * POST /merchants/menu
      */
     @PostMapping("/menu")
-    public ResponseEntity<Dish> createDish(@RequestBody DishCreateDTO dishCreateDTO) {
+    public ResponseEntity<DishCard> createDish(@RequestBody DishCreateDTO dishCreateDTO) {
         try {
             Dish dish = merchantService.addDish(
                     dishCreateDTO.getMerchantId(),
@@ -42,28 +63,57 @@ public class MerchantController {
                     dishCreateDTO.getDescription(),
                     dishCreateDTO.getImageUrl()
             );
-            return new ResponseEntity<>(dish, HttpStatus.CREATED);
+            return new ResponseEntity<>(DishCard.from(dish), HttpStatus.CREATED);
         } catch (IllegalArgumentException e) {
             return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
         }
     }
 
+    /**
+     * 批量导入菜品
+     * POST /merchants/menu/import?merchantId={merchantId}
+     * 请求体为 CSV（text/csv，列依次为 name,price,description,imageUrl，首行可为表头）
+     * 或 JSON Lines（application/x-ndjson，每行一个菜品对象），流式解析，不限制行数
+     */
+    @PostMapping(value = "/menu/import", consumes = {"text/csv", "application/x-ndjson", "application/jsonl"})
+    public ResponseEntity<DishImportResult> importDishes(
+            @RequestParam Long merchantId,
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            InputStream body
+    ) {
+        Charset charset = contentType.getCharset() != null ? contentType.getCharset() : StandardCharsets.UTF_8;
+        try (Reader reader = new InputStreamReader(body, charset)) {
+            DishImportResult result = "csv".equals(contentType.getSubtype())
+                    ? menuImportService.importCsv(merchantId, reader)
+                    : menuImportService.importJsonLines(merchantId, reader);
+            return new ResponseEntity<>(result, HttpStatus.OK);
+        } catch (IllegalArgumentException | IOException e) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        }
+    }
+
     /**
      * 获取菜单
      * GET /merchants/menu?page={page}&size={size}
+     * 支持 If-None-Match 条件请求，菜单未变化时返回 304
      */
     @GetMapping("/menu")
-    public ResponseEntity<PageResponse<Dish>> getMenu(
+    public ResponseEntity<PageResponse<DishCard>> getMenu(
             @RequestParam Long merchantId,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size
+            @RequestParam(defaultValue = "10") int size,
+            WebRequest webRequest
     ) {
         try {
+            // 菜单未变化时直接返回 304，不查询数据库也不序列化响应
+            if (webRequest.checkNotModified(merchantService.menuETag(merchantId, page, size))) {
+                return null;
+            }
             PageResponse<Dish> menu = merchantService.getMenu(merchantId, page, size);
             if (menu.getContent().isEmpty()) {
                 return new ResponseEntity<>(HttpStatus.NO_CONTENT);
             }
-            return new ResponseEntity<>(menu, HttpStatus.OK);
+            return new ResponseEntity<>(menu.map(DishCard::from), HttpStatus.OK);
         } catch (IllegalArgumentException e) {
             return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
         }
@@ -74,7 +124,7 @@ public class MerchantController {
      * PUT /merchants/menu/{dishId}
      */
     @PutMapping("/menu/{dishId}")
-    public ResponseEntity<Dish> updateDish(
+    public ResponseEntity<DishCard> updateDish(
             @PathVariable Long dishId,
             @RequestBody DishUpdateDTO dishUpdateDTO
     ) {
@@ -86,9 +136,12 @@ public class MerchantController {
                     dishUpdateDTO.getDescription(),
                     dishUpdateDTO.getImageUrl()
             );
-            return new ResponseEntity<>(updatedDish, HttpStatus.OK);
+            return new ResponseEntity<>(DishCard.from(updatedDish), HttpStatus.OK);
         } catch (IllegalArgumentException e) {
             return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
+        } catch (OptimisticLockingFailureException e) {
+            // 多次重试后仍与其他请求的修改冲突
+            return new ResponseEntity<>(null, HttpStatus.CONFLICT);
         }
     }
 
@@ -109,22 +162,56 @@ public class MerchantController {
     /**
      * 查看销售情况
      * GET /merchants/sales?merchantId={merchantId}&startDate={startDate}&endDate={endDate}&page={page}&size={size}
+     * 传 after 时为游标分页（after 为空串表示第一页），响应中 nextCursor 即下一页的 after
+     * withTotal=false 时不执行 COUNT 查询，总数为缓存的近似值
      */
     @GetMapping("/sales")
-    public ResponseEntity<PageResponse<Order>> viewSales(
+    public ResponseEntity<PageResponse<OrderSummary>> viewSales(
             @RequestParam Long merchantId,
             @RequestParam(required = false) String startDate,
             @RequestParam(required = false) String endDate,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "true") boolean withTotal
     ) {
         try {
             Date start = startDate != null ? new Date(Long.parseLong(startDate)) : null;
             Date end = endDate != null ? new Date(Long.parseLong(endDate)) : null;
-            PageResponse<Order> sales = merchantService.viewSales(merchantId, start, end, page, size);
+            PageResponse<Order> sales;
+            if (after != null) {
+                sales = merchantService.viewSales(merchantId, start, end, after, size);
+            } else if (!withTotal) {
+                sales = merchantService.viewSales(merchantId, start, end, page, size, false);
+            } else {
+                sales = merchantService.viewSales(merchantId, start, end, page, size);
+            }
             if (sales.getContent().isEmpty()) {
                 return new ResponseEntity<>(HttpStatus.NO_CONTENT);
             }
+            return new ResponseEntity<>(sales.map(OrderSummary::from), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * 按菜品查看销量和销售额
+     * GET /merchants/sales/dishes?merchantId={merchantId}&startDate={startDate}&endDate={endDate}
+     * 按下单时的单价快照统计，按销售额降序
+     */
+    @GetMapping("/sales/dishes")
+    public ResponseEntity<List<DishSales>> getDishSales(
+            @RequestParam Long merchantId,
+            @RequestParam String startDate,
+            @RequestParam String endDate
+    ) {
+        try {
+            List<DishSales> sales = merchantService.getDishSales(merchantId,
+                    new Date(Long.parseLong(startDate)), new Date(Long.parseLong(endDate)));
+            if (sales.isEmpty()) {
+                return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+            }
             return new ResponseEntity<>(sales, HttpStatus.OK);
         } catch (IllegalArgumentException e) {
             return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
@@ -136,7 +223,7 @@ public class MerchantController {
      * GET /merchants/orders/pending?page={page}&size={size}
      */
     @GetMapping("/orders/pending")
-    public ResponseEntity<PageResponse<Order>> viewPendingOrders(
+    public ResponseEntity<PageResponse<OrderSummary>> viewPendingOrders(
             @RequestParam Long merchantId,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size
@@ -146,9 +233,29 @@ public class MerchantController {
             if (pendingOrders.getContent().isEmpty()) {
                 return new ResponseEntity<>(HttpStatus.NO_CONTENT);
             }
-            return new ResponseEntity<>(pendingOrders, HttpStatus.OK);
+            return new ResponseEntity<>(pendingOrders.map(OrderSummary::from), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * 订阅订单看板推送（SSE），替代反复刷新待确认订单列表
+     * GET /merchants/orders/board/stream?merchantId={merchantId}
+     * 连接后先收到 snapshot 事件（待确认和备餐中的订单列表），之后新订单推送 created 事件（数据为订单），
+     * 看板上订单的状态变更推送 status 事件（数据为订单ID、原状态和新状态），状态不再是待确认或备餐中时从看板移除；
+     * 在看板上接单仍调用接受订单接口，结果通过 status 事件同步到该商家的所有看板
+     *
+     * @return SSE 连接，该商家的看板连接数已达上限时返回 503
+     */
+    @GetMapping(value = "/orders/board/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamOrderBoard(@RequestParam Long merchantId) {
+        try {
+            return new ResponseEntity<>(merchantService.subscribeOrderBoard(merchantId), HttpStatus.OK);
         } catch (IllegalArgumentException e) {
             return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        } catch (IllegalStateException e) {
+            return new ResponseEntity<>(null, HttpStatus.SERVICE_UNAVAILABLE);
         }
     }
 
@@ -157,13 +264,13 @@ public class MerchantController {
      * PUT /merchants/orders/{orderId}/accept
      */
     @PutMapping("/orders/{orderId}/accept")
-    public ResponseEntity<Order> acceptOrder(
+    public ResponseEntity<OrderSummary> acceptOrder(
             @PathVariable Long orderId,
             @RequestParam Long merchantId
     ) {
         try {
             Order order = merchantService.acceptOrder(merchantId, orderId);
-            return new ResponseEntity<>(order, HttpStatus.OK);
+            return new ResponseEntity<>(OrderSummary.from(order), HttpStatus.OK);
         } catch (IllegalArgumentException e) {
             return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
         }
@@ -172,9 +279,10 @@ public class MerchantController {
     /**
      * 请求送餐
      * PUT /merchants/orders/{orderId}/requestDelivery
+     * 订单已分配送餐员时返回 409
      */
     @PutMapping("/orders/{orderId}/requestDelivery")
-    public ResponseEntity<Order> requestDelivery(
+    public ResponseEntity<OrderSummary> requestDelivery(
             @PathVariable Long orderId,
             @RequestBody RequestDeliveryDTO requestDeliveryDTO
     ) {
@@ -183,7 +291,52 @@ public class MerchantController {
                     orderId,
                     requestDeliveryDTO.getDeliveryManId()
             );
-            return new ResponseEntity<>(order, HttpStatus.OK);
+            return new ResponseEntity<>(OrderSummary.from(order), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        } catch (IllegalStateException e) {
+            // 订单已分配送餐员
+            return new ResponseEntity<>(null, HttpStatus.CONFLICT);
+        }
+    }
+
+    /**
+     * 查看订单状态时间线
+     * GET /merchants/orders/{orderId}/timeline?merchantId={merchantId}
+     * 每次状态变更及变更前在原状态停留的毫秒数，按时间先后排列
+     */
+    @GetMapping("/orders/{orderId}/timeline")
+    public ResponseEntity<List<OrderStatusChange>> getOrderTimeline(
+            @PathVariable Long orderId,
+            @RequestParam Long merchantId
+    ) {
+        try {
+            List<OrderStatusChange> timeline = merchantService.getOrderTimeline(merchantId, orderId);
+            if (timeline.isEmpty()) {
+                return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+            }
+            return new ResponseEntity<>(timeline, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
+        }
+    }
+
+    /**
+     * 查看订单各阶段耗时
+     * GET /merchants/orders/stage-durations?merchantId={merchantId}&days={days}
+     * 最近 days 天（1 到 90，默认 7）内订单在各状态停留时长的 p50、p90、p99 和最大值，用于发现出餐慢等问题
+     */
+    @GetMapping("/orders/stage-durations")
+    public ResponseEntity<List<StageDuration>> getStageDurations(
+            @RequestParam Long merchantId,
+            @RequestParam(defaultValue = "7") int days
+    ) {
+        try {
+            List<StageDuration> durations = merchantService.getStageDurations(merchantId, days);
+            if (durations.isEmpty()) {
+                return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+            }
+            return new ResponseEntity<>(durations, HttpStatus.OK);
         } catch (IllegalArgumentException e) {
             return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
         }
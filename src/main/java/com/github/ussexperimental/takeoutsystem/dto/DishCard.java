@@ -0,0 +1,18 @@
+package com.github.ussexperimental.takeoutsystem.dto;
+
+import com.github.ussexperimental.takeoutsystem.entity.Dish;
+
+import java.math.BigDecimal;
+
+/**
+ * 菜品列表和菜品接口的响应，只包含菜品自身的列和商家ID，不序列化商家实体
+ */
+public record DishCard(Long id, Long merchantId, String name, BigDecimal price, String description, String imageUrl) {
+
+    public static DishCard from(Dish dish) {
+        // 商家可能是未初始化的代理，getId() 不会触发查询
+        Long merchantId = dish.getMerchant() != null ? dish.getMerchant().getId() : null;
+        return new DishCard(dish.getId(), merchantId, dish.getName(), dish.getPrice(),
+                dish.getDescription(), dish.getImageUrl());
+    }
+}
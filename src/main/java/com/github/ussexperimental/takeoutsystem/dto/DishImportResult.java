@@ -0,0 +1,24 @@
+package com.github.ussexperimental.takeoutsystem.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class DishImportResult {
+    private int imported;
+    private int failed;
+    private List<RowError> errors = new ArrayList<>();
+    // 错误明细数量有上限，超出的行只计入 failed
+    private boolean errorsTruncated;
+
+    @Data
+    @AllArgsConstructor
+    public static class RowError {
+        // 出错记录在请求体中的起始行号（从1开始）
+        private long line;
+        private String message;
+    }
+}
@@ -0,0 +1,9 @@
+package com.github.ussexperimental.takeoutsystem.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * 构建内存索引时使用的菜品投影，只包含建索引所需的列，不加载商家
+ */
+public record DishIndexRow(Long id, String name, String description, BigDecimal price) {
+}
@@ -0,0 +1,9 @@
+package com.github.ussexperimental.takeoutsystem.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * 一段时间内一种菜品的销量和销售额，按订单明细的快照统计，名称取统计区间内最后使用的名称
+ */
+public record DishSales(Long dishId, String name, long quantity, BigDecimal revenue) {
+}
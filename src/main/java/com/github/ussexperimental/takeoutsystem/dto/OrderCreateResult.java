@@ -0,0 +1,17 @@
+package com.github.ussexperimental.takeoutsystem.dto;
+
+import com.github.ussexperimental.takeoutsystem.entity.Order;
+
+/**
+ * 批量下单中一个请求的结果：创建的订单，或者校验不通过的原因
+ */
+public record OrderCreateResult(Order order, String error) {
+
+    public static OrderCreateResult created(Order order) {
+        return new OrderCreateResult(order, null);
+    }
+
+    public static OrderCreateResult rejected(String error) {
+        return new OrderCreateResult(null, error);
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.ussexperimental.takeoutsystem.dto;
+
+import com.github.ussexperimental.takeoutsystem.entity.Order;
+import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 单个订单的响应：在 {@link OrderSummary} 的基础上包含明细和评价
+ * <p>
+ * 需要明细集合已加载（Order.detail 抓取计划或新建的订单）；明细是下单时的快照，不查询菜品
+ */
+public record OrderDetail(Long id,
+                          Long customerId,
+                          String customerName,
+                          Long merchantId,
+                          String merchantName,
+                          Long deliveryManId,
+                          String deliveryManName,
+                          BigDecimal totalPrice,
+                          OrderStatus status,
+                          Date orderTime,
+                          Date deliveryTime,
+                          String deliveryLocation,
+                          List<OrderLine> items,
+                          ReviewSummary review) {
+
+    public static OrderDetail from(Order order) {
+        OrderSummary summary = OrderSummary.from(order);
+        List<OrderLine> items = order.getItems() != null
+                ? order.getItems().stream().map(OrderLine::from).toList()
+                : List.of();
+        ReviewSummary review = order.getReview() != null ? ReviewSummary.from(order.getReview()) : null;
+        return new OrderDetail(
+                summary.id(),
+                summary.customerId(),
+                summary.customerName(),
+                summary.merchantId(),
+                summary.merchantName(),
+                summary.deliveryManId(),
+                summary.deliveryManName(),
+                summary.totalPrice(),
+                summary.status(),
+                summary.orderTime(),
+                summary.deliveryTime(),
+                summary.deliveryLocation(),
+                items,
+                review
+        );
+    }
+}
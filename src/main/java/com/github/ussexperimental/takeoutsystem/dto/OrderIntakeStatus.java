@@ -0,0 +1,17 @@
+package com.github.ussexperimental.takeoutsystem.dto;
+
+/**
+ * 异步下单的处理状态，按下单时返回的令牌查询
+ * <p>
+ * 排队中（QUEUED）、已创建（CREATED，orderId 为订单ID）、校验不通过（REJECTED）或写入失败（FAILED，可以重新下单），
+ * reason 为后两种情况的原因
+ */
+public record OrderIntakeStatus(String token, State state, Long orderId, String reason) {
+
+    public enum State {
+        QUEUED,
+        CREATED,
+        REJECTED,
+        FAILED
+    }
+}
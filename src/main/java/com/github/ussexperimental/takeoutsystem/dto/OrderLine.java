@@ -0,0 +1,16 @@
+package com.github.ussexperimental.takeoutsystem.dto;
+
+import com.github.ussexperimental.takeoutsystem.entity.OrderItem;
+
+import java.math.BigDecimal;
+
+/**
+ * 订单详情中的一行明细，名称和单价是下单时的快照
+ */
+public record OrderLine(Long dishId, String name, int quantity, BigDecimal unitPrice, BigDecimal subtotal) {
+
+    public static OrderLine from(OrderItem item) {
+        return new OrderLine(item.getDishId(), item.getDishName(), item.getQuantity(),
+                OrderItem.fromCents(item.getUnitPriceCents()), OrderItem.fromCents(item.subtotalCents()));
+    }
+}
@@ -0,0 +1,24 @@
+package com.github.ussexperimental.takeoutsystem.dto;
+
+import com.github.ussexperimental.takeoutsystem.entity.OrderStatusHistory;
+import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+
+import java.util.Date;
+
+/**
+ * 订单时间线中的一次状态变更，stageMillis 为变更前在 from 状态停留的毫秒数
+ */
+public record OrderStatusChange(OrderStatus from,
+                                OrderStatus to,
+                                Date changedAt,
+                                Long stageMillis) {
+
+    public static OrderStatusChange from(OrderStatusHistory history) {
+        return new OrderStatusChange(
+                history.getFromStatus(),
+                history.getToStatus(),
+                history.getChangedAt(),
+                history.getStageMillis()
+        );
+    }
+}
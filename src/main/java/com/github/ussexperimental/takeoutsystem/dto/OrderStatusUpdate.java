@@ -0,0 +1,9 @@
+package com.github.ussexperimental.takeoutsystem.dto;
+
+import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+
+/**
+ * 推送的订单状态变更，from 为 null 表示连接时推送的当前状态
+ */
+public record OrderStatusUpdate(Long orderId, OrderStatus from, OrderStatus status) {
+}
@@ -0,0 +1,48 @@
+package com.github.ussexperimental.takeoutsystem.dto;
+
+import com.github.ussexperimental.takeoutsystem.entity.Order;
+import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * 订单列表的响应：订单本身的列和顾客、商家、送餐员的ID与名称，不包含菜品和评价
+ * <p>
+ * 只读取 Order.listing 抓取计划中已加载的多对一关联，可以在事务结束后构建
+ */
+public record OrderSummary(Long id,
+                           Long customerId,
+                           String customerName,
+                           Long merchantId,
+                           String merchantName,
+                           Long deliveryManId,
+                           String deliveryManName,
+                           BigDecimal totalPrice,
+                           OrderStatus status,
+                           Date orderTime,
+                           Date deliveryTime,
+                           String deliveryLocation) {
+
+    public static OrderSummary from(Order order) {
+        return new OrderSummary(
+                order.getId(),
+                order.getCustomer() != null ? order.getCustomer().getId() : null,
+                order.getCustomer() != null ? order.getCustomer().getUsername() : null,
+                order.getMerchant() != null ? order.getMerchant().getId() : null,
+                order.getMerchant() != null ? order.getMerchant().getMerchantName() : null,
+                order.getDeliveryMan() != null ? order.getDeliveryMan().getId() : null,
+                order.getDeliveryMan() != null ? order.getDeliveryMan().getDeliveryManName() : null,
+                order.getTotalPrice(),
+                order.getStatus(),
+                order.getOrderTime(),
+                order.getDeliveryTime(),
+                order.getDeliveryLocation()
+        );
+    }
+
+    public OrderSummary withStatus(OrderStatus status) {
+        return new OrderSummary(id, customerId, customerName, merchantId, merchantName, deliveryManId, deliveryManName,
+                totalPrice, status, orderTime, deliveryTime, deliveryLocation);
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.ussexperimental.takeoutsystem.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * 游标分页的位置，对客户端是不透明的字符串
+ * <p>
+ * 订单列表按 (下单时间, ID) 降序，游标记录上一页最后一条的这两个值；
+ * 用户列表按 ID 降序，游标只记录 ID。
+ * 下单时间为空的历史订单记为 {@link #NO_TIME}，按时间降序排在所有订单之后，与数据库对 NULL 的排序一致。
+ *
+ * @param time 下单时间（毫秒），下单时间为空时为 {@link #NO_TIME}，仅按 ID 排序时为 null
+ * @param id   上一页最后一条记录的ID
+ */
+public record PageCursor(Long time, long id) {
+
+    public static final long NO_TIME = Long.MIN_VALUE;
+
+    public static PageCursor of(Date time, Long id) {
+        return new PageCursor(time != null ? time.getTime() : NO_TIME, id);
+    }
+
+    public static PageCursor of(Long id) {
+        return new PageCursor(null, id);
+    }
+
+    /**
+     * 游标位置的下单时间，下单时间为空时返回 null
+     */
+    public Date date() {
+        return time == null || time == NO_TIME ? null : new Date(time);
+    }
+
+    public String encode() {
+        String raw = time != null ? time + ":" + id : Long.toString(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * 解析游标
+     * @param cursor 客户端传入的游标，为空表示第一页
+     * @return 第一页时返回 null
+     */
+    public static PageCursor decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            int colon = raw.indexOf(':');
+            if (colon < 0) {
+                return new PageCursor(null, Long.parseLong(raw));
+            }
+            return new PageCursor(Long.parseLong(raw.substring(0, colon)), Long.parseLong(raw.substring(colon + 1)));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("分页游标无效");
+        }
+    }
+
+    /**
+     * 按时间排序的列表须传入带时间的游标
+     */
+    public static PageCursor decodeTimed(String cursor) {
+        PageCursor decoded = decode(cursor);
+        if (decoded != null && decoded.time == null) {
+            throw new IllegalArgumentException("分页游标无效");
+        }
+        return decoded;
+    }
+}
@@ -2,19 +2,87 @@ package com.github.ussexperimental.takeoutsystem.dto;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import org.springframework.data.domain.Slice;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Function;
 
 @Data
 @AllArgsConstructor
 public class PageResponse<T> {
+
+    // 游标分页每页最多返回的记录数，查询按 size + 1 条读取
+    public static final int MAX_CURSOR_SIZE = 100;
+
     private List<T> content;
     private int page;
     private int size;
+    // 游标分页不执行 COUNT 查询，totalElements 和 totalPages 均为 -1
     private long totalElements;
     private int totalPages;
     private boolean last;
+    // 下一页游标，仅游标分页时返回，已是最后一页时为 null
+    private String nextCursor;
+    // totalElements 和 totalPages 是否为缓存的近似值（withTotal=false 时），未知时为 -1
+    private boolean approximateTotal;
 
     public PageResponse() {
     }
+
+    public PageResponse(List<T> content, int page, int size, long totalElements, int totalPages, boolean last) {
+        this(content, page, size, totalElements, totalPages, last, null, false);
+    }
+
+    /**
+     * 转换每条记录，分页信息不变
+     * @param mapper 记录转换函数，如实体转为响应 DTO
+     */
+    public <R> PageResponse<R> map(Function<? super T, ? extends R> mapper) {
+        List<R> mapped = new ArrayList<>(content.size());
+        for (T row : content) {
+            mapped.add(mapper.apply(row));
+        }
+        return new PageResponse<>(mapped, page, size, totalElements, totalPages, last, nextCursor, approximateTotal);
+    }
+
+    /**
+     * 构建游标分页结果
+     * @param rows 按 size + 1 条查询到的记录，多出的一条只用于判断是否还有下一页
+     * @param size 每页大小，不超过 {@link #MAX_CURSOR_SIZE}
+     * @param cursorOf 由一条记录生成游标
+     */
+    public static <T> PageResponse<T> ofCursor(List<T> rows, int size, Function<T, PageCursor> cursorOf) {
+        boolean last = rows.size() <= size;
+        List<T> content = last ? rows : rows.subList(0, size);
+        String nextCursor = last ? null : cursorOf.apply(content.get(content.size() - 1)).encode();
+        return new PageResponse<>(content, 0, size, -1, -1, last, nextCursor, false);
+    }
+
+    /**
+     * 构建不执行 COUNT 查询的分页结果
+     * @param slice 按 size + 1 条查询得到的切片
+     * @param approximateTotal 缓存的近似总数，未知时为 -1
+     */
+    public static <T> PageResponse<T> ofSlice(Slice<T> slice, long approximateTotal) {
+        long seen = (long) slice.getNumber() * slice.getSize() + slice.getNumberOfElements();
+        long total;
+        if (!slice.hasNext()) {
+            // 最后一页时总数是准确的
+            total = seen;
+        } else {
+            total = approximateTotal < 0 ? -1 : Math.max(approximateTotal, seen + 1);
+        }
+        int totalPages = total < 0 ? -1 : (int) ((total + slice.getSize() - 1) / slice.getSize());
+        return new PageResponse<>(
+                slice.getContent(),
+                slice.getNumber(),
+                slice.getSize(),
+                total,
+                totalPages,
+                !slice.hasNext(),
+                null,
+                slice.hasNext()
+        );
+    }
 }
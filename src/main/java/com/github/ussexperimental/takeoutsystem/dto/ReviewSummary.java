@@ -0,0 +1,16 @@
+package com.github.ussexperimental.takeoutsystem.dto;
+
+import com.github.ussexperimental.takeoutsystem.entity.Review;
+
+import java.util.Date;
+
+/**
+ * 评价的响应，只引用订单ID，避免评价与订单互相引用
+ */
+public record ReviewSummary(Long id, Long orderId, int rating, String comment, Date reviewTime) {
+
+    public static ReviewSummary from(Review review) {
+        Long orderId = review.getOrder() != null ? review.getOrder().getId() : null;
+        return new ReviewSummary(review.getId(), orderId, review.getRating(), review.getComment(), review.getReviewTime());
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.ussexperimental.takeoutsystem.dto;
+
+import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+
+import java.util.List;
+
+/**
+ * 订单在某个状态停留时长的分布，单位毫秒，百分位取最近秩（不插值）
+ * <p>
+ * 次数和最大值是全部样本的；样本很多时百分位只按最近的一部分样本计算（见 MerchantServiceImpl.getStageDurations）。
+ */
+public record StageDuration(OrderStatus stage,
+                            int count,
+                            long p50Millis,
+                            long p90Millis,
+                            long p99Millis,
+                            long maxMillis) {
+
+    /**
+     * @param sorted 升序排列的停留时长，不能为空
+     */
+    public static StageDuration of(OrderStatus stage, List<Long> sorted) {
+        return of(stage, sorted.size(), sorted.get(sorted.size() - 1), sorted);
+    }
+
+    /**
+     * @param count 全部样本数
+     * @param maxMillis 全部样本中的最大值
+     * @param sorted 用于计算百分位的样本，升序排列，不能为空
+     */
+    public static StageDuration of(OrderStatus stage, int count, long maxMillis, List<Long> sorted) {
+        return new StageDuration(
+                stage,
+                count,
+                percentile(sorted, 50),
+                percentile(sorted, 90),
+                percentile(sorted, 99),
+                maxMillis
+        );
+    }
+
+    private static long percentile(List<Long> sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.size());
+        return sorted.get(Math.max(rank, 1) - 1);
+    }
+}
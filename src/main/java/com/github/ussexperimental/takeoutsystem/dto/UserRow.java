@@ -0,0 +1,23 @@
+package com.github.ussexperimental.takeoutsystem.dto;
+
+import com.github.ussexperimental.takeoutsystem.entity.User;
+import com.github.ussexperimental.takeoutsystem.entity.enums.RoleType;
+import com.github.ussexperimental.takeoutsystem.entity.enums.UserType;
+
+/**
+ * 用户管理接口的响应，不包含密码和各类用户的关联集合
+ */
+public record UserRow(Long id,
+                      String username,
+                      UserType userType,
+                      RoleType roleType,
+                      String phone,
+                      String email,
+                      String address) {
+
+    public static UserRow from(User user) {
+        RoleType roleType = user.getRole() != null ? user.getRole().getRoleType() : null;
+        return new UserRow(user.getId(), user.getUsername(), user.getUserType(), roleType,
+                user.getPhone(), user.getEmail(), user.getAddress());
+    }
+}
@@ -2,6 +2,7 @@ package com.github.ussexperimental.takeoutsystem.entity;
 
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.math.BigDecimal;
 
@@ -10,7 +11,10 @@ import java.math.BigDecimal;
 public class Dish {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "dish_id")
+    @TableGenerator(name = "dish_id", table = IdSequences.TABLE,
+            pkColumnName = IdSequences.NAME_COLUMN, valueColumnName = IdSequences.VALUE_COLUMN,
+            pkColumnValue = IdSequences.DISH, allocationSize = IdSequences.ALLOCATION_SIZE)
     private Long id;
 
     @ManyToOne
@@ -25,5 +29,12 @@ public class Dish {
     private String description;
 
     private String imageUrl;
+
+    // 乐观锁版本号，并发修改同一菜品时后提交的一方失败，而不是覆盖前者的修改
+    // 默认值 0 使已有数据和不经 Hibernate 的批量插入（菜单导入）也有版本号
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private Long version;
 }
 
@@ -0,0 +1,36 @@
+package com.github.ussexperimental.takeoutsystem.entity;
+
+import java.util.Map;
+
+/**
+ * 主键序列表 id_sequence 的约定
+ * <p>
+ * 用户、订单、菜品、评价、订单状态历史的主键由 Hibernate 从 id_sequence 表按块分配（pooled-lo，每块 ALLOCATION_SIZE 个），
+ * 不再依赖数据库自增列，因此插入可以走 JDBC 批处理。
+ * 表中每行记录一个序列的下一个可分配值，批量导入等直接写 JDBC 的代码也从同一张表分配主键。
+ */
+public final class IdSequences {
+
+    public static final String TABLE = "id_sequence";
+    public static final String NAME_COLUMN = "sequence_name";
+    public static final String VALUE_COLUMN = "next_val";
+    public static final int ALLOCATION_SIZE = 50;
+
+    public static final String USER = "user";
+    public static final String ORDER = "orders";
+    public static final String DISH = "dish";
+    public static final String REVIEW = "review";
+    public static final String ORDER_STATUS_HISTORY = "order_status_history";
+
+    // 序列名 -> 使用该序列的表，启动时据此把序列对齐到 max(id) + 1
+    public static final Map<String, String> TABLES = Map.of(
+            USER, "user",
+            ORDER, "orders",
+            DISH, "dish",
+            REVIEW, "review",
+            ORDER_STATUS_HISTORY, "order_status_history"
+    );
+
+    private IdSequences() {
+    }
+}
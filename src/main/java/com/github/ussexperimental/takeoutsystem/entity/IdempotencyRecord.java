@@ -0,0 +1,36 @@
+package com.github.ussexperimental.takeoutsystem.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * 幂等键 idempotency_key：带 Idempotency-Key 的请求在执行前插入，执行后在同一事务中记下结果（新建资源的ID）
+ * <p>
+ * 主键为 操作:顾客ID:幂等键，同一个键只有一个事务能插入成功，其他事务等待它提交后放弃执行、直接返回记下的结果，
+ * 多个实例收到同一请求的重试也只执行一次；执行失败时整个事务回滚，不留下记录。
+ * 超过保留时间的记录由 IdempotencyTemplate 定期删除。
+ */
+@Data
+@Entity
+@Table(name = "idempotency_key", indexes = {
+        @Index(name = "idx_idempotency_key_created", columnList = "created_at")
+})
+public class IdempotencyRecord {
+
+    @Id
+    @Column(length = 100)
+    private String id;
+
+    // 请求参数的摘要，同一个键用于不同参数的请求时拒绝
+    @Column(length = 64, nullable = false)
+    private String fingerprint;
+
+    // 执行完成后的资源ID，已提交的记录都不为 null
+    private Long resourceId;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(nullable = false)
+    private Date createdAt;
+}
@@ -1,9 +1,11 @@
 package com.github.ussexperimental.takeoutsystem.entity;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.OneToMany;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.util.List;
 
@@ -14,6 +16,12 @@ public class Merchant extends User {
 
     private String merchantName;
 
+    // 菜单版本号，菜品写操作在同一事务中递增（见 MerchantRepository.incrementMenuVersion），
+    // 菜单缓存和菜单 ETag 以此判断菜单是否变化，多个节点看到的版本号一致
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private Long menuVersion = 0L;
+
     @OneToMany(mappedBy = "merchant")
     private List<Dish> dishes;
 }
@@ -4,18 +4,58 @@ import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.ToString;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
 @Data
 @Entity
-@Table(name = "orders") // "order" is a reserved keyword in SQL
+@Table(name = "orders", indexes = { // "order" is a reserved keyword in SQL
+        // 订单列表按 (下单时间, ID) 降序做游标分页
+        @Index(name = "idx_orders_customer_time", columnList = "customer_id, order_time, id"),
+        @Index(name = "idx_orders_merchant_time", columnList = "merchant_id, order_time, id"),
+        @Index(name = "idx_orders_deliveryman_time", columnList = "deliveryman_id, order_time, id"),
+        // 商家按状态查询订单（待确认列表、订单看板）
+        @Index(name = "idx_orders_merchant_status", columnList = "merchant_id, status, order_time"),
+        // 启动时按状态分批加载超时计时的订单
+        @Index(name = "idx_orders_status", columnList = "status, id")
+})
+// 订单列表的抓取计划：一条 SQL 连接查询出顾客、商家、送餐员（及其角色）和评价，明细集合按批加载
+@NamedEntityGraph(name = Order.LISTING_GRAPH,
+        attributeNodes = {
+                @NamedAttributeNode(value = "customer", subgraph = "user"),
+                @NamedAttributeNode(value = "merchant", subgraph = "user"),
+                @NamedAttributeNode(value = "deliveryMan", subgraph = "user"),
+                @NamedAttributeNode("review")
+        },
+        subgraphs = @NamedSubgraph(name = "user", attributeNodes = @NamedAttributeNode("role")))
+// 单个订单详情的抓取计划：在列表抓取计划的基础上连接查询明细
+@NamedEntityGraph(name = Order.DETAIL_GRAPH,
+        attributeNodes = {
+                @NamedAttributeNode(value = "customer", subgraph = "user"),
+                @NamedAttributeNode(value = "merchant", subgraph = "user"),
+                @NamedAttributeNode(value = "deliveryMan", subgraph = "user"),
+                @NamedAttributeNode("review"),
+                @NamedAttributeNode("items")
+        },
+        subgraphs = @NamedSubgraph(name = "user", attributeNodes = @NamedAttributeNode("role")))
 public class Order {
 
+    public static final String LISTING_GRAPH = "Order.listing";
+
+    public static final String DETAIL_GRAPH = "Order.detail";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "order_id")
+    @TableGenerator(name = "order_id", table = IdSequences.TABLE,
+            pkColumnName = IdSequences.NAME_COLUMN, valueColumnName = IdSequences.VALUE_COLUMN,
+            pkColumnValue = IdSequences.ORDER, allocationSize = IdSequences.ALLOCATION_SIZE)
     private Long id;
 
     @ManyToOne
@@ -26,12 +66,13 @@ public class Order {
     @JoinColumn(name = "merchant_id", nullable=false)
     private Merchant merchant;
 
-    @ManyToMany
-    @JoinTable(
-            name = "order_dish",
-            joinColumns = @JoinColumn(name = "order_id"),
-            inverseJoinColumns = @JoinColumn(name = "dish_id"))
-    private List<Dish> dishes;
+    // 订单明细，按下单顺序保存（主键为 order_id, line_no），随订单按批插入
+    // 集合无法与分页查询连接抓取，改为一次按最多 50 个订单批量加载
+    @ElementCollection
+    @CollectionTable(name = "order_item", joinColumns = @JoinColumn(name = "order_id"))
+    @OrderColumn(name = "line_no")
+    @BatchSize(size = 50)
+    private List<OrderItem> items = new ArrayList<>();
 
     private BigDecimal totalPrice;
 
@@ -47,11 +88,20 @@ public class Order {
     @Temporal(TemporalType.TIMESTAMP)
     private Date deliveryTime;
 
+    // 按字符串列保存而不是 MySQL 的 enum 列，新增状态时不需要修改列定义（见 OrderStatusColumnInitializer）
     @Enumerated(EnumType.STRING)
+    @JdbcTypeCode(SqlTypes.VARCHAR)
+    @Column(length = 32)
     private OrderStatus status;
 
     @OneToOne(mappedBy = "order", cascade = CascadeType.ALL)
     @ToString.Exclude
     private Review review;
+
+    // 乐观锁版本号；OrderRepository 中的条件更新语句同样会递增版本号
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private Long version;
 }
 
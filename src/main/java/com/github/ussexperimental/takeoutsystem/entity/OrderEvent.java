@@ -0,0 +1,67 @@
+package com.github.ussexperimental.takeoutsystem.entity;
+
+import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+import jakarta.persistence.*;
+import lombok.Data;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.util.Date;
+
+/**
+ * 订单事件发件箱 order_event：订单状态变更时在同一事务中写入一行，由 OrderEventRelay 投递后删除
+ * <p>
+ * 单独投递失败达到 order.outbox.max-attempts 次的事件记下 dead_at，不再认领，留在表中等待人工处理
+ * （修复后把 dead_at 和 attempts 清空即重新投递）。
+ * <p>
+ * 只记录订单ID，不关联订单实体，写入时不需要加载订单。
+ * 每个事务只插入一行，用不上批量插入，主键使用数据库自增列，不占用 id_sequence 的序列行。
+ */
+@Data
+@Entity
+@Table(name = "order_event")
+public class OrderEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long orderId;
+
+    // 下单事件为 null
+    @Enumerated(EnumType.STRING)
+    @JdbcTypeCode(SqlTypes.VARCHAR)
+    @Column(length = 32)
+    private OrderStatus fromStatus;
+
+    @Enumerated(EnumType.STRING)
+    @JdbcTypeCode(SqlTypes.VARCHAR)
+    @Column(length = 32, nullable = false)
+    private OrderStatus toStatus;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(nullable = false)
+    private Date createdAt;
+
+    // 单独投递失败的次数
+    @Column(nullable = false)
+    private int attempts;
+
+    // 最近一次投递失败的异常
+    @Column(length = 500)
+    private String lastError;
+
+    // 移出投递的时间，未移出时为 null
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date deadAt;
+
+    public static OrderEvent of(Long orderId, OrderStatus from, OrderStatus to) {
+        OrderEvent event = new OrderEvent();
+        event.setOrderId(orderId);
+        event.setFromStatus(from);
+        event.setToStatus(to);
+        event.setCreatedAt(new Date());
+        return event;
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.ussexperimental.takeoutsystem.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 订单明细（order_item 表的一行）：一种菜品的数量，以及下单时的菜品名称和单价
+ * <p>
+ * 只保存菜品ID而不关联菜品：菜品之后改名、调价或删除都不影响历史订单，订单展示和销售统计只读本表。
+ * 单价按分保存为整数，合计和统计不受小数精度影响。
+ */
+@Data
+@Embeddable
+public class OrderItem {
+
+    @Column(nullable = false)
+    private Long dishId;
+
+    @Column(nullable = false)
+    private String dishName;
+
+    @Column(nullable = false)
+    private int quantity;
+
+    // 下单时的单价，单位分
+    @Column(nullable = false)
+    private long unitPriceCents;
+
+    public static OrderItem of(Dish dish, int quantity) {
+        return of(dish.getId(), dish.getName(), dish.getPrice(), quantity);
+    }
+
+    public static OrderItem of(Long dishId, String dishName, BigDecimal price, int quantity) {
+        OrderItem item = new OrderItem();
+        item.setDishId(dishId);
+        item.setDishName(dishName);
+        item.setQuantity(quantity);
+        item.setUnitPriceCents(toCents(price));
+        return item;
+    }
+
+    public static long toCents(BigDecimal price) {
+        return price.setScale(2, RoundingMode.HALF_UP).movePointRight(2).longValueExact();
+    }
+
+    public static BigDecimal fromCents(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    public long subtotalCents() {
+        return unitPriceCents * quantity;
+    }
+}
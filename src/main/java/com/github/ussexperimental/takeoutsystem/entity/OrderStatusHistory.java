@@ -0,0 +1,57 @@
+package com.github.ussexperimental.takeoutsystem.entity;
+
+import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+import jakarta.persistence.*;
+import lombok.Data;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.util.Date;
+
+/**
+ * 订单状态历史 order_status_history，每次状态变更追加一行，只插入不修改
+ * <p>
+ * 由 OrderStatusHistoryRecorder 从订单事件发件箱批量写入，不在请求线程中写入。
+ * 冗余保存商家ID，按商家统计各阶段耗时不需要连接订单表。
+ */
+@Data
+@Entity
+@Immutable
+@Table(name = "order_status_history", indexes = {
+        @Index(name = "idx_status_history_order", columnList = "order_id, changed_at"),
+        @Index(name = "idx_status_history_merchant", columnList = "merchant_id, changed_at"),
+        @Index(name = "idx_status_history_merchant_stage", columnList = "merchant_id, from_status, changed_at")
+})
+public class OrderStatusHistory {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "order_status_history_id")
+    @TableGenerator(name = "order_status_history_id", table = IdSequences.TABLE,
+            pkColumnName = IdSequences.NAME_COLUMN, valueColumnName = IdSequences.VALUE_COLUMN,
+            pkColumnValue = IdSequences.ORDER_STATUS_HISTORY, allocationSize = IdSequences.ALLOCATION_SIZE)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long orderId;
+
+    private Long merchantId;
+
+    // 下单时为 null
+    @Enumerated(EnumType.STRING)
+    @JdbcTypeCode(SqlTypes.VARCHAR)
+    @Column(length = 32)
+    private OrderStatus fromStatus;
+
+    @Enumerated(EnumType.STRING)
+    @JdbcTypeCode(SqlTypes.VARCHAR)
+    @Column(length = 32, nullable = false)
+    private OrderStatus toStatus;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(nullable = false)
+    private Date changedAt;
+
+    // 订单在 fromStatus 停留的毫秒数；下单记录，或缺少进入 fromStatus 的记录（本表启用前的订单）时为 null
+    private Long stageMillis;
+}
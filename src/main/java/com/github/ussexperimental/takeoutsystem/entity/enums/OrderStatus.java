@@ -1,5 +1,10 @@
 package com.github.ussexperimental.takeoutsystem.entity.enums;
 
+/**
+ * 订单状态，按订单推进的先后声明；CANCELLED 和 COMPLETED 是终态，放在最后
+ * <p>
+ * 推送等处按声明顺序判断状态是否更新，新增状态时需保持这一顺序。
+ */
 public enum OrderStatus {
     PENDING,
     PENDING_CONFIRMATION,
@@ -7,5 +12,9 @@ public enum OrderStatus {
     REQUESTING_DELIVERY,
     DELIVERING,
     DELIVERED,
-    REVIEWED
+    REVIEWED,
+    // 商家超时未确认，自动取消
+    CANCELLED,
+    // 送达后超时未评价，自动完成
+    COMPLETED
 }
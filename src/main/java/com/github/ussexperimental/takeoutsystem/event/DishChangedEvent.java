@@ -0,0 +1,41 @@
+package com.github.ussexperimental.takeoutsystem.event;
+
+import com.github.ussexperimental.takeoutsystem.entity.Dish;
+
+import java.math.BigDecimal;
+
+/**
+ * 菜品变更事件，由菜品写操作发布，监听方在事务提交后处理
+ * 事件携带菜品快照，监听方无需再查询数据库
+ */
+public record DishChangedEvent(Type type,
+                               Long dishId,
+                               Long merchantId,
+                               String name,
+                               String description,
+                               BigDecimal price) {
+
+    public enum Type {
+        SAVED,
+        DELETED
+    }
+
+    public static DishChangedEvent saved(Dish dish) {
+        return of(Type.SAVED, dish);
+    }
+
+    public static DishChangedEvent deleted(Dish dish) {
+        return of(Type.DELETED, dish);
+    }
+
+    private static DishChangedEvent of(Type type, Dish dish) {
+        return new DishChangedEvent(
+                type,
+                dish.getId(),
+                dish.getMerchant().getId(),
+                dish.getName(),
+                dish.getDescription(),
+                dish.getPrice()
+        );
+    }
+}
@@ -0,0 +1,10 @@
+package com.github.ussexperimental.takeoutsystem.event;
+
+import com.github.ussexperimental.takeoutsystem.dto.OrderSummary;
+
+/**
+ * 订单创建事件，由下单发布，监听方在事务提交后处理
+ * 事件携带订单列表快照，监听方无需再查询数据库
+ */
+public record OrderCreatedEvent(OrderSummary order) {
+}
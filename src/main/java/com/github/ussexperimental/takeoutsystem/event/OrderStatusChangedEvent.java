@@ -0,0 +1,14 @@
+package com.github.ussexperimental.takeoutsystem.event;
+
+import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+
+/**
+ * 订单状态变更事件，由 OrderStateMachine 在状态变更成功后发布，监听方在事务提交后处理
+ * <p>
+ * merchantId 为订单所属商家，发起变更的一方不知道商家时（如按订单ID批量变更、送餐员接单）为 null。
+ */
+public record OrderStatusChangedEvent(Long orderId,
+                                      Long merchantId,
+                                      OrderStatus from,
+                                      OrderStatus to) {
+}
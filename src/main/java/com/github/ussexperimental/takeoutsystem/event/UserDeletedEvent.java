@@ -0,0 +1,8 @@
+package com.github.ussexperimental.takeoutsystem.event;
+
+/**
+ * 用户删除事件，由管理员删除用户发布，监听方在事务提交后处理
+ * 只在本节点发布，其他节点缓存的用户信息依靠各自的过期时间失效
+ */
+public record UserDeletedEvent(Long userId) {
+}
@@ -0,0 +1,246 @@
+package com.github.ussexperimental.takeoutsystem.idempotency;
+
+import com.github.ussexperimental.takeoutsystem.entity.IdempotencyRecord;
+import com.github.ussexperimental.takeoutsystem.repository.IdempotencyRecordRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 按 Idempotency-Key 只执行一次的操作：同一顾客用同一个键重复提交时，返回第一次执行的结果，不再执行
+ * <p>
+ * 依次查找三处：
+ * <ol>
+ *     <li>内存中最近执行过的键及结果（按 LRU 淘汰，超过保留时间失效）；</li>
+ *     <li>本实例正在执行的同一个键：等待其完成，共用其结果或异常；</li>
+ *     <li>数据库中的 {@link IdempotencyRecord}：先插入键，再在同一事务中执行操作并记下结果。
+ *     其他实例正在执行同一个键时插入会等待其提交，随后因主键冲突放弃执行，读取记下的结果。</li>
+ * </ol>
+ * 操作失败时不留下记录，之后用同一个键重试会重新执行。同一个键用于参数不同的请求时抛出 {@link IllegalStateException}。
+ * <p>
+ * 操作在本模板开启的事务中执行（不能在调用方的事务中调用），结果只保存资源ID，重复请求通过 loader 重新读取资源。
+ * <p>
+ * 指标：idempotency.replayed（返回已有结果的次数，source 标签为 cache、coalesced 或 database）。
+ */
+@Slf4j
+@Component
+public class IdempotencyTemplate {
+
+    public static final int MAX_KEY_LENGTH = 64;
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${idempotency.ttl-hours:24}")
+    private long ttlHours = 24;
+
+    @Value("${idempotency.cache.max-entries:100000}")
+    private int maxEntries = 100000;
+
+    // accessOrder = true，按访问顺序排列，实现 LRU；所有访问在 synchronized (results) 中进行
+    private Map<String, Result> results;
+
+    private final Map<String, InFlight> inFlight = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService purger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "idempotency-purge");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        int capacity = maxEntries;
+        results = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+                return size() > capacity;
+            }
+        };
+        purger.scheduleWithFixedDelay(this::purge, 1, 1, TimeUnit.HOURS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        purger.shutdownNow();
+    }
+
+    /**
+     * 按幂等键执行操作
+     * @param operation 操作名，不同操作的键互不影响
+     * @param key 请求头中的幂等键
+     * @param fingerprint 请求参数的摘要，见 {@link #fingerprint}
+     * @param action 操作，返回新建的资源
+     * @param idOf 取资源ID
+     * @param loader 重复请求时按ID读取资源
+     * @throws IllegalArgumentException 幂等键为空或过长
+     * @throws IllegalStateException 该键已用于参数不同的请求
+     */
+    public <T> T execute(String operation, Long customerId, String key, String fingerprint,
+                         Supplier<T> action, Function<T, Long> idOf, Function<Long, T> loader) {
+        if (key == null || key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("幂等键无效");
+        }
+        String id = operation + ":" + customerId + ":" + key;
+
+        Result cached = cached(id);
+        if (cached != null) {
+            return replay(cached, fingerprint, "cache", loader);
+        }
+
+        InFlight mine = new InFlight(fingerprint, new CompletableFuture<>());
+        InFlight running = inFlight.putIfAbsent(id, mine);
+        if (running != null) {
+            Long resourceId;
+            try {
+                resourceId = running.resourceId().join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+            return replay(new Result(resourceId, running.fingerprint(), 0), fingerprint, "coalesced", loader);
+        }
+
+        try {
+            T resource = executeOnce(id, fingerprint, action, idOf, loader);
+            mine.resourceId().complete(idOf.apply(resource));
+            return resource;
+        } catch (RuntimeException e) {
+            mine.resourceId().completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(id, mine);
+        }
+    }
+
+    /**
+     * 请求参数的摘要（SHA-256），时间按毫秒数参与计算
+     */
+    public static String fingerprint(Object... parts) {
+        Object[] values = Arrays.stream(parts)
+                .map(part -> part instanceof Date date ? date.getTime() : part)
+                .toArray();
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(Arrays.deepToString(values).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 删除超过保留时间的幂等键
+     * @return 删除的记录数
+     */
+    public int purge() {
+        Date cutoff = new Date(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(ttlHours));
+        try {
+            Integer deleted = new TransactionTemplate(transactionManager)
+                    .execute(status -> idempotencyRecordRepository.deleteByCreatedAtBefore(cutoff));
+            return deleted;
+        } catch (RuntimeException e) {
+            log.warn("删除过期幂等键失败", e);
+            return 0;
+        }
+    }
+
+    // 清空内存中的结果，之后的请求从数据库读取
+    void clear() {
+        synchronized (results) {
+            results.clear();
+        }
+    }
+
+    private <T> T executeOnce(String id, String fingerprint, Supplier<T> action,
+                              Function<T, Long> idOf, Function<Long, T> loader) {
+        IdempotencyRecord existing = idempotencyRecordRepository.findById(id).orElse(null);
+        if (existing != null) {
+            return replay(remember(existing), fingerprint, "database", loader);
+        }
+        try {
+            T resource = new TransactionTemplate(transactionManager).execute(status -> {
+                idempotencyRecordRepository.insert(id, fingerprint, new Date());
+                T created = action.get();
+                idempotencyRecordRepository.complete(id, idOf.apply(created));
+                return created;
+            });
+            remember(id, new Result(idOf.apply(resource), fingerprint, expiresAt()));
+            return resource;
+        } catch (DataIntegrityViolationException e) {
+            // 其他实例用同一个键执行完毕并已提交
+            IdempotencyRecord record = idempotencyRecordRepository.findById(id).orElseThrow(() -> e);
+            return replay(remember(record), fingerprint, "database", loader);
+        }
+    }
+
+    private <T> T replay(Result result, String fingerprint, String source, Function<Long, T> loader) {
+        if (!result.fingerprint().equals(fingerprint)) {
+            throw new IllegalStateException("幂等键已用于其他请求");
+        }
+        meterRegistry.counter("idempotency.replayed", "source", source).increment();
+        return loader.apply(result.resourceId());
+    }
+
+    private Result cached(String id) {
+        synchronized (results) {
+            Result result = results.get(id);
+            if (result != null && result.expiresAt() < System.nanoTime()) {
+                results.remove(id);
+                return null;
+            }
+            return result;
+        }
+    }
+
+    private Result remember(IdempotencyRecord record) {
+        Result result = new Result(record.getResourceId(), record.getFingerprint(), expiresAt());
+        remember(record.getId(), result);
+        return result;
+    }
+
+    private void remember(String id, Result result) {
+        synchronized (results) {
+            results.put(id, result);
+        }
+    }
+
+    private long expiresAt() {
+        return System.nanoTime() + TimeUnit.HOURS.toNanos(ttlHours);
+    }
+
+    private record Result(Long resourceId, String fingerprint, long expiresAt) {
+    }
+
+    private record InFlight(String fingerprint, CompletableFuture<Long> resourceId) {
+    }
+}
@@ -0,0 +1,167 @@
+package com.github.ussexperimental.takeoutsystem.jdbc;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 数据库隔离舱：限制同时持有数据库连接的线程数
+ * <p>
+ * 启用虚拟线程（spring.threads.virtual.enabled）后，并发请求数不再受 Tomcat 线程池限制，
+ * 成千上万个请求会同时向连接池要连接。这里用一个公平信号量排在连接池前面：拿到许可的线程才去连接池取连接，
+ * 连接关闭时归还许可；等待超过 timeout-ms 的请求直接失败（SQLTransientConnectionException，与连接池超时相同），
+ * 不会在连接池里堆积到 connection-timeout 才失败。
+ * <p>
+ * 同一线程已经持有连接时再取连接（如主键分配的 REQUIRES_NEW 事务）不再占用许可，否则许可全部被外层事务占用时会互相等待；
+ * 许可数应小于连接池大小，为这些嵌套连接留出余量。
+ * <p>
+ * 指标：db.bulkhead.active（持有许可的线程数）、db.bulkhead.waiting（等待许可的线程数）、db.bulkhead.rejected（等待超时的次数）。
+ */
+@Component
+public class DataSourceBulkhead implements BeanPostProcessor, MeterBinder {
+
+    @Value("${db.bulkhead.max-concurrent:16}")
+    private int maxConcurrent = 16;
+
+    @Value("${db.bulkhead.timeout-ms:2000}")
+    private long timeoutMillis = 2000;
+
+    private Semaphore permits;
+
+    // 当前线程已打开的连接数，大于 0 时再取连接不占用许可
+    private final ThreadLocal<int[]> openConnections = ThreadLocal.withInitial(() -> new int[1]);
+
+    private final LongAdder rejected = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(maxConcurrent, true);
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource dataSource && !(bean instanceof BulkheadDataSource)) {
+            return new BulkheadDataSource(dataSource);
+        }
+        return bean;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("db.bulkhead.active", this, bulkhead -> bulkhead.maxConcurrent - bulkhead.permits.availablePermits())
+                .register(registry);
+        Gauge.builder("db.bulkhead.waiting", this, bulkhead -> bulkhead.permits.getQueueLength())
+                .register(registry);
+        FunctionCounter.builder("db.bulkhead.rejected", rejected, LongAdder::sum)
+                .register(registry);
+    }
+
+    /**
+     * 取得一个许可
+     * @return 是否占用了许可（同一线程的嵌套连接不占用）
+     * @throws SQLTransientConnectionException 等待超时
+     */
+    boolean acquire() throws SQLException {
+        int[] open = openConnections.get();
+        if (open[0] > 0) {
+            open[0]++;
+            return false;
+        }
+        try {
+            if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                throw new SQLTransientConnectionException("数据库连接繁忙，请稍后重试");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("等待数据库连接时被中断", e);
+        }
+        open[0]++;
+        return true;
+    }
+
+    void release(boolean acquired) {
+        int[] open = openConnections.get();
+        if (open[0] > 0) {
+            open[0]--;
+        }
+        if (acquired) {
+            permits.release();
+        }
+    }
+
+    private class BulkheadDataSource extends DelegatingDataSource {
+
+        BulkheadDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            boolean acquired = acquire();
+            try {
+                return guard(super.getConnection(), acquired);
+            } catch (SQLException | RuntimeException e) {
+                release(acquired);
+                throw e;
+            }
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            boolean acquired = acquire();
+            try {
+                return guard(super.getConnection(username, password), acquired);
+            } catch (SQLException | RuntimeException e) {
+                release(acquired);
+                throw e;
+            }
+        }
+
+        // 连接第一次关闭（归还连接池）之后归还许可
+        private Connection guard(Connection connection, boolean acquired) {
+            AtomicBoolean closed = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> switch (method.getName()) {
+                        case "equals" -> proxy == args[0];
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        case "close" -> {
+                            try {
+                                yield invoke(connection, method, args);
+                            } finally {
+                                if (closed.compareAndSet(false, true)) {
+                                    release(acquired);
+                                }
+                            }
+                        }
+                        default -> invoke(connection, method, args);
+                    });
+        }
+    }
+
+    private static Object invoke(Connection connection, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(connection, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.github.ussexperimental.takeoutsystem.order;
+
+import com.github.ussexperimental.takeoutsystem.dto.OrderSummary;
+import com.github.ussexperimental.takeoutsystem.dto.PageResponse;
+import com.github.ussexperimental.takeoutsystem.entity.Order;
+import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+import com.github.ussexperimental.takeoutsystem.event.OrderStatusChangedEvent;
+import com.github.ussexperimental.takeoutsystem.repository.OrderRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 可接单池：内存中按下单时间降序、ID降序排列的待接单订单（REQUESTING_DELIVERY 且未分配送餐员）
+ * <p>
+ * 外卖员轮询可接单列表时直接读取内存，不查询数据库，数据库负载不随外卖员人数增长。
+ * 启动后从数据库全量加载，之后由订单状态变更提交后的 {@link OrderStatusChangedEvent} 增量维护；
+ * 外卖员接单时先从池中摘除订单，同一订单只有一名外卖员能摘除成功。
+ * <p>
+ * 状态变更只经过 {@link OrderStateMachine}，加载完成后池中的内容即为全部可接单订单。
+ * 池只存在于当前进程内，多实例部署时各实例的池互不同步。
+ * 池中订单的增删会通知 {@link Listener}，用于向外卖员推送可接单变化。
+ */
+@Slf4j
+@Component
+public class DispatchPool implements MeterBinder {
+
+    private static final Comparator<Key> NEWEST_FIRST =
+            Comparator.comparingLong(Key::orderTime).thenComparingLong(Key::orderId).reversed();
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    private final ConcurrentSkipListMap<Key, OrderSummary> orders = new ConcurrentSkipListMap<>(NEWEST_FIRST);
+
+    // 订单ID到排序键的索引；对同一订单的增删都在 keys 的 compute 中进行，两个集合的修改对同一订单是原子的
+    private final ConcurrentHashMap<Long, Key> keys = new ConcurrentHashMap<>();
+
+    // 加载期间被增量更新过的订单，加载时跳过它们，避免旧数据覆盖新数据；非加载期间为 null
+    private volatile Set<Long> touchedDuringRebuild;
+
+    private volatile boolean ready;
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 可接单池变化的监听器，在修改池的线程中同步调用，实现不能阻塞
+     */
+    public interface Listener {
+
+        void added(OrderSummary order);
+
+        void removed(Long orderId);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 是否已完成全量加载；加载完成前池中的内容不完整，调用方应回退到数据库
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 从数据库全量加载待接单订单
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        ready = false;
+        touchedDuringRebuild = ConcurrentHashMap.newKeySet();
+        keys.keySet().forEach(this::removeEntry);
+
+        List<Order> requesting = orderRepository.findAllByStatusAndDeliveryManIsNull(OrderStatus.REQUESTING_DELIVERY);
+        for (Order order : requesting) {
+            if (!touchedDuringRebuild.contains(order.getId())) {
+                putEntry(OrderSummary.from(order));
+            }
+        }
+
+        touchedDuringRebuild = null;
+        ready = true;
+        log.info("可接单池加载完成，共 {} 个订单", keys.size());
+    }
+
+    // 订单状态变更提交后增量维护：进入待接单状态时加入，离开时移除
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderStatusChanged(OrderStatusChangedEvent event) {
+        if (event.to() == OrderStatus.REQUESTING_DELIVERY) {
+            orderRepository.findListingById(event.orderId())
+                    .filter(order -> order.getStatus() == OrderStatus.REQUESTING_DELIVERY && order.getDeliveryMan() == null)
+                    .ifPresent(order -> add(OrderSummary.from(order)));
+        } else if (event.from() == OrderStatus.REQUESTING_DELIVERY) {
+            remove(event.orderId());
+        }
+    }
+
+    /**
+     * 加入一个待接单订单
+     */
+    public void add(OrderSummary order) {
+        markTouched(order.id());
+        putEntry(order);
+    }
+
+    /**
+     * 移除一个订单
+     */
+    public void remove(Long orderId) {
+        markTouched(orderId);
+        removeEntry(orderId);
+    }
+
+    /**
+     * 接单：从池中摘除订单，多名外卖员同时接同一订单时只有一人返回 true
+     * <p>
+     * 在事务中调用时，事务回滚后订单放回池中。
+     */
+    public boolean claim(Long orderId) {
+        OrderSummary claimed = removeEntry(orderId);
+        if (claimed == null) {
+            return false;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        putEntry(claimed);
+                    }
+                }
+            });
+        }
+        return true;
+    }
+
+    /**
+     * 分页查看待接单订单，按下单时间降序
+     */
+    public PageResponse<OrderSummary> page(int page, int size) {
+        if (page < 0 || size <= 0) {
+            throw new IllegalArgumentException("分页参数无效");
+        }
+        List<OrderSummary> content = orders.values().stream()
+                .skip((long) page * size)
+                .limit(size)
+                .toList();
+        // 遍历和计数之间池可能有变化，总数只是近似值
+        long total = Math.max(keys.size(), (long) page * size + content.size());
+        int totalPages = (int) ((total + size - 1) / size);
+        return new PageResponse<>(content, page, size, total, totalPages, page + 1 >= totalPages);
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("dispatch.pool.size", this, DispatchPool::size)
+                .register(registry);
+    }
+
+    private void markTouched(Long orderId) {
+        Set<Long> touched = touchedDuringRebuild;
+        if (touched != null) {
+            touched.add(orderId);
+        }
+    }
+
+    private void putEntry(OrderSummary order) {
+        Key key = new Key(order.orderTime() != null ? order.orderTime().getTime() : 0L, order.id());
+        keys.compute(order.id(), (id, old) -> {
+            if (old != null) {
+                orders.remove(old);
+            }
+            orders.put(key, order);
+            return key;
+        });
+        for (Listener listener : listeners) {
+            listener.added(order);
+        }
+    }
+
+    private OrderSummary removeEntry(Long orderId) {
+        OrderSummary[] removed = new OrderSummary[1];
+        keys.computeIfPresent(orderId, (id, key) -> {
+            removed[0] = orders.remove(key);
+            return null;
+        });
+        if (removed[0] != null) {
+            for (Listener listener : listeners) {
+                listener.removed(orderId);
+            }
+        }
+        return removed[0];
+    }
+
+    private record Key(long orderTime, long orderId) {
+    }
+}
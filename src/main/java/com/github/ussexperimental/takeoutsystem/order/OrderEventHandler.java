@@ -0,0 +1,20 @@
+package com.github.ussexperimental.takeoutsystem.order;
+
+import com.github.ussexperimental.takeoutsystem.entity.OrderEvent;
+
+import java.util.List;
+
+/**
+ * 订单事件发件箱的处理方，由 {@link OrderEventRelay} 按批调用，声明为 Spring Bean 即可生效
+ * <p>
+ * 投递至少一次：一批中任一处理方抛出异常，这批事件逐个重新投递给所有处理方，处理方需要能容忍重复的事件。
+ * 单个事件失败达到次数上限后移出投递，同一订单之后的事件在此之前不会越过它投递。
+ * 处理方在认领事件的事务中执行，写数据库的处理方与删除事件一起提交或回滚。
+ */
+public interface OrderEventHandler {
+
+    /**
+     * 处理一批事件，事件按写入顺序排列
+     */
+    void handle(List<OrderEvent> events);
+}
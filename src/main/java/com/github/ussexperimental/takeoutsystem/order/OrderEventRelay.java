@@ -0,0 +1,270 @@
+package com.github.ussexperimental.takeoutsystem.order;
+
+import com.github.ussexperimental.takeoutsystem.entity.OrderEvent;
+import com.github.ussexperimental.takeoutsystem.event.OrderCreatedEvent;
+import com.github.ussexperimental.takeoutsystem.event.OrderStatusChangedEvent;
+import com.github.ussexperimental.takeoutsystem.repository.OrderEventRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 订单事件发件箱的投递
+ * <p>
+ * 投递线程循环执行：在一个事务中用 for update skip locked 认领一批最早的事件，按批交给所有 {@link OrderEventHandler}，
+ * 然后按主键批量删除这批事件并提交。多个投递线程、多个实例同时运行时各自认领不同的行，不会重复投递同一批事件。
+ * <p>
+ * 处理方抛出异常时整批回滚，随后这批事件逐个在各自的事务中重新投递（至少一次），一个无法处理的事件不会拖住同批的其他事件。
+ * 单独投递失败的事件记一次失败次数，达到 max-attempts 次后记下 dead_at 移出投递（见 {@link OrderEvent}），
+ * 不会永远堵在发件箱最前面；同一订单在它之后的事件在它投递成功或被移出之前不投递，保持每个订单的事件顺序。
+ * <p>
+ * 一批全部投递成功且认领满说明还有积压，立即认领下一批；否则等待 poll-interval-ms，期间有订单事件提交时提前唤醒。
+ * <p>
+ * 指标：order.outbox.relayed（已投递事件数）、order.outbox.failures（投递失败的批次数）、
+ * order.outbox.dead（移出投递的事件数）、order.outbox.lag（最近一批中最早事件从写入到投递的毫秒数）。
+ */
+@Slf4j
+@Component
+public class OrderEventRelay implements MeterBinder {
+
+    @Autowired
+    private OrderEventRepository orderEventRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired(required = false)
+    private List<OrderEventHandler> handlers = List.of();
+
+    @Value("${order.outbox.batch-size:500}")
+    private int batchSize = 500;
+
+    @Value("${order.outbox.poll-interval-ms:200}")
+    private long pollIntervalMillis = 200;
+
+    @Value("${order.outbox.relay-threads:1}")
+    private int relayThreads = 1;
+
+    @Value("${order.outbox.max-attempts:10}")
+    private int maxAttempts = 10;
+
+    private final List<Thread> threads = new ArrayList<>();
+
+    private final Semaphore wakeUp = new Semaphore(0);
+
+    private final LongAdder relayed = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder dead = new LongAdder();
+
+    private final AtomicLong lagMillis = new AtomicLong();
+
+    private volatile boolean running;
+
+    // 在表结构和主键序列初始化之后启动
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < relayThreads; i++) {
+            Thread thread = new Thread(this::run, "order-event-relay-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        running = false;
+        threads.forEach(Thread::interrupt);
+        threads.clear();
+    }
+
+    // 订单事件提交后唤醒投递线程，不必等到下一次轮询
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderStatusChanged(OrderStatusChangedEvent event) {
+        signal();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderCreated(OrderCreatedEvent event) {
+        signal();
+    }
+
+    /**
+     * 认领并投递一批事件，整批失败时逐个重新投递
+     * @return 本批投递成功的事件数，0 表示没有待投递的事件或全部失败
+     */
+    public int relayBatch() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        List<OrderEvent> claimed = new ArrayList<>();
+        try {
+            Integer count = transactionTemplate.execute(status -> {
+                List<OrderEvent> batch = orderEventRepository.claimBatch(Limit.of(batchSize));
+                if (batch.isEmpty()) {
+                    return 0;
+                }
+                claimed.addAll(batch);
+                for (OrderEventHandler handler : handlers) {
+                    handler.handle(batch);
+                }
+                orderEventRepository.deleteAllByIdInBatch(batch.stream().map(OrderEvent::getId).toList());
+                lagMillis.set(System.currentTimeMillis() - batch.get(0).getCreatedAt().getTime());
+                return batch.size();
+            });
+            relayed.add(count);
+            return count;
+        } catch (RuntimeException e) {
+            // 认领本身失败（如数据库不可用）时没有可以单独重试的事件
+            if (claimed.isEmpty()) {
+                throw e;
+            }
+            failures.increment();
+            log.warn("订单事件批量投递失败，逐个重新投递", e);
+            return relayEach(claimed);
+        }
+    }
+
+    // 逐个投递，某个订单的事件失败后跳过该订单在本批中之后的事件
+    private int relayEach(List<OrderEvent> events) {
+        Set<Long> failedOrders = new HashSet<>();
+        int count = 0;
+        for (OrderEvent event : events) {
+            if (failedOrders.contains(event.getOrderId())) {
+                continue;
+            }
+            if (relayOne(event.getId())) {
+                count++;
+            } else {
+                failedOrders.add(event.getOrderId());
+            }
+        }
+        relayed.add(count);
+        return count;
+    }
+
+    // 在单独的事务中重新认领并投递一个事件；已被其他线程投递时也视为成功
+    private boolean relayOne(Long id) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        try {
+            return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                OrderEvent event = orderEventRepository.claim(id).orElse(null);
+                if (event == null) {
+                    return true;
+                }
+                for (OrderEventHandler handler : handlers) {
+                    handler.handle(List.of(event));
+                }
+                orderEventRepository.deleteAllByIdInBatch(List.of(id));
+                return true;
+            }));
+        } catch (RuntimeException e) {
+            recordFailure(id, e);
+            return false;
+        }
+    }
+
+    // 记一次失败，达到次数上限时移出投递；记录本身失败（如数据库不可用）时不计入次数
+    private void recordFailure(Long id, RuntimeException cause) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        try {
+            OrderEvent event = transactionTemplate.execute(status -> {
+                OrderEvent claimed = orderEventRepository.claim(id).orElse(null);
+                if (claimed == null) {
+                    return null;
+                }
+                claimed.setAttempts(claimed.getAttempts() + 1);
+                String error = String.valueOf(cause);
+                claimed.setLastError(error.length() > 500 ? error.substring(0, 500) : error);
+                if (claimed.getAttempts() >= maxAttempts) {
+                    claimed.setDeadAt(new Date());
+                }
+                return claimed;
+            });
+            if (event == null) {
+                return;
+            }
+            if (event.getDeadAt() != null) {
+                dead.increment();
+                log.error("订单事件 {}（订单 {}）投递失败 {} 次，移出投递", id, event.getOrderId(), event.getAttempts(), cause);
+            } else {
+                log.warn("订单事件 {}（订单 {}）第 {} 次投递失败，稍后重试", id, event.getOrderId(), event.getAttempts(), cause);
+            }
+        } catch (RuntimeException e) {
+            log.warn("记录订单事件 {} 的投递失败次数失败", id, e);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("order.outbox.relayed", relayed, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("order.outbox.failures", failures, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("order.outbox.dead", dead, LongAdder::sum)
+                .register(registry);
+        Gauge.builder("order.outbox.lag", lagMillis, AtomicLong::get)
+                .baseUnit("milliseconds")
+                .register(registry);
+    }
+
+    private void run() {
+        while (running) {
+            int count;
+            try {
+                count = relayBatch();
+            } catch (RuntimeException e) {
+                failures.increment();
+                log.warn("订单事件投递失败，稍后重试", e);
+                count = 0;
+            }
+            if (count < batchSize && !await()) {
+                return;
+            }
+        }
+    }
+
+    // 等待下一次轮询或被唤醒，线程被中断（应用关闭）时返回 false
+    private boolean await() {
+        try {
+            wakeUp.tryAcquire(pollIntervalMillis, TimeUnit.MILLISECONDS);
+            wakeUp.drainPermits();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void signal() {
+        if (wakeUp.availablePermits() == 0) {
+            wakeUp.release();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.github.ussexperimental.takeoutsystem.order;
+
+import com.github.ussexperimental.takeoutsystem.entity.DeliveryMan;
+import com.github.ussexperimental.takeoutsystem.entity.OrderEvent;
+import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+import com.github.ussexperimental.takeoutsystem.event.OrderStatusChangedEvent;
+import com.github.ussexperimental.takeoutsystem.repository.OrderEventRepository;
+import com.github.ussexperimental.takeoutsystem.repository.OrderRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 订单状态机
+ * <p>
+ * 维护 {@link OrderStatus} 之间允许的状态变更，每次变更都是一条带原状态条件的 UPDATE 语句：
+ * 条件满足时更新并返回 true，订单已被他人改变（状态不同、已被接单或不属于操作者）时不更新并返回 false。
+ * 不先读出订单再写回，也不需要在读写之间持有行锁，同时操作同一订单的请求中只有一个会成功。
+ * <p>
+ * 变更成功后在同一事务中写入订单事件发件箱（{@link OrderEvent}，由 {@link OrderEventRelay} 可靠投递），
+ * 并发布 {@link OrderStatusChangedEvent}（供进程内的推送、缓存等在提交后尽快处理）。
+ */
+@Component
+public class OrderStateMachine {
+
+    private static final Map<OrderStatus, Set<OrderStatus>> TRANSITIONS = new EnumMap<>(OrderStatus.class);
+
+    static {
+        TRANSITIONS.put(OrderStatus.PENDING, EnumSet.of(OrderStatus.PENDING_CONFIRMATION));
+        // 商家超时未确认时由 OrderTimeoutScheduler 取消
+        TRANSITIONS.put(OrderStatus.PENDING_CONFIRMATION, EnumSet.of(OrderStatus.PREPARING, OrderStatus.CANCELLED));
+        // 商家可以直接指定送餐员，也可以发布到可接单列表由送餐员抢单
+        TRANSITIONS.put(OrderStatus.PREPARING, EnumSet.of(OrderStatus.REQUESTING_DELIVERY, OrderStatus.DELIVERING));
+        TRANSITIONS.put(OrderStatus.REQUESTING_DELIVERY, EnumSet.of(OrderStatus.DELIVERING));
+        TRANSITIONS.put(OrderStatus.DELIVERING, EnumSet.of(OrderStatus.DELIVERED));
+        // 送达后超时未评价时由 OrderTimeoutScheduler 完成
+        TRANSITIONS.put(OrderStatus.DELIVERED, EnumSet.of(OrderStatus.REVIEWED, OrderStatus.COMPLETED));
+        TRANSITIONS.put(OrderStatus.REVIEWED, EnumSet.noneOf(OrderStatus.class));
+        TRANSITIONS.put(OrderStatus.CANCELLED, EnumSet.noneOf(OrderStatus.class));
+        TRANSITIONS.put(OrderStatus.COMPLETED, EnumSet.noneOf(OrderStatus.class));
+    }
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderEventRepository orderEventRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    /**
+     * 是否允许从 from 变更为 to
+     */
+    public static boolean canTransition(OrderStatus from, OrderStatus to) {
+        return from != null && to != null && TRANSITIONS.get(from).contains(to);
+    }
+
+    /**
+     * 订单状态为 from 时变更为 to
+     * @return 是否变更成功，订单不存在或状态已不是 from 时返回 false
+     */
+    @Transactional
+    public boolean transition(Long orderId, OrderStatus from, OrderStatus to) {
+        check(from, to);
+        return changed(orderId, null, from, to, orderRepository.compareAndSetStatus(orderId, from, to));
+    }
+
+    /**
+     * 订单属于该商家且状态为 from 时变更为 to
+     */
+    @Transactional
+    public boolean transitionForMerchant(Long orderId, Long merchantId, OrderStatus from, OrderStatus to) {
+        check(from, to);
+        return changed(orderId, merchantId, from, to, orderRepository.compareAndSetStatusForMerchant(orderId, merchantId, from, to));
+    }
+
+    /**
+     * 订单已分配给该送餐员且状态为 from 时变更为 to
+     */
+    @Transactional
+    public boolean transitionForDeliveryMan(Long orderId, Long deliveryManId, OrderStatus from, OrderStatus to) {
+        check(from, to);
+        return changed(orderId, null, from, to, orderRepository.compareAndSetStatusForDeliveryMan(orderId, deliveryManId, from, to));
+    }
+
+    /**
+     * 订单状态为 from 且尚未分配送餐员时，分配给该送餐员并变更为 to
+     */
+    @Transactional
+    public boolean assignDeliveryMan(Long orderId, DeliveryMan deliveryMan, OrderStatus from, OrderStatus to) {
+        check(from, to);
+        return changed(orderId, null, from, to, orderRepository.compareAndSetDeliveryMan(orderId, deliveryMan, from, to));
+    }
+
+    /**
+     * 批量变更：订单中状态仍为 from 的全部变更为 to
+     * <p>
+     * 按ID顺序锁定仍为 from 的订单，一条 UPDATE 语句变更它们，再逐个写入发件箱并发布事件；
+     * 已被他人改变的订单不在锁定结果中，不会变更。
+     * @return 实际变更的订单ID
+     */
+    @Transactional
+    public List<Long> transitionAll(Collection<Long> orderIds, OrderStatus from, OrderStatus to) {
+        check(from, to);
+        if (orderIds.isEmpty()) {
+            return List.of();
+        }
+        List<Long> locked = orderRepository.lockIdsByIdInAndStatus(orderIds, from);
+        if (locked.isEmpty()) {
+            return locked;
+        }
+        orderRepository.setStatusByIdIn(locked, to);
+        for (Long orderId : locked) {
+            changed(orderId, null, from, to, 1);
+        }
+        return locked;
+    }
+
+    private boolean changed(Long orderId, Long merchantId, OrderStatus from, OrderStatus to, int updated) {
+        if (updated != 1) {
+            return false;
+        }
+        orderEventRepository.save(OrderEvent.of(orderId, from, to));
+        eventPublisher.publishEvent(new OrderStatusChangedEvent(orderId, merchantId, from, to));
+        return true;
+    }
+
+    private static void check(OrderStatus from, OrderStatus to) {
+        if (!canTransition(from, to)) {
+            throw new IllegalArgumentException("订单状态不能从 " + from + " 变更为 " + to);
+        }
+    }
+}
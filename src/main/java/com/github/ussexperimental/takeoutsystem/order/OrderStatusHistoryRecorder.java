@@ -0,0 +1,63 @@
+package com.github.ussexperimental.takeoutsystem.order;
+
+import com.github.ussexperimental.takeoutsystem.entity.OrderEvent;
+import com.github.ussexperimental.takeoutsystem.entity.OrderStatusHistory;
+import com.github.ussexperimental.takeoutsystem.repository.OrderRepository;
+import com.github.ussexperimental.takeoutsystem.repository.OrderStatusHistoryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 把订单事件写入订单状态历史
+ * <p>
+ * 在发件箱投递线程中按批处理：一次查询这批订单的商家，一次查询每个订单进入当前状态的时间，
+ * 算出每次变更离开的状态停留了多久，再批量插入。与删除事件在同一事务中提交，不会重复写入。
+ */
+@Component
+public class OrderStatusHistoryRecorder implements OrderEventHandler {
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderStatusHistoryRepository orderStatusHistoryRepository;
+
+    @Override
+    public void handle(List<OrderEvent> events) {
+        Set<Long> orderIds = events.stream().map(OrderEvent::getOrderId).collect(Collectors.toSet());
+
+        Map<Long, Long> merchants = new HashMap<>();
+        orderRepository.findMerchantIdsByIdIn(orderIds)
+                .forEach(order -> merchants.put(order.getOrderId(), order.getMerchantId()));
+
+        // 进入当前状态的时间，同一批中同一订单的多次变更依次向后推进
+        Map<Long, Date> enteredAt = new HashMap<>();
+        orderStatusHistoryRepository.findLastChanges(orderIds)
+                .forEach(change -> enteredAt.put(change.getOrderId(), change.getChangedAt()));
+
+        List<OrderStatusHistory> rows = new ArrayList<>(events.size());
+        for (OrderEvent event : events) {
+            OrderStatusHistory row = new OrderStatusHistory();
+            row.setOrderId(event.getOrderId());
+            row.setMerchantId(merchants.get(event.getOrderId()));
+            row.setFromStatus(event.getFromStatus());
+            row.setToStatus(event.getToStatus());
+            row.setChangedAt(event.getCreatedAt());
+
+            Date entered = enteredAt.put(event.getOrderId(), event.getCreatedAt());
+            if (event.getFromStatus() != null && entered != null) {
+                row.setStageMillis(Math.max(0, event.getCreatedAt().getTime() - entered.getTime()));
+            }
+            rows.add(row);
+        }
+        orderStatusHistoryRepository.saveAll(rows);
+    }
+}
@@ -0,0 +1,250 @@
+package com.github.ussexperimental.takeoutsystem.order;
+
+import com.github.ussexperimental.takeoutsystem.dto.OrderSummary;
+import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+import com.github.ussexperimental.takeoutsystem.event.OrderCreatedEvent;
+import com.github.ussexperimental.takeoutsystem.event.OrderStatusChangedEvent;
+import com.github.ussexperimental.takeoutsystem.repository.OrderRepository;
+import com.github.ussexperimental.takeoutsystem.timer.TimingWheel;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 订单超时自动变更：待确认的订单超过 confirm-minutes 未被商家确认时自动取消，
+ * 已送达的订单超过 complete-hours 未评价时自动完成
+ * <p>
+ * 订单进入这两种状态时（订单状态变更或新订单提交后）在内存中的分层时间轮（{@link TimingWheel}）上登记到期时间，
+ * 离开时取消，登记和取消都是 O(1)，不定期扫描订单表。每个刻度推进时间轮，到期的订单按原状态分批，
+ * 每批由 {@link OrderStateMachine#transitionAll} 在一个事务中变更；变更是带原状态条件的，
+ * 期间已被确认或评价的订单不受影响，因此登记只是提示，重复或过时的登记不会造成错误的变更。
+ * <p>
+ * 启动后从数据库分批恢复这两种状态的订单，到期时间从状态历史中进入该状态的时间算起，
+ * 历史尚未写入的订单从恢复时算起（只会推迟，不会提前）；恢复期间已过期的订单在下一个刻度分批变更。
+ * 批量变更失败时这批订单在 retry-seconds 后重试。
+ * <p>
+ * 计时只存在于当前进程内，多实例部署时各实例只登记自己处理的订单，重启后各自恢复全部订单；
+ * 同一订单被多个实例重复处理时只有一个变更生效。
+ * <p>
+ * 指标：order.timeout.pending（待到期的订单数）、order.timeout.fired（自动变更的订单数）、
+ * order.timeout.failures（变更失败的批次数）。
+ */
+@Slf4j
+@Component
+public class OrderTimeoutScheduler implements MeterBinder {
+
+    private static final int WHEEL_SIZE = 64;
+
+    // 1 秒刻度时最高层覆盖约 194 天
+    private static final int WHEEL_LEVELS = 4;
+
+    @Autowired
+    private OrderStateMachine orderStateMachine;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Value("${order.timeout.confirm-minutes:15}")
+    private long confirmMinutes = 15;
+
+    @Value("${order.timeout.complete-hours:24}")
+    private long completeHours = 24;
+
+    @Value("${order.timeout.tick-ms:1000}")
+    private long tickMillis = 1000;
+
+    @Value("${order.timeout.batch-size:500}")
+    private int batchSize = 500;
+
+    @Value("${order.timeout.retry-seconds:30}")
+    private long retrySeconds = 30;
+
+    // 原状态 -> 超时规则
+    private final Map<OrderStatus, Rule> rules = new EnumMap<>(OrderStatus.class);
+
+    // 以下两个字段只在 synchronized (this) 中访问
+    private TimingWheel<Timer> wheel;
+
+    private final Map<Long, TimingWheel.Timeout<Timer>> timers = new HashMap<>();
+
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "order-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LongAdder fired = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    @PostConstruct
+    public synchronized void init() {
+        rules.put(OrderStatus.PENDING_CONFIRMATION,
+                new Rule(OrderStatus.CANCELLED, TimeUnit.MINUTES.toMillis(confirmMinutes)));
+        rules.put(OrderStatus.DELIVERED,
+                new Rule(OrderStatus.COMPLETED, TimeUnit.HOURS.toMillis(completeHours)));
+        wheel = new TimingWheel<>(tickMillis, WHEEL_SIZE, WHEEL_LEVELS, System.currentTimeMillis());
+    }
+
+    // 在表结构初始化之后恢复并开始推进
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        recover();
+        ticker.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ticker.shutdownNow();
+    }
+
+    // 新订单提交后登记确认超时，从下单时间算起
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderCreated(OrderCreatedEvent event) {
+        OrderSummary order = event.order();
+        long enteredAt = order.orderTime() != null ? order.orderTime().getTime() : System.currentTimeMillis();
+        reschedule(order.id(), order.status(), enteredAt);
+    }
+
+    // 订单状态变更提交后登记新状态的超时，或取消原状态的超时
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderStatusChanged(OrderStatusChangedEvent event) {
+        reschedule(event.orderId(), event.to(), System.currentTimeMillis());
+    }
+
+    /**
+     * 从数据库恢复待确认和已送达订单的超时
+     */
+    public void recover() {
+        int recovered = 0;
+        for (OrderStatus status : rules.keySet()) {
+            long afterId = 0;
+            while (true) {
+                List<OrderRepository.StatusEntry> entries =
+                        orderRepository.findStatusEntries(status, afterId, Limit.of(batchSize));
+                long now = System.currentTimeMillis();
+                synchronized (this) {
+                    for (OrderRepository.StatusEntry entry : entries) {
+                        // 恢复期间已由事件登记的订单以事件为准
+                        if (!timers.containsKey(entry.getOrderId())) {
+                            long enteredAt = entry.getEnteredAt() != null ? entry.getEnteredAt().getTime() : now;
+                            schedule(entry.getOrderId(), status, enteredAt + rules.get(status).afterMillis());
+                        }
+                    }
+                }
+                recovered += entries.size();
+                if (entries.size() < batchSize) {
+                    break;
+                }
+                afterId = entries.get(entries.size() - 1).getOrderId();
+            }
+        }
+        log.info("订单超时计时恢复完成，共 {} 个订单", recovered);
+    }
+
+    /**
+     * 推进到当前时间，分批变更到期的订单
+     */
+    void advance(long nowMillis) {
+        List<Timer> expired;
+        synchronized (this) {
+            expired = wheel.advance(nowMillis);
+            expired.forEach(timer -> timers.remove(timer.orderId()));
+        }
+        if (expired.isEmpty()) {
+            return;
+        }
+        Map<OrderStatus, List<Long>> byStatus = new LinkedHashMap<>();
+        for (Timer timer : expired) {
+            byStatus.computeIfAbsent(timer.from(), status -> new ArrayList<>()).add(timer.orderId());
+        }
+        byStatus.forEach((from, orderIds) -> {
+            for (int start = 0; start < orderIds.size(); start += batchSize) {
+                fire(from, orderIds.subList(start, Math.min(start + batchSize, orderIds.size())), nowMillis);
+            }
+        });
+    }
+
+    public synchronized int pendingCount() {
+        return wheel.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("order.timeout.pending", this, OrderTimeoutScheduler::pendingCount)
+                .register(registry);
+        FunctionCounter.builder("order.timeout.fired", fired, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("order.timeout.failures", failures, LongAdder::sum)
+                .register(registry);
+    }
+
+    private void tick() {
+        try {
+            advance(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            log.warn("订单超时处理失败", e);
+        }
+    }
+
+    private void fire(OrderStatus from, List<Long> orderIds, long nowMillis) {
+        try {
+            fired.add(orderStateMachine.transitionAll(orderIds, from, rules.get(from).to()).size());
+        } catch (RuntimeException e) {
+            failures.increment();
+            log.warn("订单超时自动变更失败，{} 秒后重试 {} 个订单", retrySeconds, orderIds.size(), e);
+            long retryAt = nowMillis + TimeUnit.SECONDS.toMillis(retrySeconds);
+            synchronized (this) {
+                for (Long orderId : orderIds) {
+                    // 期间订单状态已变更并重新登记的，以新的登记为准
+                    if (!timers.containsKey(orderId)) {
+                        schedule(orderId, from, retryAt);
+                    }
+                }
+            }
+        }
+    }
+
+    private synchronized void reschedule(Long orderId, OrderStatus status, long enteredAt) {
+        Rule rule = rules.get(status);
+        TimingWheel.Timeout<Timer> previous = rule != null
+                ? schedule(orderId, status, enteredAt + rule.afterMillis())
+                : timers.remove(orderId);
+        if (previous != null) {
+            wheel.cancel(previous);
+        }
+    }
+
+    // 调用方持有 this 的锁；返回被替换的登记
+    private TimingWheel.Timeout<Timer> schedule(Long orderId, OrderStatus from, long deadlineMillis) {
+        return timers.put(orderId, wheel.schedule(new Timer(orderId, from), deadlineMillis));
+    }
+
+    private record Rule(OrderStatus to, long afterMillis) {
+    }
+
+    private record Timer(Long orderId, OrderStatus from) {
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.ussexperimental.takeoutsystem.ratelimit;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UrlPathHelper;
+
+import java.io.IOException;
+
+/**
+ * 接口限流：超过速率的请求直接返回 429，Retry-After 为需要等待的秒数，不进入控制器
+ * <p>
+ * 分组按 Spring MVC 路由使用的查找路径判断（已解码、去掉 ;xxx 路径参数），/%63ustomers 和 /customers;x=1 不能绕过限流。
+ * 调用方取查询参数中的用户ID（customerId、merchantId、deliveryManId，必须是数字）和客户端IP，见 {@link RateLimiter}。
+ * 只读查询串，不读取请求体；下单（POST /customers/orders）的顾客ID在请求体中，由控制器在绑定参数后限流。
+ * 部署在反向代理之后时需配置 server.forward-headers-strategy，IP 才是真实客户端。
+ */
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private static final UrlPathHelper PATH_HELPER = new UrlPathHelper();
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = PATH_HELPER.getLookupPathForRequest(request);
+        RateLimiter.Group group = RateLimiter.Group.of(path);
+        if (group == null || limitedByController(request, path)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        long wait = rateLimiter.tryAcquire(group, callerId(request, group), request.getRemoteAddr());
+        if (wait > 0) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(RateLimiter.retryAfterSeconds(wait)));
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+
+    private static boolean limitedByController(HttpServletRequest request, String path) {
+        return HttpMethod.POST.matches(request.getMethod()) && path.equals("/customers/orders");
+    }
+
+    // 查询参数中的用户ID，没有或不是数字时返回 null
+    private static Long callerId(HttpServletRequest request, RateLimiter.Group group) {
+        if (group.idParam() == null || request.getQueryString() == null) {
+            return null;
+        }
+        String id = UriComponentsBuilder.newInstance().query(request.getQueryString()).build()
+                .getQueryParams().getFirst(group.idParam());
+        if (id == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(id);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.github.ussexperimental.takeoutsystem.ratelimit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按接口分组、按调用方限流
+ * <p>
+ * 每个分组（顾客、商家、骑手、管理员接口）有各自的速率和突发容量，分组内每个调用方一个 {@link TokenBucket}。
+ * 调用方是 (用户ID, 客户端IP)，没有用户ID时只按客户端IP：接口没有鉴权，用户ID由请求方随意填写，
+ * 只按用户ID限流时任何人都能用别人的ID耗尽其令牌，或者不断更换ID得到新的突发额度。
+ * <p>
+ * 每个IP每秒能新建的调用方个数也有上限（rate-limit.ip.new-keys-*）：超出后，该IP上新出现的用户ID不再单独建桶，
+ * 与该IP不带用户ID的请求共用一个桶。已有的桶不受影响，同一代理之后的其他用户不会因此被限流。
+ * <p>
+ * 每个分组最多保存 max-keys 个桶，超出时淘汰最久未访问的桶（LRU，与 {@link com.github.ussexperimental.takeoutsystem.cache.ApproximateCountCache} 相同）；
+ * 被淘汰的调用方下次访问时重新得到一个满的桶，淘汰只会放宽限流，不会拒绝其他调用方。
+ * 后台每隔一段时间清除空闲超过 idle-seconds 的桶（已装满，清除不影响限流）。
+ * 查找桶在 synchronized 中进行，取令牌本身是无锁的 CAS。
+ * <p>
+ * 指标：rate.limit.allowed、rate.limit.rejected（放行和拒绝的请求数）、rate.limit.keys（当前的桶数）、
+ * rate.limit.evicted（清除和淘汰的桶数），均带 group 标签；rate.limit.new.keys.throttled（新调用方因IP超出新建上限而共用IP桶的次数）。
+ */
+@Component
+public class RateLimiter implements MeterBinder {
+
+    /**
+     * 接口分组
+     */
+    public enum Group {
+        CUSTOMER("/customers", "customerId"),
+        MERCHANT("/merchants", "merchantId"),
+        DELIVERYMAN("/deliverymen", "deliveryManId"),
+        ADMIN("/admin", null);
+
+        private final String pathPrefix;
+
+        // 标识调用方的请求参数，没有或未传时按客户端IP限流
+        private final String idParam;
+
+        Group(String pathPrefix, String idParam) {
+            this.pathPrefix = pathPrefix;
+            this.idParam = idParam;
+        }
+
+        public String idParam() {
+            return idParam;
+        }
+
+        /**
+         * 按请求路径（解码、去掉路径参数后的查找路径）取分组，不属于任何分组时返回 null
+         */
+        public static Group of(String path) {
+            for (Group group : values()) {
+                if (path.equals(group.pathPrefix) || path.startsWith(group.pathPrefix + "/")) {
+                    return group;
+                }
+            }
+            return null;
+        }
+    }
+
+    @Value("${rate-limit.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${rate-limit.max-keys:100000}")
+    private int maxKeys = 100000;
+
+    @Value("${rate-limit.idle-seconds:300}")
+    private long idleSeconds = 300;
+
+    @Value("${rate-limit.ip.new-keys-per-second:2}")
+    private double newKeyRate = 2;
+
+    @Value("${rate-limit.ip.new-keys-burst:50}")
+    private int newKeyBurst = 50;
+
+    @Value("${rate-limit.customer.permits-per-second:10}")
+    private double customerRate = 10;
+
+    @Value("${rate-limit.customer.burst:20}")
+    private int customerBurst = 20;
+
+    @Value("${rate-limit.merchant.permits-per-second:20}")
+    private double merchantRate = 20;
+
+    @Value("${rate-limit.merchant.burst:40}")
+    private int merchantBurst = 40;
+
+    @Value("${rate-limit.deliveryman.permits-per-second:10}")
+    private double deliveryManRate = 10;
+
+    @Value("${rate-limit.deliveryman.burst:20}")
+    private int deliveryManBurst = 20;
+
+    @Value("${rate-limit.admin.permits-per-second:5}")
+    private double adminRate = 5;
+
+    @Value("${rate-limit.admin.burst:10}")
+    private int adminBurst = 10;
+
+    private final Map<Group, Buckets<Key>> groups = new EnumMap<>(Group.class);
+
+    // 每个IP新建调用方的令牌桶
+    private Buckets<String> newKeys;
+
+    private final LongAdder newKeysThrottled = new LongAdder();
+
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "rate-limit-sweep");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        groups.put(Group.CUSTOMER, new Buckets<>(customerRate, customerBurst));
+        groups.put(Group.MERCHANT, new Buckets<>(merchantRate, merchantBurst));
+        groups.put(Group.DELIVERYMAN, new Buckets<>(deliveryManRate, deliveryManBurst));
+        groups.put(Group.ADMIN, new Buckets<>(adminRate, adminBurst));
+        newKeys = new Buckets<>(newKeyRate, newKeyBurst);
+        long period = Math.max(1, Math.min(idleSeconds, 60));
+        sweeper.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * 为一次请求取令牌
+     * @param group 接口分组
+     * @param callerId 请求中的用户ID，没有时传 null
+     * @param ip 客户端IP
+     * @return 0 表示放行；否则为需要等待的纳秒数，请求应被拒绝
+     */
+    public long tryAcquire(Group group, Long callerId, String ip) {
+        if (!enabled) {
+            return 0;
+        }
+        Buckets<Key> buckets = groups.get(group);
+        long now = System.nanoTime();
+        Key key = new Key(callerId, ip);
+        TokenBucket bucket = buckets.get(key);
+        if (bucket == null) {
+            if (callerId != null && newKeys.getOrCreate(ip, now).tryAcquire(now) > 0) {
+                newKeysThrottled.increment();
+                key = new Key(null, ip);
+            }
+            bucket = buckets.getOrCreate(key, now);
+        }
+        long wait = bucket.tryAcquire(now);
+        (wait == 0 ? buckets.allowed : buckets.rejected).increment();
+        return wait;
+    }
+
+    /**
+     * 把 {@link #tryAcquire} 返回的等待时间换算为 Retry-After 的秒数（向上取整，至少 1 秒）
+     */
+    public static long retryAfterSeconds(long waitNanos) {
+        long second = TimeUnit.SECONDS.toNanos(1);
+        return Math.max(1, (waitNanos + second - 1) / second);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        groups.forEach((group, buckets) -> {
+            String tag = group.name().toLowerCase();
+            FunctionCounter.builder("rate.limit.allowed", buckets.allowed, LongAdder::sum)
+                    .tag("group", tag)
+                    .register(registry);
+            FunctionCounter.builder("rate.limit.rejected", buckets.rejected, LongAdder::sum)
+                    .tag("group", tag)
+                    .register(registry);
+            Gauge.builder("rate.limit.keys", buckets, Buckets::size)
+                    .tag("group", tag)
+                    .register(registry);
+            FunctionCounter.builder("rate.limit.evicted", buckets.evicted, LongAdder::sum)
+                    .tag("group", tag)
+                    .register(registry);
+        });
+        FunctionCounter.builder("rate.limit.new.keys.throttled", newKeysThrottled, LongAdder::sum)
+                .register(registry);
+    }
+
+    /**
+     * 清除空闲的令牌桶
+     */
+    void sweep() {
+        long now = System.nanoTime();
+        long idleNanos = TimeUnit.SECONDS.toNanos(idleSeconds);
+        groups.values().forEach(buckets -> buckets.sweep(now, idleNanos));
+        newKeys.sweep(now, idleNanos);
+    }
+
+    // 调用方：用户ID为 null 时只按IP
+    private record Key(Long callerId, String ip) {
+    }
+
+    // 一组令牌桶，按 LRU 淘汰
+    private class Buckets<K> {
+
+        private final double permitsPerSecond;
+
+        private final int burst;
+
+        // accessOrder = true，按访问顺序排列，实现 LRU；所有访问在 synchronized (buckets) 中进行
+        private final LinkedHashMap<K, TokenBucket> buckets;
+
+        private final LongAdder allowed = new LongAdder();
+
+        private final LongAdder rejected = new LongAdder();
+
+        private final LongAdder evicted = new LongAdder();
+
+        Buckets(double permitsPerSecond, int burst) {
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = burst;
+            this.buckets = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, TokenBucket> eldest) {
+                    if (size() > maxKeys) {
+                        evicted.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        TokenBucket get(K key) {
+            synchronized (buckets) {
+                return buckets.get(key);
+            }
+        }
+
+        TokenBucket getOrCreate(K key, long now) {
+            synchronized (buckets) {
+                return buckets.computeIfAbsent(key, k -> new TokenBucket(permitsPerSecond, burst, now));
+            }
+        }
+
+        int size() {
+            synchronized (buckets) {
+                return buckets.size();
+            }
+        }
+
+        void sweep(long now, long idleNanos) {
+            synchronized (buckets) {
+                Iterator<TokenBucket> iterator = buckets.values().iterator();
+                while (iterator.hasNext()) {
+                    if (iterator.next().isIdle(now, idleNanos)) {
+                        iterator.remove();
+                        evicted.increment();
+                    }
+                }
+            }
+        }
+    }
+}
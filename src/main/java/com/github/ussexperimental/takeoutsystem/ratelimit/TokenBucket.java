@@ -0,0 +1,61 @@
+package com.github.ussexperimental.takeoutsystem.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁令牌桶
+ * <p>
+ * 不保存令牌数，只保存一个时间点 full：桶在这个时刻重新装满。每取一个令牌 full 往后推一个生成间隔，
+ * 推过 now + 容量 × 间隔 说明令牌已用完（等价于 GCRA）。状态只有一个 long，用 CAS 更新，不加锁。
+ */
+final class TokenBucket {
+
+    // 生成一个令牌的间隔（纳秒）
+    private final long intervalNanos;
+
+    // 装满整个桶所需的时间（纳秒），即 容量 × 间隔
+    private final long capacityNanos;
+
+    private final AtomicLong full;
+
+    /**
+     * @param permitsPerSecond 每秒生成的令牌数
+     * @param burst 桶的容量，即空闲之后允许的突发请求数
+     * @param now 当前时间（System.nanoTime），桶从装满开始
+     */
+    TokenBucket(double permitsPerSecond, int burst, long now) {
+        if (permitsPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("限流速率和容量必须大于0");
+        }
+        this.intervalNanos = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.capacityNanos = intervalNanos * burst;
+        this.full = new AtomicLong(now);
+    }
+
+    /**
+     * 取一个令牌
+     * @param now 当前时间（System.nanoTime）
+     * @return 0 表示取到；否则为还需等待的纳秒数，本次不消耗令牌
+     */
+    long tryAcquire(long now) {
+        while (true) {
+            long current = full.get();
+            long next = Math.max(current, now) + intervalNanos;
+            long overdraft = next - now - capacityNanos;
+            if (overdraft > 0) {
+                return overdraft;
+            }
+            if (full.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * 桶已装满并且至少空闲了 idleNanos，清除后重新创建的桶与之等价
+     */
+    boolean isIdle(long now, long idleNanos) {
+        return now - full.get() >= idleNanos;
+    }
+}
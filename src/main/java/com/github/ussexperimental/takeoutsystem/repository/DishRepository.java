@@ -1,10 +1,13 @@
 package com.github.ussexperimental.takeoutsystem.repository;
 
+import com.github.ussexperimental.takeoutsystem.dto.DishIndexRow;
 import com.github.ussexperimental.takeoutsystem.entity.Dish;
 import com.github.ussexperimental.takeoutsystem.entity.Merchant;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
@@ -15,8 +18,14 @@ public interface DishRepository extends JpaRepository<Dish, Long> {
 
     Page<Dish> findByMerchant(Merchant merchant, Pageable pageable);
 
-    List<Dish> findByNameContaining(String name);
+    // 搜索索引未就绪时的兜底查询（LIKE '%x%'，全表扫描）
+    Page<Dish> findByNameContaining(String name, Pageable pageable);
 
-    List<Dish> findByPriceBetween(BigDecimal minPrice, BigDecimal maxPrice);
-}
+    // 价格索引未就绪时的兜底查询
+    Page<Dish> findByPriceBetween(BigDecimal minPrice, BigDecimal maxPrice, Pageable pageable);
 
+    // 按ID顺序扫描菜品，用于重建内存索引
+    @Query("select new com.github.ussexperimental.takeoutsystem.dto.DishIndexRow(d.id, d.name, d.description, d.price) " +
+            "from Dish d where d.id > :afterId order by d.id")
+    List<DishIndexRow> findIndexRows(Long afterId, Limit limit);
+}
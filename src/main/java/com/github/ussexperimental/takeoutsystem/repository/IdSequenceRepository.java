@@ -0,0 +1,72 @@
+package com.github.ussexperimental.takeoutsystem.repository;
+
+import com.github.ussexperimental.takeoutsystem.entity.IdSequences;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * 直接读写主键序列表 id_sequence，与 Hibernate 的 pooled-lo 表生成器使用同一套约定：
+ * next_val 为下一个可分配的主键，分配 n 个即把 next_val 加 n。
+ */
+@Repository
+public class IdSequenceRepository {
+
+    private static final String SELECT = "select " + IdSequences.VALUE_COLUMN + " from " + IdSequences.TABLE
+            + " where " + IdSequences.NAME_COLUMN + " = ?";
+
+    private static final String COMPARE_AND_SET = "update " + IdSequences.TABLE + " set " + IdSequences.VALUE_COLUMN + " = ?"
+            + " where " + IdSequences.NAME_COLUMN + " = ? and " + IdSequences.VALUE_COLUMN + " = ?";
+
+    private static final String RAISE = "update " + IdSequences.TABLE + " set " + IdSequences.VALUE_COLUMN + " = ?"
+            + " where " + IdSequences.NAME_COLUMN + " = ? and " + IdSequences.VALUE_COLUMN + " < ?";
+
+    private static final String INSERT = "insert into " + IdSequences.TABLE
+            + " (" + IdSequences.NAME_COLUMN + ", " + IdSequences.VALUE_COLUMN + ") values (?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * 分配一段连续的主键，在独立事务中执行，不会把序列行锁到调用方事务结束
+     * @param sequence 序列名
+     * @param count 分配数量
+     * @return 第一个主键，本次分配的主键为 [返回值, 返回值 + count)
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public long allocate(String sequence, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("分配数量必须大于0");
+        }
+        // 与 Hibernate 表生成器相同，先读后按旧值条件更新，被抢先时重试
+        while (true) {
+            Long current = jdbcTemplate.queryForObject(SELECT, Long.class, sequence);
+            if (jdbcTemplate.update(COMPARE_AND_SET, current + count, sequence, current) == 1) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * 把序列推进到不小于 table 中的 max(id) + 1，序列行不存在时创建
+     * 只会增大序列值，多个实例同时启动也是安全的
+     * @return 对齐后序列值的下限
+     */
+    @Transactional
+    public long alignToMaxId(String sequence, String table) {
+        Long next = jdbcTemplate.queryForObject("select coalesce(max(id), 0) + 1 from " + table, Long.class);
+        if (jdbcTemplate.update(RAISE, next, sequence, next) == 0
+                && jdbcTemplate.queryForList(SELECT, Long.class, sequence).isEmpty()) {
+            try {
+                jdbcTemplate.update(INSERT, sequence, next);
+            } catch (DuplicateKeyException e) {
+                // 其他实例刚刚插入，再推进一次即可
+                jdbcTemplate.update(RAISE, next, sequence, next);
+            }
+        }
+        return next;
+    }
+}
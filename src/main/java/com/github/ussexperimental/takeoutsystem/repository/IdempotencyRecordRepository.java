@@ -0,0 +1,28 @@
+package com.github.ussexperimental.takeoutsystem.repository;
+
+import com.github.ussexperimental.takeoutsystem.entity.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+
+    // 直接插入而不是 save（主键已指定时 save 先查询再合并），键已存在时由主键约束拒绝；
+    // 另一事务插入了同一个键但尚未提交时，等待其提交（冲突）或回滚（插入成功）
+    @Modifying
+    @Query(value = "insert into idempotency_key (id, fingerprint, created_at) values (:id, :fingerprint, :createdAt)",
+            nativeQuery = true)
+    int insert(String id, String fingerprint, Date createdAt);
+
+    @Modifying
+    @Query("update IdempotencyRecord r set r.resourceId = :resourceId where r.id = :id")
+    int complete(String id, Long resourceId);
+
+    @Modifying
+    @Query("delete from IdempotencyRecord r where r.createdAt < :cutoff")
+    int deleteByCreatedAtBefore(Date cutoff);
+}
@@ -2,9 +2,21 @@ package com.github.ussexperimental.takeoutsystem.repository;
 
 import com.github.ussexperimental.takeoutsystem.entity.Merchant;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Optional;
+
 @Repository
 public interface MerchantRepository extends JpaRepository<Merchant, Long> {
-}
 
+    // 菜品写操作在同一事务中调用，事务提交后菜单版本号才对其他节点可见；
+    // 直接更新 merchant 表，不经过 JOINED 继承的多表更新
+    @Modifying
+    @Query(value = "update merchant set menu_version = menu_version + 1 where id = :merchantId", nativeQuery = true)
+    int incrementMenuVersion(Long merchantId);
+
+    @Query("select m.menuVersion from Merchant m where m.id = :merchantId")
+    Optional<Long> findMenuVersionById(Long merchantId);
+}
@@ -0,0 +1,31 @@
+package com.github.ussexperimental.takeoutsystem.repository;
+
+import com.github.ussexperimental.takeoutsystem.entity.OrderEvent;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface OrderEventRepository extends JpaRepository<OrderEvent, Long> {
+
+    // 认领一批最早的事件：select ... for update skip locked，多个投递线程（或实例）各自认领不同的行，互不等待
+    // 锁超时 -2 即 Hibernate 的 LockOptions.SKIP_LOCKED；不支持 skip locked 的数据库退化为 for update
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("select e from OrderEvent e where e.deadAt is null order by e.id")
+    List<OrderEvent> claimBatch(Limit limit);
+
+    // 单独认领一个事件，已被其他线程认领、已删除或已移出投递时返回空
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("select e from OrderEvent e where e.id = :id and e.deadAt is null")
+    Optional<OrderEvent> claim(Long id);
+}
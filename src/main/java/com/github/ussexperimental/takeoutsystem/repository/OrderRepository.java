@@ -5,25 +5,44 @@ import com.github.ussexperimental.takeoutsystem.entity.DeliveryMan;
 import com.github.ussexperimental.takeoutsystem.entity.Merchant;
 import com.github.ussexperimental.takeoutsystem.entity.Order;
 import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface OrderRepository extends JpaRepository<Order, Long> {
 
     List<Order> findByCustomer(Customer customer);
 
+    // 查询单个订单及其明细，响应在事务结束后构建，不再依赖懒加载
+    @EntityGraph(Order.DETAIL_GRAPH)
+    Optional<Order> findDetailById(Long id);
+
+    // 分页、切片和游标列表查询统一使用 Order.listing 抓取计划，每页的 SQL 条数固定，不随订单数增长
+
+    @EntityGraph(Order.LISTING_GRAPH)
     Page<Order> findByCustomer(Customer customer, Pageable pageable);
 
     List<Order> findByCustomer_Id(Long customerId);
 
+    @EntityGraph(Order.LISTING_GRAPH)
     Page<Order> findByMerchant(Merchant merchant, Pageable pageable);
 
+    @EntityGraph(Order.LISTING_GRAPH)
     Page<Order> findByDeliveryMan(DeliveryMan deliveryMan, Pageable pageable);
 
     List<Order> findOrdersByStatus(OrderStatus status);
@@ -31,12 +50,203 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     List<Order> findByStatus(OrderStatus status);
 
     // 查询状态为特定值且未分配送餐员的订单
+    @EntityGraph(Order.LISTING_GRAPH)
     Page<Order> findByStatusAndDeliveryManIsNull(OrderStatus status, Pageable pageable);
 
+    // 可接单池启动时全量加载
+    @EntityGraph(Order.LISTING_GRAPH)
+    List<Order> findAllByStatusAndDeliveryManIsNull(OrderStatus status);
+
+    // 按列表抓取计划查询单个订单，用于加入可接单池
+    @EntityGraph(Order.LISTING_GRAPH)
+    Optional<Order> findListingById(Long id);
+
+    // 订阅订单状态时只需要订单所属顾客和当前状态，不加载订单实体
+    @Query("select o.customer.id from Order o where o.id = :id")
+    Optional<Long> findCustomerIdById(Long id);
+
+    @Query("select o.status from Order o where o.id = :id")
+    Optional<OrderStatus> findStatusById(Long id);
+
     // 支持查看商家在特定时间范围内的订单
+    @EntityGraph(Order.LISTING_GRAPH)
     Page<Order> findByMerchantAndOrderTimeBetween(Merchant merchant, Date startDate, Date endDate, Pageable pageable);
 
     // 支持查看商家待确认的订单
+    @EntityGraph(Order.LISTING_GRAPH)
     Page<Order> findByMerchantAndStatus(Merchant merchant, OrderStatus status, Pageable pageable);
-}
 
+    // 商家订单看板的初始快照，按下单先后排列
+    @EntityGraph(Order.LISTING_GRAPH)
+    List<Order> findByMerchant_IdAndStatusInOrderByOrderTimeAscIdAsc(Long merchantId, Collection<OrderStatus> statuses);
+
+    @Query("select o.merchant.id from Order o where o.id = :id")
+    Optional<Long> findMerchantIdById(Long id);
+
+    @Query("select o.id as orderId, o.merchant.id as merchantId from Order o where o.id in :ids")
+    List<OrderMerchant> findMerchantIdsByIdIn(Collection<Long> ids);
+
+    // 以下为不执行 COUNT 的切片查询（多取一条判断是否有下一页），以及后台刷新近似总数用的 COUNT 查询
+
+    @EntityGraph(Order.LISTING_GRAPH)
+    Slice<Order> findSliceByCustomer(Customer customer, Pageable pageable);
+
+    @EntityGraph(Order.LISTING_GRAPH)
+    Slice<Order> findSliceByMerchant(Merchant merchant, Pageable pageable);
+
+    @EntityGraph(Order.LISTING_GRAPH)
+    Slice<Order> findSliceByMerchantAndOrderTimeBetween(Merchant merchant, Date startDate, Date endDate, Pageable pageable);
+
+    @EntityGraph(Order.LISTING_GRAPH)
+    Slice<Order> findSliceByDeliveryMan(DeliveryMan deliveryMan, Pageable pageable);
+
+    long countByCustomer(Customer customer);
+
+    long countByMerchant(Merchant merchant);
+
+    long countByDeliveryMan(DeliveryMan deliveryMan);
+
+    // 以下为游标分页查询，均按 (下单时间, ID) 降序，从游标位置之后开始读取，依赖 (外键, order_time, id) 联合索引
+    // 下单时间为空的历史订单按降序排在最后（与 MySQL 和按页码分页的顺序一致），游标时间为 null 时只在这些订单中按 ID 继续读取
+    // 限定时间范围的查询不会返回下单时间为空的订单，不需要处理 null
+
+    @EntityGraph(Order.LISTING_GRAPH)
+    List<Order> findByCustomerOrderByOrderTimeDescIdDesc(Customer customer, Limit limit);
+
+    @EntityGraph(Order.LISTING_GRAPH)
+    @Query("select o from Order o where o.customer = :customer"
+            + " and (o.orderTime < :orderTime or (o.orderTime = :orderTime and o.id < :id)"
+            + " or (o.orderTime is null and (:orderTime is not null or o.id < :id)))"
+            + " order by o.orderTime desc, o.id desc")
+    List<Order> findByCustomerBefore(Customer customer, Date orderTime, Long id, Limit limit);
+
+    @EntityGraph(Order.LISTING_GRAPH)
+    List<Order> findByMerchantOrderByOrderTimeDescIdDesc(Merchant merchant, Limit limit);
+
+    @EntityGraph(Order.LISTING_GRAPH)
+    @Query("select o from Order o where o.merchant = :merchant"
+            + " and (o.orderTime < :orderTime or (o.orderTime = :orderTime and o.id < :id)"
+            + " or (o.orderTime is null and (:orderTime is not null or o.id < :id)))"
+            + " order by o.orderTime desc, o.id desc")
+    List<Order> findByMerchantBefore(Merchant merchant, Date orderTime, Long id, Limit limit);
+
+    @EntityGraph(Order.LISTING_GRAPH)
+    List<Order> findByMerchantAndOrderTimeBetweenOrderByOrderTimeDescIdDesc(Merchant merchant, Date startDate, Date endDate, Limit limit);
+
+    @EntityGraph(Order.LISTING_GRAPH)
+    @Query("select o from Order o where o.merchant = :merchant and o.orderTime between :startDate and :endDate"
+            + " and (o.orderTime < :orderTime or (o.orderTime = :orderTime and o.id < :id))"
+            + " order by o.orderTime desc, o.id desc")
+    List<Order> findByMerchantAndOrderTimeBetweenBefore(Merchant merchant, Date startDate, Date endDate,
+                                                        Date orderTime, Long id, Limit limit);
+
+    @EntityGraph(Order.LISTING_GRAPH)
+    List<Order> findByDeliveryManOrderByOrderTimeDescIdDesc(DeliveryMan deliveryMan, Limit limit);
+
+    @EntityGraph(Order.LISTING_GRAPH)
+    @Query("select o from Order o where o.deliveryMan = :deliveryMan"
+            + " and (o.orderTime < :orderTime or (o.orderTime = :orderTime and o.id < :id)"
+            + " or (o.orderTime is null and (:orderTime is not null or o.id < :id)))"
+            + " order by o.orderTime desc, o.id desc")
+    List<Order> findByDeliveryManBefore(DeliveryMan deliveryMan, Date orderTime, Long id, Limit limit);
+
+    // 以下为订单状态的条件更新（比较并设置），仅由 OrderStateMachine 调用，返回更新的行数（0 或 1）
+    // 条件不满足时不更新，也不会先读出订单再写回；更新后清空持久化上下文，避免读到旧状态
+    // 每次更新都递增版本号，同时在途的按版本号保存订单的事务（如评价订单）会因版本冲突失败而不是覆盖状态
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Order o set o.status = :status, o.version = o.version + 1 where o.id = :id and o.status = :expected")
+    int compareAndSetStatus(Long id, OrderStatus expected, OrderStatus status);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Order o set o.status = :status, o.version = o.version + 1"
+            + " where o.id = :id and o.status = :expected and o.merchant.id = :merchantId")
+    int compareAndSetStatusForMerchant(Long id, Long merchantId, OrderStatus expected, OrderStatus status);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Order o set o.status = :status, o.version = o.version + 1"
+            + " where o.id = :id and o.status = :expected and o.deliveryMan.id = :deliveryManId")
+    int compareAndSetStatusForDeliveryMan(Long id, Long deliveryManId, OrderStatus expected, OrderStatus status);
+
+    // 分配送餐员：只有尚未分配送餐员的订单才会更新，多人同时接单时只有一人成功
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Order o set o.status = :status, o.deliveryMan = :deliveryMan, o.version = o.version + 1"
+            + " where o.id = :id and o.status = :expected and o.deliveryMan is null")
+    int compareAndSetDeliveryMan(Long id, DeliveryMan deliveryMan, OrderStatus expected, OrderStatus status);
+
+    // 以下为超时自动变更的批量操作，仅由 OrderStateMachine.transitionAll 调用：先按ID顺序锁定仍为原状态的订单，再统一更新
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select o.id from Order o where o.id in :ids and o.status = :status order by o.id")
+    List<Long> lockIdsByIdInAndStatus(Collection<Long> ids, OrderStatus status);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Order o set o.status = :status, o.version = o.version + 1 where o.id in :ids")
+    int setStatusByIdIn(Collection<Long> ids, OrderStatus status);
+
+    // 启动时恢复超时计时：按ID分批读取某状态的订单及其进入该状态的时间（取自状态历史，尚未写入历史时为 null）
+    @Query("select o.id as orderId, (select max(h.changedAt) from OrderStatusHistory h"
+            + " where h.orderId = o.id and h.toStatus = o.status) as enteredAt"
+            + " from Order o where o.status = :status and o.id > :afterId order by o.id")
+    List<StatusEntry> findStatusEntries(OrderStatus status, Long afterId, Limit limit);
+
+    // 下单前的校验：一条 SQL 查出顾客、商家以及每个所点菜品的名称、价格和所属商家
+    // 顾客不存在时没有结果；商家不存在时 merchantId 为空；没有一个菜品存在时只有一行且 dishId 为空
+    @Query("select c.id as customerId, c.username as customerName, m.id as merchantId, m.merchantName as merchantName,"
+            + " d.id as dishId, d.name as dishName, d.price as dishPrice, d.merchant.id as dishMerchantId"
+            + " from Customer c left join Merchant m on m.id = :merchantId left join Dish d on d.id in :dishIds"
+            + " where c.id = :customerId")
+    List<IntakeRow> findIntakeRows(Long customerId, Long merchantId, Collection<Long> dishIds);
+
+    // 商家按菜品统计销量和销售额，只读订单明细，不连接菜品表；已取消的订单不计入
+    @Query("select i.dishId as dishId, max(i.dishName) as dishName, sum(i.quantity) as quantity,"
+            + " sum(i.quantity * i.unitPriceCents) as revenueCents"
+            + " from Order o join o.items i"
+            + " where o.merchant.id = :merchantId and o.orderTime between :startDate and :endDate and o.status <> :excluded"
+            + " group by i.dishId order by sum(i.quantity * i.unitPriceCents) desc, i.dishId")
+    List<DishSalesRow> sumDishSales(Long merchantId, Date startDate, Date endDate, OrderStatus excluded);
+
+    interface StatusEntry {
+
+        Long getOrderId();
+
+        Date getEnteredAt();
+    }
+
+    interface OrderMerchant {
+
+        Long getOrderId();
+
+        Long getMerchantId();
+    }
+
+    interface IntakeRow {
+
+        Long getCustomerId();
+
+        String getCustomerName();
+
+        Long getMerchantId();
+
+        String getMerchantName();
+
+        Long getDishId();
+
+        String getDishName();
+
+        BigDecimal getDishPrice();
+
+        Long getDishMerchantId();
+    }
+
+    interface DishSalesRow {
+
+        Long getDishId();
+
+        String getDishName();
+
+        Long getQuantity();
+
+        Long getRevenueCents();
+    }
+}
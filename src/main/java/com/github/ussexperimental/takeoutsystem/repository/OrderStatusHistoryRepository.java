@@ -0,0 +1,51 @@
+package com.github.ussexperimental.takeoutsystem.repository;
+
+import com.github.ussexperimental.takeoutsystem.entity.OrderStatusHistory;
+import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+@Repository
+public interface OrderStatusHistoryRepository extends JpaRepository<OrderStatusHistory, Long> {
+
+    List<OrderStatusHistory> findByOrderIdOrderByChangedAtAscIdAsc(Long orderId);
+
+    // 每个订单最近一次状态变更的时间，即进入当前状态的时间
+    @Query("select h.orderId as orderId, max(h.changedAt) as changedAt from OrderStatusHistory h"
+            + " where h.orderId in :orderIds group by h.orderId")
+    List<LastChange> findLastChanges(Collection<Long> orderIds);
+
+    // 商家在一段时间内离开各状态的次数和最长停留时长，在数据库中聚合
+    @Query("select h.fromStatus as stage, count(h) as count, max(h.stageMillis) as maxMillis from OrderStatusHistory h"
+            + " where h.merchantId = :merchantId and h.changedAt >= :since and h.stageMillis is not null"
+            + " group by h.fromStatus")
+    List<StageTotal> sumStages(Long merchantId, Date since);
+
+    // 商家在一段时间内离开某状态的停留时长，从最近的开始读取，用于计算百分位
+    @Query("select h.stageMillis from OrderStatusHistory h"
+            + " where h.merchantId = :merchantId and h.fromStatus = :stage and h.changedAt >= :since and h.stageMillis is not null"
+            + " order by h.changedAt desc")
+    List<Long> findStageMillis(Long merchantId, OrderStatus stage, Date since, Limit limit);
+
+    interface LastChange {
+
+        Long getOrderId();
+
+        Date getChangedAt();
+    }
+
+    interface StageTotal {
+
+        OrderStatus getStage();
+
+        Long getCount();
+
+        Long getMaxMillis();
+    }
+}
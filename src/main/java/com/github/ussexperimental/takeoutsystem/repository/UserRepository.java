@@ -1,11 +1,15 @@
 package com.github.ussexperimental.takeoutsystem.repository;
 
 import com.github.ussexperimental.takeoutsystem.entity.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -17,4 +21,13 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     @Override
     Page<User> findAll(Pageable pageable);
+
+    // 不执行 COUNT 的切片查询
+    @Query("select u from User u")
+    Slice<User> findSlice(Pageable pageable);
+
+    // 游标分页：按 ID 降序，直接走主键索引
+    List<User> findAllByOrderByIdDesc(Limit limit);
+
+    List<User> findByIdLessThanOrderByIdDesc(Long id, Limit limit);
 }
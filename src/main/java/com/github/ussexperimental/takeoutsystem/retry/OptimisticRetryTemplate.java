@@ -0,0 +1,80 @@
+package com.github.ussexperimental.takeoutsystem.retry;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * 乐观锁冲突自动重试
+ * <p>
+ * 每次尝试在独立事务中执行，提交时发现版本冲突（{@link OptimisticLockingFailureException}）则回滚，
+ * 随机退避后重新读取数据再执行一次，最多执行 maxAttempts 次，仍冲突则抛出最后一次的异常。
+ * 操作会被整体重新执行，因此只能用于可重复执行的操作，且不能在操作中产生事务外的副作用。
+ * <p>
+ * 按操作名记录指标，用于发现竞争激烈的操作：
+ * optimistic.lock.calls（调用次数）、optimistic.lock.conflicts（冲突次数）、optimistic.lock.exhausted（重试耗尽次数）。
+ */
+@Component
+public class OptimisticRetryTemplate {
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${optimistic.retry.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${optimistic.retry.initial-backoff-ms:20}")
+    private long initialBackoffMillis;
+
+    @Value("${optimistic.retry.max-backoff-ms:200}")
+    private long maxBackoffMillis;
+
+    /**
+     * 在事务中执行操作，乐观锁冲突时重试
+     * <p>
+     * 如果调用时已处于事务中，冲突要到外层事务提交时才会发现，此时无法只重试这一个操作，只执行一次。
+     * @param operation 操作名，作为指标的 operation 标签
+     */
+    public <T> T execute(String operation, Supplier<T> action) {
+        meterRegistry.counter("optimistic.lock.calls", "operation", operation).increment();
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return action.get();
+        }
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> action.get());
+            } catch (OptimisticLockingFailureException e) {
+                meterRegistry.counter("optimistic.lock.conflicts", "operation", operation).increment();
+                if (attempt >= maxAttempts) {
+                    meterRegistry.counter("optimistic.lock.exhausted", "operation", operation).increment();
+                    throw e;
+                }
+                backoff(attempt, e);
+            }
+        }
+    }
+
+    // 指数退避，在 [0, 上限] 内随机取值（full jitter），避免冲突的请求同时重试再次冲突
+    private void backoff(int attempt, OptimisticLockingFailureException conflict) {
+        long ceiling = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 30));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw conflict;
+        }
+    }
+}
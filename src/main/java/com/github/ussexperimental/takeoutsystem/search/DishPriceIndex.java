@@ -0,0 +1,302 @@
+package com.github.ussexperimental.takeoutsystem.search;
+
+import com.github.ussexperimental.takeoutsystem.dto.DishIndexRow;
+import com.github.ussexperimental.takeoutsystem.event.DishChangedEvent;
+import com.github.ussexperimental.takeoutsystem.repository.DishRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 跨商家按价格浏览菜品的内存索引
+ * <p>
+ * 价格（分）和菜品ID保存在两个平行的 long[] 中，按 (价格, ID) 升序排列，
+ * 区间查询和"最便宜的 N 个"均为二分查找加数组切片，不创建任何实体对象。
+ * <p>
+ * 数组是不可变快照，读取无锁；菜品变更先记入待合并队列，
+ * 下次读取时一次性归并生成新快照，批量导入时不会因逐条变更反复复制整个数组。
+ * 全量构建失败时在 rebuild-retry-seconds 后重试，构建完成前按价格浏览退回数据库查询。
+ */
+@Slf4j
+@Component
+public class DishPriceIndex {
+
+    // 待合并队列中表示删除的价格
+    private static final long REMOVED = Long.MIN_VALUE;
+
+    private static final BigDecimal MAX_CENTS = BigDecimal.valueOf(Long.MAX_VALUE);
+    private static final BigDecimal MIN_CENTS = BigDecimal.valueOf(REMOVED + 1);
+
+    @Autowired
+    private DishRepository dishRepository;
+
+    @Value("${dish.search.rebuild-batch-size:1000}")
+    private int rebuildBatchSize = 1000;
+
+    @Value("${dish.search.rebuild-retry-seconds:30}")
+    private long rebuildRetrySeconds = 30;
+
+    private volatile Snapshot snapshot = new Snapshot(new long[0], new long[0]);
+
+    // 菜品ID -> 新价格（分）或 REMOVED，guarded by this
+    private final Map<Long, Long> pending = new HashMap<>();
+
+    // pending 非空时为 true，读取时据此决定是否需要加锁合并
+    private volatile boolean dirty;
+
+    // 重建期间暂不合并 pending，重建完成后再合并到新快照上，保证重建期间的变更不会丢失，guarded by this
+    private boolean rebuilding;
+
+    private volatile boolean ready;
+
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "dish-price-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PreDestroy
+    public void shutdown() {
+        retryScheduler.shutdownNow();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 从数据库全量重建索引；失败时索引保持未就绪，稍后重试
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        synchronized (this) {
+            ready = false;
+            rebuilding = true;
+        }
+
+        Snapshot base = null;
+        try {
+            List<Long> ids = new ArrayList<>();
+            List<Long> prices = new ArrayList<>();
+            long afterId = 0L;
+            List<DishIndexRow> rows;
+            do {
+                rows = dishRepository.findIndexRows(afterId, Limit.of(rebuildBatchSize));
+                for (DishIndexRow row : rows) {
+                    if (row.price() != null) {
+                        ids.add(row.id());
+                        prices.add(toCents(row.price()));
+                    }
+                }
+                if (!rows.isEmpty()) {
+                    afterId = rows.get(rows.size() - 1).id();
+                }
+            } while (rows.size() == rebuildBatchSize);
+
+            Map<Long, Long> loaded = new HashMap<>(ids.size() * 2);
+            for (int i = 0; i < ids.size(); i++) {
+                loaded.put(ids.get(i), prices.get(i));
+            }
+            base = merge(new Snapshot(new long[0], new long[0]), loaded);
+            log.info("菜品价格索引构建完成，共 {} 个菜品", ids.size());
+        } catch (RuntimeException e) {
+            log.warn("菜品价格索引构建失败，{} 秒后重试", rebuildRetrySeconds, e);
+            retryScheduler.schedule(this::rebuild, rebuildRetrySeconds, TimeUnit.SECONDS);
+        } finally {
+            synchronized (this) {
+                // 合并时会先去掉 base 中所有发生过变更的菜品，重建期间读到的旧价格不会覆盖新价格；
+                // 构建失败时变更合并到原快照上，等待重试
+                snapshot = merge(base != null ? base : snapshot, pending);
+                pending.clear();
+                dirty = false;
+                rebuilding = false;
+                ready = base != null;
+            }
+        }
+    }
+
+    // 菜品写操作提交后增量更新索引
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDishChanged(DishChangedEvent event) {
+        if (event.type() == DishChangedEvent.Type.DELETED || event.price() == null) {
+            remove(event.dishId());
+        } else {
+            put(event.dishId(), event.price());
+        }
+    }
+
+    public synchronized void put(Long dishId, BigDecimal price) {
+        pending.put(dishId, toCents(price));
+        dirty = true;
+    }
+
+    public synchronized void remove(Long dishId) {
+        pending.put(dishId, REMOVED);
+        dirty = true;
+    }
+
+    /**
+     * 查询价格区间内的菜品，按价格升序、ID升序
+     * @param minPrice 最低价格（含），null 表示不限
+     * @param maxPrice 最高价格（含），null 表示不限
+     * @param offset 跳过的结果数
+     * @param limit 返回的最大结果数
+     * @return 当前页的菜品ID和区间内的菜品总数
+     */
+    public RangeResult range(BigDecimal minPrice, BigDecimal maxPrice, int offset, int limit) {
+        long min = minPrice != null ? toCents(minPrice) : Long.MIN_VALUE;
+        long max = maxPrice != null ? toCents(maxPrice) : Long.MAX_VALUE;
+        Snapshot current = current();
+        if (min > max) {
+            return new RangeResult(List.of(), 0);
+        }
+
+        int from = lowerBound(current.prices, min);
+        int to = max == Long.MAX_VALUE ? current.prices.length : lowerBound(current.prices, max + 1);
+        int start = (int) Math.min((long) from + offset, to);
+
+        List<Long> page = new ArrayList<>(Math.min(limit, to - start));
+        for (int i = start; i < to && page.size() < limit; i++) {
+            page.add(current.ids[i]);
+        }
+        return new RangeResult(page, to - from);
+    }
+
+    /**
+     * 最便宜的 N 个菜品
+     */
+    public List<Long> cheapest(int n) {
+        return range(null, null, 0, n).ids();
+    }
+
+    public int size() {
+        return current().ids.length;
+    }
+
+    private Snapshot current() {
+        if (!dirty) {
+            return snapshot;
+        }
+        synchronized (this) {
+            if (!rebuilding && !pending.isEmpty()) {
+                snapshot = merge(snapshot, pending);
+                pending.clear();
+                dirty = false;
+            }
+            return snapshot;
+        }
+    }
+
+    // 归并：旧快照中去掉所有发生变更的菜品，再按 (价格, ID) 归并插入新价格，O(n + k log k)
+    private static Snapshot merge(Snapshot base, Map<Long, Long> changes) {
+        long[] addIds = new long[changes.size()];
+        long[] addPrices = new long[changes.size()];
+        int added = 0;
+        for (Map.Entry<Long, Long> change : changes.entrySet()) {
+            if (change.getValue() != REMOVED) {
+                addIds[added] = change.getKey();
+                addPrices[added] = change.getValue();
+                added++;
+            }
+        }
+        sort(addPrices, addIds, added);
+
+        long[] ids = new long[base.ids.length + added];
+        long[] prices = new long[ids.length];
+        int i = 0, j = 0, n = 0;
+        while (i < base.ids.length || j < added) {
+            if (i < base.ids.length && changes.containsKey(base.ids[i])) {
+                i++;
+                continue;
+            }
+            boolean takeBase = j >= added
+                    || (i < base.ids.length && compare(base.prices[i], base.ids[i], addPrices[j], addIds[j]) < 0);
+            if (takeBase) {
+                ids[n] = base.ids[i];
+                prices[n] = base.prices[i];
+                i++;
+            } else {
+                ids[n] = addIds[j];
+                prices[n] = addPrices[j];
+                j++;
+            }
+            n++;
+        }
+        if (n < ids.length) {
+            ids = Arrays.copyOf(ids, n);
+            prices = Arrays.copyOf(prices, n);
+        }
+        return new Snapshot(prices, ids);
+    }
+
+    // 按 (价格, ID) 对平行数组排序，变更数量通常很小
+    private static void sort(long[] prices, long[] ids, int length) {
+        Integer[] order = new Integer[length];
+        for (int k = 0; k < length; k++) {
+            order[k] = k;
+        }
+        Arrays.sort(order, (a, b) -> compare(prices[a], ids[a], prices[b], ids[b]));
+        long[] sortedPrices = new long[length];
+        long[] sortedIds = new long[length];
+        for (int k = 0; k < length; k++) {
+            sortedPrices[k] = prices[order[k]];
+            sortedIds[k] = ids[order[k]];
+        }
+        System.arraycopy(sortedPrices, 0, prices, 0, length);
+        System.arraycopy(sortedIds, 0, ids, 0, length);
+    }
+
+    private static int compare(long priceA, long idA, long priceB, long idB) {
+        int byPrice = Long.compare(priceA, priceB);
+        return byPrice != 0 ? byPrice : Long.compare(idA, idB);
+    }
+
+    // 第一个价格 >= target 的下标
+    private static int lowerBound(long[] prices, long target) {
+        int low = 0, high = prices.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (prices[mid] < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // 超出 long 范围的价格截断到边界，价格区间的上下限可以是任意大的数；下限不取 REMOVED
+    static long toCents(BigDecimal price) {
+        BigDecimal cents = price.setScale(2, RoundingMode.HALF_UP).movePointRight(2);
+        if (cents.compareTo(MAX_CENTS) >= 0) {
+            return Long.MAX_VALUE;
+        }
+        if (cents.compareTo(MIN_CENTS) <= 0) {
+            return REMOVED + 1;
+        }
+        return cents.longValue();
+    }
+
+    public record RangeResult(List<Long> ids, int total) {
+    }
+
+    private record Snapshot(long[] prices, long[] ids) {
+    }
+}
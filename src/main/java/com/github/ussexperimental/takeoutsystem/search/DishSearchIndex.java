@@ -0,0 +1,399 @@
+package com.github.ussexperimental.takeoutsystem.search;
+
+import com.github.ussexperimental.takeoutsystem.dto.DishIndexRow;
+import com.github.ussexperimental.takeoutsystem.event.DishChangedEvent;
+import com.github.ussexperimental.takeoutsystem.repository.DishRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 菜品名称和描述的内存倒排索引，替代 LIKE '%x%' 全表扫描
+ * <p>
+ * 每个词元对应一个按菜品ID升序排列的 long[] 倒排表，名称和描述分别建表。
+ * 查询时文档须包含全部查询词元（名称或描述中均可），
+ * 名称中命中的词元得 2 分、描述中命中得 1 分，按得分降序、菜品ID降序排序。
+ * <p>
+ * 启动后从数据库全量构建，之后由菜品写操作提交后的 {@link DishChangedEvent} 增量维护。
+ * 构建失败时在 rebuild-retry-seconds 后重试，构建完成前搜索退回数据库查询。
+ */
+@Slf4j
+@Component
+public class DishSearchIndex {
+
+    private static final int NAME_WEIGHT = 2;
+    private static final int DESCRIPTION_WEIGHT = 1;
+
+    // 排序键 = 得分 << ID_BITS | 菜品ID
+    private static final int ID_BITS = 55;
+    private static final int MAX_SCORE = (1 << (63 - ID_BITS)) - 1;
+
+    @Autowired
+    private DishRepository dishRepository;
+
+    @Value("${dish.search.rebuild-batch-size:1000}")
+    private int rebuildBatchSize = 1000;
+
+    @Value("${dish.search.rebuild-retry-seconds:30}")
+    private long rebuildRetrySeconds = 30;
+
+    private final Map<String, PostingList> nameIndex = new HashMap<>();
+    private final Map<String, PostingList> descriptionIndex = new HashMap<>();
+    private final Map<Long, Doc> docs = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // 重建期间被增量更新过的菜品，重建时跳过它们，避免旧数据覆盖新数据；非重建期间为 null
+    private Set<Long> touchedDuringRebuild;
+
+    private volatile boolean ready;
+
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "dish-search-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PreDestroy
+    public void shutdown() {
+        retryScheduler.shutdownNow();
+    }
+
+    /**
+     * 索引是否已完成全量构建
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 从数据库全量重建索引，按ID分批扫描；失败时索引保持未就绪，稍后重试
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            ready = false;
+            nameIndex.clear();
+            descriptionIndex.clear();
+            docs.clear();
+            touchedDuringRebuild = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        boolean built = false;
+        try {
+            long afterId = 0L;
+            int total = 0;
+            List<DishIndexRow> rows;
+            do {
+                rows = dishRepository.findIndexRows(afterId, Limit.of(rebuildBatchSize));
+                lock.writeLock().lock();
+                try {
+                    for (DishIndexRow row : rows) {
+                        if (!touchedDuringRebuild.contains(row.id())) {
+                            indexLocked(row.id(), row.name(), row.description());
+                        }
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                if (!rows.isEmpty()) {
+                    afterId = rows.get(rows.size() - 1).id();
+                    total += rows.size();
+                }
+            } while (rows.size() == rebuildBatchSize);
+            built = true;
+            log.info("菜品搜索索引构建完成，共 {} 个菜品", total);
+        } catch (RuntimeException e) {
+            log.warn("菜品搜索索引构建失败，{} 秒后重试", rebuildRetrySeconds, e);
+            retryScheduler.schedule(this::rebuild, rebuildRetrySeconds, TimeUnit.SECONDS);
+        } finally {
+            lock.writeLock().lock();
+            try {
+                touchedDuringRebuild = null;
+                ready = built;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // 菜品写操作提交后增量更新索引
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDishChanged(DishChangedEvent event) {
+        switch (event.type()) {
+            case SAVED -> index(event.dishId(), event.name(), event.description());
+            case DELETED -> remove(event.dishId());
+        }
+    }
+
+    /**
+     * 新增或更新一个菜品
+     */
+    public void index(Long dishId, String name, String description) {
+        lock.writeLock().lock();
+        try {
+            markTouched(dishId);
+            indexLocked(dishId, name, description);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除一个菜品
+     */
+    public void remove(Long dishId) {
+        lock.writeLock().lock();
+        try {
+            markTouched(dishId);
+            removeLocked(dishId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 搜索菜品
+     * @param query 查询文本
+     * @param offset 跳过的结果数
+     * @param limit 返回的最大结果数
+     * @return 当前页的菜品ID（已按相关度排序）和命中总数
+     */
+    public SearchResult search(String query, int offset, int limit) {
+        List<String> tokens = DishTokenizer.queryTokens(query);
+        if (tokens.isEmpty()) {
+            return new SearchResult(Collections.emptyList(), 0);
+        }
+
+        lock.readLock().lock();
+        try {
+            // 先处理命中文档最少的词元，尽早缩小候选集
+            List<String> ordered = new ArrayList<>(tokens);
+            ordered.sort(Comparator.comparingInt(this::documentFrequency));
+
+            long[] candidates = null;
+            for (String token : ordered) {
+                long[] matched = union(nameIndex.get(token), descriptionIndex.get(token));
+                candidates = candidates == null ? matched : intersect(candidates, matched);
+                if (candidates.length == 0) {
+                    return new SearchResult(Collections.emptyList(), 0);
+                }
+            }
+
+            long[] keys = new long[candidates.length];
+            for (int i = 0; i < candidates.length; i++) {
+                long id = candidates[i];
+                int score = 0;
+                for (String token : tokens) {
+                    PostingList names = nameIndex.get(token);
+                    score += names != null && names.contains(id) ? NAME_WEIGHT : DESCRIPTION_WEIGHT;
+                }
+                keys[i] = ((long) Math.min(score, MAX_SCORE) << ID_BITS) | id;
+            }
+            Arrays.sort(keys);
+
+            long idMask = (1L << ID_BITS) - 1;
+            List<Long> page = new ArrayList<>();
+            for (int i = keys.length - 1 - offset; i >= 0 && page.size() < limit; i--) {
+                page.add(keys[i] & idMask);
+            }
+            return new SearchResult(page, keys.length);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docs.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int documentFrequency(String token) {
+        PostingList names = nameIndex.get(token);
+        PostingList descriptions = descriptionIndex.get(token);
+        return (names != null ? names.size : 0) + (descriptions != null ? descriptions.size : 0);
+    }
+
+    private void markTouched(Long dishId) {
+        if (touchedDuringRebuild != null) {
+            touchedDuringRebuild.add(dishId);
+        }
+    }
+
+    private void indexLocked(Long dishId, String name, String description) {
+        if (dishId == null || dishId < 0 || dishId >= (1L << ID_BITS)) {
+            throw new IllegalArgumentException("菜品ID超出索引范围");
+        }
+        removeLocked(dishId);
+        String[] nameTokens = addPostings(nameIndex, DishTokenizer.indexTokens(name), dishId);
+        String[] descriptionTokens = addPostings(descriptionIndex, DishTokenizer.indexTokens(description), dishId);
+        docs.put(dishId, new Doc(nameTokens, descriptionTokens));
+    }
+
+    private void removeLocked(Long dishId) {
+        Doc doc = docs.remove(dishId);
+        if (doc == null) {
+            return;
+        }
+        removePostings(nameIndex, doc.nameTokens, dishId);
+        removePostings(descriptionIndex, doc.descriptionTokens, dishId);
+    }
+
+    // 返回倒排表中的词元实例，文档只引用这些实例，相同词元不重复占用内存
+    private static String[] addPostings(Map<String, PostingList> index, List<String> tokens, long dishId) {
+        String[] interned = new String[tokens.size()];
+        for (int i = 0; i < interned.length; i++) {
+            PostingList list = index.computeIfAbsent(tokens.get(i), PostingList::new);
+            list.add(dishId);
+            interned[i] = list.token;
+        }
+        return interned;
+    }
+
+    private static void removePostings(Map<String, PostingList> index, String[] tokens, long dishId) {
+        for (String token : tokens) {
+            PostingList list = index.get(token);
+            if (list != null) {
+                list.remove(dishId);
+                if (list.size == 0) {
+                    index.remove(token);
+                }
+            }
+        }
+    }
+
+    private static long[] union(PostingList a, PostingList b) {
+        if (a == null && b == null) {
+            return new long[0];
+        }
+        if (a == null) {
+            return Arrays.copyOf(b.ids, b.size);
+        }
+        if (b == null) {
+            return Arrays.copyOf(a.ids, a.size);
+        }
+        long[] result = new long[a.size + b.size];
+        int i = 0, j = 0, n = 0;
+        while (i < a.size && j < b.size) {
+            long x = a.ids[i], y = b.ids[j];
+            if (x < y) {
+                result[n++] = x;
+                i++;
+            } else if (x > y) {
+                result[n++] = y;
+                j++;
+            } else {
+                result[n++] = x;
+                i++;
+                j++;
+            }
+        }
+        while (i < a.size) {
+            result[n++] = a.ids[i++];
+        }
+        while (j < b.size) {
+            result[n++] = b.ids[j++];
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    private static long[] intersect(long[] a, long[] b) {
+        long[] result = new long[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    public record SearchResult(List<Long> ids, int total) {
+    }
+
+    private record Doc(String[] nameTokens, String[] descriptionTokens) {
+    }
+
+    /**
+     * 单个词元的倒排表，菜品ID升序存放；新菜品ID通常最大，追加为 O(1)
+     */
+    private static final class PostingList {
+
+        final String token;
+        long[] ids = new long[2];
+        int size;
+
+        PostingList(String token) {
+            this.token = token;
+        }
+
+        void add(long id) {
+            if (size == 0 || ids[size - 1] < id) {
+                ensureCapacity();
+                ids[size++] = id;
+                return;
+            }
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos >= 0) {
+                return;
+            }
+            pos = -pos - 1;
+            ensureCapacity();
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            ids[pos] = id;
+            size++;
+        }
+
+        void remove(long id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos < 0) {
+                return;
+            }
+            System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+            size--;
+        }
+
+        boolean contains(long id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+
+        private void ensureCapacity() {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length + (ids.length >> 1) + 1);
+            }
+        }
+    }
+}
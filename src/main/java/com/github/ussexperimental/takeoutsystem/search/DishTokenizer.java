@@ -0,0 +1,120 @@
+package com.github.ussexperimental.takeoutsystem.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 菜品搜索分词器
+ * <p>
+ * 文本先做 NFKC 归一化（全角转半角）并转小写，然后切分为连续片段：
+ * <ul>
+ *     <li>中日韩文字片段：建索引时产生单字和二元组（bigram），查询时产生二元组，单字查询只产生单字</li>
+ *     <li>字母数字片段：建索引时产生前缀（edge n-gram），查询时使用整个单词，从而支持边输入边搜索</li>
+ * </ul>
+ * 其他字符视为分隔符。
+ */
+public final class DishTokenizer {
+
+    // 字母数字单词前缀的最大长度，超过部分的查询按该长度截断
+    static final int MAX_PREFIX_LENGTH = 12;
+
+    private DishTokenizer() {
+    }
+
+    /**
+     * 生成建索引用的词元，已去重
+     */
+    public static List<String> indexTokens(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        for (Run run : runs(text)) {
+            String s = run.text;
+            if (run.cjk) {
+                int[] cps = s.codePoints().toArray();
+                for (int i = 0; i < cps.length; i++) {
+                    tokens.add(new String(cps, i, 1));
+                    if (i + 1 < cps.length) {
+                        tokens.add(new String(cps, i, 2));
+                    }
+                }
+            } else {
+                int max = Math.min(s.length(), MAX_PREFIX_LENGTH);
+                for (int len = 1; len <= max; len++) {
+                    tokens.add(s.substring(0, len));
+                }
+            }
+        }
+        return new ArrayList<>(tokens);
+    }
+
+    /**
+     * 生成查询用的词元，已去重；文档须包含全部查询词元才算匹配
+     */
+    public static List<String> queryTokens(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        for (Run run : runs(text)) {
+            String s = run.text;
+            if (run.cjk) {
+                int[] cps = s.codePoints().toArray();
+                if (cps.length == 1) {
+                    tokens.add(s);
+                }
+                for (int i = 0; i + 1 < cps.length; i++) {
+                    tokens.add(new String(cps, i, 2));
+                }
+            } else {
+                tokens.add(s.length() > MAX_PREFIX_LENGTH ? s.substring(0, MAX_PREFIX_LENGTH) : s);
+            }
+        }
+        return new ArrayList<>(tokens);
+    }
+
+    private static List<Run> runs(String text) {
+        List<Run> runs = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return runs;
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+
+        StringBuilder current = new StringBuilder();
+        boolean currentCjk = false;
+        for (int i = 0; i < normalized.length(); ) {
+            int cp = normalized.codePointAt(i);
+            i += Character.charCount(cp);
+
+            boolean cjk = isCjk(cp);
+            if (!cjk && !Character.isLetterOrDigit(cp)) {
+                flush(runs, current, currentCjk);
+                continue;
+            }
+            if (current.length() > 0 && cjk != currentCjk) {
+                flush(runs, current, currentCjk);
+            }
+            currentCjk = cjk;
+            current.appendCodePoint(cp);
+        }
+        flush(runs, current, currentCjk);
+        return runs;
+    }
+
+    private static void flush(List<Run> runs, StringBuilder current, boolean cjk) {
+        if (current.length() > 0) {
+            runs.add(new Run(current.toString(), cjk));
+            current.setLength(0);
+        }
+    }
+
+    private static boolean isCjk(int cp) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    private record Run(String text, boolean cjk) {
+    }
+}
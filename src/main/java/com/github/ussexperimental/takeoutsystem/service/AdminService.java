@@ -17,6 +17,10 @@ public interface AdminService {
 
     PageResponse<User> getAllUsers(int page, int size);
 
+    PageResponse<User> getAllUsers(int page, int size, boolean withTotal);
+
+    PageResponse<User> getAllUsers(String after, int size);
+
     User getUserById(Long userId);
 
     User updateUser(Long userId,
@@ -1,11 +1,15 @@
 package com.github.ussexperimental.takeoutsystem.service;
 
+import com.github.ussexperimental.takeoutsystem.dto.OrderCreateDTO;
+import com.github.ussexperimental.takeoutsystem.dto.OrderCreateResult;
 import com.github.ussexperimental.takeoutsystem.dto.PageResponse;
 import com.github.ussexperimental.takeoutsystem.entity.Dish;
 import com.github.ussexperimental.takeoutsystem.entity.Order;
 import com.github.ussexperimental.takeoutsystem.entity.Review;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.math.BigDecimal;
 import java.util.Date;
 import java.util.List;
 
@@ -14,15 +18,38 @@ public interface CustomerService {
 
     PageResponse<Dish> viewMenu(Long merchantId, int page, int size);
 
+    String menuETag(Long merchantId, int page, int size);
+
+    PageResponse<Dish> searchDishes(String keyword, int page, int size);
+
+    PageResponse<Dish> browseDishesByPrice(BigDecimal minPrice, BigDecimal maxPrice, int page, int size);
+
     Order createOrder(Long customerId,
                       Long merchantId,
                       List<Long> dishIds,
                       Date deliveryTime,
                       String deliveryLocation);
 
+    Order createOrder(Long customerId,
+                      Long merchantId,
+                      List<Long> dishIds,
+                      Date deliveryTime,
+                      String deliveryLocation,
+                      String idempotencyKey);
+
+    List<OrderCreateResult> createOrders(List<OrderCreateDTO> requests);
+
     PageResponse<Order> getMyOrders(Long customerId, int page, int size);
 
+    PageResponse<Order> getMyOrders(Long customerId, int page, int size, boolean withTotal);
+
+    PageResponse<Order> getMyOrders(Long customerId, String after, int size);
+
     Order getOrderDetails(Long customerId, Long orderId);
 
+    SseEmitter subscribeOrderStatus(Long customerId, Long orderId, String lastEventId);
+
     Review reviewOrder(Long customerId, Long orderId, int rating, String comment);
+
+    Review reviewOrder(Long customerId, Long orderId, int rating, String comment, String idempotencyKey);
 }
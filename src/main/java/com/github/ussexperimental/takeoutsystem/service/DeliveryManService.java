@@ -1,17 +1,25 @@
 package com.github.ussexperimental.takeoutsystem.service;
 
+import com.github.ussexperimental.takeoutsystem.dto.OrderSummary;
 import com.github.ussexperimental.takeoutsystem.dto.PageResponse;
 import com.github.ussexperimental.takeoutsystem.entity.Order;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @Service
 public interface DeliveryManService {
 
-    PageResponse<Order> viewAvailableOrders(Long deliveryManId, int page, int size);
+    PageResponse<OrderSummary> viewAvailableOrders(Long deliveryManId, int page, int size);
+
+    SseEmitter subscribeAvailableOrders(Long deliveryManId);
 
     Order confirmPickup(Long deliveryManId, Long orderId);
 
     Order confirmDelivery(Long deliveryManId, Long orderId);
 
     PageResponse<Order> viewMyDeliveries(Long deliveryManId, int page, int size);
+
+    PageResponse<Order> viewMyDeliveries(Long deliveryManId, int page, int size, boolean withTotal);
+
+    PageResponse<Order> viewMyDeliveries(Long deliveryManId, String after, int size);
 }
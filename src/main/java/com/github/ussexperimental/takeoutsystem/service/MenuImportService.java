@@ -0,0 +1,15 @@
+package com.github.ussexperimental.takeoutsystem.service;
+
+import com.github.ussexperimental.takeoutsystem.dto.DishImportResult;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.Reader;
+
+@Service
+public interface MenuImportService {
+
+    DishImportResult importCsv(Long merchantId, Reader reader) throws IOException;
+
+    DishImportResult importJsonLines(Long merchantId, Reader reader) throws IOException;
+}
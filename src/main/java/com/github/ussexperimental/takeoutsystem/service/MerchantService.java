@@ -1,12 +1,17 @@
 package com.github.ussexperimental.takeoutsystem.service;
 
+import com.github.ussexperimental.takeoutsystem.dto.DishSales;
+import com.github.ussexperimental.takeoutsystem.dto.OrderStatusChange;
 import com.github.ussexperimental.takeoutsystem.dto.PageResponse;
+import com.github.ussexperimental.takeoutsystem.dto.StageDuration;
 import com.github.ussexperimental.takeoutsystem.entity.Dish;
 import com.github.ussexperimental.takeoutsystem.entity.Order;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.math.BigDecimal;
 import java.util.Date;
+import java.util.List;
 
 @Service
 public interface MerchantService {
@@ -19,6 +24,8 @@ public interface MerchantService {
 
     PageResponse<Dish> getMenu(Long merchantId, int page, int size);
 
+    String menuETag(Long merchantId, int page, int size);
+
     Dish updateDish(Long dishId,
                     String name,
                     BigDecimal price,
@@ -33,9 +40,30 @@ public interface MerchantService {
                                   int page,
                                   int size);
 
+    PageResponse<Order> viewSales(Long merchantId,
+                                  Date startDate,
+                                  Date endDate,
+                                  int page,
+                                  int size,
+                                  boolean withTotal);
+
+    PageResponse<Order> viewSales(Long merchantId,
+                                  Date startDate,
+                                  Date endDate,
+                                  String after,
+                                  int size);
+
     PageResponse<Order> viewPendingOrders(Long merchantId, int page, int size);
 
+    SseEmitter subscribeOrderBoard(Long merchantId);
+
     Order acceptOrder(Long merchantId, Long orderId);
 
     Order requestDelivery(Long orderId, Long deliveryManId);
+
+    List<OrderStatusChange> getOrderTimeline(Long merchantId, Long orderId);
+
+    List<StageDuration> getStageDurations(Long merchantId, int days);
+
+    List<DishSales> getDishSales(Long merchantId, Date startDate, Date endDate);
 }
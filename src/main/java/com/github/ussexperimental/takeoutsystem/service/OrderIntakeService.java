@@ -0,0 +1,13 @@
+package com.github.ussexperimental.takeoutsystem.service;
+
+import com.github.ussexperimental.takeoutsystem.dto.OrderCreateDTO;
+import com.github.ussexperimental.takeoutsystem.dto.OrderIntakeStatus;
+import org.springframework.stereotype.Service;
+
+@Service
+public interface OrderIntakeService {
+
+    OrderIntakeStatus submit(OrderCreateDTO request);
+
+    OrderIntakeStatus getStatus(Long customerId, String token);
+}
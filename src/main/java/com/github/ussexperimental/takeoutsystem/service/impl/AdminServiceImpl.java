@@ -1,20 +1,28 @@
 package com.github.ussexperimental.takeoutsystem.service.impl;
 
+import com.github.ussexperimental.takeoutsystem.cache.ApproximateCountCache;
+import com.github.ussexperimental.takeoutsystem.dto.PageCursor;
 import com.github.ussexperimental.takeoutsystem.dto.PageResponse;
 import com.github.ussexperimental.takeoutsystem.entity.*;
 import com.github.ussexperimental.takeoutsystem.entity.enums.RoleType;
 import com.github.ussexperimental.takeoutsystem.entity.enums.UserType;
+import com.github.ussexperimental.takeoutsystem.event.UserDeletedEvent;
 import com.github.ussexperimental.takeoutsystem.repository.RoleRepository;
 import com.github.ussexperimental.takeoutsystem.repository.UserRepository;
 import com.github.ussexperimental.takeoutsystem.service.AdminService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
+
 @Service
 public class AdminServiceImpl implements AdminService {
 
@@ -24,6 +32,12 @@ public class AdminServiceImpl implements AdminService {
     @Autowired
     private RoleRepository roleRepository;
 
+    @Autowired
+    private ApproximateCountCache countCache;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     @Transactional
     public User createUser(String username, String password, String phone, String email, String address, RoleType roleType) {
         if (userRepository.existsByUsername(username)) {
@@ -64,6 +78,28 @@ public class AdminServiceImpl implements AdminService {
         );
     }
 
+    public PageResponse<User> getAllUsers(int page, int size, boolean withTotal) {
+        if (withTotal) {
+            return getAllUsers(page, size);
+        }
+        Pageable pageable = PageRequest.of(page, size, Sort.by("id").descending());
+        Slice<User> userSlice = userRepository.findSlice(pageable);
+        long total = countCache.get("users", null, userRepository::count);
+        return PageResponse.ofSlice(userSlice, total);
+    }
+
+    public PageResponse<User> getAllUsers(String after, int size) {
+        if (size <= 0 || size > PageResponse.MAX_CURSOR_SIZE) {
+            throw new IllegalArgumentException("分页参数无效");
+        }
+        PageCursor cursor = PageCursor.decode(after);
+        Limit limit = Limit.of(size + 1);
+        List<User> users = cursor == null
+                ? userRepository.findAllByOrderByIdDesc(limit)
+                : userRepository.findByIdLessThanOrderByIdDesc(cursor.id(), limit);
+        return PageResponse.ofCursor(users, size, user -> PageCursor.of(user.getId()));
+    }
+
     public User getUserById(Long userId) {
         return userRepository.findById(userId)
                 .orElseThrow(() -> new IllegalArgumentException("用户不存在"));
@@ -99,6 +135,7 @@ public class AdminServiceImpl implements AdminService {
             throw new IllegalArgumentException("用户不存在");
         }
         userRepository.deleteById(userId);
+        eventPublisher.publishEvent(new UserDeletedEvent(userId));
     }
 
     private UserType convertRoleToUserType(RoleType roleType) {
@@ -1,21 +1,44 @@
 package com.github.ussexperimental.takeoutsystem.service.impl;
 
+import com.github.ussexperimental.takeoutsystem.cache.ApproximateCountCache;
+import com.github.ussexperimental.takeoutsystem.cache.MenuCache;
+import com.github.ussexperimental.takeoutsystem.dto.OrderCreateDTO;
+import com.github.ussexperimental.takeoutsystem.dto.OrderCreateResult;
+import com.github.ussexperimental.takeoutsystem.dto.PageCursor;
+import com.github.ussexperimental.takeoutsystem.dto.OrderSummary;
 import com.github.ussexperimental.takeoutsystem.dto.PageResponse;
 import com.github.ussexperimental.takeoutsystem.entity.*;
 import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+import com.github.ussexperimental.takeoutsystem.event.OrderCreatedEvent;
+import com.github.ussexperimental.takeoutsystem.event.OrderStatusChangedEvent;
+import com.github.ussexperimental.takeoutsystem.idempotency.IdempotencyTemplate;
 import com.github.ussexperimental.takeoutsystem.repository.*;
+import com.github.ussexperimental.takeoutsystem.retry.OptimisticRetryTemplate;
+import com.github.ussexperimental.takeoutsystem.search.DishPriceIndex;
+import com.github.ussexperimental.takeoutsystem.search.DishSearchIndex;
 import com.github.ussexperimental.takeoutsystem.service.CustomerService;
+import com.github.ussexperimental.takeoutsystem.stream.OrderStatusStream;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class CustomerServiceImpl implements CustomerService {
@@ -35,6 +58,33 @@ public class CustomerServiceImpl implements CustomerService {
     @Autowired
     private ReviewRepository reviewRepository;
 
+    @Autowired
+    private OrderEventRepository orderEventRepository;
+
+    @Autowired
+    private MenuCache menuCache;
+
+    @Autowired
+    private ApproximateCountCache countCache;
+
+    @Autowired
+    private DishSearchIndex dishSearchIndex;
+
+    @Autowired
+    private DishPriceIndex dishPriceIndex;
+
+    @Autowired
+    private OptimisticRetryTemplate optimisticRetry;
+
+    @Autowired
+    private IdempotencyTemplate idempotency;
+
+    @Autowired
+    private OrderStatusStream orderStatusStream;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     /**
      * 查看菜单，支持分页
      * @param merchantId 商家ID
@@ -43,13 +93,20 @@ public class CustomerServiceImpl implements CustomerService {
      * @return 分页的菜单列表
      */
     public PageResponse<Dish> viewMenu(Long merchantId, int page, int size) {
+        // 先查菜单缓存，命中时不访问数据库
+        PageResponse<Dish> cached = menuCache.get(merchantId, page, size);
+        if (cached != null) {
+            return cached;
+        }
+        long version = menuCache.version(merchantId);
+
         Merchant merchant = merchantRepository.findById(merchantId)
                 .orElseThrow(() -> new IllegalArgumentException("商家不存在"));
 
         Pageable pageable = PageRequest.of(page, size, Sort.by("id").descending());
         Page<Dish> dishPage = dishRepository.findByMerchant(merchant, pageable);
 
-        return new PageResponse<>(
+        PageResponse<Dish> menu = new PageResponse<>(
                 dishPage.getContent(),
                 dishPage.getNumber(),
                 dishPage.getSize(),
@@ -57,37 +114,244 @@ public class CustomerServiceImpl implements CustomerService {
                 dishPage.getTotalPages(),
                 dishPage.isLast()
         );
+        menuCache.put(merchantId, page, size, version, menu);
+        return menu;
+    }
+
+    /**
+     * 获取菜单分页的 ETag，用于条件请求
+     * @param merchantId 商家ID
+     * @param page 页码
+     * @param size 每页大小
+     * @return 强 ETag
+     */
+    public String menuETag(Long merchantId, int page, int size) {
+        return menuCache.eTag(merchantId, page, size);
+    }
+
+    /**
+     * 按名称和描述搜索菜品，结果按相关度排序，支持分页
+     * @param keyword 搜索关键词
+     * @param page 页码
+     * @param size 每页大小
+     * @return 分页的菜品列表
+     */
+    public PageResponse<Dish> searchDishes(String keyword, int page, int size) {
+        if (keyword == null || keyword.isBlank()) {
+            throw new IllegalArgumentException("搜索关键词不能为空");
+        }
+        if (page < 0 || size <= 0) {
+            throw new IllegalArgumentException("分页参数无效");
+        }
+
+        // 索引尚未构建完成时退回数据库模糊查询
+        if (!dishSearchIndex.isReady()) {
+            Pageable pageable = PageRequest.of(page, size, Sort.by("id").descending());
+            Page<Dish> dishPage = dishRepository.findByNameContaining(keyword.trim(), pageable);
+            return new PageResponse<>(
+                    dishPage.getContent(),
+                    dishPage.getNumber(),
+                    dishPage.getSize(),
+                    dishPage.getTotalElements(),
+                    dishPage.getTotalPages(),
+                    dishPage.isLast()
+            );
+        }
+
+        DishSearchIndex.SearchResult result = dishSearchIndex.search(keyword, offset(page, size), size);
+        int totalPages = (result.total() + size - 1) / size;
+        return new PageResponse<>(
+                findDishesInOrder(result.ids()),
+                page,
+                size,
+                result.total(),
+                totalPages,
+                page >= totalPages - 1
+        );
+    }
+
+    /**
+     * 跨商家按价格浏览菜品，按价格升序，支持分页
+     * 不传价格区间即为"最便宜的菜品"
+     * @param minPrice 最低价格（含），可为空
+     * @param maxPrice 最高价格（含），可为空
+     * @param page 页码
+     * @param size 每页大小
+     * @return 分页的菜品列表
+     */
+    public PageResponse<Dish> browseDishesByPrice(BigDecimal minPrice, BigDecimal maxPrice, int page, int size) {
+        if (page < 0 || size <= 0) {
+            throw new IllegalArgumentException("分页参数无效");
+        }
+        if (minPrice != null && maxPrice != null && minPrice.compareTo(maxPrice) > 0) {
+            throw new IllegalArgumentException("价格区间无效");
+        }
+
+        // 索引尚未构建完成时退回数据库查询
+        if (!dishPriceIndex.isReady()) {
+            Pageable pageable = PageRequest.of(page, size, Sort.by("price").ascending().and(Sort.by("id").ascending()));
+            Page<Dish> dishPage = dishRepository.findByPriceBetween(
+                    minPrice != null ? minPrice : BigDecimal.ZERO,
+                    maxPrice != null ? maxPrice : BigDecimal.valueOf(Long.MAX_VALUE, 2),
+                    pageable);
+            return new PageResponse<>(
+                    dishPage.getContent(),
+                    dishPage.getNumber(),
+                    dishPage.getSize(),
+                    dishPage.getTotalElements(),
+                    dishPage.getTotalPages(),
+                    dishPage.isLast()
+            );
+        }
+
+        DishPriceIndex.RangeResult result = dishPriceIndex.range(minPrice, maxPrice, offset(page, size), size);
+        int totalPages = (result.total() + size - 1) / size;
+        return new PageResponse<>(
+                findDishesInOrder(result.ids()),
+                page,
+                size,
+                result.total(),
+                totalPages,
+                page >= totalPages - 1
+        );
+    }
+
+    // 分页的起始位置，页码很大时 page * size 会超出 int，按 Integer.MAX_VALUE 处理（结果为空页）
+    private static int offset(int page, int size) {
+        return (int) Math.min((long) page * size, Integer.MAX_VALUE);
+    }
+
+    // 按给定ID顺序批量加载菜品，只查询当前页
+    private List<Dish> findDishesInOrder(List<Long> dishIds) {
+        if (dishIds.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Dish> dishes = dishRepository.findAllById(dishIds).stream()
+                .collect(Collectors.toMap(Dish::getId, Function.identity()));
+        return dishIds.stream()
+                .map(dishes::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
     }
 
     @Transactional
     public Order createOrder(Long customerId, Long merchantId, List<Long> dishIds, Date deliveryTime, String deliveryLocation) {
-        Customer customer = customerRepository.findById(customerId)
-                .orElseThrow(() -> new IllegalArgumentException("顾客不存在"));
+        Order savedOrder = orderRepository.save(buildOrder(customerId, merchantId, dishIds, deliveryTime, deliveryLocation));
+        orderEventRepository.save(OrderEvent.of(savedOrder.getId(), null, savedOrder.getStatus()));
+        eventPublisher.publishEvent(new OrderCreatedEvent(OrderSummary.from(savedOrder)));
+        return savedOrder;
+    }
 
-        Merchant merchant = merchantRepository.findById(merchantId)
-                .orElseThrow(() -> new IllegalArgumentException("商家不存在"));
+    /**
+     * 在一个事务中创建一批订单，用于异步下单的批量写入
+     * <p>
+     * 每个请求分别校验，校验不通过的请求不影响其他请求；通过的订单和订单事件一起按批插入，一次提交。
+     * @return 与请求一一对应的结果
+     */
+    @Transactional
+    public List<OrderCreateResult> createOrders(List<OrderCreateDTO> requests) {
+        List<OrderCreateResult> results = new ArrayList<>(requests.size());
+        List<Order> orders = new ArrayList<>(requests.size());
+        for (OrderCreateDTO request : requests) {
+            try {
+                Order order = buildOrder(request.getCustomerId(), request.getMerchantId(), request.getDishIds(),
+                        request.getDeliveryTime(), request.getDeliveryLocation());
+                orders.add(order);
+                results.add(OrderCreateResult.created(order));
+            } catch (IllegalArgumentException e) {
+                results.add(OrderCreateResult.rejected(e.getMessage()));
+            }
+        }
+        if (orders.isEmpty()) {
+            return results;
+        }
+
+        orderRepository.saveAll(orders);
+        orderEventRepository.saveAll(orders.stream()
+                .map(order -> OrderEvent.of(order.getId(), null, order.getStatus()))
+                .toList());
+        orders.forEach(order -> eventPublisher.publishEvent(new OrderCreatedEvent(OrderSummary.from(order))));
+        return results;
+    }
 
-        List<Dish> dishes = dishRepository.findAllById(dishIds);
-        if (dishes.isEmpty()) {
+    /**
+     * 校验下单请求并构建待插入的订单
+     * <p>
+     * 顾客、商家和菜品在一条查询中校验（{@link OrderRepository#findIntakeRows}），菜品必须都属于该商家，
+     * 价格和名称取自同一次查询。订单的顾客和商家是只带ID和名称的引用，插入时只用到ID，
+     * 响应和下单事件读取名称也不再查询，整个下单过程除这条查询外只有插入语句。
+     */
+    private Order buildOrder(Long customerId, Long merchantId, List<Long> dishIds, Date deliveryTime, String deliveryLocation) {
+        if (dishIds == null || dishIds.isEmpty()) {
             throw new IllegalArgumentException("菜品不存在");
         }
+        List<OrderRepository.IntakeRow> rows = orderRepository.findIntakeRows(customerId, merchantId, dishIds);
+        if (rows.isEmpty()) {
+            throw new IllegalArgumentException("顾客不存在");
+        }
+        OrderRepository.IntakeRow intake = rows.get(0);
+        if (intake.getMerchantId() == null) {
+            throw new IllegalArgumentException("商家不存在");
+        }
+        Map<Long, OrderRepository.IntakeRow> dishes = rows.stream()
+                .filter(row -> row.getDishId() != null)
+                .collect(Collectors.toMap(OrderRepository.IntakeRow::getDishId, Function.identity()));
+
+        // 同一菜品出现几次即点了几份，明细按第一次出现的顺序排列
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        for (Long dishId : dishIds) {
+            OrderRepository.IntakeRow dish = dishes.get(dishId);
+            if (dish == null || dish.getDishPrice() == null) {
+                throw new IllegalArgumentException("菜品不存在");
+            }
+            if (!merchantId.equals(dish.getDishMerchantId())) {
+                throw new IllegalArgumentException("菜品不属于该商家");
+            }
+            quantities.merge(dishId, 1, Integer::sum);
+        }
+        List<OrderItem> items = new ArrayList<>(quantities.size());
+        long totalCents = 0;
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            OrderRepository.IntakeRow dish = dishes.get(entry.getKey());
+            OrderItem item = OrderItem.of(dish.getDishId(), dish.getDishName(), dish.getDishPrice(), entry.getValue());
+            items.add(item);
+            totalCents += item.subtotalCents();
+        }
 
-        // 计算总价
-        BigDecimal totalPrice = dishes.stream()
-                .map(Dish::getPrice)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        Customer customer = new Customer();
+        customer.setId(intake.getCustomerId());
+        customer.setUsername(intake.getCustomerName());
+        Merchant merchant = new Merchant();
+        merchant.setId(intake.getMerchantId());
+        merchant.setMerchantName(intake.getMerchantName());
 
         Order order = new Order();
         order.setCustomer(customer);
         order.setMerchant(merchant);
-        order.setDishes(dishes);
+        order.setItems(items);
         order.setDeliveryTime(deliveryTime);
         order.setDeliveryLocation(deliveryLocation);
         order.setOrderTime(new Date());
         order.setStatus(OrderStatus.PENDING_CONFIRMATION);
-        order.setTotalPrice(totalPrice);
+        order.setTotalPrice(OrderItem.fromCents(totalCents));
+
+        return order;
+    }
 
-        return orderRepository.save(order);
+    /**
+     * 按幂等键创建订单：同一顾客用同一个键重复提交（如网络超时后重试）只创建一次，返回第一次创建的订单
+     * <p>
+     * 不能在事务中调用，订单和幂等键在 IdempotencyTemplate 开启的同一个事务中写入。
+     * @throws IllegalStateException 该键已用于参数不同的下单请求
+     */
+    public Order createOrder(Long customerId, Long merchantId, List<Long> dishIds, Date deliveryTime,
+                             String deliveryLocation, String idempotencyKey) {
+        return idempotency.execute("createOrder", customerId, idempotencyKey,
+                IdempotencyTemplate.fingerprint(merchantId, dishIds, deliveryTime, deliveryLocation),
+                () -> createOrder(customerId, merchantId, dishIds, deliveryTime, deliveryLocation),
+                Order::getId,
+                orderId -> orderRepository.findDetailById(orderId)
+                        .orElseThrow(() -> new IllegalArgumentException("订单不存在")));
     }
 
     /**
@@ -114,8 +378,46 @@ public class CustomerServiceImpl implements CustomerService {
         );
     }
 
+    /**
+     * 获取顾客的所有订单，withTotal 为 false 时不执行 COUNT 查询，总数取缓存的近似值
+     */
+    public PageResponse<Order> getMyOrders(Long customerId, int page, int size, boolean withTotal) {
+        if (withTotal) {
+            return getMyOrders(customerId, page, size);
+        }
+        Customer customer = customerRepository.findById(customerId)
+                .orElseThrow(() -> new IllegalArgumentException("顾客不存在"));
+
+        Pageable pageable = PageRequest.of(page, size, Sort.by("orderTime").descending());
+        Slice<Order> orderSlice = orderRepository.findSliceByCustomer(customer, pageable);
+        long total = countCache.get("customer-orders", customerId, () -> orderRepository.countByCustomer(customer));
+        return PageResponse.ofSlice(orderSlice, total);
+    }
+
+    /**
+     * 获取顾客的所有订单，游标分页，不执行 COUNT 查询
+     * @param customerId 顾客ID
+     * @param after 上一页返回的游标，为空表示第一页
+     * @param size 每页大小
+     * @return 订单列表和下一页游标
+     */
+    public PageResponse<Order> getMyOrders(Long customerId, String after, int size) {
+        if (size <= 0 || size > PageResponse.MAX_CURSOR_SIZE) {
+            throw new IllegalArgumentException("分页参数无效");
+        }
+        PageCursor cursor = PageCursor.decodeTimed(after);
+        Customer customer = customerRepository.findById(customerId)
+                .orElseThrow(() -> new IllegalArgumentException("顾客不存在"));
+
+        Limit limit = Limit.of(size + 1);
+        List<Order> orders = cursor == null
+                ? orderRepository.findByCustomerOrderByOrderTimeDescIdDesc(customer, limit)
+                : orderRepository.findByCustomerBefore(customer, cursor.date(), cursor.id(), limit);
+        return PageResponse.ofCursor(orders, size, order -> PageCursor.of(order.getOrderTime(), order.getId()));
+    }
+
     public Order getOrderDetails(Long customerId, Long orderId) {
-        Order order = orderRepository.findById(orderId)
+        Order order = orderRepository.findDetailById(orderId)
                 .orElseThrow(() -> new IllegalArgumentException("订单不存在"));
 
         if (!order.getCustomer().getId().equals(customerId)) {
@@ -125,38 +427,73 @@ public class CustomerServiceImpl implements CustomerService {
         return order;
     }
 
-    @Transactional
-    public Review reviewOrder(Long customerId, Long orderId, int rating, String comment) {
-        Order order = orderRepository.findById(orderId)
+    // 订阅时只校验订单归属，之后的状态由订单状态变更事件推送，不再查询订单
+    public SseEmitter subscribeOrderStatus(Long customerId, Long orderId, String lastEventId) {
+        Long ownerId = orderRepository.findCustomerIdById(orderId)
                 .orElseThrow(() -> new IllegalArgumentException("订单不存在"));
 
-        if (!order.getCustomer().getId().equals(customerId)) {
-            throw new IllegalArgumentException("无权评价该订单");
+        if (!ownerId.equals(customerId)) {
+            throw new IllegalArgumentException("无权访问该订单");
         }
 
-        if (order.getStatus() != OrderStatus.DELIVERED && order.getStatus() != OrderStatus.REVIEWED) {
-            throw new IllegalArgumentException("订单尚未送达，无法评价");
-        }
+        return orderStatusStream.subscribe(orderId, lastEventId,
+                () -> orderRepository.findStatusById(orderId).orElse(null));
+    }
 
-        Review review;
-        if (order.getReview() != null) {
-            review = order.getReview();
-            review.setRating(rating);
-            review.setComment(comment);
-            review.setReviewTime(new Date());
-        } else {
-            review = new Review();
-            review.setOrder(order);
-            review.setRating(rating);
-            review.setComment(comment);
-            review.setReviewTime(new Date());
-            order.setReview(review);
-            order.setStatus(OrderStatus.REVIEWED);
-        }
+    /**
+     * 按幂等键评价订单，同一顾客用同一个键重复提交只评价一次，返回第一次的评价
+     * <p>
+     * 评价在幂等键的事务中只执行一次，版本冲突时不在内部重试，由客户端用同一个键重试。
+     * @throws IllegalStateException 该键已用于参数不同的评价请求
+     */
+    public Review reviewOrder(Long customerId, Long orderId, int rating, String comment, String idempotencyKey) {
+        return idempotency.execute("reviewOrder", customerId, idempotencyKey,
+                IdempotencyTemplate.fingerprint(orderId, rating, comment),
+                () -> reviewOrder(customerId, orderId, rating, comment),
+                Review::getId,
+                reviewId -> reviewRepository.findById(reviewId)
+                        .orElseThrow(() -> new IllegalArgumentException("评价不存在")));
+    }
+
+    // 首次评价会修改订单状态，与其他请求并发修改同一订单发生版本冲突时，重新读取订单后再评价
+    public Review reviewOrder(Long customerId, Long orderId, int rating, String comment) {
+        return optimisticRetry.execute("reviewOrder", () -> {
+            Order order = orderRepository.findById(orderId)
+                    .orElseThrow(() -> new IllegalArgumentException("订单不存在"));
+
+            if (!order.getCustomer().getId().equals(customerId)) {
+                throw new IllegalArgumentException("无权评价该订单");
+            }
+
+            if (order.getStatus() != OrderStatus.DELIVERED && order.getStatus() != OrderStatus.REVIEWED) {
+                throw new IllegalArgumentException("订单尚未送达，无法评价");
+            }
+
+            Review review;
+            if (order.getReview() != null) {
+                review = order.getReview();
+                review.setRating(rating);
+                review.setComment(comment);
+                review.setReviewTime(new Date());
+            } else {
+                review = new Review();
+                review.setOrder(order);
+                review.setRating(rating);
+                review.setComment(comment);
+                review.setReviewTime(new Date());
+                order.setReview(review);
+                // 首次评价不经过状态机的条件更新，由版本号保证只提交一次；
+                // 与状态机一样写入订单事件发件箱并发布状态变更事件，订单状态推送、超时任务等在提交后收到 REVIEWED
+                OrderStatus from = order.getStatus();
+                orderEventRepository.save(OrderEvent.of(orderId, from, OrderStatus.REVIEWED));
+                eventPublisher.publishEvent(new OrderStatusChangedEvent(orderId, order.getMerchant().getId(), from, OrderStatus.REVIEWED));
+                order.setStatus(OrderStatus.REVIEWED);
+            }
 
-        reviewRepository.save(review);
-        orderRepository.save(order);
+            reviewRepository.save(review);
+            orderRepository.save(order);
 
-        return review;
+            return review;
+        });
     }
 }
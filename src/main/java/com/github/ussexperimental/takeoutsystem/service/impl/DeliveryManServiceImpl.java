@@ -1,19 +1,36 @@
 package com.github.ussexperimental.takeoutsystem.service.impl;
 
+import com.github.ussexperimental.takeoutsystem.cache.ApproximateCountCache;
+import com.github.ussexperimental.takeoutsystem.dto.OrderSummary;
+import com.github.ussexperimental.takeoutsystem.dto.PageCursor;
 import com.github.ussexperimental.takeoutsystem.dto.PageResponse;
 import com.github.ussexperimental.takeoutsystem.entity.DeliveryMan;
 import com.github.ussexperimental.takeoutsystem.entity.Order;
 import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+import com.github.ussexperimental.takeoutsystem.event.UserDeletedEvent;
+import com.github.ussexperimental.takeoutsystem.order.DispatchPool;
+import com.github.ussexperimental.takeoutsystem.order.OrderStateMachine;
 import com.github.ussexperimental.takeoutsystem.repository.DeliveryManRepository;
 import com.github.ussexperimental.takeoutsystem.repository.OrderRepository;
 import com.github.ussexperimental.takeoutsystem.service.DeliveryManService;
+import com.github.ussexperimental.takeoutsystem.stream.AvailableOrderStream;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class DeliveryManServiceImpl implements DeliveryManService {
@@ -24,18 +41,50 @@ public class DeliveryManServiceImpl implements DeliveryManService {
     @Autowired
     private OrderRepository orderRepository;
 
+    @Autowired
+    private ApproximateCountCache countCache;
+
+    @Autowired
+    private OrderStateMachine orderStateMachine;
+
+    @Autowired
+    private DispatchPool dispatchPool;
+
+    @Autowired
+    private AvailableOrderStream availableOrderStream;
+
+    @Value("${deliveryman.known.ttl-seconds:300}")
+    private long knownTtlSeconds = 300;
+
+    @Value("${deliveryman.known.max-entries:10000}")
+    private int knownMaxEntries = 10000;
+
+    // 已验证存在的外卖员 -> 验证时间（纳秒），轮询可接单列表时不再逐次查询；接单等写操作仍会查询外卖员
+    // 本节点删除用户时立即移除，其他节点删除的在 knownTtlSeconds 后重新验证
+    // accessOrder = true，按访问顺序排列，实现 LRU；所有访问在 synchronized (knownDeliveryMen) 中进行
+    private final LinkedHashMap<Long, Long> knownDeliveryMen = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+            return size() > knownMaxEntries;
+        }
+    };
+
     /**
      * 查看可接单列表，获取所有状态为 REQUESTING_DELIVERY 且未分配送餐员的订单
+     * 可接单池加载完成后从内存读取，不查询数据库
      *
      * @param deliveryManId 外卖员ID
      * @param page          页码（从0开始）
      * @param size          每页大小
      * @return 可接单的订单分页数据
      */
-    public PageResponse<Order> viewAvailableOrders(Long deliveryManId, int page, int size) {
-        // 验证外卖员是否存在
-        DeliveryMan deliveryMan = deliveryManRepository.findById(deliveryManId)
-                .orElseThrow(() -> new IllegalArgumentException("外卖员不存在"));
+    public PageResponse<OrderSummary> viewAvailableOrders(Long deliveryManId, int page, int size) {
+        checkDeliveryMan(deliveryManId);
+
+        // 可接单池加载完成后直接读取内存
+        if (dispatchPool.isReady()) {
+            return dispatchPool.page(page, size);
+        }
 
         // 定义分页请求，按订单时间降序排序
         Pageable pageable = PageRequest.of(page, size, Sort.by("orderTime").descending());
@@ -50,50 +99,85 @@ public class DeliveryManServiceImpl implements DeliveryManService {
                 orderPage.getTotalElements(),
                 orderPage.getTotalPages(),
                 orderPage.isLast()
-        );
+        ).map(OrderSummary::from);
+    }
+
+    /**
+     * 订阅可接单订单的推送（SSE），推送新的可接单订单和被接走的订单
+     *
+     * @param deliveryManId 外卖员ID
+     * @return SSE 连接
+     */
+    public SseEmitter subscribeAvailableOrders(Long deliveryManId) {
+        checkDeliveryMan(deliveryManId);
+        return availableOrderStream.subscribe();
+    }
+
+    // 验证外卖员是否存在，验证过的外卖员在过期前不再查询
+    private void checkDeliveryMan(Long deliveryManId) {
+        long now = System.nanoTime();
+        synchronized (knownDeliveryMen) {
+            Long verifiedAt = knownDeliveryMen.get(deliveryManId);
+            if (verifiedAt != null && now - verifiedAt < TimeUnit.SECONDS.toNanos(knownTtlSeconds)) {
+                return;
+            }
+        }
+        if (!deliveryManRepository.existsById(deliveryManId)) {
+            throw new IllegalArgumentException("外卖员不存在");
+        }
+        synchronized (knownDeliveryMen) {
+            knownDeliveryMen.put(deliveryManId, now);
+        }
+    }
+
+    // 用户删除提交后不再视为已验证的外卖员
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserDeleted(UserDeletedEvent event) {
+        synchronized (knownDeliveryMen) {
+            knownDeliveryMen.remove(event.userId());
+        }
     }
 
-    // 确认取餐
+    // 确认取餐（抢单）：只有待接单且尚未分配送餐员的订单会被更新，多人同时接单时只有一人成功
     @Transactional
     public Order confirmPickup(Long deliveryManId, Long orderId) {
         DeliveryMan deliveryMan = deliveryManRepository.findById(deliveryManId)
                 .orElseThrow(() -> new IllegalArgumentException("外卖员不存在"));
 
-        Order order = orderRepository.findById(orderId)
-                .orElseThrow(() -> new IllegalArgumentException("订单不存在"));
-
-        if (order.getStatus() != OrderStatus.REQUESTING_DELIVERY) {
+        // 先从可接单池摘除，其他外卖员的列表中立即不再出现该订单；没摘到说明已被接单或不可接单，不必再发起更新
+        boolean claimed = dispatchPool.claim(orderId);
+        if ((!claimed && dispatchPool.isReady())
+                || !orderStateMachine.assignDeliveryMan(orderId, deliveryMan, OrderStatus.REQUESTING_DELIVERY, OrderStatus.DELIVERING)) {
+            // 接单失败时才读取订单，确定失败原因
+            Order order = orderRepository.findById(orderId)
+                    .orElseThrow(() -> new IllegalArgumentException("订单不存在"));
+            if (order.getDeliveryMan() != null) {
+                throw new IllegalStateException("订单已被其他外卖员接单");
+            }
             throw new IllegalArgumentException("订单当前状态无法取餐");
         }
 
-        if (order.getDeliveryMan() != null) {
-            throw new IllegalArgumentException("订单已被其他外卖员接单");
-        }
-
-        order.setDeliveryMan(deliveryMan);
-        order.setStatus(OrderStatus.DELIVERING);
-        return orderRepository.save(order);
+        return orderRepository.findById(orderId)
+                .orElseThrow(() -> new IllegalArgumentException("订单不存在"));
     }
 
     // 确认送达
     @Transactional
     public Order confirmDelivery(Long deliveryManId, Long orderId) {
-        DeliveryMan deliveryMan = deliveryManRepository.findById(deliveryManId)
+        deliveryManRepository.findById(deliveryManId)
                 .orElseThrow(() -> new IllegalArgumentException("外卖员不存在"));
 
-        Order order = orderRepository.findById(orderId)
-                .orElseThrow(() -> new IllegalArgumentException("订单不存在"));
-
-        if (order.getStatus() != OrderStatus.DELIVERING) {
-            throw new IllegalArgumentException("订单当前状态无法确认送达");
-        }
-
-        if (!order.getDeliveryMan().getId().equals(deliveryManId)) {
+        if (!orderStateMachine.transitionForDeliveryMan(orderId, deliveryManId, OrderStatus.DELIVERING, OrderStatus.DELIVERED)) {
+            Order order = orderRepository.findById(orderId)
+                    .orElseThrow(() -> new IllegalArgumentException("订单不存在"));
+            if (order.getStatus() != OrderStatus.DELIVERING) {
+                throw new IllegalArgumentException("订单当前状态无法确认送达");
+            }
             throw new IllegalArgumentException("该订单不属于当前外卖员");
         }
 
-        order.setStatus(OrderStatus.DELIVERED);
-        return orderRepository.save(order);
+        return orderRepository.findById(orderId)
+                .orElseThrow(() -> new IllegalArgumentException("订单不存在"));
     }
 
     /**
@@ -124,4 +208,43 @@ public class DeliveryManServiceImpl implements DeliveryManService {
                 orderPage.isLast()
         );
     }
+
+    /**
+     * 查看我的送餐订单，withTotal 为 false 时不执行 COUNT 查询，总数取缓存的近似值
+     */
+    public PageResponse<Order> viewMyDeliveries(Long deliveryManId, int page, int size, boolean withTotal) {
+        if (withTotal) {
+            return viewMyDeliveries(deliveryManId, page, size);
+        }
+        DeliveryMan deliveryMan = deliveryManRepository.findById(deliveryManId)
+                .orElseThrow(() -> new IllegalArgumentException("外卖员不存在"));
+
+        Pageable pageable = PageRequest.of(page, size, Sort.by("orderTime").descending());
+        Slice<Order> orderSlice = orderRepository.findSliceByDeliveryMan(deliveryMan, pageable);
+        long total = countCache.get("deliveryman-orders", deliveryManId, () -> orderRepository.countByDeliveryMan(deliveryMan));
+        return PageResponse.ofSlice(orderSlice, total);
+    }
+
+    /**
+     * 查看我的送餐订单，游标分页，不执行 COUNT 查询
+     *
+     * @param deliveryManId 外卖员ID
+     * @param after         上一页返回的游标，为空表示第一页
+     * @param size          每页大小
+     * @return 当前外卖员的送餐订单和下一页游标
+     */
+    public PageResponse<Order> viewMyDeliveries(Long deliveryManId, String after, int size) {
+        if (size <= 0 || size > PageResponse.MAX_CURSOR_SIZE) {
+            throw new IllegalArgumentException("分页参数无效");
+        }
+        PageCursor cursor = PageCursor.decodeTimed(after);
+        DeliveryMan deliveryMan = deliveryManRepository.findById(deliveryManId)
+                .orElseThrow(() -> new IllegalArgumentException("外卖员不存在"));
+
+        Limit limit = Limit.of(size + 1);
+        List<Order> orders = cursor == null
+                ? orderRepository.findByDeliveryManOrderByOrderTimeDescIdDesc(deliveryMan, limit)
+                : orderRepository.findByDeliveryManBefore(deliveryMan, cursor.date(), cursor.id(), limit);
+        return PageResponse.ofCursor(orders, size, order -> PageCursor.of(order.getOrderTime(), order.getId()));
+    }
 }
@@ -0,0 +1,297 @@
+package com.github.ussexperimental.takeoutsystem.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.ussexperimental.takeoutsystem.dto.DishCreateDTO;
+import com.github.ussexperimental.takeoutsystem.dto.DishImportResult;
+import com.github.ussexperimental.takeoutsystem.entity.IdSequences;
+import com.github.ussexperimental.takeoutsystem.event.DishChangedEvent;
+import com.github.ussexperimental.takeoutsystem.repository.IdSequenceRepository;
+import com.github.ussexperimental.takeoutsystem.repository.MerchantRepository;
+import com.github.ussexperimental.takeoutsystem.service.MenuImportService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量导入菜单
+ * <p>
+ * 请求体逐条解析，不整体读入内存；校验通过的菜品每 batch-size 条为一批，
+ * 每批在一个事务中用 JDBC 批量插入，单批失败只影响该批。
+ * 每批递增一次商家的菜单版本号，每个菜品照常发布 {@link DishChangedEvent}，菜单缓存和搜索索引在每批提交后更新。
+ */
+@Slf4j
+@Service
+public class MenuImportServiceImpl implements MenuImportService {
+
+    private static final String INSERT_DISH =
+            "insert into dish (id, merchant_id, name, price, description, image_url) values (?, ?, ?, ?, ?, ?)";
+
+    // 与 dish 表 varchar(255) 和 decimal(38, 2) 列一致
+    private static final int MAX_TEXT_LENGTH = 255;
+    private static final int MAX_PRICE_SCALE = 2;
+
+    @Autowired
+    private MerchantRepository merchantRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private IdSequenceRepository idSequenceRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${menu.import.batch-size:1000}")
+    private int batchSize = 1000;
+
+    @Value("${menu.import.max-errors:1000}")
+    private int maxErrors = 1000;
+
+    /**
+     * 导入 CSV 格式的菜单，列依次为 name,price,description,imageUrl，首行可为表头
+     * @param merchantId 商家ID
+     * @param reader 请求体
+     * @return 导入结果和出错的行
+     */
+    public DishImportResult importCsv(Long merchantId, Reader reader) throws IOException {
+        checkMerchant(merchantId);
+        Importer importer = new Importer(merchantId);
+        CsvRecordReader csv = new CsvRecordReader(new BufferedReader(reader));
+        boolean first = true;
+        while (true) {
+            List<String> fields;
+            try {
+                fields = csv.next();
+            } catch (IllegalArgumentException e) {
+                importer.fail(csv.recordLine(), e.getMessage());
+                break;
+            }
+            if (fields == null) {
+                break;
+            }
+            if (first && "name".equalsIgnoreCase(fields.get(0).trim())) {
+                first = false;
+                continue;
+            }
+            first = false;
+            try {
+                importer.add(csv.recordLine(),
+                        field(fields, 0),
+                        parsePrice(field(fields, 1)),
+                        field(fields, 2),
+                        field(fields, 3));
+            } catch (IllegalArgumentException e) {
+                importer.fail(csv.recordLine(), e.getMessage());
+            }
+        }
+        return importer.finish();
+    }
+
+    /**
+     * 导入 JSON Lines 格式的菜单，每行一个 {"name", "price", "description", "imageUrl"} 对象
+     * @param merchantId 商家ID
+     * @param reader 请求体
+     * @return 导入结果和出错的行
+     */
+    public DishImportResult importJsonLines(Long merchantId, Reader reader) throws IOException {
+        checkMerchant(merchantId);
+        Importer importer = new Importer(merchantId);
+        BufferedReader lines = new BufferedReader(reader);
+        long lineNumber = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                DishCreateDTO dish = objectMapper.readValue(line, DishCreateDTO.class);
+                if (dish.getMerchantId() != null && !dish.getMerchantId().equals(merchantId)) {
+                    throw new IllegalArgumentException("菜品所属商家与导入商家不一致");
+                }
+                importer.add(lineNumber, dish.getName(), dish.getPrice(), dish.getDescription(), dish.getImageUrl());
+            } catch (JsonProcessingException e) {
+                importer.fail(lineNumber, "JSON 格式错误");
+            } catch (IllegalArgumentException e) {
+                importer.fail(lineNumber, e.getMessage());
+            }
+        }
+        return importer.finish();
+    }
+
+    private void checkMerchant(Long merchantId) {
+        if (merchantId == null || !merchantRepository.existsById(merchantId)) {
+            throw new IllegalArgumentException("商家不存在");
+        }
+    }
+
+    private static String field(List<String> fields, int index) {
+        if (index >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(index).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static BigDecimal parsePrice(String price) {
+        if (price == null) {
+            return null;
+        }
+        try {
+            return new BigDecimal(price);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("价格格式错误");
+        }
+    }
+
+    private static Row validate(long line, String name, BigDecimal price, String description, String imageUrl) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("菜品名称不能为空");
+        }
+        if (name.length() > MAX_TEXT_LENGTH) {
+            throw new IllegalArgumentException("菜品名称过长");
+        }
+        if (price == null) {
+            throw new IllegalArgumentException("价格不能为空");
+        }
+        if (price.signum() < 0) {
+            throw new IllegalArgumentException("价格不能为负数");
+        }
+        if (price.stripTrailingZeros().scale() > MAX_PRICE_SCALE) {
+            throw new IllegalArgumentException("价格最多两位小数");
+        }
+        if (description != null && description.length() > MAX_TEXT_LENGTH) {
+            throw new IllegalArgumentException("菜品描述过长");
+        }
+        if (imageUrl != null && imageUrl.length() > MAX_TEXT_LENGTH) {
+            throw new IllegalArgumentException("图片地址过长");
+        }
+        return new Row(line, name.trim(), price, description, imageUrl);
+    }
+
+    private record Row(long line, String name, BigDecimal price, String description, String imageUrl) {
+    }
+
+    /**
+     * 一次导入的状态：当前批次和累计结果
+     */
+    private class Importer {
+
+        private final Long merchantId;
+
+        private final List<Row> batch = new ArrayList<>(batchSize);
+
+        private final DishImportResult result = new DishImportResult();
+
+        private final TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        Importer(Long merchantId) {
+            this.merchantId = merchantId;
+        }
+
+        void add(long line, String name, BigDecimal price, String description, String imageUrl) {
+            batch.add(validate(line, name, price, description, imageUrl));
+            if (batch.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        void fail(long line, String message) {
+            result.setFailed(result.getFailed() + 1);
+            if (result.getErrors().size() < maxErrors) {
+                result.getErrors().add(new DishImportResult.RowError(line, message));
+            } else {
+                result.setErrorsTruncated(true);
+            }
+        }
+
+        DishImportResult finish() {
+            flush();
+            return result;
+        }
+
+        private void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    long[] ids = insert(batch);
+                    merchantRepository.incrementMenuVersion(merchantId);
+                    for (int i = 0; i < ids.length; i++) {
+                        Row row = batch.get(i);
+                        eventPublisher.publishEvent(new DishChangedEvent(DishChangedEvent.Type.SAVED,
+                                ids[i], merchantId, row.name(), row.description(), row.price()));
+                    }
+                });
+                result.setImported(result.getImported() + batch.size());
+            } catch (DataAccessException e) {
+                log.warn("菜单导入批次写入失败，商家ID {}，起始行 {}", merchantId, batch.get(0).line(), e);
+                for (Row row : batch) {
+                    fail(row.line(), "写入数据库失败");
+                }
+            }
+            batch.clear();
+        }
+
+        // 主键从 id_sequence 按批预先分配，插入不依赖自增列，整批一次发送
+        private long[] insert(List<Row> rows) {
+            long firstId = idSequenceRepository.allocate(IdSequences.DISH, rows.size());
+            long[] ids = new long[rows.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = firstId + i;
+            }
+            jdbcTemplate.batchUpdate(INSERT_DISH, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement insert, int i) throws SQLException {
+                    Row row = rows.get(i);
+                    insert.setLong(1, ids[i]);
+                    insert.setLong(2, merchantId);
+                    insert.setString(3, row.name());
+                    insert.setBigDecimal(4, row.price());
+                    setNullableString(insert, 5, row.description());
+                    setNullableString(insert, 6, row.imageUrl());
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return rows.size();
+                }
+            });
+            return ids;
+        }
+    }
+
+    private static void setNullableString(PreparedStatement statement, int index, String value) throws SQLException {
+        if (value != null) {
+            statement.setString(index, value);
+        } else {
+            statement.setNull(index, Types.VARCHAR);
+        }
+    }
+}
@@ -1,26 +1,49 @@
 package com.github.ussexperimental.takeoutsystem.service.impl;
 
+import com.github.ussexperimental.takeoutsystem.cache.ApproximateCountCache;
+import com.github.ussexperimental.takeoutsystem.cache.MenuCache;
+import com.github.ussexperimental.takeoutsystem.dto.DishSales;
+import com.github.ussexperimental.takeoutsystem.dto.PageCursor;
+import com.github.ussexperimental.takeoutsystem.dto.OrderStatusChange;
 import com.github.ussexperimental.takeoutsystem.dto.PageResponse;
+import com.github.ussexperimental.takeoutsystem.dto.StageDuration;
 import com.github.ussexperimental.takeoutsystem.entity.DeliveryMan;
 import com.github.ussexperimental.takeoutsystem.entity.Dish;
 import com.github.ussexperimental.takeoutsystem.entity.Merchant;
 import com.github.ussexperimental.takeoutsystem.entity.Order;
+import com.github.ussexperimental.takeoutsystem.entity.OrderItem;
 import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+import com.github.ussexperimental.takeoutsystem.event.DishChangedEvent;
+import com.github.ussexperimental.takeoutsystem.order.OrderStateMachine;
 import com.github.ussexperimental.takeoutsystem.repository.DeliveryManRepository;
 import com.github.ussexperimental.takeoutsystem.repository.DishRepository;
 import com.github.ussexperimental.takeoutsystem.repository.MerchantRepository;
 import com.github.ussexperimental.takeoutsystem.repository.OrderRepository;
+import com.github.ussexperimental.takeoutsystem.repository.OrderStatusHistoryRepository;
+import com.github.ussexperimental.takeoutsystem.retry.OptimisticRetryTemplate;
 import com.github.ussexperimental.takeoutsystem.service.MerchantService;
+import com.github.ussexperimental.takeoutsystem.stream.MerchantOrderBoard;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class MerchantServiceImpl implements MerchantService {
@@ -37,6 +60,30 @@ public class MerchantServiceImpl implements MerchantService {
     @Autowired
     private DeliveryManRepository deliveryManRepository;
 
+    @Autowired
+    private MenuCache menuCache;
+
+    @Autowired
+    private ApproximateCountCache countCache;
+
+    @Autowired
+    private OrderStateMachine orderStateMachine;
+
+    @Autowired
+    private OptimisticRetryTemplate optimisticRetry;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private MerchantOrderBoard merchantOrderBoard;
+
+    @Autowired
+    private OrderStatusHistoryRepository orderStatusHistoryRepository;
+
+    @Value("${merchant.stage-durations.max-samples:10000}")
+    private int maxStageSamples = 10000;
+
     @Transactional
     public Dish addDish(Long merchantId, String name, BigDecimal price, String description, String imageUrl) {
         Merchant merchant = merchantRepository.findById(merchantId)
@@ -49,17 +96,26 @@ public class MerchantServiceImpl implements MerchantService {
         dish.setDescription(description);
         dish.setImageUrl(imageUrl);
 
-        return dishRepository.save(dish);
+        Dish savedDish = dishRepository.save(dish);
+        merchantRepository.incrementMenuVersion(merchantId);
+        eventPublisher.publishEvent(DishChangedEvent.saved(savedDish));
+        return savedDish;
     }
 
     public PageResponse<Dish> getMenu(Long merchantId, int page, int size) {
+        PageResponse<Dish> cached = menuCache.get(merchantId, page, size);
+        if (cached != null) {
+            return cached;
+        }
+        long version = menuCache.version(merchantId);
+
         Merchant merchant = merchantRepository.findById(merchantId)
                 .orElseThrow(() -> new IllegalArgumentException("商家不存在"));
 
         Pageable pageable = PageRequest.of(page, size, Sort.by("id").descending());
         Page<Dish> dishPage = dishRepository.findByMerchant(merchant, pageable);
 
-        return new PageResponse<>(
+        PageResponse<Dish> menu = new PageResponse<>(
                 dishPage.getContent(),
                 dishPage.getNumber(),
                 dishPage.getSize(),
@@ -67,27 +123,38 @@ public class MerchantServiceImpl implements MerchantService {
                 dishPage.getTotalPages(),
                 dishPage.isLast()
         );
+        menuCache.put(merchantId, page, size, version, menu);
+        return menu;
     }
 
-    @Transactional
-    public Dish updateDish(Long dishId, String name, BigDecimal price, String description, String imageUrl) {
-        Dish dish = dishRepository.findById(dishId)
-                .orElseThrow(() -> new IllegalArgumentException("菜品不存在"));
-
-        if (name != null && !name.isEmpty()) {
-            dish.setName(name);
-        }
-        if (price != null) {
-            dish.setPrice(price);
-        }
-        if (description != null && !description.isEmpty()) {
-            dish.setDescription(description);
-        }
-        if (imageUrl != null && !imageUrl.isEmpty()) {
-            dish.setImageUrl(imageUrl);
-        }
+    public String menuETag(Long merchantId, int page, int size) {
+        return menuCache.eTag(merchantId, page, size);
+    }
 
-        return dishRepository.save(dish);
+    // 与其他请求并发修改同一菜品发生版本冲突时，重新读取菜品后再修改
+    public Dish updateDish(Long dishId, String name, BigDecimal price, String description, String imageUrl) {
+        return optimisticRetry.execute("updateDish", () -> {
+            Dish dish = dishRepository.findById(dishId)
+                    .orElseThrow(() -> new IllegalArgumentException("菜品不存在"));
+
+            if (name != null && !name.isEmpty()) {
+                dish.setName(name);
+            }
+            if (price != null) {
+                dish.setPrice(price);
+            }
+            if (description != null && !description.isEmpty()) {
+                dish.setDescription(description);
+            }
+            if (imageUrl != null && !imageUrl.isEmpty()) {
+                dish.setImageUrl(imageUrl);
+            }
+
+            Dish savedDish = dishRepository.save(dish);
+            merchantRepository.incrementMenuVersion(savedDish.getMerchant().getId());
+            eventPublisher.publishEvent(DishChangedEvent.saved(savedDish));
+            return savedDish;
+        });
     }
 
     @Transactional
@@ -96,6 +163,8 @@ public class MerchantServiceImpl implements MerchantService {
                 .orElseThrow(() -> new IllegalArgumentException("菜品不存在"));
 
         dishRepository.delete(dish);
+        merchantRepository.incrementMenuVersion(dish.getMerchant().getId());
+        eventPublisher.publishEvent(DishChangedEvent.deleted(dish));
     }
 
     public PageResponse<Order> viewSales(Long merchantId, Date startDate, Date endDate, int page, int size) {
@@ -121,6 +190,50 @@ public class MerchantServiceImpl implements MerchantService {
         );
     }
 
+    public PageResponse<Order> viewSales(Long merchantId, Date startDate, Date endDate, int page, int size, boolean withTotal) {
+        if (withTotal) {
+            return viewSales(merchantId, startDate, endDate, page, size);
+        }
+        Merchant merchant = merchantRepository.findById(merchantId)
+                .orElseThrow(() -> new IllegalArgumentException("商家不存在"));
+
+        Pageable pageable = PageRequest.of(page, size, Sort.by("orderTime").descending());
+
+        Slice<Order> orderSlice;
+        long total;
+        if (startDate != null && endDate != null) {
+            orderSlice = orderRepository.findSliceByMerchantAndOrderTimeBetween(merchant, startDate, endDate, pageable);
+            // 时间范围各不相同，缓存命中率低，不缓存近似总数
+            total = ApproximateCountCache.UNKNOWN;
+        } else {
+            orderSlice = orderRepository.findSliceByMerchant(merchant, pageable);
+            total = countCache.get("merchant-orders", merchantId, () -> orderRepository.countByMerchant(merchant));
+        }
+        return PageResponse.ofSlice(orderSlice, total);
+    }
+
+    public PageResponse<Order> viewSales(Long merchantId, Date startDate, Date endDate, String after, int size) {
+        if (size <= 0 || size > PageResponse.MAX_CURSOR_SIZE) {
+            throw new IllegalArgumentException("分页参数无效");
+        }
+        PageCursor cursor = PageCursor.decodeTimed(after);
+        Merchant merchant = merchantRepository.findById(merchantId)
+                .orElseThrow(() -> new IllegalArgumentException("商家不存在"));
+
+        Limit limit = Limit.of(size + 1);
+        List<Order> orders;
+        if (startDate != null && endDate != null) {
+            orders = cursor == null
+                    ? orderRepository.findByMerchantAndOrderTimeBetweenOrderByOrderTimeDescIdDesc(merchant, startDate, endDate, limit)
+                    : orderRepository.findByMerchantAndOrderTimeBetweenBefore(merchant, startDate, endDate, cursor.date(), cursor.id(), limit);
+        } else {
+            orders = cursor == null
+                    ? orderRepository.findByMerchantOrderByOrderTimeDescIdDesc(merchant, limit)
+                    : orderRepository.findByMerchantBefore(merchant, cursor.date(), cursor.id(), limit);
+        }
+        return PageResponse.ofCursor(orders, size, order -> PageCursor.of(order.getOrderTime(), order.getId()));
+    }
+
     public PageResponse<Order> viewPendingOrders(Long merchantId, int page, int size) {
         Merchant merchant = merchantRepository.findById(merchantId)
                 .orElseThrow(() -> new IllegalArgumentException("商家不存在"));
@@ -138,40 +251,105 @@ public class MerchantServiceImpl implements MerchantService {
         );
     }
 
+    // 看板连接后由推送更新，替代反复刷新待确认订单列表
+    public SseEmitter subscribeOrderBoard(Long merchantId) {
+        if (!merchantRepository.existsById(merchantId)) {
+            throw new IllegalArgumentException("商家不存在");
+        }
+        return merchantOrderBoard.subscribe(merchantId);
+    }
+
     @Transactional
     public Order acceptOrder(Long merchantId, Long orderId) {
-        Merchant merchant = merchantRepository.findById(merchantId)
+        merchantRepository.findById(merchantId)
                 .orElseThrow(() -> new IllegalArgumentException("商家不存在"));
 
-        Order order = orderRepository.findById(orderId)
-                .orElseThrow(() -> new IllegalArgumentException("订单不存在"));
-
-        if (!order.getMerchant().getId().equals(merchantId)) {
-            throw new IllegalArgumentException("无权接受该订单");
-        }
-
-        if (order.getStatus() != OrderStatus.PENDING_CONFIRMATION) {
+        if (!orderStateMachine.transitionForMerchant(orderId, merchantId, OrderStatus.PENDING_CONFIRMATION, OrderStatus.PREPARING)) {
+            // 更新失败时才读取订单，确定失败原因
+            Order order = orderRepository.findById(orderId)
+                    .orElseThrow(() -> new IllegalArgumentException("订单不存在"));
+            if (!order.getMerchant().getId().equals(merchantId)) {
+                throw new IllegalArgumentException("无权接受该订单");
+            }
             throw new IllegalArgumentException("订单当前状态无法接受");
         }
 
-        order.setStatus(OrderStatus.PREPARING);
-        return orderRepository.save(order);
+        return orderRepository.findById(orderId)
+                .orElseThrow(() -> new IllegalArgumentException("订单不存在"));
     }
 
+    // 指定送餐员：只有备餐中且尚未分配送餐员的订单会被更新
     @Transactional
     public Order requestDelivery(Long orderId, Long deliveryManId) {
-        Order order = orderRepository.findById(orderId)
-                .orElseThrow(() -> new IllegalArgumentException("订单不存在"));
+        DeliveryMan deliveryMan = deliveryManRepository.findById(deliveryManId)
+                .orElseThrow(() -> new IllegalArgumentException("送餐员不存在"));
 
-        if (order.getStatus() != OrderStatus.PREPARING) {
+        if (!orderStateMachine.assignDeliveryMan(orderId, deliveryMan, OrderStatus.PREPARING, OrderStatus.DELIVERING)) {
+            Order order = orderRepository.findById(orderId)
+                    .orElseThrow(() -> new IllegalArgumentException("订单不存在"));
+            if (order.getStatus() == OrderStatus.PREPARING) {
+                throw new IllegalStateException("订单已分配送餐员");
+            }
             throw new IllegalArgumentException("订单当前状态无法请求送餐");
         }
 
-        DeliveryMan deliveryMan = deliveryManRepository.findById(deliveryManId)
-                .orElseThrow(() -> new IllegalArgumentException("送餐员不存在"));
+        return orderRepository.findById(orderId)
+                .orElseThrow(() -> new IllegalArgumentException("订单不存在"));
+    }
+
+    // 状态历史由发件箱异步写入，刚发生的变更可能要稍后才出现在时间线中
+    public List<OrderStatusChange> getOrderTimeline(Long merchantId, Long orderId) {
+        Long ownerId = orderRepository.findMerchantIdById(orderId)
+                .orElseThrow(() -> new IllegalArgumentException("订单不存在"));
+        if (!ownerId.equals(merchantId)) {
+            throw new IllegalArgumentException("无权访问该订单");
+        }
+
+        return orderStatusHistoryRepository.findByOrderIdOrderByChangedAtAscIdAsc(orderId).stream()
+                .map(OrderStatusChange::from)
+                .toList();
+    }
+
+    // 统计最近 days 天内离开各状态的订单在该状态停留的时长，按状态先后排列
+    // 次数和最大值由数据库聚合；每个状态只读取最近的 max-samples 个样本计算百分位，读取和排序的数据量有上限
+    public List<StageDuration> getStageDurations(Long merchantId, int days) {
+        if (days < 1 || days > 90) {
+            throw new IllegalArgumentException("统计天数无效");
+        }
+        if (!merchantRepository.existsById(merchantId)) {
+            throw new IllegalArgumentException("商家不存在");
+        }
+
+        Date since = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days));
+        Map<OrderStatus, StageDuration> durations = new EnumMap<>(OrderStatus.class);
+        for (OrderStatusHistoryRepository.StageTotal total : orderStatusHistoryRepository.sumStages(merchantId, since)) {
+            List<Long> millis = new ArrayList<>(orderStatusHistoryRepository.findStageMillis(
+                    merchantId, total.getStage(), since, Limit.of(maxStageSamples)));
+            if (millis.isEmpty()) {
+                continue;
+            }
+            Collections.sort(millis);
+            durations.put(total.getStage(), StageDuration.of(total.getStage(), total.getCount().intValue(), total.getMaxMillis(), millis));
+        }
+        return new ArrayList<>(durations.values());
+    }
+
+    /**
+     * 按菜品统计一段时间内的销量和销售额，按销售额降序
+     * <p>
+     * 金额是下单时的单价快照，菜品之后调价或删除不影响统计；已取消的订单不计入
+     */
+    public List<DishSales> getDishSales(Long merchantId, Date startDate, Date endDate) {
+        if (startDate == null || endDate == null || startDate.after(endDate)) {
+            throw new IllegalArgumentException("统计时间范围无效");
+        }
+        if (!merchantRepository.existsById(merchantId)) {
+            throw new IllegalArgumentException("商家不存在");
+        }
 
-        order.setDeliveryMan(deliveryMan);
-        order.setStatus(OrderStatus.DELIVERING);
-        return orderRepository.save(order);
+        return orderRepository.sumDishSales(merchantId, startDate, endDate, OrderStatus.CANCELLED).stream()
+                .map(row -> new DishSales(row.getDishId(), row.getDishName(), row.getQuantity(),
+                        OrderItem.fromCents(row.getRevenueCents())))
+                .toList();
     }
 }
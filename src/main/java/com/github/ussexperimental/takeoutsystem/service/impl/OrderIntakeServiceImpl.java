@@ -0,0 +1,322 @@
+package com.github.ussexperimental.takeoutsystem.service.impl;
+
+import com.github.ussexperimental.takeoutsystem.dto.OrderCreateDTO;
+import com.github.ussexperimental.takeoutsystem.dto.OrderCreateResult;
+import com.github.ussexperimental.takeoutsystem.dto.OrderIntakeStatus;
+import com.github.ussexperimental.takeoutsystem.dto.OrderIntakeStatus.State;
+import com.github.ussexperimental.takeoutsystem.entity.Order;
+import com.github.ussexperimental.takeoutsystem.service.CustomerService;
+import com.github.ussexperimental.takeoutsystem.service.OrderIntakeService;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 异步下单：请求只做参数检查后放入有界队列，立即返回令牌，由写入线程批量创建订单
+ * <p>
+ * 抢购时同步下单的请求线程都在等待数据库，Tomcat 线程耗尽后连查询请求也无法处理。
+ * 异步下单时请求线程只入队，写入线程每次取出队列中已有的请求（最多 batch-size 个），
+ * 通过 {@link CustomerService#createOrders} 在一个事务中校验并按批插入，一次提交（组提交）；
+ * 负载越高每批越大，每笔订单分摊的提交开销越小，空闲时来一个写一个，不额外等待。
+ * 批量写入失败（如数据库异常）时逐个重新创建，一个请求出错不影响同批的其他请求。
+ * <p>
+ * 队列满时拒绝下单（{@link IllegalStateException}），由客户端稍后重试，而不是无限排队占用内存。
+ * 处理结果在内存中保留 result-retention-seconds，顾客凭令牌查询；订单创建后可以订阅订单状态推送。
+ * 排队中的请求只在内存中，实例崩溃时丢失，查询令牌返回不存在，顾客需重新下单。
+ * <p>
+ * 未启用（order.intake.async-enabled=false）时同步创建订单，直接返回已创建的状态。
+ * <p>
+ * 指标：order.intake.queue.depth（排队中的请求数）、order.intake.accepted（入队数）、
+ * order.intake.rejected（队列满被拒绝的请求数）、order.intake.created / invalid / failed（创建成功、校验不通过、写入失败的请求数）、
+ * order.intake.batch.size（每批写入的请求数）。
+ */
+@Slf4j
+@Service
+public class OrderIntakeServiceImpl implements OrderIntakeService, MeterBinder {
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Value("${order.intake.async-enabled:false}")
+    private boolean asyncEnabled = false;
+
+    @Value("${order.intake.queue-capacity:10000}")
+    private int queueCapacity = 10000;
+
+    @Value("${order.intake.writers:2}")
+    private int writers = 2;
+
+    @Value("${order.intake.batch-size:100}")
+    private int batchSize = 100;
+
+    @Value("${order.intake.result-retention-seconds:600}")
+    private long resultRetentionSeconds = 600;
+
+    private BlockingQueue<Ticket> queue;
+
+    // 令牌 -> 请求及其处理结果
+    private final Map<String, Ticket> tickets = new ConcurrentHashMap<>();
+
+    private final List<Thread> threads = new ArrayList<>();
+
+    private final LongAdder accepted = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder created = new LongAdder();
+
+    private final LongAdder invalid = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private DistributionSummary batchSizes;
+
+    private volatile boolean running;
+
+    private volatile boolean accepting;
+
+    @PostConstruct
+    public void init() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    // 在表结构和主键序列初始化之后启动
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (!asyncEnabled || running) {
+            return;
+        }
+        running = true;
+        accepting = true;
+        for (int i = 0; i < writers; i++) {
+            Thread thread = new Thread(this::run, "order-intake-writer-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+    }
+
+    /**
+     * 停止入队，等待写入线程写完队列中的请求
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        accepting = false;
+        running = false;
+        for (Thread thread : threads) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        threads.forEach(Thread::interrupt);
+        threads.clear();
+    }
+
+    /**
+     * 提交下单请求
+     * @return 排队中的状态；未启用异步下单时为已创建的状态
+     * @throws IllegalArgumentException 请求参数不完整，或者（同步创建时）校验不通过
+     * @throws IllegalStateException 排队已满
+     */
+    public OrderIntakeStatus submit(OrderCreateDTO request) {
+        if (request.getCustomerId() == null || request.getMerchantId() == null
+                || request.getDishIds() == null || request.getDishIds().isEmpty()) {
+            throw new IllegalArgumentException("下单参数不完整");
+        }
+        if (!accepting) {
+            Order order = customerService.createOrder(request.getCustomerId(), request.getMerchantId(),
+                    request.getDishIds(), request.getDeliveryTime(), request.getDeliveryLocation());
+            return new OrderIntakeStatus(null, State.CREATED, order.getId(), null);
+        }
+
+        Ticket ticket = new Ticket(UUID.randomUUID().toString(), request);
+        tickets.put(ticket.token, ticket);
+        if (!queue.offer(ticket)) {
+            tickets.remove(ticket.token);
+            rejected.increment();
+            throw new IllegalStateException("下单排队已满");
+        }
+        accepted.increment();
+        return ticket.status();
+    }
+
+    /**
+     * 查询异步下单的处理状态
+     * @throws IllegalArgumentException 令牌不存在、已过期或不属于该顾客
+     */
+    public OrderIntakeStatus getStatus(Long customerId, String token) {
+        Ticket ticket = token != null ? tickets.get(token) : null;
+        if (ticket == null || !ticket.request.getCustomerId().equals(customerId)) {
+            throw new IllegalArgumentException("下单令牌不存在");
+        }
+        return ticket.status();
+    }
+
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("order.intake.queue.depth", this, OrderIntakeServiceImpl::queueDepth)
+                .register(registry);
+        FunctionCounter.builder("order.intake.accepted", accepted, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("order.intake.rejected", rejected, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("order.intake.created", created, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("order.intake.invalid", invalid, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("order.intake.failed", failed, LongAdder::sum)
+                .register(registry);
+        batchSizes = DistributionSummary.builder("order.intake.batch.size")
+                .register(registry);
+    }
+
+    /**
+     * 取出队列中已有的请求（最多 batch-size 个）并写入
+     * @param timeoutMillis 队列为空时最多等待的毫秒数
+     * @return 本批请求数，0 表示队列为空
+     */
+    int writeBatch(long timeoutMillis) throws InterruptedException {
+        Ticket first = queue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return 0;
+        }
+        List<Ticket> batch = new ArrayList<>(batchSize);
+        batch.add(first);
+        queue.drainTo(batch, batchSize - 1);
+        write(batch);
+        if (batchSizes != null) {
+            batchSizes.record(batch.size());
+        }
+        return batch.size();
+    }
+
+    // 清除保留时间已过的处理结果
+    void expire() {
+        long deadline = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(resultRetentionSeconds);
+        tickets.values().removeIf(ticket -> ticket.state != State.QUEUED && ticket.completedAt < deadline);
+    }
+
+    private void run() {
+        long nextExpire = 0;
+        while (running || !queue.isEmpty()) {
+            try {
+                writeBatch(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.warn("异步下单写入失败", e);
+            }
+            long now = System.currentTimeMillis();
+            if (now >= nextExpire) {
+                expire();
+                nextExpire = now + 10_000;
+            }
+        }
+    }
+
+    private void write(List<Ticket> batch) {
+        List<OrderCreateResult> results;
+        try {
+            results = customerService.createOrders(batch.stream().map(ticket -> ticket.request).toList());
+        } catch (RuntimeException e) {
+            log.warn("批量创建 {} 个订单失败，逐个重新创建", batch.size(), e);
+            batch.forEach(this::writeOne);
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            OrderCreateResult result = results.get(i);
+            if (result.order() != null) {
+                complete(batch.get(i), State.CREATED, result.order().getId(), null);
+            } else {
+                complete(batch.get(i), State.REJECTED, null, result.error());
+            }
+        }
+    }
+
+    private void writeOne(Ticket ticket) {
+        OrderCreateDTO request = ticket.request;
+        try {
+            Order order = customerService.createOrder(request.getCustomerId(), request.getMerchantId(),
+                    request.getDishIds(), request.getDeliveryTime(), request.getDeliveryLocation());
+            complete(ticket, State.CREATED, order.getId(), null);
+        } catch (IllegalArgumentException e) {
+            complete(ticket, State.REJECTED, null, e.getMessage());
+        } catch (RuntimeException e) {
+            log.warn("创建订单失败", e);
+            complete(ticket, State.FAILED, null, "下单失败，请重新下单");
+        }
+    }
+
+    private void complete(Ticket ticket, State state, Long orderId, String reason) {
+        switch (state) {
+            case CREATED -> created.increment();
+            case REJECTED -> invalid.increment();
+            default -> failed.increment();
+        }
+        ticket.complete(state, orderId, reason);
+    }
+
+    /**
+     * 一个排队的下单请求，状态由写入线程更新
+     */
+    private static class Ticket {
+
+        final String token;
+
+        final OrderCreateDTO request;
+
+        volatile State state = State.QUEUED;
+
+        volatile Long orderId;
+
+        volatile String reason;
+
+        volatile long completedAt;
+
+        Ticket(String token, OrderCreateDTO request) {
+            this.token = token;
+            this.request = request;
+        }
+
+        // 先写结果再写状态，读到非 QUEUED 状态时结果已可见
+        void complete(State state, Long orderId, String reason) {
+            this.orderId = orderId;
+            this.reason = reason;
+            this.completedAt = System.currentTimeMillis();
+            this.state = state;
+        }
+
+        OrderIntakeStatus status() {
+            State current = state;
+            return new OrderIntakeStatus(token, current, orderId, reason);
+        }
+    }
+}
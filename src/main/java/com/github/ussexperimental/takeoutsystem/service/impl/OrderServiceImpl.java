@@ -2,6 +2,7 @@ package com.github.ussexperimental.takeoutsystem.service.impl;
 
 import com.github.ussexperimental.takeoutsystem.entity.Order;
 import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+import com.github.ussexperimental.takeoutsystem.order.OrderStateMachine;
 import com.github.ussexperimental.takeoutsystem.repository.DeliveryManRepository;
 import com.github.ussexperimental.takeoutsystem.repository.OrderRepository;
 import com.github.ussexperimental.takeoutsystem.service.OrderService;
@@ -18,19 +19,31 @@ public class OrderServiceImpl implements OrderService {
     @Autowired
     private DeliveryManRepository deliveryManRepository;
 
+    @Autowired
+    private OrderStateMachine orderStateMachine;
+
     // 更改订单状态
     @Transactional
     public Order changeOrderStatus(Long orderId, OrderStatus newStatus) {
         Order order = orderRepository.findById(orderId)
                 .orElseThrow(() -> new IllegalArgumentException("订单不存在"));
 
-        order.setStatus(newStatus);
-        return orderRepository.save(order);
+        OrderStatus current = order.getStatus();
+        if (!OrderStateMachine.canTransition(current, newStatus)) {
+            throw new IllegalArgumentException("订单状态不能从 " + current + " 变更为 " + newStatus);
+        }
+        // 读取与更新之间状态可能已被他人修改，按读到的状态做条件更新；带上商家，状态变更事件不必再查询订单所属商家
+        if (!orderStateMachine.transitionForMerchant(orderId, order.getMerchant().getId(), current, newStatus)) {
+            throw new IllegalStateException("订单状态已被修改");
+        }
+
+        return orderRepository.findById(orderId)
+                .orElseThrow(() -> new IllegalArgumentException("订单不存在"));
     }
 
     // 获取订单详情
     public Order getOrderDetails(Long orderId) {
-        return orderRepository.findById(orderId)
+        return orderRepository.findDetailById(orderId)
                 .orElseThrow(() -> new IllegalArgumentException("订单不存在"));
     }
 }
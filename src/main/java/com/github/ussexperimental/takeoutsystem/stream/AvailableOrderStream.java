@@ -0,0 +1,241 @@
+package com.github.ussexperimental.takeoutsystem.stream;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.ussexperimental.takeoutsystem.dto.OrderSummary;
+import com.github.ussexperimental.takeoutsystem.order.DispatchPool;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 可接单订单的 SSE 推送：可接单池中加入订单时推送 added 事件，订单被接走或离开待接单状态时推送 removed 事件
+ * <p>
+ * 空闲连接不占用线程，只占用一个有界队列；每个事件只序列化一次，推送时只入队，由虚拟线程逐个连接写出，
+ * 写得慢的连接只阻塞它自己的发送线程。队列满的连接直接断开，客户端重连后重新收到当前的可接单订单。
+ * 定时发送心跳注释，及时发现已断开的连接，也避免中间代理因空闲关闭连接。
+ * <p>
+ * 新连接先注册再读取初始订单，读取期间的增量事件暂存，初始订单发送完后再按顺序发送，
+ * 不会出现初始订单中包含、但其 removed 事件排在它前面的订单；同一订单可能重复收到 added 事件，客户端按订单ID去重。
+ */
+@Slf4j
+@Component
+public class AvailableOrderStream extends SseStream implements DispatchPool.Listener, MeterBinder {
+
+    @Autowired
+    private DispatchPool dispatchPool;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${dispatch.stream.max-subscribers:50000}")
+    private int maxSubscribers = 50000;
+
+    @Value("${dispatch.stream.buffer-size:64}")
+    private int bufferSize = 64;
+
+    @Value("${dispatch.stream.snapshot-size:20}")
+    private int snapshotSize = 20;
+
+    @Value("${dispatch.stream.heartbeat-seconds:15}")
+    private long heartbeatSeconds = 15;
+
+    @Value("${dispatch.stream.timeout-minutes:30}")
+    private long timeoutMinutes = 30;
+
+    private final Set<SseSubscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    // 已注册的连接数，注册时原子地检查上限；只在连接从 subscribers 中移除成功时减少
+    private final AtomicInteger connections = new AtomicInteger();
+
+    // 正在发送初始订单的连接 -> 期间到达的增量事件；对缓存的读写在 synchronized (缓存) 中进行
+    private final Map<SseSubscriber, List<Set<DataWithMediaType>>> joining = new ConcurrentHashMap<>();
+
+    public AvailableOrderStream() {
+        super("available-order-stream");
+    }
+
+    @PostConstruct
+    public void start() {
+        dispatchPool.addListener(this);
+        scheduler.scheduleAtFixedRate(this::sendHeartbeat, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shutdownExecutors();
+        subscribers.forEach(this::unsubscribe);
+    }
+
+    /**
+     * 订阅可接单订单，先收到当前最新的至多 snapshotSize 个可接单订单，之后收到增量变化
+     * @throws IllegalStateException 当前节点连接数已达上限
+     */
+    public SseEmitter subscribe() {
+        return subscribe(new SseEmitter(TimeUnit.MINUTES.toMillis(timeoutMinutes)));
+    }
+
+    SseEmitter subscribe(SseEmitter emitter) {
+        SseSubscriber subscriber = register(emitter);
+        List<OrderSummary> snapshot;
+        try {
+            snapshot = dispatchPool.page(0, snapshotSize).getContent();
+        } catch (RuntimeException e) {
+            unsubscribe(subscriber);
+            throw e;
+        }
+        for (OrderSummary order : snapshot) {
+            Set<DataWithMediaType> event = addedEvent(order);
+            if (event != null) {
+                subscriber.offer(event);
+            }
+        }
+        join(subscriber);
+        return subscriber.emitter();
+    }
+
+    /**
+     * 注册连接，此后的增量事件暂存，调用 {@link #join} 后才开始发送
+     */
+    SseSubscriber register(SseEmitter emitter) {
+        if (connections.incrementAndGet() > maxSubscribers) {
+            connections.decrementAndGet();
+            throw new IllegalStateException("推送连接数已达上限");
+        }
+        // 初始的可接单订单不占用增量事件的缓冲
+        SseSubscriber subscriber = new SseSubscriber(emitter, bufferSize + snapshotSize, sender);
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> unsubscribe(subscriber));
+        emitter.onError(e -> unsubscribe(subscriber));
+        joining.put(subscriber, new ArrayList<>());
+        subscribers.add(subscriber);
+        return subscriber;
+    }
+
+    /**
+     * 初始订单已放入发送队列，按顺序发送暂存的增量事件，之后的事件直接发送
+     */
+    void join(SseSubscriber subscriber) {
+        List<Set<DataWithMediaType>> pending = joining.get(subscriber);
+        if (pending == null) {
+            return;
+        }
+        synchronized (pending) {
+            for (Set<DataWithMediaType> event : pending) {
+                if (!deliver(subscriber, event)) {
+                    remove(subscriber);
+                    break;
+                }
+            }
+            joining.remove(subscriber);
+        }
+    }
+
+    // 以下两个回调在修改可接单池的线程（通常是提交订单变更的请求线程）中调用，只做序列化和入队
+
+    @Override
+    public void added(OrderSummary order) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        Set<DataWithMediaType> event = addedEvent(order);
+        if (event != null) {
+            broadcast(event);
+        }
+    }
+
+    @Override
+    public void removed(Long orderId) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        broadcast(event(SseEmitter.event().name("removed").data(orderId)));
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("dispatch.stream.subscribers", this, AvailableOrderStream::subscriberCount)
+                .register(registry);
+        FunctionCounter.builder("dispatch.stream.dropped", dropped, LongAdder::sum)
+                .register(registry);
+    }
+
+    void sendHeartbeat() {
+        broadcast(HEARTBEAT);
+    }
+
+    private void broadcast(Set<DataWithMediaType> event) {
+        for (SseSubscriber subscriber : subscribers) {
+            if (!send(subscriber, event)) {
+                remove(subscriber);
+            }
+        }
+    }
+
+    // 连接仍在发送初始订单时暂存事件，暂存数超过缓冲大小时与队列满一样断开
+    private boolean send(SseSubscriber subscriber, Set<DataWithMediaType> event) {
+        List<Set<DataWithMediaType>> pending = joining.get(subscriber);
+        if (pending != null) {
+            synchronized (pending) {
+                // 加锁后再确认一次，join 可能已发送完暂存的事件
+                if (joining.get(subscriber) == pending) {
+                    if (pending.size() >= bufferSize) {
+                        if (!subscriber.isClosed()) {
+                            dropped.increment();
+                        }
+                        subscriber.close();
+                        return false;
+                    }
+                    pending.add(event);
+                    return true;
+                }
+            }
+        }
+        return deliver(subscriber, event);
+    }
+
+    private void remove(SseSubscriber subscriber) {
+        joining.remove(subscriber);
+        if (subscribers.remove(subscriber)) {
+            connections.decrementAndGet();
+        }
+    }
+
+    private void unsubscribe(SseSubscriber subscriber) {
+        remove(subscriber);
+        subscriber.close();
+    }
+
+    // 订单只序列化一次，所有连接共享同一份 JSON；序列化失败时跳过该订单
+    private Set<DataWithMediaType> addedEvent(OrderSummary order) {
+        try {
+            String json = objectMapper.writeValueAsString(order);
+            return event(SseEmitter.event().name("added").data(json));
+        } catch (JsonProcessingException e) {
+            log.warn("订单 {} 序列化失败，未推送", order.id(), e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,464 @@
+package com.github.ussexperimental.takeoutsystem.stream;
+
+import com.github.ussexperimental.takeoutsystem.dto.OrderStatusUpdate;
+import com.github.ussexperimental.takeoutsystem.dto.OrderSummary;
+import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+import com.github.ussexperimental.takeoutsystem.event.OrderCreatedEvent;
+import com.github.ussexperimental.takeoutsystem.event.OrderStatusChangedEvent;
+import com.github.ussexperimental.takeoutsystem.repository.OrderRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 商家订单看板的 SSE 推送：连接后收到待确认和备餐中订单的快照（snapshot 事件），
+ * 之后收到新订单（created 事件）和这些订单的状态变更（status 事件），订单离开看板状态后客户端移除该订单
+ * <p>
+ * 每个商家一个看板，在内存中维护看板上的订单，同一商家的第一个连接查询一次数据库，之后的连接和推送都不再查询。
+ * 状态变更事件带有商家ID时直接找到看板；不带时凭看板上订单到商家的索引查找，不在任何看板上的订单不查询数据库，
+ * 只有进入看板状态时才查询所属商家。
+ * <p>
+ * 看板表是 ConcurrentHashMap，同一商家的连接和推送在该看板上同步，不同商家之间互不阻塞。
+ * 数据库查询都在看板的锁之外进行，锁内只读写内存：查询快照期间提交的事件先缓存在看板上，快照就绪后按顺序合并；
+ * 订单经状态变更进入看板时，在锁外查询订单，查询期间该订单又有变更时只记下最新状态，查询结果比它旧时重新查询。
+ * 商家的最后一个连接断开后移除看板，重连时重新查询快照。
+ */
+@Component
+public class MerchantOrderBoard extends SseStream implements MeterBinder {
+
+    // 看板上显示的订单状态
+    public static final Set<OrderStatus> BOARD_STATUSES = EnumSet.of(OrderStatus.PENDING_CONFIRMATION, OrderStatus.PREPARING);
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Value("${merchant.board.max-subscribers-per-merchant:8}")
+    private int maxSubscribersPerMerchant = 8;
+
+    @Value("${merchant.board.buffer-size:64}")
+    private int bufferSize = 64;
+
+    @Value("${merchant.board.heartbeat-seconds:15}")
+    private long heartbeatSeconds = 15;
+
+    @Value("${merchant.board.timeout-minutes:60}")
+    private long timeoutMinutes = 60;
+
+    private final Map<Long, Board> boards = new ConcurrentHashMap<>();
+
+    // 看板上的订单 -> 商家
+    private final Map<Long, Long> orderMerchants = new ConcurrentHashMap<>();
+
+    // 正在查询快照的看板
+    private final Set<Board> loading = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder subscriberCount = new LongAdder();
+
+    public MerchantOrderBoard() {
+        super("merchant-order-board");
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler.scheduleAtFixedRate(this::sendHeartbeat, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shutdownExecutors();
+        for (Board board : boards.values()) {
+            synchronized (board) {
+                board.subscribers.forEach(SseSubscriber::close);
+                board.subscribers.clear();
+            }
+        }
+        boards.clear();
+        orderMerchants.clear();
+        loading.clear();
+    }
+
+    /**
+     * 订阅商家的订单看板
+     * @throws IllegalStateException 该商家的看板连接数已达上限
+     */
+    public SseEmitter subscribe(Long merchantId) {
+        return register(merchantId, new SseEmitter(TimeUnit.MINUTES.toMillis(timeoutMinutes))).emitter();
+    }
+
+    SseSubscriber register(Long merchantId, SseEmitter emitter) {
+        SseSubscriber subscriber = new SseSubscriber(emitter, bufferSize, sender);
+        Board board = join(merchantId, subscriber);
+        subscriberCount.increment();
+        emitter.onCompletion(() -> unsubscribe(board, subscriber));
+        emitter.onTimeout(() -> unsubscribe(board, subscriber));
+        emitter.onError(e -> unsubscribe(board, subscriber));
+        return subscriber;
+    }
+
+    // 加入看板，看板尚未加载时由第一个连接在锁外查询快照，同时加入的其他连接等待同一次查询
+    private Board join(Long merchantId, SseSubscriber subscriber) {
+        while (true) {
+            Board board = boards.computeIfAbsent(merchantId, Board::new);
+            CompletableFuture<List<OrderSummary>> snapshot;
+            boolean loader;
+            synchronized (board) {
+                // 看板可能刚因最后一个连接断开被移除，重新获取
+                if (board.evicted) {
+                    continue;
+                }
+                // 等待快照的连接也计入连接数，检查和占位在同一次加锁中完成
+                if (board.subscribers.size() + board.joining >= maxSubscribersPerMerchant) {
+                    throw new IllegalStateException("看板连接数已达上限");
+                }
+                if (board.loaded) {
+                    board.subscribe(subscriber);
+                    return board;
+                }
+                board.joining++;
+                loader = board.snapshot == null;
+                if (loader) {
+                    board.snapshot = new CompletableFuture<>();
+                    loading.add(board);
+                }
+                snapshot = board.snapshot;
+            }
+
+            if (loader) {
+                try {
+                    snapshot.complete(orderRepository.findByMerchant_IdAndStatusInOrderByOrderTimeAscIdAsc(merchantId, BOARD_STATUSES)
+                            .stream().map(OrderSummary::from).toList());
+                } catch (RuntimeException e) {
+                    snapshot.completeExceptionally(e);
+                }
+            }
+
+            List<OrderSummary> orders;
+            try {
+                orders = snapshot.join();
+            } catch (CompletionException e) {
+                synchronized (board) {
+                    board.joining--;
+                    // 下一个连接重新查询
+                    if (board.snapshot == snapshot) {
+                        board.snapshot = null;
+                        board.pending.clear();
+                        loading.remove(board);
+                    }
+                    board.evictIfIdle();
+                }
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+
+            List<Long> lookups;
+            synchronized (board) {
+                // 先加入再减少等待数，合并时的推送不会因看板暂时没有连接而移除看板
+                lookups = board.loaded ? List.of() : board.load(orders);
+                board.subscribe(subscriber);
+                board.joining--;
+            }
+            lookUp(board, lookups);
+            return board;
+        }
+    }
+
+    // 新订单提交后推送到商家的看板
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderCreated(OrderCreatedEvent event) {
+        OrderSummary order = event.order();
+        Board board = boards.get(order.merchantId());
+        if (board == null) {
+            return;
+        }
+        synchronized (board) {
+            board.created(order);
+        }
+    }
+
+    // 看板上订单的状态变更提交后推送
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderStatusChanged(OrderStatusChangedEvent event) {
+        Long merchantId = event.merchantId() != null ? event.merchantId() : orderMerchants.get(event.orderId());
+        if (merchantId == null) {
+            if (boards.isEmpty()) {
+                return;
+            }
+            if (!BOARD_STATUSES.contains(event.to())) {
+                // 正在查询快照的看板，快照中可能已包含该订单，先缓存事件，合并时不在快照中的订单忽略
+                for (Board board : loading) {
+                    changed(board, event);
+                }
+                return;
+            }
+            merchantId = orderRepository.findMerchantIdById(event.orderId()).orElse(null);
+            if (merchantId == null) {
+                return;
+            }
+        }
+        Board board = boards.get(merchantId);
+        if (board != null) {
+            changed(board, event);
+        }
+    }
+
+    public int subscriberCount() {
+        return subscriberCount.intValue();
+    }
+
+    public int boardCount() {
+        return boards.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("merchant.board.subscribers", this, MerchantOrderBoard::subscriberCount)
+                .register(registry);
+        Gauge.builder("merchant.board.boards", this, MerchantOrderBoard::boardCount)
+                .register(registry);
+        FunctionCounter.builder("merchant.board.dropped", dropped, LongAdder::sum)
+                .register(registry);
+    }
+
+    void sendHeartbeat() {
+        for (Board board : boards.values()) {
+            synchronized (board) {
+                board.broadcast(HEARTBEAT);
+            }
+        }
+    }
+
+    private void changed(Board board, OrderStatusChangedEvent event) {
+        boolean lookUp;
+        synchronized (board) {
+            lookUp = board.changed(event);
+        }
+        if (lookUp) {
+            lookUp(board, List.of(event.orderId()));
+        }
+    }
+
+    // 在锁外查询进入看板状态的订单，再合并到看板上
+    private void lookUp(Board board, Collection<Long> orderIds) {
+        for (Long orderId : orderIds) {
+            boolean again = true;
+            while (again) {
+                OrderSummary order;
+                try {
+                    order = orderRepository.findListingById(orderId).map(OrderSummary::from).orElse(null);
+                } catch (RuntimeException e) {
+                    // 放弃本次查询，该订单之后的变更重新触发查询
+                    synchronized (board) {
+                        board.lookups.remove(orderId);
+                    }
+                    throw e;
+                }
+                synchronized (board) {
+                    again = board.lookedUp(orderId, order);
+                }
+            }
+        }
+    }
+
+    private void unsubscribe(Board board, SseSubscriber subscriber) {
+        subscriber.close();
+        synchronized (board) {
+            if (board.subscribers.remove(subscriber)) {
+                subscriberCount.decrement();
+                board.evictIfIdle();
+            }
+        }
+    }
+
+    /**
+     * 一个商家的看板，所有访问在 synchronized (board) 中进行，锁内不查询数据库
+     */
+    private class Board {
+
+        final Long merchantId;
+
+        final List<SseSubscriber> subscribers = new ArrayList<>();
+
+        // 看板上的订单，按下单先后排列
+        final Map<Long, OrderSummary> orders = new LinkedHashMap<>();
+
+        // 正在锁外查询的订单 -> 查询期间收到的最新状态
+        final Map<Long, OrderStatus> lookups = new HashMap<>();
+
+        // 查询快照期间提交的事件：新订单（OrderSummary）和状态变更（OrderStatusChangedEvent），按提交先后排列
+        final List<Object> pending = new ArrayList<>();
+
+        // 正在查询的快照，查询失败后置为 null
+        CompletableFuture<List<OrderSummary>> snapshot;
+
+        // 等待快照的连接数
+        int joining;
+
+        boolean loaded;
+
+        boolean evicted;
+
+        Board(Long merchantId) {
+            this.merchantId = merchantId;
+        }
+
+        /**
+         * 合并查询到的快照和查询期间缓存的事件
+         * @return 需要在锁外查询的订单
+         */
+        List<Long> load(List<OrderSummary> snapshot) {
+            snapshot.forEach(this::put);
+            loaded = true;
+            loading.remove(this);
+            List<Long> lookups = new ArrayList<>();
+            for (Object event : pending) {
+                if (event instanceof OrderSummary order) {
+                    add(order);
+                } else if (event instanceof OrderStatusChangedEvent change && changed(change)) {
+                    lookups.add(change.orderId());
+                }
+            }
+            pending.clear();
+            return lookups;
+        }
+
+        void subscribe(SseSubscriber subscriber) {
+            subscribers.add(subscriber);
+            deliver(subscriber, event(SseEmitter.event().name("snapshot").data(new ArrayList<>(orders.values()))));
+        }
+
+        void created(OrderSummary order) {
+            if (evicted) {
+                return;
+            }
+            if (loaded) {
+                add(order);
+            } else if (snapshot != null) {
+                pending.add(order);
+            }
+        }
+
+        /**
+         * 合并一次状态变更，订单状态只会向后变更，不比看板上的状态更新时忽略
+         * @return 订单进入看板状态（不经过下单）、需要在锁外查询订单时返回 true
+         */
+        boolean changed(OrderStatusChangedEvent event) {
+            if (evicted) {
+                return false;
+            }
+            if (!loaded) {
+                if (snapshot != null) {
+                    pending.add(event);
+                }
+                return false;
+            }
+            Long orderId = event.orderId();
+            OrderStatus to = event.to();
+            OrderSummary current = orders.get(orderId);
+            if (current == null) {
+                // 订单已在查询中，只记下最新状态，由查询方比较
+                OrderStatus latest = lookups.get(orderId);
+                if (latest != null) {
+                    if (to.ordinal() > latest.ordinal()) {
+                        lookups.put(orderId, to);
+                    }
+                    return false;
+                }
+                if (BOARD_STATUSES.contains(to)) {
+                    lookups.put(orderId, to);
+                    return true;
+                }
+                return false;
+            }
+            if (to.ordinal() <= current.status().ordinal()) {
+                return false;
+            }
+            if (BOARD_STATUSES.contains(to)) {
+                orders.put(orderId, current.withStatus(to));
+            } else {
+                orders.remove(orderId);
+                orderMerchants.remove(orderId, merchantId);
+            }
+            broadcast(event(SseEmitter.event().name("status").data(new OrderStatusUpdate(orderId, event.from(), to))));
+            return false;
+        }
+
+        /**
+         * 合并锁外查询到的订单，订单不存在或不属于本商家时为 null
+         * @return 查询结果比查询期间收到的最新状态旧、需要重新查询时返回 true
+         */
+        boolean lookedUp(Long orderId, OrderSummary order) {
+            OrderStatus latest = lookups.get(orderId);
+            if (latest == null) {
+                // 看板已被移除
+                return false;
+            }
+            if (order != null && order.status().ordinal() < latest.ordinal()) {
+                return true;
+            }
+            lookups.remove(orderId);
+            if (order != null && merchantId.equals(order.merchantId())) {
+                add(order);
+            }
+            return false;
+        }
+
+        void broadcast(Set<DataWithMediaType> data) {
+            subscribers.removeIf(subscriber -> {
+                if (deliver(subscriber, data)) {
+                    return false;
+                }
+                subscriberCount.decrement();
+                return true;
+            });
+            evictIfIdle();
+        }
+
+        void evictIfIdle() {
+            if (!subscribers.isEmpty() || joining > 0 || evicted) {
+                return;
+            }
+            evicted = true;
+            boards.remove(merchantId, this);
+            loading.remove(this);
+            orders.keySet().forEach(orderId -> orderMerchants.remove(orderId, merchantId));
+            orders.clear();
+            lookups.clear();
+            pending.clear();
+        }
+
+        private void add(OrderSummary order) {
+            if (!BOARD_STATUSES.contains(order.status()) || orders.containsKey(order.id())) {
+                return;
+            }
+            put(order);
+            broadcast(event(SseEmitter.event().name("created").data(order)));
+        }
+
+        private void put(OrderSummary order) {
+            orders.put(order.id(), order);
+            orderMerchants.put(order.id(), merchantId);
+        }
+    }
+}
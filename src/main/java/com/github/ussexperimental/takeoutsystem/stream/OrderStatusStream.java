@@ -0,0 +1,307 @@
+package com.github.ussexperimental.takeoutsystem.stream;
+
+import com.github.ussexperimental.takeoutsystem.dto.OrderStatusUpdate;
+import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+import com.github.ussexperimental.takeoutsystem.event.OrderStatusChangedEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 订单状态的 SSE 推送，顾客订阅单个订单，订单状态变更提交后推送 status 事件
+ * <p>
+ * 每个被订阅的订单对应一个频道，频道保存最近的若干个事件；事件ID为 "启动时间-序号"，
+ * 重连时带上 Last-Event-ID，补发该ID之后的事件，不需要重新查询订单。
+ * 频道表是 ConcurrentHashMap（按桶加锁），同一订单的订阅和推送在该频道上同步，不同订单之间互不阻塞。
+ * 没有订阅者的频道保留一段时间以便重连补发，之后清理；无人订阅的订单的状态变更不保存。
+ * 每个节点和每个订单的连接数各有上限，超出时拒绝订阅。
+ * <p>
+ * 订单状态只会沿状态机向后变更，频道丢弃不比已推送状态更新的事件，乱序到达的事件不会让顾客看到状态倒退。
+ */
+@Component
+public class OrderStatusStream extends SseStream implements MeterBinder {
+
+    @Value("${order.stream.max-subscribers:50000}")
+    private int maxSubscribers = 50000;
+
+    @Value("${order.stream.max-subscribers-per-order:4}")
+    private int maxSubscribersPerOrder = 4;
+
+    @Value("${order.stream.buffer-size:16}")
+    private int bufferSize = 16;
+
+    @Value("${order.stream.replay-size:8}")
+    private int replaySize = 8;
+
+    @Value("${order.stream.heartbeat-seconds:15}")
+    private long heartbeatSeconds = 15;
+
+    @Value("${order.stream.timeout-minutes:30}")
+    private long timeoutMinutes = 30;
+
+    @Value("${order.stream.idle-retention-seconds:120}")
+    private long idleRetentionSeconds = 120;
+
+    private final Map<Long, Channel> channels = new ConcurrentHashMap<>();
+
+    // 事件ID前缀，重启后事件序号从头开始，前缀不同的 Last-Event-ID 不补发
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    // 当前连接数，注册前先占位，检查和占位是同一个原子操作，并发注册不会超出上限
+    private final AtomicInteger connections = new AtomicInteger();
+
+    public OrderStatusStream() {
+        super("order-status-stream");
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler.scheduleAtFixedRate(this::sendHeartbeat, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+        scheduler.scheduleAtFixedRate(this::evictIdleChannels, idleRetentionSeconds, idleRetentionSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shutdownExecutors();
+        for (Channel channel : channels.values()) {
+            synchronized (channel) {
+                channel.subscribers.forEach(SseSubscriber::close);
+                channel.subscribers.clear();
+            }
+        }
+        channels.clear();
+    }
+
+    /**
+     * 订阅一个订单的状态
+     * <p>
+     * Last-Event-ID 有效时补发之后的事件；否则（首次连接、重启后或已清理）推送一次当前状态。
+     * @param lastEventId 客户端重连时带的 Last-Event-ID，首次连接为 null
+     * @param currentStatus 读取订单当前状态，在注册订阅之后调用，注册之前发生的变更不会漏掉
+     * @throws IllegalStateException 当前节点或该订单的连接数已达上限
+     */
+    public SseEmitter subscribe(Long orderId, String lastEventId, Supplier<OrderStatus> currentStatus) {
+        return register(orderId, new SseEmitter(TimeUnit.MINUTES.toMillis(timeoutMinutes)), lastEventId, currentStatus)
+                .emitter();
+    }
+
+    SseSubscriber register(Long orderId, SseEmitter emitter, String lastEventId, Supplier<OrderStatus> currentStatus) {
+        if (connections.incrementAndGet() > maxSubscribers) {
+            connections.decrementAndGet();
+            throw new IllegalStateException("推送连接数已达上限");
+        }
+        SseSubscriber subscriber = new SseSubscriber(emitter, bufferSize, sender);
+        long lastSeq = parseSequence(lastEventId);
+
+        long sentUpTo;
+        Channel channel;
+        while (true) {
+            channel = channels.computeIfAbsent(orderId, id -> new Channel());
+            synchronized (channel) {
+                // 频道可能刚被清理任务移除，重新获取
+                if (channel.evicted) {
+                    continue;
+                }
+                if (channel.subscribers.size() >= maxSubscribersPerOrder) {
+                    connections.decrementAndGet();
+                    throw new IllegalStateException("推送连接数已达上限");
+                }
+                channel.subscribers.add(subscriber);
+                sentUpTo = channel.replay(subscriber, lastSeq);
+                break;
+            }
+        }
+        Channel subscribed = channel;
+        emitter.onCompletion(() -> unsubscribe(subscribed, subscriber));
+        emitter.onTimeout(() -> unsubscribe(subscribed, subscriber));
+        emitter.onError(e -> unsubscribe(subscribed, subscriber));
+
+        // 注册后再读取当前状态：之前的变更体现在读到的状态里，之后的变更会推送到频道
+        OrderStatus status = currentStatus.get();
+        synchronized (channel) {
+            // 读到的状态更新时已推送给频道的所有连接；否则补发客户端还没收到的最新状态
+            Event latest = channel.latest();
+            if (!channel.publish(orderId, null, status) && latest != null && latest.sequence > sentUpTo) {
+                deliver(subscriber, latest.data);
+            }
+        }
+        return subscriber;
+    }
+
+    // 订单状态变更提交后推送给订阅了该订单的顾客
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderStatusChanged(OrderStatusChangedEvent event) {
+        Channel channel = channels.get(event.orderId());
+        if (channel == null) {
+            return;
+        }
+        synchronized (channel) {
+            channel.publish(event.orderId(), event.from(), event.to());
+        }
+    }
+
+    public int subscriberCount() {
+        return connections.get();
+    }
+
+    public int channelCount() {
+        return channels.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("order.stream.subscribers", this, OrderStatusStream::subscriberCount)
+                .register(registry);
+        Gauge.builder("order.stream.channels", this, OrderStatusStream::channelCount)
+                .register(registry);
+        FunctionCounter.builder("order.stream.dropped", dropped, LongAdder::sum)
+                .register(registry);
+    }
+
+    void sendHeartbeat() {
+        for (Channel channel : channels.values()) {
+            synchronized (channel) {
+                channel.broadcast(HEARTBEAT);
+            }
+        }
+    }
+
+    void evictIdleChannels() {
+        long threshold = System.nanoTime() - TimeUnit.SECONDS.toNanos(idleRetentionSeconds);
+        channels.forEach((orderId, channel) -> {
+            synchronized (channel) {
+                if (channel.subscribers.isEmpty() && channel.idleSince <= threshold) {
+                    channel.evicted = true;
+                    channels.remove(orderId, channel);
+                }
+            }
+        });
+    }
+
+    private void unsubscribe(Channel channel, SseSubscriber subscriber) {
+        subscriber.close();
+        synchronized (channel) {
+            if (channel.subscribers.remove(subscriber)) {
+                connections.decrementAndGet();
+                channel.markIdle();
+            }
+        }
+    }
+
+    // 解析 "启动时间-序号"，不是本次启动产生的ID返回 -1
+    private long parseSequence(String lastEventId) {
+        if (lastEventId == null) {
+            return -1;
+        }
+        int dash = lastEventId.lastIndexOf('-');
+        if (dash <= 0 || !lastEventId.substring(0, dash).equals(epoch)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(lastEventId.substring(dash + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private record Event(long sequence, OrderStatus status, Set<DataWithMediaType> data) {
+    }
+
+    /**
+     * 一个订单的订阅者和最近的事件，所有访问在 synchronized (channel) 中进行
+     */
+    private class Channel {
+
+        final List<SseSubscriber> subscribers = new ArrayList<>();
+
+        final Deque<Event> recent = new ArrayDeque<>();
+
+        long idleSince = System.nanoTime();
+
+        boolean evicted;
+
+        Event latest() {
+            return recent.peekLast();
+        }
+
+        /**
+         * 记录并推送一个状态；不比最近推送的状态更新时忽略并返回 false
+         */
+        boolean publish(Long orderId, OrderStatus from, OrderStatus status) {
+            Event latest = latest();
+            if (status == null || (latest != null && status.ordinal() <= latest.status.ordinal())) {
+                return false;
+            }
+            long seq = sequence.incrementAndGet();
+            Set<DataWithMediaType> data = event(SseEmitter.event()
+                    .id(epoch + "-" + seq)
+                    .name("status")
+                    .data(new OrderStatusUpdate(orderId, from, status)));
+            recent.addLast(new Event(seq, status, data));
+            if (recent.size() > replaySize) {
+                recent.removeFirst();
+            }
+            broadcast(data);
+            return true;
+        }
+
+        /**
+         * 补发 lastSeq 之后保留的事件，返回已发送到的序号
+         * <p>
+         * 每个事件都带有完整的状态，超出保留范围而没有补发的中间状态不影响客户端得到最新状态。
+         */
+        long replay(SseSubscriber subscriber, long lastSeq) {
+            long sentUpTo = lastSeq;
+            if (lastSeq < 0) {
+                return sentUpTo;
+            }
+            for (Event event : recent) {
+                if (event.sequence > lastSeq) {
+                    deliver(subscriber, event.data);
+                    sentUpTo = event.sequence;
+                }
+            }
+            return sentUpTo;
+        }
+
+        void broadcast(Set<DataWithMediaType> data) {
+            subscribers.removeIf(subscriber -> {
+                if (deliver(subscriber, data)) {
+                    return false;
+                }
+                connections.decrementAndGet();
+                return true;
+            });
+            markIdle();
+        }
+
+        void markIdle() {
+            if (subscribers.isEmpty()) {
+                idleSince = System.nanoTime();
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.ussexperimental.takeoutsystem.stream;
+
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SSE 推送的公共部分：发送线程、定时任务线程、事件构建和慢连接断开
+ * <p>
+ * 每个连接的事件由虚拟线程写出（见 {@link SseSubscriber}），空闲连接不占用线程，写得慢的连接只阻塞它自己的发送线程。
+ */
+abstract class SseStream {
+
+    protected static final Set<DataWithMediaType> HEARTBEAT = event(SseEmitter.event().comment("heartbeat"));
+
+    protected final ExecutorService sender;
+
+    // 心跳等定时任务
+    protected final ScheduledExecutorService scheduler;
+
+    // 因读取过慢被断开的连接数
+    protected final LongAdder dropped = new LongAdder();
+
+    protected SseStream(String name) {
+        this.sender = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-sender-", 0).factory());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name + "-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 放入一个事件；连接的缓冲已满时断开该连接并返回 false
+     */
+    protected boolean deliver(SseSubscriber subscriber, Set<DataWithMediaType> event) {
+        if (subscriber.offer(event)) {
+            return true;
+        }
+        if (!subscriber.isClosed()) {
+            dropped.increment();
+        }
+        subscriber.close();
+        return false;
+    }
+
+    protected void shutdownExecutors() {
+        scheduler.shutdownNow();
+        sender.shutdown();
+    }
+
+    /**
+     * 构建事件，build() 返回有序集合（事件名、ID、数据、结束换行），构建一次后只读共享给所有连接
+     */
+    protected static Set<DataWithMediaType> event(SseEmitter.SseEventBuilder builder) {
+        return Collections.unmodifiableSet(builder.build());
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.ussexperimental.takeoutsystem.stream;
+
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 一个 SSE 连接：有界发送队列加上至多一个发送任务
+ * <p>
+ * 推送方只把事件放入队列（不阻塞），由发送线程池逐条写出；同一连接同时最多只有一个发送任务，事件按入队顺序发送。
+ * 队列满说明客户端读取跟不上，{@link #offer} 返回 false，由调用方断开该连接。
+ */
+class SseSubscriber {
+
+    private final SseEmitter emitter;
+
+    private final BlockingQueue<Set<DataWithMediaType>> queue;
+
+    private final Executor sender;
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private volatile boolean closed;
+
+    SseSubscriber(SseEmitter emitter, int bufferSize, Executor sender) {
+        this.emitter = emitter;
+        this.queue = new ArrayBlockingQueue<>(bufferSize);
+        this.sender = sender;
+    }
+
+    SseEmitter emitter() {
+        return emitter;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 放入一个已构建好的事件，队列已满或连接已关闭时返回 false
+     */
+    boolean offer(Set<DataWithMediaType> event) {
+        if (closed || !queue.offer(event)) {
+            return false;
+        }
+        if (scheduled.compareAndSet(false, true)) {
+            sender.execute(this::drain);
+        }
+        return true;
+    }
+
+    /**
+     * 关闭连接，丢弃未发送的事件
+     */
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.clear();
+        try {
+            emitter.complete();
+        } catch (RuntimeException e) {
+            // 连接已经断开
+        }
+    }
+
+    private void drain() {
+        do {
+            Set<DataWithMediaType> event;
+            while (!closed && (event = queue.poll()) != null) {
+                try {
+                    emitter.send(event);
+                } catch (IOException | IllegalStateException e) {
+                    // 客户端已断开或连接已结束
+                    close();
+                }
+            }
+            scheduled.set(false);
+            // 释放标志后可能又有新事件入队，而入队方看到标志仍为 true 没有提交任务
+        } while (!closed && !queue.isEmpty() && scheduled.compareAndSet(false, true));
+    }
+}
@@ -0,0 +1,191 @@
+package com.github.ussexperimental.takeoutsystem.timer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分层时间轮：插入和取消定时任务都是 O(1)，推进时只处理到期的格子，与待执行的定时任务总数无关
+ * <p>
+ * 时间按 tickMillis 划分为刻度。共 levels 层，每层 wheelSize 个格子，第 k 层每格跨 wheelSize^k 个刻度；
+ * 定时任务放在能容纳其到期刻度的最低一层，每个格子是一个双向链表，取消时直接从链表摘除。
+ * 低层转完一圈时，把高层当前格子中的任务重新放入低层（逐层下沉），到达第 0 层的格子即为到期。
+ * 超出最高层范围的任务先放在最高层最远的格子，转到时再重新放入。
+ * <p>
+ * 定时任务不会早于到期时间触发，最多晚一个刻度（加上调用 {@link #advance} 的间隔）。
+ * 非线程安全，调用方负责同步。
+ */
+public class TimingWheel<T> {
+
+    private final long tickMillis;
+
+    private final int bits;
+
+    private final int mask;
+
+    private final int levels;
+
+    // 每个格子是带哨兵节点的循环双向链表
+    private final Timeout<T>[][] slots;
+
+    // 已推进到的刻度，该刻度及之前到期的任务均已取出
+    private long currentTick;
+
+    private int size;
+
+    /**
+     * @param tickMillis 刻度（毫秒）
+     * @param wheelSize 每层格子数，必须是 2 的幂
+     * @param levels 层数
+     * @param nowMillis 当前时间
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMillis, int wheelSize, int levels, long nowMillis) {
+        if (tickMillis <= 0 || wheelSize < 2 || Integer.bitCount(wheelSize) != 1 || levels <= 0) {
+            throw new IllegalArgumentException("时间轮参数无效");
+        }
+        this.tickMillis = tickMillis;
+        this.bits = Integer.numberOfTrailingZeros(wheelSize);
+        if ((long) bits * levels > 62) {
+            throw new IllegalArgumentException("时间轮参数无效");
+        }
+        this.mask = wheelSize - 1;
+        this.levels = levels;
+        this.slots = new Timeout[levels][wheelSize];
+        for (Timeout<T>[] level : slots) {
+            for (int i = 0; i < wheelSize; i++) {
+                Timeout<T> head = new Timeout<>(null, 0);
+                head.prev = head;
+                head.next = head;
+                level[i] = head;
+            }
+        }
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * 添加定时任务，到期时间已过的任务在下一个刻度到期
+     */
+    public Timeout<T> schedule(T payload, long deadlineMillis) {
+        long deadlineTick = Math.max((deadlineMillis + tickMillis - 1) / tickMillis, currentTick + 1);
+        Timeout<T> timeout = new Timeout<>(payload, deadlineTick);
+        place(timeout);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * 取消定时任务
+     * @return 是否取消成功，已到期或已取消时返回 false
+     */
+    public boolean cancel(Timeout<T> timeout) {
+        if (!timeout.isPending()) {
+            return false;
+        }
+        unlink(timeout);
+        size--;
+        return true;
+    }
+
+    /**
+     * 推进到当前时间，取出期间到期的定时任务，按到期先后排列
+     */
+    public List<T> advance(long nowMillis) {
+        long targetTick = nowMillis / tickMillis;
+        List<T> expired = new ArrayList<>();
+        while (currentTick < targetTick) {
+            currentTick++;
+            // 低层转完一圈时，高层当前格子中的任务下沉
+            for (int level = levels - 1; level > 0; level--) {
+                int shift = level * bits;
+                if ((currentTick & ((1L << shift) - 1)) == 0) {
+                    cascade(slots[level][(int) ((currentTick >>> shift) & mask)]);
+                }
+            }
+            Timeout<T> head = slots[0][(int) (currentTick & mask)];
+            while (head.next != head) {
+                Timeout<T> timeout = head.next;
+                unlink(timeout);
+                size--;
+                expired.add(timeout.payload);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * 待执行的定时任务数
+     */
+    public int size() {
+        return size;
+    }
+
+    private void cascade(Timeout<T> head) {
+        Timeout<T> timeout = head.next;
+        head.prev = head;
+        head.next = head;
+        while (timeout != head) {
+            Timeout<T> next = timeout.next;
+            place(timeout);
+            timeout = next;
+        }
+    }
+
+    // 放入能容纳到期刻度的最低一层；到期刻度总是晚于当前刻度，不会放入本圈已经过的格子
+    private void place(Timeout<T> timeout) {
+        for (int level = 0; level < levels; level++) {
+            int shift = level * bits;
+            long slot = timeout.deadlineTick >>> shift;
+            if (slot - (currentTick >>> shift) <= mask) {
+                link(slots[level][(int) (slot & mask)], timeout);
+                return;
+            }
+        }
+        // 超出最高层范围，放在最高层最远的格子，转到时重新放入
+        int shift = (levels - 1) * bits;
+        link(slots[levels - 1][(int) (((currentTick >>> shift) - 1) & mask)], timeout);
+    }
+
+    private static <T> void link(Timeout<T> head, Timeout<T> timeout) {
+        timeout.prev = head.prev;
+        timeout.next = head;
+        head.prev.next = timeout;
+        head.prev = timeout;
+    }
+
+    private static <T> void unlink(Timeout<T> timeout) {
+        timeout.prev.next = timeout.next;
+        timeout.next.prev = timeout.prev;
+        timeout.prev = null;
+        timeout.next = null;
+    }
+
+    /**
+     * 一个定时任务，同时是所在格子链表的节点
+     */
+    public static final class Timeout<T> {
+
+        private final T payload;
+
+        private final long deadlineTick;
+
+        private Timeout<T> prev;
+
+        private Timeout<T> next;
+
+        private Timeout(T payload, long deadlineTick) {
+            this.payload = payload;
+            this.deadlineTick = deadlineTick;
+        }
+
+        public T payload() {
+            return payload;
+        }
+
+        /**
+         * 是否仍在等待到期（未到期且未取消）
+         */
+        public boolean isPending() {
+            return next != null;
+        }
+    }
+}
@@ -6,14 +6,15 @@ VALUES
     ('MERCHANT');
 
 -- 插入用户数据
-INSERT INTO user (username, password, phone, email, address, role_id, user_type)
+-- 用户、菜品、订单的主键由 id_sequence 分配，初始数据显式指定主键，启动时序列会对齐到 max(id) + 1
+INSERT INTO user (id, username, password, phone, email, address, role_id, user_type)
 VALUES
-    ('customer1', 'password123', '13800138000', 'customer1@example.com', 'Location 1', 2, 'CUSTOMER'),
-    ('customer2', 'password123', '13800138001', 'customer2@example.com', 'Location 2', 2, 'CUSTOMER'),
-    ('merchant1', 'password123', '13800138002', 'merchant1@example.com', 'Address 1', 3, 'MERCHANT'),
-    ('merchant2', 'password123', '13800138003', 'merchant2@example.com', 'Address 2', 3, 'MERCHANT'),
-    ('deliveryman1', 'password123', '13800138004', 'deliveryman1@example.com', 'Location A', 4, 'DELIVERYMAN'),
-    ('deliveryman2', 'password123', '13800138005', 'deliveryman2@example.com', 'Location B', 4, 'DELIVERYMAN');
+    (1, 'customer1', 'password123', '13800138000', 'customer1@example.com', 'Location 1', 2, 'CUSTOMER'),
+    (2, 'customer2', 'password123', '13800138001', 'customer2@example.com', 'Location 2', 2, 'CUSTOMER'),
+    (3, 'merchant1', 'password123', '13800138002', 'merchant1@example.com', 'Address 1', 3, 'MERCHANT'),
+    (4, 'merchant2', 'password123', '13800138003', 'merchant2@example.com', 'Address 2', 3, 'MERCHANT'),
+    (5, 'deliveryman1', 'password123', '13800138004', 'deliveryman1@example.com', 'Location A', 4, 'DELIVERYMAN'),
+    (6, 'deliveryman2', 'password123', '13800138005', 'deliveryman2@example.com', 'Location B', 4, 'DELIVERYMAN');
 
 INSERT INTO customer (id)
 VALUES
@@ -33,18 +34,18 @@ VALUES
     ('deliveryman2', '13800138005', 6);
 
 -- 插入菜品数据
-INSERT INTO dish (description, image_url, name, price, merchant_id)
+INSERT INTO dish (id, description, image_url, name, price, merchant_id)
 VALUES
-    ('dish1', 'dish1.png', 'dish1', '10', 3),
-    ('dish2', 'dish2.png', 'dish2', '15', 3),
-    ('dish3', 'dish3.png', 'dish3', '10', 4),
-    ('dish4', 'dish4.png', 'dish4', '15', 4);
+    (1, 'dish1', 'dish1.png', 'dish1', '10', 3),
+    (2, 'dish2', 'dish2.png', 'dish2', '15', 3),
+    (3, 'dish3', 'dish3.png', 'dish3', '10', 4),
+    (4, 'dish4', 'dish4.png', 'dish4', '15', 4);
 
 -- 插入订单数据
-INSERT INTO orders (customer_id, merchant_id, deliveryman_id, delivery_location, order_time, delivery_time, status)
+INSERT INTO orders (id, customer_id, merchant_id, deliveryman_id, delivery_location, order_time, delivery_time, status)
 VALUES
-    (1, 3, 5, 'Location 1', NOW(), DATE_ADD(NOW(), INTERVAL 30 MINUTE), 'REVIEWED'),
-    (1, 3, 5, 'Location 1', NOW(), DATE_ADD(NOW(), INTERVAL 30 MINUTE), 'REVIEWED'),
-    (2, 4, 6, 'Location 2', NOW(), DATE_ADD(NOW(), INTERVAL 40 MINUTE), 'REVIEWED'),
-    (2, 4, 6, 'Location 2', NOW(), DATE_ADD(NOW(), INTERVAL 40 MINUTE), 'REVIEWED');
+    (1, 1, 3, 5, 'Location 1', NOW(), DATE_ADD(NOW(), INTERVAL 30 MINUTE), 'REVIEWED'),
+    (2, 1, 3, 5, 'Location 1', NOW(), DATE_ADD(NOW(), INTERVAL 30 MINUTE), 'REVIEWED'),
+    (3, 2, 4, 6, 'Location 2', NOW(), DATE_ADD(NOW(), INTERVAL 40 MINUTE), 'REVIEWED'),
+    (4, 2, 4, 6, 'Location 2', NOW(), DATE_ADD(NOW(), INTERVAL 40 MINUTE), 'REVIEWED');
 
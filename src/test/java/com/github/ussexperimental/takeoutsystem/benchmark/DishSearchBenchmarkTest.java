@@ -0,0 +1,133 @@
+package com.github.ussexperimental.takeoutsystem.benchmark;
+
+import com.github.ussexperimental.takeoutsystem.search.DishSearchIndex;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 菜品搜索基准测试：内存倒排索引 vs LIKE '%x%'
+ * <p>
+ * 默认不运行，使用 mvn test -Dbenchmark=true -Dtest=DishSearchBenchmarkTest 运行，
+ * 菜品数量可通过 -Dbenchmark.dishes 指定（默认 1000000，需要约 2G 堆内存）。
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class DishSearchBenchmarkTest {
+
+    private static final String[] FLAVORS = {"宫保", "麻辣", "红烧", "清蒸", "香煎", "糖醋", "干锅", "酸菜", "黑椒", "蒜蓉", "香辣", "孜然"};
+    private static final String[] MAINS = {"鸡丁", "牛肉", "鱼片", "豆腐", "排骨", "虾仁", "茄子", "土豆丝", "肥肠", "鸭血", "羊肉", "鸡腿"};
+    private static final String[] SUFFIXES = {"饭", "面", "套餐", "盖饭", "米线", "", "拌饭", "Combo"};
+    private static final String[] QUERIES = {"宫保鸡丁", "牛肉", "虾", "套餐", "combo", "孜然羊肉盖饭"};
+
+    private static final int ROUNDS = 20;
+
+    @Test
+    @DisplayName("基准测试 - 倒排索引与 LIKE 查询对比")
+    public void benchmark() throws Exception {
+        int dishes = Integer.getInteger("benchmark.dishes", 1_000_000);
+        Random random = new Random(42);
+        DishSearchIndex index = new DishSearchIndex();
+
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:dish_search_benchmark;MODE=MySQL", "sa", "")) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("create table dish (id bigint primary key, merchant_id bigint not null, " +
+                        "name varchar(255) not null, description varchar(255), price decimal(10, 2))");
+            }
+
+            long start = System.nanoTime();
+            connection.setAutoCommit(false);
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "insert into dish (id, merchant_id, name, description, price) values (?, ?, ?, ?, ?)")) {
+                for (int id = 1; id <= dishes; id++) {
+                    String name = FLAVORS[random.nextInt(FLAVORS.length)] + MAINS[random.nextInt(MAINS.length)]
+                            + SUFFIXES[random.nextInt(SUFFIXES.length)];
+                    String description = "店铺" + random.nextInt(5000) + "招牌" + MAINS[random.nextInt(MAINS.length)];
+                    insert.setLong(1, id);
+                    insert.setLong(2, 1 + random.nextInt(5000));
+                    insert.setString(3, name);
+                    insert.setString(4, description);
+                    insert.setBigDecimal(5, java.math.BigDecimal.valueOf(500 + random.nextInt(5000), 2));
+                    insert.addBatch();
+                    index.index((long) id, name, description);
+                    if (id % 1000 == 0) {
+                        insert.executeBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+            connection.commit();
+            System.out.printf("已载入 %d 个菜品（数据库和索引），耗时 %d ms%n", dishes, (System.nanoTime() - start) / 1_000_000);
+
+            for (String query : QUERIES) {
+                long likeNanos = 0;
+                long indexNanos = 0;
+                long likeTotal = 0;
+                long indexTotal = 0;
+                for (int round = 0; round < ROUNDS; round++) {
+                    long t0 = System.nanoTime();
+                    likeTotal = likeQuery(connection, query);
+                    long t1 = System.nanoTime();
+                    indexTotal = indexQuery(connection, index, query);
+                    long t2 = System.nanoTime();
+                    // 第一轮为预热，不计入
+                    if (round > 0) {
+                        likeNanos += t1 - t0;
+                        indexNanos += t2 - t1;
+                    }
+                }
+                System.out.printf("查询 %-8s LIKE: %8.2f ms/次 (%d 条) | 索引: %8.3f ms/次 (%d 条)%n",
+                        query,
+                        likeNanos / 1e6 / (ROUNDS - 1), likeTotal,
+                        indexNanos / 1e6 / (ROUNDS - 1), indexTotal);
+            }
+        }
+    }
+
+    // 与 findByNameContaining(name, pageable) 相同：一页数据 + COUNT
+    private long likeQuery(Connection connection, String query) throws Exception {
+        try (PreparedStatement select = connection.prepareStatement(
+                "select id, merchant_id, name, description, price from dish where name like ? order by id desc limit 10");
+             PreparedStatement count = connection.prepareStatement("select count(*) from dish where name like ?")) {
+            select.setString(1, "%" + query + "%");
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    rs.getLong(1);
+                }
+            }
+            count.setString(1, "%" + query + "%");
+            try (ResultSet rs = count.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    // 索引查出一页ID，再按主键批量加载这一页
+    private long indexQuery(Connection connection, DishSearchIndex index, String query) throws Exception {
+        DishSearchIndex.SearchResult result = index.search(query, 0, 10);
+        List<Long> ids = result.ids();
+        if (!ids.isEmpty()) {
+            String placeholders = String.join(",", java.util.Collections.nCopies(ids.size(), "?"));
+            try (PreparedStatement select = connection.prepareStatement(
+                    "select id, merchant_id, name, description, price from dish where id in (" + placeholders + ")")) {
+                for (int i = 0; i < ids.size(); i++) {
+                    select.setLong(i + 1, ids.get(i));
+                }
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        rs.getLong(1);
+                    }
+                }
+            }
+        }
+        return result.total();
+    }
+}
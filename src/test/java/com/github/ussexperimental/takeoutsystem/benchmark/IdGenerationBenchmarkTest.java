@@ -0,0 +1,158 @@
+package com.github.ussexperimental.takeoutsystem.benchmark;
+
+import com.github.ussexperimental.takeoutsystem.entity.IdSequences;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.TableGenerator;
+import org.h2.tools.Server;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.math.BigDecimal;
+import java.util.function.IntFunction;
+
+/**
+ * 主键生成方式对插入吞吐量的影响：自增主键 vs 序列表 pooled-lo 分配
+ * <p>
+ * 两个实体只有主键策略不同，均通过 EntityManager.persist 插入，每 ALLOCATION_SIZE 条 flush 一次。
+ * 自增主键在 persist 时就必须执行 insert 取回主键，JDBC 批处理不生效；
+ * pooled-lo 使用与 {@link com.github.ussexperimental.takeoutsystem.entity.Dish} 相同的表生成器配置，
+ * 每 ALLOCATION_SIZE 条读写一次序列表，insert 在 flush 时按批发送。
+ * 通过 H2 TCP 服务连接，使每条语句都有一次真实的网络往返。
+ * <p>
+ * 默认不运行，使用 mvn test -Dbenchmark=true -Dtest=IdGenerationBenchmarkTest 运行，
+ * 行数可通过 -Dbenchmark.rows 指定（默认 100000）。
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class IdGenerationBenchmarkTest {
+
+    private static final int COMMIT_EVERY = 1000;
+
+    @Test
+    @DisplayName("基准测试 - 自增主键与 pooled-lo 批量插入对比")
+    public void benchmark() throws Exception {
+        int rows = Integer.getInteger("benchmark.rows", 100_000);
+        Server server = Server.createTcpServer("-tcpPort", "0", "-ifNotExists").start();
+        String url = "jdbc:h2:tcp://localhost:" + server.getPort() + "/mem:id_generation_benchmark;MODE=MySQL";
+        try (SessionFactory sessionFactory = sessionFactory(url)) {
+            // 预热
+            persist(sessionFactory, 5_000, IdentityDish::new);
+            persist(sessionFactory, 5_000, PooledDish::new);
+
+            long t0 = System.nanoTime();
+            persist(sessionFactory, rows, IdentityDish::new);
+            long t1 = System.nanoTime();
+            persist(sessionFactory, rows, PooledDish::new);
+            long t2 = System.nanoTime();
+
+            System.out.printf("自增主键插入 %d 行：%d ms，%d 行/秒%n", rows, (t1 - t0) / 1_000_000, perSecond(rows, t1 - t0));
+            System.out.printf("pooled-lo 批量插入 %d 行：%d ms，%d 行/秒%n", rows, (t2 - t1) / 1_000_000, perSecond(rows, t2 - t1));
+        } finally {
+            server.stop();
+        }
+    }
+
+    // 与 application.properties 中的主键和批处理配置一致
+    private static SessionFactory sessionFactory(String url) {
+        return new Configuration()
+                .addAnnotatedClass(IdentityDish.class)
+                .addAnnotatedClass(PooledDish.class)
+                .setProperty("hibernate.connection.url", url)
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.connection.password", "")
+                .setProperty("hibernate.hbm2ddl.auto", "create")
+                .setProperty("hibernate.id.optimizer.pooled.preferred", "pooled-lo")
+                .setProperty("hibernate.id.generator.stored_last_used", "false")
+                .setProperty("hibernate.jdbc.batch_size", String.valueOf(IdSequences.ALLOCATION_SIZE))
+                .setProperty("hibernate.order_inserts", "true")
+                .buildSessionFactory();
+    }
+
+    private static void persist(SessionFactory sessionFactory, int rows, IntFunction<Object> newDish) {
+        EntityManager entityManager = sessionFactory.createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            for (int i = 1; i <= rows; i++) {
+                entityManager.persist(newDish.apply(i));
+                if (i % IdSequences.ALLOCATION_SIZE == 0) {
+                    entityManager.flush();
+                    entityManager.clear();
+                }
+                if (i % COMMIT_EVERY == 0) {
+                    entityManager.getTransaction().commit();
+                    entityManager.getTransaction().begin();
+                }
+            }
+            entityManager.getTransaction().commit();
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private static long perSecond(int rows, long nanos) {
+        return rows * 1_000_000_000L / Math.max(1, nanos);
+    }
+
+    @Entity
+    @Table(name = "dish_identity")
+    static class IdentityDish {
+
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        Long id;
+
+        @Column(nullable = false)
+        Long merchantId;
+
+        @Column(nullable = false)
+        String name;
+
+        BigDecimal price;
+
+        IdentityDish() {
+        }
+
+        IdentityDish(int i) {
+            merchantId = 1L + i % 100;
+            name = "菜品" + i;
+            price = BigDecimal.valueOf(1000 + i % 5000, 2);
+        }
+    }
+
+    @Entity
+    @Table(name = "dish_pooled")
+    static class PooledDish {
+
+        @Id
+        @GeneratedValue(strategy = GenerationType.TABLE, generator = "dish_id")
+        @TableGenerator(name = "dish_id", table = IdSequences.TABLE,
+                pkColumnName = IdSequences.NAME_COLUMN, valueColumnName = IdSequences.VALUE_COLUMN,
+                pkColumnValue = IdSequences.DISH, allocationSize = IdSequences.ALLOCATION_SIZE)
+        Long id;
+
+        @Column(nullable = false)
+        Long merchantId;
+
+        @Column(nullable = false)
+        String name;
+
+        BigDecimal price;
+
+        PooledDish() {
+        }
+
+        PooledDish(int i) {
+            merchantId = 1L + i % 100;
+            name = "菜品" + i;
+            price = BigDecimal.valueOf(1000 + i % 5000, 2);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.github.ussexperimental.takeoutsystem.benchmark;
+
+import com.github.ussexperimental.takeoutsystem.dto.DishImportResult;
+import com.github.ussexperimental.takeoutsystem.entity.Merchant;
+import com.github.ussexperimental.takeoutsystem.entity.enums.UserType;
+import com.github.ussexperimental.takeoutsystem.repository.MerchantRepository;
+import com.github.ussexperimental.takeoutsystem.service.MenuImportService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 菜单批量导入基准测试，使用本地 H2 内存库
+ * <p>
+ * 默认不运行，使用 mvn test -Dbenchmark=true -Dtest=MenuImportBenchmarkTest 运行，
+ * 菜品数量可通过 -Dbenchmark.dishes 指定（默认 200000）。
+ * 请求体由 {@link GeneratedCsv} 边读边生成，与真实请求一样不会整体放入内存。
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:menu_import_benchmark;MODE=MySQL;NON_KEYWORDS=USER",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.sql.init.mode=never",
+        "spring.jpa.show-sql=false",
+        "logging.level.com.github.ussexperimental.takeoutsystem=INFO"
+})
+public class MenuImportBenchmarkTest {
+
+    private static final int TARGET_DISHES_PER_SECOND = 10_000;
+
+    @Autowired
+    private MenuImportService menuImportService;
+
+    @Autowired
+    private MerchantRepository merchantRepository;
+
+    @Test
+    @DisplayName("基准测试 - CSV 批量导入吞吐量")
+    public void benchmark() throws Exception {
+        int dishes = Integer.getInteger("benchmark.dishes", 200_000);
+
+        Merchant merchant = new Merchant();
+        merchant.setUsername("import-benchmark");
+        merchant.setPassword("password123");
+        merchant.setMerchantName("连锁商家");
+        merchant.setUserType(UserType.MERCHANT);
+        Long merchantId = merchantRepository.save(merchant).getId();
+
+        // 预热
+        menuImportService.importCsv(merchantId, new GeneratedCsv(5_000));
+
+        long start = System.nanoTime();
+        DishImportResult result = menuImportService.importCsv(merchantId, new GeneratedCsv(dishes));
+        long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+
+        long perSecond = result.getImported() * 1000L / elapsedMillis;
+        System.out.printf("导入 %d 个菜品，耗时 %d ms，%d 个/秒%n", result.getImported(), elapsedMillis, perSecond);
+
+        assertEquals(dishes, result.getImported());
+        assertEquals(0, result.getFailed());
+        assertTrue(perSecond >= TARGET_DISHES_PER_SECOND, "导入吞吐量低于 " + TARGET_DISHES_PER_SECOND + " 个/秒");
+    }
+
+    /**
+     * 按需生成 CSV 内容的 Reader
+     */
+    private static class GeneratedCsv extends Reader {
+
+        private final int rows;
+        private int row;
+        private String current = "name,price,description,imageUrl\n";
+        private int position;
+
+        GeneratedCsv(int rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            if (position == current.length()) {
+                if (row == rows) {
+                    return -1;
+                }
+                row++;
+                current = "招牌菜品" + row + "," + (10 + row % 90) + "." + (row % 100 / 10) + "0,\"香辣,下饭\",/img/" + row + ".png\n";
+                position = 0;
+            }
+            int n = Math.min(length, current.length() - position);
+            current.getChars(position, position + n, buffer, offset);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
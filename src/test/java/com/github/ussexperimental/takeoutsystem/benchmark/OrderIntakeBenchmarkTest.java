@@ -0,0 +1,218 @@
+package com.github.ussexperimental.takeoutsystem.benchmark;
+
+import com.github.ussexperimental.takeoutsystem.dto.OrderSummary;
+import com.github.ussexperimental.takeoutsystem.entity.Customer;
+import com.github.ussexperimental.takeoutsystem.entity.Dish;
+import com.github.ussexperimental.takeoutsystem.entity.Merchant;
+import com.github.ussexperimental.takeoutsystem.entity.Order;
+import com.github.ussexperimental.takeoutsystem.entity.OrderEvent;
+import com.github.ussexperimental.takeoutsystem.entity.OrderItem;
+import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+import com.github.ussexperimental.takeoutsystem.entity.enums.UserType;
+import com.github.ussexperimental.takeoutsystem.event.OrderCreatedEvent;
+import com.github.ussexperimental.takeoutsystem.repository.CustomerRepository;
+import com.github.ussexperimental.takeoutsystem.repository.DishRepository;
+import com.github.ussexperimental.takeoutsystem.repository.MerchantRepository;
+import com.github.ussexperimental.takeoutsystem.repository.OrderEventRepository;
+import com.github.ussexperimental.takeoutsystem.repository.OrderRepository;
+import com.github.ussexperimental.takeoutsystem.service.CustomerService;
+import jakarta.persistence.EntityManagerFactory;
+import org.h2.tools.Server;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 下单吞吐量基准测试：分别查询顾客、商家、菜品后插入 vs 一条校验查询后插入
+ * <p>
+ * 对照组按改造前的方式在一个事务中执行 findById(顾客)、findById(商家)、findAllById(菜品)，之后的插入与被测方法相同。
+ * 通过 H2 TCP 服务连接，使每条语句都有一次真实的网络往返；同时输出每笔订单的 SQL 条数。
+ * <p>
+ * 默认不运行，使用 mvn test -Dbenchmark=true -Dtest=OrderIntakeBenchmarkTest 运行，
+ * 订单数可通过 -Dbenchmark.orders 指定（默认 20000）。
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@SpringBootTest(properties = {
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.sql.init.mode=never",
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "order.outbox.relay-threads=0",
+        "logging.level.com.github.ussexperimental.takeoutsystem=INFO",
+        "logging.level.org.hibernate.engine.internal.StatisticalLoggingSessionEventListener=WARN"
+})
+public class OrderIntakeBenchmarkTest {
+
+    private static final int DISHES_PER_ORDER = 3;
+
+    private static Server server;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private MerchantRepository merchantRepository;
+
+    @Autowired
+    private DishRepository dishRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderEventRepository orderEventRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) throws SQLException {
+        server = Server.createTcpServer("-tcpPort", "0", "-ifNotExists").start();
+        registry.add("spring.datasource.url", () -> "jdbc:h2:tcp://localhost:" + server.getPort()
+                + "/mem:order_intake_benchmark;MODE=MySQL;NON_KEYWORDS=USER");
+    }
+
+    @AfterAll
+    static void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    @DisplayName("基准测试 - 下单校验查询合并前后的吞吐量对比")
+    public void benchmark() {
+        int orders = Integer.getInteger("benchmark.orders", 20_000);
+
+        Customer customer = new Customer();
+        customer.setUsername("intake-benchmark-customer");
+        customer.setPassword("password123");
+        customer.setUserType(UserType.CUSTOMER);
+        Long customerId = customerRepository.save(customer).getId();
+
+        Merchant merchant = new Merchant();
+        merchant.setUsername("intake-benchmark-merchant");
+        merchant.setPassword("password123");
+        merchant.setMerchantName("下单基准商家");
+        merchant.setUserType(UserType.MERCHANT);
+        merchant = merchantRepository.save(merchant);
+        Long merchantId = merchant.getId();
+
+        List<Long> menu = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Dish dish = new Dish();
+            dish.setMerchant(merchant);
+            dish.setName("菜品" + i);
+            dish.setPrice(BigDecimal.valueOf(1000 + i * 150, 2));
+            menu.add(dishRepository.save(dish).getId());
+        }
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        // 预热
+        for (int i = 0; i < 2_000; i++) {
+            List<Long> dishIds = dishIds(menu, i);
+            transactionTemplate.executeWithoutResult(status -> createOrderWithLookups(customerId, merchantId, dishIds));
+            customerService.createOrder(customerId, merchantId, dishIds, null, "基准测试地址");
+        }
+
+        statistics.clear();
+        long t0 = System.nanoTime();
+        for (int i = 0; i < orders; i++) {
+            List<Long> dishIds = dishIds(menu, i);
+            transactionTemplate.executeWithoutResult(status -> createOrderWithLookups(customerId, merchantId, dishIds));
+        }
+        long t1 = System.nanoTime();
+        long lookupStatements = statistics.getPrepareStatementCount();
+
+        statistics.clear();
+        Order last = null;
+        for (int i = 0; i < orders; i++) {
+            last = customerService.createOrder(customerId, merchantId, dishIds(menu, i), null, "基准测试地址");
+        }
+        long t2 = System.nanoTime();
+        long intakeStatements = statistics.getPrepareStatementCount();
+
+        System.out.printf("分别查询后下单 %d 笔：%d ms，%d 笔/秒，每笔 %.1f 条 SQL%n",
+                orders, (t1 - t0) / 1_000_000, perSecond(orders, t1 - t0), (double) lookupStatements / orders);
+        System.out.printf("一条校验查询后下单 %d 笔：%d ms，%d 笔/秒，每笔 %.1f 条 SQL%n",
+                orders, (t2 - t1) / 1_000_000, perSecond(orders, t2 - t1), (double) intakeStatements / orders);
+
+        Order saved = orderRepository.findDetailById(last.getId()).orElseThrow();
+        assertEquals(merchantId, saved.getMerchant().getId());
+        assertEquals(DISHES_PER_ORDER, saved.getItems().stream().mapToInt(OrderItem::getQuantity).sum());
+        assertTrue(intakeStatements < lookupStatements);
+    }
+
+    // 每笔订单点 3 份菜品，其中一个菜品点两份
+    private static List<Long> dishIds(List<Long> menu, int i) {
+        Long first = menu.get(i % menu.size());
+        return List.of(first, menu.get((i + 7) % menu.size()), first);
+    }
+
+    // 改造前的下单方式：分别查询顾客、商家和菜品，关联已加载的实体
+    private void createOrderWithLookups(Long customerId, Long merchantId, List<Long> dishIds) {
+        Customer customer = customerRepository.findById(customerId).orElseThrow();
+        Merchant merchant = merchantRepository.findById(merchantId).orElseThrow();
+        Map<Long, Dish> dishes = dishRepository.findAllById(dishIds).stream()
+                .collect(Collectors.toMap(Dish::getId, Function.identity()));
+
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        dishIds.forEach(dishId -> quantities.merge(dishId, 1, Integer::sum));
+        List<OrderItem> items = new ArrayList<>();
+        long totalCents = 0;
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            OrderItem item = OrderItem.of(dishes.get(entry.getKey()), entry.getValue());
+            items.add(item);
+            totalCents += item.subtotalCents();
+        }
+
+        Order order = new Order();
+        order.setCustomer(customer);
+        order.setMerchant(merchant);
+        order.setItems(items);
+        order.setDeliveryLocation("基准测试地址");
+        order.setOrderTime(new Date());
+        order.setStatus(OrderStatus.PENDING_CONFIRMATION);
+        order.setTotalPrice(OrderItem.fromCents(totalCents));
+        Order savedOrder = orderRepository.save(order);
+        orderEventRepository.save(OrderEvent.of(savedOrder.getId(), null, savedOrder.getStatus()));
+        eventPublisher.publishEvent(new OrderCreatedEvent(OrderSummary.from(savedOrder)));
+    }
+
+    private static long perSecond(int orders, long nanos) {
+        return orders * 1_000_000_000L / Math.max(1, nanos);
+    }
+}
@@ -0,0 +1,256 @@
+package com.github.ussexperimental.takeoutsystem.benchmark;
+
+import com.github.ussexperimental.takeoutsystem.TakeoutSystemApplication;
+import com.github.ussexperimental.takeoutsystem.entity.Customer;
+import com.github.ussexperimental.takeoutsystem.entity.Merchant;
+import com.github.ussexperimental.takeoutsystem.entity.Order;
+import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+import com.github.ussexperimental.takeoutsystem.entity.enums.UserType;
+import com.github.ussexperimental.takeoutsystem.repository.CustomerRepository;
+import com.github.ussexperimental.takeoutsystem.repository.MerchantRepository;
+import com.github.ussexperimental.takeoutsystem.repository.OrderRepository;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import org.h2.tools.Server;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 请求处理线程模式的压测对比：Tomcat 平台线程池 vs 虚拟线程（spring.threads.virtual.enabled）
+ * <p>
+ * 两种模式各启动一次完整应用（随机端口，经 H2 TCP 服务连接数据库），由固定数量的客户端并发请求
+ * GET /customers/orders（每次两条查询：分页和总数），输出吞吐量、p50/p99 延迟、服务端同时处理中的最大请求数
+ * 以及失败请求数（如隔离舱等待超时）。每次取数据库连接额外等待 benchmark.db-latency-ms，模拟远程数据库上的事务耗时；
+ * 两种模式使用相同的连接池和数据库隔离舱配置。
+ * <p>
+ * 默认不运行，使用 mvn test -Dbenchmark=true -Dtest=VirtualThreadBenchmarkTest 运行，
+ * 可通过 -Dbenchmark.clients（并发客户端数，默认 1000）、-Dbenchmark.requests（每个客户端的请求数，默认 20）、
+ * -Dbenchmark.db-latency-ms（默认 5）调整。
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class VirtualThreadBenchmarkTest {
+
+    private static Server server;
+
+    @BeforeAll
+    static void startServer() throws SQLException {
+        server = Server.createTcpServer("-tcpPort", "0", "-ifNotExists").start();
+    }
+
+    @AfterAll
+    static void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    @DisplayName("基准测试 - 平台线程与虚拟线程处理请求的延迟和并发对比")
+    public void benchmark() throws Exception {
+        int clients = Integer.getInteger("benchmark.clients", 1000);
+        int requests = Integer.getInteger("benchmark.requests", 20);
+        long latencyMillis = Long.getLong("benchmark.db-latency-ms", 5L);
+
+        Result platform = run(false, clients, requests, latencyMillis);
+        Result virtual = run(true, clients, requests, latencyMillis);
+
+        System.out.println(platform.describe("平台线程"));
+        System.out.println(virtual.describe("虚拟线程"));
+
+        // 平台线程模式下同时处理的请求数受 Tomcat 线程池（默认 200）限制，虚拟线程模式下不受限制；
+        // 超出处理能力时，前者在 Tomcat 队列中排队，后者在数据库隔离舱排队，等待超过 db.bulkhead.timeout-ms 的请求失败
+        assertTrue(platform.maxInFlight <= 200);
+        assertTrue(virtual.maxInFlight >= Math.min(clients, platform.maxInFlight));
+    }
+
+    private Result run(boolean virtualThreads, int clients, int requests, long latencyMillis) throws Exception {
+        InFlightProbe probe = new InFlightProbe();
+        String database = virtualThreads ? "virtual_thread_benchmark" : "platform_thread_benchmark";
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(TakeoutSystemApplication.class)
+                .initializers(ctx -> {
+                    ctx.getBeanFactory().registerSingleton("inFlightProbe", probe);
+                    ctx.getBeanFactory().addBeanPostProcessor(new DatabaseLatency(latencyMillis));
+                })
+                .run("--server.port=0",
+                        "--spring.threads.virtual.enabled=" + virtualThreads,
+                        "--spring.datasource.url=jdbc:h2:tcp://localhost:" + server.getPort() + "/mem:" + database
+                                + ";MODE=MySQL;NON_KEYWORDS=USER",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.sql.init.mode=never",
+                        "--spring.jpa.show-sql=false",
+                        // 所有客户端使用同一个顾客ID，不能被接口限流拦下
+                        "--rate-limit.enabled=false",
+                        "--logging.level.com.github.ussexperimental.takeoutsystem=INFO");
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            Long customerId = seed(context);
+            URI uri = URI.create("http://localhost:" + port + "/customers/orders?customerId=" + customerId);
+
+            // 预热
+            load(uri, clients, 2);
+            probe.reset();
+            return load(uri, clients, requests).withMaxInFlight(probe.maxInFlight.get());
+        } finally {
+            context.close();
+        }
+    }
+
+    private static Long seed(ConfigurableApplicationContext context) {
+        Customer customer = new Customer();
+        customer.setUsername("thread-benchmark-customer");
+        customer.setPassword("password123");
+        customer.setUserType(UserType.CUSTOMER);
+        customer = context.getBean(CustomerRepository.class).save(customer);
+
+        Merchant merchant = new Merchant();
+        merchant.setUsername("thread-benchmark-merchant");
+        merchant.setPassword("password123");
+        merchant.setMerchantName("压测商家");
+        merchant.setUserType(UserType.MERCHANT);
+        merchant = context.getBean(MerchantRepository.class).save(merchant);
+
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            Order order = new Order();
+            order.setCustomer(customer);
+            order.setMerchant(merchant);
+            order.setTotalPrice(BigDecimal.valueOf(2000 + i, 2));
+            order.setOrderTime(new Date());
+            order.setStatus(OrderStatus.COMPLETED);
+            orders.add(order);
+        }
+        context.getBean(OrderRepository.class).saveAll(orders);
+        return customer.getId();
+    }
+
+    // 每个客户端串行发送 requests 个请求，记录每个请求的延迟
+    private static Result load(URI uri, int clients, int requests) throws Exception {
+        long[] latencies = new long[clients * requests];
+        LongAdder failures = new LongAdder();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient client = HttpClient.newBuilder().executor(executor).build()) {
+            HttpRequest request = HttpRequest.newBuilder(uri).GET().build();
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int c = 0; c < clients; c++) {
+                int offset = c * requests;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < requests; i++) {
+                        long t0 = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() != 200) {
+                                failures.increment();
+                            }
+                        } catch (Exception e) {
+                            failures.increment();
+                        }
+                        latencies[offset + i] = System.nanoTime() - t0;
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return new Result(latencies, System.nanoTime() - start, failures.intValue(), 0);
+        }
+    }
+
+    private record Result(long[] latencies, long elapsedNanos, int failures, int maxInFlight) {
+
+        Result withMaxInFlight(int maxInFlight) {
+            return new Result(latencies, elapsedNanos, failures, maxInFlight);
+        }
+
+        String describe(String mode) {
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            return String.format("%s：%d 个请求，%d 请求/秒，p50 %.1f ms，p99 %.1f ms，最大同时处理 %d 个请求，失败 %d 个",
+                    mode, sorted.length, sorted.length * 1_000_000_000L / Math.max(1, elapsedNanos),
+                    percentile(sorted, 0.50), percentile(sorted, 0.99), maxInFlight, failures);
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1_000_000.0;
+        }
+    }
+
+    // 统计服务端同时处理中的请求数
+    private static class InFlightProbe implements Filter {
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+                throws IOException, ServletException {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        void reset() {
+            maxInFlight.set(0);
+        }
+    }
+
+    // 每次取连接额外等待，模拟远程数据库上的事务耗时（在数据库隔离舱之内）
+    private record DatabaseLatency(long millis) implements BeanPostProcessor {
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!(bean instanceof DataSource dataSource)) {
+                return bean;
+            }
+            return new DelegatingDataSource(dataSource) {
+                @Override
+                public Connection getConnection() throws SQLException {
+                    Connection connection = super.getConnection();
+                    try {
+                        Thread.sleep(millis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return connection;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.ussexperimental.takeoutsystem.cache;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ApproximateCountCacheTest {
+
+    @Test
+    @DisplayName("测试首次读取未知，后台刷新后返回缓存值")
+    public void testRefreshInBackground() {
+        List<Runnable> tasks = new ArrayList<>();
+        ApproximateCountCache cache = new ApproximateCountCache(60, 10, tasks::add);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals(ApproximateCountCache.UNKNOWN, cache.get("orders", 1L, () -> calls.incrementAndGet() * 100L));
+        // 刷新任务未执行前，重复读取不会重复提交
+        assertEquals(ApproximateCountCache.UNKNOWN, cache.get("orders", 1L, () -> calls.incrementAndGet() * 100L));
+        assertEquals(1, tasks.size());
+        assertEquals(0, calls.get());
+
+        tasks.get(0).run();
+
+        assertEquals(100L, cache.get("orders", 1L, () -> calls.incrementAndGet() * 100L));
+        assertEquals(1, calls.get());
+        assertEquals(1, tasks.size());
+    }
+
+    @Test
+    @DisplayName("测试过期后返回旧值并重新统计")
+    public void testStaleValue() {
+        ApproximateCountCache cache = new ApproximateCountCache(0, 10, Runnable::run);
+        AtomicInteger calls = new AtomicInteger();
+
+        // 读取只返回提交刷新前的值
+        assertEquals(ApproximateCountCache.UNKNOWN, cache.get("orders", 1L, calls::incrementAndGet));
+        assertEquals(1L, cache.get("orders", 1L, calls::incrementAndGet));
+        assertEquals(2L, cache.get("orders", 1L, calls::incrementAndGet));
+        // 不同所有者互不影响
+        assertEquals(ApproximateCountCache.UNKNOWN, cache.get("orders", 2L, calls::incrementAndGet));
+        assertEquals(4L, cache.get("orders", 2L, calls::incrementAndGet));
+    }
+
+    @Test
+    @DisplayName("测试定时刷新最近被读取过的缓存项")
+    public void testRefreshLive() throws InterruptedException {
+        List<Runnable> tasks = new ArrayList<>();
+        ApproximateCountCache cache = new ApproximateCountCache(1, 10, tasks::add);
+        AtomicInteger calls = new AtomicInteger();
+        cache.get("orders", 1L, calls::incrementAndGet);
+        tasks.remove(0).run();
+        // 外部写入的精确值没有对应的查询，不参与定时刷新
+        cache.put("orders", 2L, 42L);
+
+        // 刚刷新过，不需要再刷新
+        cache.refreshLive();
+        assertTrue(tasks.isEmpty());
+
+        // 超过半个 TTL 后仍在读取，未过期也会提前刷新
+        Thread.sleep(600);
+        assertEquals(1L, cache.get("orders", 1L, calls::incrementAndGet));
+        assertTrue(tasks.isEmpty());
+        cache.refreshLive();
+        assertEquals(1, tasks.size());
+        tasks.remove(0).run();
+
+        assertEquals(2L, cache.get("orders", 1L, calls::incrementAndGet));
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    @DisplayName("测试统计失败时保留旧值")
+    public void testRefreshFailure() {
+        ApproximateCountCache cache = new ApproximateCountCache(0, 10, Runnable::run);
+        cache.put("orders", 1L, 42L);
+
+        assertEquals(42L, cache.get("orders", 1L, () -> {
+            throw new IllegalStateException("数据库不可用");
+        }));
+    }
+
+    @Test
+    @DisplayName("测试超出容量后按 LRU 淘汰")
+    public void testEviction() {
+        ApproximateCountCache cache = new ApproximateCountCache(60, 2, Runnable::run);
+        cache.put("orders", 1L, 1L);
+        cache.put("orders", 2L, 2L);
+        cache.put("orders", 3L, 3L);
+
+        assertEquals(2, cache.size());
+    }
+}
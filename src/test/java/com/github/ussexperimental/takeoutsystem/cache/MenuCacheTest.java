@@ -0,0 +1,171 @@
+package com.github.ussexperimental.takeoutsystem.cache;
+
+import com.github.ussexperimental.takeoutsystem.dto.PageResponse;
+import com.github.ussexperimental.takeoutsystem.entity.Dish;
+import com.github.ussexperimental.takeoutsystem.repository.MerchantRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class MenuCacheTest {
+
+    private MenuCache menuCache;
+
+    private MerchantRepository merchantRepository;
+
+    @BeforeEach
+    public void setUp() {
+        menuCache = new MenuCache(2);
+        // 模拟仓库行为：所有商家的菜单版本号均为 0
+        merchantRepository = mock(MerchantRepository.class);
+        when(merchantRepository.findMenuVersionById(anyLong())).thenReturn(Optional.of(0L));
+        ReflectionTestUtils.setField(menuCache, "merchantRepository", merchantRepository);
+    }
+
+    private PageResponse<Dish> menu() {
+        return new PageResponse<>(Collections.emptyList(), 0, 10, 0, 0, true);
+    }
+
+    @Test
+    @DisplayName("测试写入后命中缓存")
+    public void testPutThenGet() {
+        PageResponse<Dish> menu = menu();
+        menuCache.put(1L, 0, 10, menuCache.version(1L), menu);
+
+        assertSame(menu, menuCache.get(1L, 0, 10));
+        assertNull(menuCache.get(1L, 1, 10));
+    }
+
+    @Test
+    @DisplayName("测试版本号在 TTL 内从内存读取，缓存命中和 ETag 不访问数据库")
+    public void testVersionCached() {
+        menuCache.put(1L, 0, 10, menuCache.version(1L), menu());
+
+        assertNotNull(menuCache.get(1L, 0, 10));
+        menuCache.eTag(1L, 0, 10);
+        menuCache.eTag(1L, 0, 10);
+
+        verify(merchantRepository, times(1)).findMenuVersionById(1L);
+    }
+
+    @Test
+    @DisplayName("测试数据库中的版本号递增后，超过 TTL 重新加载时缓存失效（例如其他节点修改了菜单）")
+    public void testVersionChanged() {
+        menuCache.put(1L, 0, 10, menuCache.version(1L), menu());
+        menuCache.put(2L, 0, 10, menuCache.version(2L), menu());
+
+        when(merchantRepository.findMenuVersionById(1L)).thenReturn(Optional.of(1L));
+
+        // TTL 内仍使用本节点的版本号
+        assertEquals(0L, menuCache.version(1L));
+        assertNotNull(menuCache.get(1L, 0, 10));
+
+        ReflectionTestUtils.setField(menuCache, "versionTtlSeconds", 0L);
+
+        assertEquals(1L, menuCache.version(1L));
+        assertNull(menuCache.get(1L, 0, 10));
+        assertNotNull(menuCache.get(2L, 0, 10));
+    }
+
+    @Test
+    @DisplayName("测试清除商家在本节点的缓存项，版本号立即从数据库重新加载")
+    public void testInvalidate() {
+        menuCache.put(1L, 0, 10, menuCache.version(1L), menu());
+        menuCache.put(2L, 0, 10, menuCache.version(2L), menu());
+        when(merchantRepository.findMenuVersionById(1L)).thenReturn(Optional.of(1L));
+
+        menuCache.invalidate(1L);
+
+        assertEquals(1, menuCache.size());
+        assertEquals(1L, menuCache.version(1L));
+        assertNull(menuCache.get(1L, 0, 10));
+        assertNotNull(menuCache.get(2L, 0, 10));
+    }
+
+    @Test
+    @DisplayName("测试加载版本号期间被清除时不缓存可能过期的版本号")
+    public void testInvalidateDuringLoad() {
+        when(merchantRepository.findMenuVersionById(1L)).thenAnswer(invocation -> {
+            // 模拟加载期间菜品写操作提交
+            menuCache.invalidate(1L);
+            return Optional.of(0L);
+        });
+
+        assertEquals(0L, menuCache.version(1L));
+
+        when(merchantRepository.findMenuVersionById(1L)).thenReturn(Optional.of(1L));
+        assertEquals(1L, menuCache.version(1L));
+    }
+
+    @Test
+    @DisplayName("测试 ETag 随版本号变化")
+    public void testETag() {
+        String before = menuCache.eTag(1L, 0, 10);
+
+        assertEquals(before, menuCache.eTag(1L, 0, 10));
+        assertNotEquals(before, menuCache.eTag(1L, 1, 10));
+
+        when(merchantRepository.findMenuVersionById(1L)).thenReturn(Optional.of(1L));
+        menuCache.invalidate(1L);
+
+        assertNotEquals(before, menuCache.eTag(1L, 0, 10));
+        assertTrue(before.startsWith("\"") && before.endsWith("\""));
+        // 只依赖持久化的版本号，另一个实例（节点）计算出相同的 ETag
+        MenuCache other = new MenuCache(2);
+        ReflectionTestUtils.setField(other, "merchantRepository", merchantRepository);
+        assertEquals(menuCache.eTag(1L, 0, 10), other.eTag(1L, 0, 10));
+    }
+
+    @Test
+    @DisplayName("测试加载期间版本变化时写入的缓存项不会命中")
+    public void testPutWithStaleVersion() {
+        long version = menuCache.version(1L);
+        when(merchantRepository.findMenuVersionById(1L)).thenReturn(Optional.of(1L));
+        menuCache.invalidate(1L);
+
+        menuCache.put(1L, 0, 10, version, menu());
+
+        assertNull(menuCache.get(1L, 0, 10));
+    }
+
+    @Test
+    @DisplayName("测试超出容量后按 LRU 淘汰")
+    public void testLruEviction() {
+        menuCache.put(1L, 0, 10, 0L, menu());
+        menuCache.put(2L, 0, 10, 0L, menu());
+        // 访问商家1，使商家2成为最久未使用
+        menuCache.get(1L, 0, 10);
+        menuCache.put(3L, 0, 10, 0L, menu());
+
+        assertEquals(2, menuCache.size());
+        assertNotNull(menuCache.get(1L, 0, 10));
+        assertNull(menuCache.get(2L, 0, 10));
+        assertNotNull(menuCache.get(3L, 0, 10));
+    }
+
+    @Test
+    @DisplayName("测试命中、未命中和淘汰指标")
+    public void testMetrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        menuCache.bindTo(registry);
+
+        menuCache.get(1L, 0, 10);
+        menuCache.put(1L, 0, 10, 0L, menu());
+        menuCache.get(1L, 0, 10);
+        menuCache.put(2L, 0, 10, 0L, menu());
+        menuCache.put(3L, 0, 10, 0L, menu());
+
+        assertEquals(1.0, registry.get("cache.gets").tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, registry.get("cache.gets").tag("result", "miss").functionCounter().count());
+        assertEquals(1.0, registry.get("cache.evictions").functionCounter().count());
+        assertEquals(2.0, registry.get("cache.size").gauge().value());
+    }
+}
@@ -93,14 +93,13 @@ public class AdminControllerTest {
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.id").value(createdUser.getId()))
                 .andExpect(jsonPath("$.username").value(createdUser.getUsername()))
-                .andExpect(jsonPath("$.password").value(createdUser.getPassword()))
+                .andExpect(jsonPath("$.password").doesNotExist())
                 .andExpect(jsonPath("$.phone").value(createdUser.getPhone()))
                 .andExpect(jsonPath("$.email").value(createdUser.getEmail()))
                 .andExpect(jsonPath("$.address").value(createdUser.getAddress()))
                 .andExpect(jsonPath("$.userType").value(createdUser.getUserType().toString()))
                 // 验证 Role 对象
-                .andExpect(jsonPath("$.role.id").value(userRole.getId()))
-                .andExpect(jsonPath("$.role.roleType").value(userRole.getRoleType().toString()));
+                .andExpect(jsonPath("$.roleType").value(userRole.getRoleType().toString()));
 
         // 验证 AdminService.createUser 方法被调用一次
         verify(adminService, times(1)).createUser(
@@ -214,25 +213,23 @@ public class AdminControllerTest {
                 // 验证第一个用户
                 .andExpect(jsonPath("$.content[0].id").value(user1.getId()))
                 .andExpect(jsonPath("$.content[0].username").value(user1.getUsername()))
-                .andExpect(jsonPath("$.content[0].password").value(user1.getPassword()))
+                .andExpect(jsonPath("$.content[0].password").doesNotExist())
                 .andExpect(jsonPath("$.content[0].phone").value(user1.getPhone()))
                 .andExpect(jsonPath("$.content[0].email").value(user1.getEmail()))
                 .andExpect(jsonPath("$.content[0].address").value(user1.getAddress()))
                 .andExpect(jsonPath("$.content[0].userType").value(user1.getUserType().toString()))
                 // 验证第一个用户的 Role 对象
-                .andExpect(jsonPath("$.content[0].role.id").value(customerRole.getId()))
-                .andExpect(jsonPath("$.content[0].role.roleType").value(customerRole.getRoleType().toString()))
+                .andExpect(jsonPath("$.content[0].roleType").value(customerRole.getRoleType().toString()))
                 // 验证第二个用户
                 .andExpect(jsonPath("$.content[1].id").value(user2.getId()))
                 .andExpect(jsonPath("$.content[1].username").value(user2.getUsername()))
-                .andExpect(jsonPath("$.content[1].password").value(user2.getPassword()))
+                .andExpect(jsonPath("$.content[1].password").doesNotExist())
                 .andExpect(jsonPath("$.content[1].phone").value(user2.getPhone()))
                 .andExpect(jsonPath("$.content[1].email").value(user2.getEmail()))
                 .andExpect(jsonPath("$.content[1].address").value(user2.getAddress()))
                 .andExpect(jsonPath("$.content[1].userType").value(user2.getUserType().toString()))
                 // 验证第二个用户的 Role 对象
-                .andExpect(jsonPath("$.content[1].role.id").value(merchantRole.getId()))
-                .andExpect(jsonPath("$.content[1].role.roleType").value(merchantRole.getRoleType().toString()));
+                .andExpect(jsonPath("$.content[1].roleType").value(merchantRole.getRoleType().toString()));
 
         // 验证 AdminService.getAllUsers 方法被调用一次
         verify(adminService, times(1)).getAllUsers(0, 10);
@@ -264,6 +261,42 @@ public class AdminControllerTest {
         verify(adminService, times(1)).getAllUsers(0, 10);
     }
 
+    @Test
+    @DisplayName("GET /admin/users?withTotal=false - 不统计总数")
+    public void testGetAllUsers_WithoutTotal() throws Exception {
+        // 准备数据
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("user1");
+
+        PageResponse<User> pageResponse = new PageResponse<>(Arrays.asList(user), 0, 1, 40, 40, false, null, true);
+
+        // Mock AdminService 的 getAllUsers 方法
+        when(adminService.getAllUsers(0, 1, false)).thenReturn(pageResponse);
+
+        // 执行请求并验证响应
+        mockMvc.perform(get("/admin/users")
+                        .param("size", "1")
+                        .param("withTotal", "false"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalElements").value(40))
+                .andExpect(jsonPath("$.approximateTotal").value(true));
+
+        verify(adminService, never()).getAllUsers(anyInt(), anyInt());
+    }
+
+    @Test
+    @DisplayName("GET /admin/users?after= - 游标分页，游标无效")
+    public void testGetAllUsers_InvalidCursor() throws Exception {
+        // Mock AdminService 的 getAllUsers 方法抛出异常
+        when(adminService.getAllUsers("bad", 10)).thenThrow(new IllegalArgumentException("分页游标无效"));
+
+        // 执行请求并验证响应
+        mockMvc.perform(get("/admin/users")
+                        .param("after", "bad"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     @DisplayName("GET /admin/users - 获取所有用户内部服务器错误")
     public void testGetAllUsers_InternalServerError() throws Exception {
@@ -312,14 +345,13 @@ public class AdminControllerTest {
                 // 验证用户信息
                 .andExpect(jsonPath("$.id").value(user.getId()))
                 .andExpect(jsonPath("$.username").value(user.getUsername()))
-                .andExpect(jsonPath("$.password").value(user.getPassword()))
+                .andExpect(jsonPath("$.password").doesNotExist())
                 .andExpect(jsonPath("$.phone").value(user.getPhone()))
                 .andExpect(jsonPath("$.email").value(user.getEmail()))
                 .andExpect(jsonPath("$.address").value(user.getAddress()))
                 .andExpect(jsonPath("$.userType").value(user.getUserType().toString()))
                 // 验证 Role 对象
-                .andExpect(jsonPath("$.role.id").value(userRole.getId()))
-                .andExpect(jsonPath("$.role.roleType").value(userRole.getRoleType().toString()));
+                .andExpect(jsonPath("$.roleType").value(userRole.getRoleType().toString()));
 
         // 验证 AdminService.getUserById 方法被调用一次
         verify(adminService, times(1)).getUserById(userId);
@@ -387,14 +419,13 @@ public class AdminControllerTest {
                 // 验证更新后的用户信息
                 .andExpect(jsonPath("$.id").value(updatedUser.getId()))
                 .andExpect(jsonPath("$.username").value(updatedUser.getUsername()))
-                .andExpect(jsonPath("$.password").value(updatedUser.getPassword()))
+                .andExpect(jsonPath("$.password").doesNotExist())
                 .andExpect(jsonPath("$.phone").value(updatedUser.getPhone()))
                 .andExpect(jsonPath("$.email").value(updatedUser.getEmail()))
                 .andExpect(jsonPath("$.address").value(updatedUser.getAddress()))
                 .andExpect(jsonPath("$.userType").value(updatedUser.getUserType().toString()))
                 // 验证 Role 对象
-                .andExpect(jsonPath("$.role.id").value(updatedRole.getId()))
-                .andExpect(jsonPath("$.role.roleType").value(updatedRole.getRoleType().toString()));
+                .andExpect(jsonPath("$.roleType").value(updatedRole.getRoleType().toString()));
 
         // 验证 AdminService.updateUser 方法被调用一次
         verify(adminService, times(1)).updateUser(
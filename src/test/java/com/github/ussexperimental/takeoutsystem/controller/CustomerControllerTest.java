@@ -2,13 +2,16 @@ package com.github.ussexperimental.takeoutsystem.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.ussexperimental.takeoutsystem.dto.OrderCreateDTO;
+import com.github.ussexperimental.takeoutsystem.dto.OrderIntakeStatus;
 import com.github.ussexperimental.takeoutsystem.dto.PageResponse;
 import com.github.ussexperimental.takeoutsystem.dto.ReviewDTO;
 import com.github.ussexperimental.takeoutsystem.entity.*;
 import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
 import com.github.ussexperimental.takeoutsystem.entity.enums.RoleType;
 import com.github.ussexperimental.takeoutsystem.entity.enums.UserType;
+import com.github.ussexperimental.takeoutsystem.ratelimit.RateLimiter;
 import com.github.ussexperimental.takeoutsystem.service.CustomerService;
+import com.github.ussexperimental.takeoutsystem.service.OrderIntakeService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -20,10 +23,12 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
@@ -38,6 +43,12 @@ public class CustomerControllerTest {
     @Mock
     private CustomerService customerService;
 
+    @Mock
+    private OrderIntakeService orderIntakeService;
+
+    @Mock
+    private RateLimiter rateLimiter;
+
     @InjectMocks
     private CustomerController customerController;
 
@@ -104,22 +115,20 @@ public class CustomerControllerTest {
                 .andExpect(jsonPath("$.totalElements").value(2))
                 .andExpect(jsonPath("$.totalPages").value(1))
                 .andExpect(jsonPath("$.last").value(true))
-                // 验证第一个菜品
+                // 验证第一行明细
                 .andExpect(jsonPath("$.content[0].id").value(dish1.getId()))
                 .andExpect(jsonPath("$.content[0].name").value(dish1.getName()))
                 .andExpect(jsonPath("$.content[0].price").value(dish1.getPrice().doubleValue()))
                 .andExpect(jsonPath("$.content[0].description").value(dish1.getDescription()))
                 .andExpect(jsonPath("$.content[0].imageUrl").value(dish1.getImageUrl()))
-                .andExpect(jsonPath("$.content[0].merchant.id").value(merchant.getId()))
-                .andExpect(jsonPath("$.content[0].merchant.merchantName").value(merchant.getMerchantName())) // 修改为 merchantName
-                // 验证第二个菜品
+                .andExpect(jsonPath("$.content[0].merchantId").value(merchant.getId()))
+                // 验证第二行明细
                 .andExpect(jsonPath("$.content[1].id").value(dish2.getId()))
                 .andExpect(jsonPath("$.content[1].name").value(dish2.getName()))
                 .andExpect(jsonPath("$.content[1].price").value(dish2.getPrice().doubleValue()))
                 .andExpect(jsonPath("$.content[1].description").value(dish2.getDescription()))
                 .andExpect(jsonPath("$.content[1].imageUrl").value(dish2.getImageUrl()))
-                .andExpect(jsonPath("$.content[1].merchant.id").value(merchant.getId()))
-                .andExpect(jsonPath("$.content[1].merchant.merchantName").value(merchant.getMerchantName())); // 修改为 merchantName
+                .andExpect(jsonPath("$.content[1].merchantId").value(merchant.getId()));
 
         // 验证 CustomerService.viewMenu 方法被调用一次
         verify(customerService, times(1)).viewMenu(eq(merchantId), eq(0), eq(10));
@@ -178,6 +187,86 @@ public class CustomerControllerTest {
         verify(customerService, times(1)).viewMenu(eq(merchantId), eq(0), eq(10));
     }
 
+    // 3.1 测试查看菜单未修改（条件请求）
+    @Test
+    @DisplayName("GET /customers/menu - If-None-Match 命中时返回 304")
+    public void testViewMenu_NotModified() throws Exception {
+        // 准备数据
+        Long merchantId = 1L;
+        String eTag = "\"menu-1-0-0-10\"";
+
+        // Mock CustomerService 的 menuETag 方法
+        when(customerService.menuETag(merchantId, 0, 10)).thenReturn(eTag);
+
+        // 执行请求并验证响应
+        mockMvc.perform(get("/customers/menu")
+                        .param("merchantId", merchantId.toString())
+                        .param("page", "0")
+                        .param("size", "10")
+                        .header("If-None-Match", eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", eTag));
+
+        // 验证未加载菜单
+        verify(customerService, never()).viewMenu(anyLong(), anyInt(), anyInt());
+    }
+
+    // 3.2 测试搜索菜品成功
+    @Test
+    @DisplayName("GET /customers/dishes/search - 搜索菜品成功")
+    public void testSearchDishes_Success() throws Exception {
+        // 准备数据
+        Dish dish = new Dish();
+        dish.setId(1L);
+        dish.setName("宫保鸡丁");
+
+        PageResponse<Dish> pageResponse = new PageResponse<>(Arrays.asList(dish), 0, 10, 1, 1, true);
+
+        // Mock CustomerService 的 searchDishes 方法
+        when(customerService.searchDishes("鸡丁", 0, 10)).thenReturn(pageResponse);
+
+        // 执行请求并验证响应
+        mockMvc.perform(get("/customers/dishes/search")
+                        .param("keyword", "鸡丁"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].name").value("宫保鸡丁"))
+                .andExpect(jsonPath("$.totalElements").value(1));
+
+        verify(customerService, times(1)).searchDishes("鸡丁", 0, 10);
+    }
+
+    // 3.3 测试按价格浏览菜品
+    @Test
+    @DisplayName("GET /customers/dishes - 按价格区间浏览菜品成功")
+    public void testBrowseDishesByPrice_Success() throws Exception {
+        // 准备数据
+        Dish dish = new Dish();
+        dish.setId(2L);
+        dish.setName("鸡蛋炒饭");
+        dish.setPrice(new BigDecimal("9.90"));
+
+        PageResponse<Dish> pageResponse = new PageResponse<>(Arrays.asList(dish), 0, 10, 1, 1, true);
+
+        // Mock CustomerService 的 browseDishesByPrice 方法
+        when(customerService.browseDishesByPrice(new BigDecimal("5"), new BigDecimal("10"), 0, 10)).thenReturn(pageResponse);
+
+        // 执行请求并验证响应
+        mockMvc.perform(get("/customers/dishes")
+                        .param("minPrice", "5")
+                        .param("maxPrice", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].price").value(9.9));
+
+        // 价格区间无效
+        when(customerService.browseDishesByPrice(new BigDecimal("10"), new BigDecimal("5"), 0, 10))
+                .thenThrow(new IllegalArgumentException("价格区间无效"));
+
+        mockMvc.perform(get("/customers/dishes")
+                        .param("minPrice", "10")
+                        .param("maxPrice", "5"))
+                .andExpect(status().isBadRequest());
+    }
+
     // 4. 测试创建订单成功
     @Test
     @DisplayName("POST /customers/orders - 创建订单成功")
@@ -218,7 +307,7 @@ public class CustomerControllerTest {
         createdOrder.setId(1L);
         createdOrder.setCustomer(customer);
         createdOrder.setMerchant(merchant);
-        createdOrder.setDishes(Arrays.asList(dish1, dish2));
+        createdOrder.setItems(Arrays.asList(OrderItem.of(dish1, 1), OrderItem.of(dish2, 1)));
         createdOrder.setTotalPrice(new BigDecimal("25.50"));
         createdOrder.setDeliveryLocation(orderCreateDTO.getDeliveryLocation());
         createdOrder.setOrderTime(new Date());
@@ -242,28 +331,24 @@ public class CustomerControllerTest {
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 // 验证订单信息
                 .andExpect(jsonPath("$.id").value(createdOrder.getId()))
-                .andExpect(jsonPath("$.customer.id").value(customer.getId()))
-                .andExpect(jsonPath("$.customer.username").value(customer.getUsername()))
-                .andExpect(jsonPath("$.merchant.id").value(merchant.getId()))
-                .andExpect(jsonPath("$.merchant.merchantName").value(merchant.getMerchantName())) // 修改为 merchantName
-                .andExpect(jsonPath("$.dishes").isArray())
-                .andExpect(jsonPath("$.dishes.length()").value(2))
-                // 验证第一个菜品
-                .andExpect(jsonPath("$.dishes[0].id").value(dish1.getId()))
-                .andExpect(jsonPath("$.dishes[0].name").value(dish1.getName()))
-                .andExpect(jsonPath("$.dishes[0].price").value(dish1.getPrice().doubleValue()))
-                .andExpect(jsonPath("$.dishes[0].description").value(dish1.getDescription()))
-                .andExpect(jsonPath("$.dishes[0].imageUrl").value(dish1.getImageUrl()))
-                .andExpect(jsonPath("$.dishes[0].merchant.id").value(merchant.getId()))
-                .andExpect(jsonPath("$.dishes[0].merchant.merchantName").value(merchant.getMerchantName())) // 修改为 merchantName
-                // 验证第二个菜品
-                .andExpect(jsonPath("$.dishes[1].id").value(dish2.getId()))
-                .andExpect(jsonPath("$.dishes[1].name").value(dish2.getName()))
-                .andExpect(jsonPath("$.dishes[1].price").value(dish2.getPrice().doubleValue()))
-                .andExpect(jsonPath("$.dishes[1].description").value(dish2.getDescription()))
-                .andExpect(jsonPath("$.dishes[1].imageUrl").value(dish2.getImageUrl()))
-                .andExpect(jsonPath("$.dishes[1].merchant.id").value(merchant.getId()))
-                .andExpect(jsonPath("$.dishes[1].merchant.merchantName").value(merchant.getMerchantName())) // 修改为 merchantName
+                .andExpect(jsonPath("$.customerId").value(customer.getId()))
+                .andExpect(jsonPath("$.customerName").value(customer.getUsername()))
+                .andExpect(jsonPath("$.merchantId").value(merchant.getId()))
+                .andExpect(jsonPath("$.merchantName").value(merchant.getMerchantName()))
+                .andExpect(jsonPath("$.items").isArray())
+                .andExpect(jsonPath("$.items.length()").value(2))
+                // 验证第一行明细
+                .andExpect(jsonPath("$.items[0].dishId").value(dish1.getId()))
+                .andExpect(jsonPath("$.items[0].name").value(dish1.getName()))
+                .andExpect(jsonPath("$.items[0].quantity").value(1))
+                .andExpect(jsonPath("$.items[0].unitPrice").value(dish1.getPrice().doubleValue()))
+                .andExpect(jsonPath("$.items[0].subtotal").value(dish1.getPrice().doubleValue()))
+                // 验证第二行明细
+                .andExpect(jsonPath("$.items[1].dishId").value(dish2.getId()))
+                .andExpect(jsonPath("$.items[1].name").value(dish2.getName()))
+                .andExpect(jsonPath("$.items[1].quantity").value(1))
+                .andExpect(jsonPath("$.items[1].unitPrice").value(dish2.getPrice().doubleValue()))
+                .andExpect(jsonPath("$.items[1].subtotal").value(dish2.getPrice().doubleValue()))
                 .andExpect(jsonPath("$.totalPrice").value(createdOrder.getTotalPrice().doubleValue()))
                 .andExpect(jsonPath("$.deliveryLocation").value(createdOrder.getDeliveryLocation()))
                 .andExpect(jsonPath("$.status").value(createdOrder.getStatus().toString()));
@@ -350,7 +435,7 @@ public class CustomerControllerTest {
         order1.setId(1L);
         order1.setCustomer(customer);
         order1.setMerchant(merchant);
-        order1.setDishes(Arrays.asList(dish1, dish2));
+        order1.setItems(Arrays.asList(OrderItem.of(dish1, 1), OrderItem.of(dish2, 1)));
         order1.setTotalPrice(new BigDecimal("25.50"));
         order1.setDeliveryLocation("123 Delivery Street");
         order1.setOrderTime(new Date());
@@ -361,7 +446,7 @@ public class CustomerControllerTest {
         order2.setId(2L);
         order2.setCustomer(customer);
         order2.setMerchant(merchant);
-        order2.setDishes(Arrays.asList(dish2));
+        order2.setItems(Arrays.asList(OrderItem.of(dish2, 1)));
         order2.setTotalPrice(new BigDecimal("15.00"));
         order2.setDeliveryLocation("123 Delivery Street");
         order2.setOrderTime(new Date());
@@ -397,47 +482,20 @@ public class CustomerControllerTest {
                 .andExpect(jsonPath("$.last").value(true))
                 // 验证第一个订单
                 .andExpect(jsonPath("$.content[0].id").value(order1.getId()))
-                .andExpect(jsonPath("$.content[0].customer.id").value(customer.getId()))
-                .andExpect(jsonPath("$.content[0].customer.username").value(customer.getUsername()))
-                .andExpect(jsonPath("$.content[0].merchant.id").value(merchant.getId()))
-                .andExpect(jsonPath("$.content[0].merchant.merchantName").value(merchant.getMerchantName())) // 修改为 merchantName
-                .andExpect(jsonPath("$.content[0].dishes").isArray())
-                .andExpect(jsonPath("$.content[0].dishes.length()").value(2))
-                // 验证第一个订单的第一个菜品
-                .andExpect(jsonPath("$.content[0].dishes[0].id").value(dish1.getId()))
-                .andExpect(jsonPath("$.content[0].dishes[0].name").value(dish1.getName()))
-                .andExpect(jsonPath("$.content[0].dishes[0].price").value(dish1.getPrice().doubleValue()))
-                .andExpect(jsonPath("$.content[0].dishes[0].description").value(dish1.getDescription()))
-                .andExpect(jsonPath("$.content[0].dishes[0].imageUrl").value(dish1.getImageUrl()))
-                .andExpect(jsonPath("$.content[0].dishes[0].merchant.id").value(merchant.getId()))
-                .andExpect(jsonPath("$.content[0].dishes[0].merchant.merchantName").value(merchant.getMerchantName())) // 修改为 merchantName
-                // 验证第一个订单的第二个菜品
-                .andExpect(jsonPath("$.content[0].dishes[1].id").value(dish2.getId()))
-                .andExpect(jsonPath("$.content[0].dishes[1].name").value(dish2.getName()))
-                .andExpect(jsonPath("$.content[0].dishes[1].price").value(dish2.getPrice().doubleValue()))
-                .andExpect(jsonPath("$.content[0].dishes[1].description").value(dish2.getDescription()))
-                .andExpect(jsonPath("$.content[0].dishes[1].imageUrl").value(dish2.getImageUrl()))
-                .andExpect(jsonPath("$.content[0].dishes[1].merchant.id").value(merchant.getId()))
-                .andExpect(jsonPath("$.content[0].dishes[1].merchant.merchantName").value(merchant.getMerchantName())) // 修改为 merchantName
+                .andExpect(jsonPath("$.content[0].customerId").value(customer.getId()))
+                .andExpect(jsonPath("$.content[0].customerName").value(customer.getUsername()))
+                .andExpect(jsonPath("$.content[0].merchantId").value(merchant.getId()))
+                .andExpect(jsonPath("$.content[0].merchantName").value(merchant.getMerchantName()))
+                .andExpect(jsonPath("$.content[0].items").doesNotExist())
                 .andExpect(jsonPath("$.content[0].totalPrice").value(order1.getTotalPrice().doubleValue()))
                 .andExpect(jsonPath("$.content[0].deliveryLocation").value(order1.getDeliveryLocation()))
                 .andExpect(jsonPath("$.content[0].status").value(order1.getStatus().toString()))
                 // 验证第二个订单
                 .andExpect(jsonPath("$.content[1].id").value(order2.getId()))
-                .andExpect(jsonPath("$.content[1].customer.id").value(customer.getId()))
-                .andExpect(jsonPath("$.content[1].customer.username").value(customer.getUsername()))
-                .andExpect(jsonPath("$.content[1].merchant.id").value(merchant.getId()))
-                .andExpect(jsonPath("$.content[1].merchant.merchantName").value(merchant.getMerchantName())) // 修改为 merchantName
-                .andExpect(jsonPath("$.content[1].dishes").isArray())
-                .andExpect(jsonPath("$.content[1].dishes.length()").value(1))
-                // 验证第二个订单的第一个菜品
-                .andExpect(jsonPath("$.content[1].dishes[0].id").value(dish2.getId()))
-                .andExpect(jsonPath("$.content[1].dishes[0].name").value(dish2.getName()))
-                .andExpect(jsonPath("$.content[1].dishes[0].price").value(dish2.getPrice().doubleValue()))
-                .andExpect(jsonPath("$.content[1].dishes[0].description").value(dish2.getDescription()))
-                .andExpect(jsonPath("$.content[1].dishes[0].imageUrl").value(dish2.getImageUrl()))
-                .andExpect(jsonPath("$.content[1].dishes[0].merchant.id").value(merchant.getId()))
-                .andExpect(jsonPath("$.content[1].dishes[0].merchant.merchantName").value(merchant.getMerchantName())) // 修改为 merchantName
+                .andExpect(jsonPath("$.content[1].customerId").value(customer.getId()))
+                .andExpect(jsonPath("$.content[1].customerName").value(customer.getUsername()))
+                .andExpect(jsonPath("$.content[1].merchantId").value(merchant.getId()))
+                .andExpect(jsonPath("$.content[1].merchantName").value(merchant.getMerchantName()))
                 .andExpect(jsonPath("$.content[1].totalPrice").value(order2.getTotalPrice().doubleValue()))
                 .andExpect(jsonPath("$.content[1].deliveryLocation").value(order2.getDeliveryLocation()))
                 .andExpect(jsonPath("$.content[1].status").value(order2.getStatus().toString()));
@@ -512,7 +570,7 @@ public class CustomerControllerTest {
         order.setId(orderId);
         order.setCustomer(customer);
         order.setMerchant(merchant);
-        order.setDishes(Arrays.asList(dish1, dish2));
+        order.setItems(Arrays.asList(OrderItem.of(dish1, 1), OrderItem.of(dish2, 1)));
         order.setTotalPrice(new BigDecimal("25.50"));
         order.setDeliveryLocation("123 Delivery Street");
         order.setOrderTime(new Date());
@@ -530,28 +588,24 @@ public class CustomerControllerTest {
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 // 验证订单信息
                 .andExpect(jsonPath("$.id").value(order.getId()))
-                .andExpect(jsonPath("$.customer.id").value(customer.getId()))
-                .andExpect(jsonPath("$.customer.username").value(customer.getUsername()))
-                .andExpect(jsonPath("$.merchant.id").value(merchant.getId()))
-                .andExpect(jsonPath("$.merchant.merchantName").value(merchant.getMerchantName())) // 修改为 merchantName
-                .andExpect(jsonPath("$.dishes").isArray())
-                .andExpect(jsonPath("$.dishes.length()").value(2))
-                // 验证第一个菜品
-                .andExpect(jsonPath("$.dishes[0].id").value(dish1.getId()))
-                .andExpect(jsonPath("$.dishes[0].name").value(dish1.getName()))
-                .andExpect(jsonPath("$.dishes[0].price").value(dish1.getPrice().doubleValue()))
-                .andExpect(jsonPath("$.dishes[0].description").value(dish1.getDescription()))
-                .andExpect(jsonPath("$.dishes[0].imageUrl").value(dish1.getImageUrl()))
-                .andExpect(jsonPath("$.dishes[0].merchant.id").value(merchant.getId()))
-                .andExpect(jsonPath("$.dishes[0].merchant.merchantName").value(merchant.getMerchantName())) // 修改为 merchantName
-                // 验证第二个菜品
-                .andExpect(jsonPath("$.dishes[1].id").value(dish2.getId()))
-                .andExpect(jsonPath("$.dishes[1].name").value(dish2.getName()))
-                .andExpect(jsonPath("$.dishes[1].price").value(dish2.getPrice().doubleValue()))
-                .andExpect(jsonPath("$.dishes[1].description").value(dish2.getDescription()))
-                .andExpect(jsonPath("$.dishes[1].imageUrl").value(dish2.getImageUrl()))
-                .andExpect(jsonPath("$.dishes[1].merchant.id").value(merchant.getId()))
-                .andExpect(jsonPath("$.dishes[1].merchant.merchantName").value(merchant.getMerchantName())) // 修改为 merchantName
+                .andExpect(jsonPath("$.customerId").value(customer.getId()))
+                .andExpect(jsonPath("$.customerName").value(customer.getUsername()))
+                .andExpect(jsonPath("$.merchantId").value(merchant.getId()))
+                .andExpect(jsonPath("$.merchantName").value(merchant.getMerchantName()))
+                .andExpect(jsonPath("$.items").isArray())
+                .andExpect(jsonPath("$.items.length()").value(2))
+                // 验证第一行明细
+                .andExpect(jsonPath("$.items[0].dishId").value(dish1.getId()))
+                .andExpect(jsonPath("$.items[0].name").value(dish1.getName()))
+                .andExpect(jsonPath("$.items[0].quantity").value(1))
+                .andExpect(jsonPath("$.items[0].unitPrice").value(dish1.getPrice().doubleValue()))
+                .andExpect(jsonPath("$.items[0].subtotal").value(dish1.getPrice().doubleValue()))
+                // 验证第二行明细
+                .andExpect(jsonPath("$.items[1].dishId").value(dish2.getId()))
+                .andExpect(jsonPath("$.items[1].name").value(dish2.getName()))
+                .andExpect(jsonPath("$.items[1].quantity").value(1))
+                .andExpect(jsonPath("$.items[1].unitPrice").value(dish2.getPrice().doubleValue()))
+                .andExpect(jsonPath("$.items[1].subtotal").value(dish2.getPrice().doubleValue()))
                 .andExpect(jsonPath("$.totalPrice").value(order.getTotalPrice().doubleValue()))
                 .andExpect(jsonPath("$.deliveryLocation").value(order.getDeliveryLocation()))
                 .andExpect(jsonPath("$.status").value(order.getStatus().toString()));
@@ -582,6 +636,51 @@ public class CustomerControllerTest {
         verify(customerService, times(1)).getOrderDetails(eq(customerId), eq(orderId));
     }
 
+    // 10.1 测试订阅订单状态，重连时传递 Last-Event-ID
+    @Test
+    @DisplayName("GET /customers/orders/{orderId}/stream - 订阅订单状态（重连）")
+    public void testStreamOrderStatus_Reconnect() throws Exception {
+        // 准备数据
+        Long orderId = 1L;
+        Long customerId = 1L;
+
+        when(customerService.subscribeOrderStatus(eq(customerId), eq(orderId), eq("abc-3")))
+                .thenReturn(new SseEmitter());
+
+        // 执行请求并验证响应
+        mockMvc.perform(get("/customers/orders/{orderId}/stream", orderId)
+                        .param("customerId", customerId.toString())
+                        .header("Last-Event-ID", "abc-3"))
+                .andExpect(status().isOk())
+                .andExpect(request().asyncStarted());
+
+        verify(customerService, times(1)).subscribeOrderStatus(eq(customerId), eq(orderId), eq("abc-3"));
+    }
+
+    // 10.2 测试订阅他人订单的状态
+    @Test
+    @DisplayName("GET /customers/orders/{orderId}/stream - 订阅订单状态失败（无权访问）")
+    public void testStreamOrderStatus_NotFound() throws Exception {
+        when(customerService.subscribeOrderStatus(eq(2L), eq(1L), isNull()))
+                .thenThrow(new IllegalArgumentException("无权访问该订单"));
+
+        mockMvc.perform(get("/customers/orders/{orderId}/stream", 1L)
+                        .param("customerId", "2"))
+                .andExpect(status().isNotFound());
+    }
+
+    // 10.3 测试连接数已达上限
+    @Test
+    @DisplayName("GET /customers/orders/{orderId}/stream - 订阅订单状态失败（连接数已达上限）")
+    public void testStreamOrderStatus_TooManySubscribers() throws Exception {
+        when(customerService.subscribeOrderStatus(eq(1L), eq(1L), isNull()))
+                .thenThrow(new IllegalStateException("推送连接数已达上限"));
+
+        mockMvc.perform(get("/customers/orders/{orderId}/stream", 1L)
+                        .param("customerId", "1"))
+                .andExpect(status().isServiceUnavailable());
+    }
+
     // 11. 测试评价订单成功
     @Test
     @DisplayName("POST /customers/orders/{orderId}/reviews - 评价订单成功")
@@ -620,7 +719,7 @@ public class CustomerControllerTest {
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 // 验证评价信息
                 .andExpect(jsonPath("$.id").value(review.getId()))
-                .andExpect(jsonPath("$.order.id").value(order.getId()))
+                .andExpect(jsonPath("$.orderId").value(order.getId()))
                 .andExpect(jsonPath("$.rating").value(review.getRating()))
                 .andExpect(jsonPath("$.comment").value(review.getComment()));
 
@@ -668,4 +767,152 @@ public class CustomerControllerTest {
                 eq(reviewDTO.getComment())
         );
     }
+
+    // 13. 测试带幂等键创建订单
+    @Test
+    @DisplayName("POST /customers/orders - 带幂等键创建订单")
+    public void testCreateOrder_IdempotencyKey() throws Exception {
+        // 准备数据
+        OrderCreateDTO orderCreateDTO = new OrderCreateDTO();
+        orderCreateDTO.setCustomerId(1L);
+        orderCreateDTO.setMerchantId(2L);
+        orderCreateDTO.setDishIds(Arrays.asList(1L, 2L));
+        orderCreateDTO.setDeliveryLocation("123 Delivery Street");
+
+        Order createdOrder = new Order();
+        createdOrder.setId(1L);
+        createdOrder.setStatus(OrderStatus.PENDING_CONFIRMATION);
+
+        when(customerService.createOrder(eq(1L), eq(2L), eq(Arrays.asList(1L, 2L)), isNull(),
+                eq("123 Delivery Street"), eq("key-1"))).thenReturn(createdOrder);
+
+        // 执行请求并验证响应
+        mockMvc.perform(post("/customers/orders")
+                        .header("Idempotency-Key", "key-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(orderCreateDTO)))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.id").value(1L));
+
+        verify(customerService, never()).createOrder(any(), any(), any(), any(), any());
+    }
+
+    // 14. 测试幂等键用于参数不同的评价请求
+    @Test
+    @DisplayName("POST /customers/orders/{orderId}/reviews - 幂等键已用于其他请求")
+    public void testReviewOrder_IdempotencyKeyReused() throws Exception {
+        // 准备数据
+        ReviewDTO reviewDTO = new ReviewDTO();
+        reviewDTO.setRating(5);
+        reviewDTO.setComment("Great!");
+
+        when(customerService.reviewOrder(eq(1L), eq(1L), eq(5), eq("Great!"), eq("key-1")))
+                .thenThrow(new IllegalStateException("幂等键已用于其他请求"));
+
+        // 执行请求并验证响应
+        mockMvc.perform(post("/customers/orders/{orderId}/reviews", 1L)
+                        .param("customerId", "1")
+                        .header("Idempotency-Key", "key-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(reviewDTO)))
+                .andExpect(status().isUnprocessableEntity());
+    }
+
+    // 15. 测试异步下单：入队后返回 202 和令牌
+    @Test
+    @DisplayName("POST /customers/orders - 异步下单入队")
+    public void testSubmitOrder_Accepted() throws Exception {
+        // 准备数据
+        OrderCreateDTO orderCreateDTO = new OrderCreateDTO();
+        orderCreateDTO.setCustomerId(1L);
+        orderCreateDTO.setMerchantId(2L);
+        orderCreateDTO.setDishIds(Arrays.asList(1L, 2L));
+
+        when(orderIntakeService.submit(any(OrderCreateDTO.class)))
+                .thenReturn(new OrderIntakeStatus("token-1", OrderIntakeStatus.State.QUEUED, null, null));
+
+        // 执行请求并验证响应
+        mockMvc.perform(post("/customers/orders")
+                        .header("Prefer", "respond-async")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(orderCreateDTO)))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/customers/orders/intake/token-1?customerId=1"))
+                .andExpect(jsonPath("$.token").value("token-1"))
+                .andExpect(jsonPath("$.state").value("QUEUED"));
+
+        verify(customerService, never()).createOrder(any(), any(), any(), any(), any());
+    }
+
+    // 16. 测试异步下单排队已满
+    @Test
+    @DisplayName("POST /customers/orders - 异步下单排队已满")
+    public void testSubmitOrder_QueueFull() throws Exception {
+        // 准备数据
+        OrderCreateDTO orderCreateDTO = new OrderCreateDTO();
+        orderCreateDTO.setCustomerId(1L);
+        orderCreateDTO.setMerchantId(2L);
+        orderCreateDTO.setDishIds(Arrays.asList(1L, 2L));
+
+        when(orderIntakeService.submit(any(OrderCreateDTO.class)))
+                .thenThrow(new IllegalStateException("下单排队已满"));
+
+        // 执行请求并验证响应
+        mockMvc.perform(post("/customers/orders")
+                        .header("Prefer", "respond-async")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(orderCreateDTO)))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"));
+    }
+
+    // 17. 测试查询异步下单状态
+    @Test
+    @DisplayName("GET /customers/orders/intake/{token} - 查询异步下单状态")
+    public void testGetOrderIntakeStatus() throws Exception {
+        when(orderIntakeService.getStatus(1L, "token-1"))
+                .thenReturn(new OrderIntakeStatus("token-1", OrderIntakeStatus.State.CREATED, 9L, null));
+        when(orderIntakeService.getStatus(2L, "token-1"))
+                .thenThrow(new IllegalArgumentException("下单令牌不存在"));
+
+        mockMvc.perform(get("/customers/orders/intake/{token}", "token-1")
+                        .param("customerId", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.state").value("CREATED"))
+                .andExpect(jsonPath("$.orderId").value(9L));
+
+        mockMvc.perform(get("/customers/orders/intake/{token}", "token-1")
+                        .param("customerId", "2"))
+                .andExpect(status().isNotFound());
+    }
+
+    // 18. 测试下单超过频率
+    @Test
+    @DisplayName("POST /customers/orders - 按请求体中的顾客ID限流")
+    public void testCreateOrder_Throttled() throws Exception {
+        // 准备数据
+        OrderCreateDTO orderCreateDTO = new OrderCreateDTO();
+        orderCreateDTO.setCustomerId(1L);
+        orderCreateDTO.setMerchantId(2L);
+        orderCreateDTO.setDishIds(Arrays.asList(1L, 2L));
+
+        when(rateLimiter.tryAcquire(eq(RateLimiter.Group.CUSTOMER), eq(1L), anyString()))
+                .thenReturn(TimeUnit.MILLISECONDS.toNanos(1500));
+
+        // 执行请求并验证响应：同步和异步下单都限流
+        mockMvc.perform(post("/customers/orders")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(orderCreateDTO)))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "2"));
+
+        mockMvc.perform(post("/customers/orders")
+                        .header("Prefer", "respond-async")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(orderCreateDTO)))
+                .andExpect(status().isTooManyRequests());
+
+        verify(customerService, never()).createOrder(any(), any(), any(), any(), any());
+        verify(orderIntakeService, never()).submit(any());
+    }
 }
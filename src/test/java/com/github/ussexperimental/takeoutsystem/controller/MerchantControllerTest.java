@@ -2,15 +2,19 @@ package com.github.ussexperimental.takeoutsystem.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.ussexperimental.takeoutsystem.dto.DishCreateDTO;
+import com.github.ussexperimental.takeoutsystem.dto.DishImportResult;
+import com.github.ussexperimental.takeoutsystem.dto.DishSales;
 import com.github.ussexperimental.takeoutsystem.dto.DishUpdateDTO;
 import com.github.ussexperimental.takeoutsystem.dto.PageResponse;
 import com.github.ussexperimental.takeoutsystem.dto.RequestDeliveryDTO;
+import com.github.ussexperimental.takeoutsystem.dto.StageDuration;
 import com.github.ussexperimental.takeoutsystem.entity.DeliveryMan;
 import com.github.ussexperimental.takeoutsystem.entity.Dish;
 import com.github.ussexperimental.takeoutsystem.entity.Merchant;
 import com.github.ussexperimental.takeoutsystem.entity.Order;
 import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
 import com.github.ussexperimental.takeoutsystem.service.ImageService;
+import com.github.ussexperimental.takeoutsystem.service.MenuImportService;
 import com.github.ussexperimental.takeoutsystem.service.MerchantService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -21,15 +25,18 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.math.BigDecimal;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
@@ -47,6 +54,9 @@ public class MerchantControllerTest {
     @Mock
     private ImageService imageService;
 
+    @Mock
+    private MenuImportService menuImportService;
+
     @InjectMocks
     private MerchantController merchantController;
 
@@ -107,8 +117,7 @@ public class MerchantControllerTest {
                 .andExpect(jsonPath("$.price").value(createdDish.getPrice().doubleValue()))
                 .andExpect(jsonPath("$.description").value(createdDish.getDescription()))
                 .andExpect(jsonPath("$.imageUrl").value(createdDish.getImageUrl()))
-                .andExpect(jsonPath("$.merchant.id").value(merchant.getId()))
-                .andExpect(jsonPath("$.merchant.merchantName").value(merchant.getMerchantName()));
+                .andExpect(jsonPath("$.merchantId").value(merchant.getId()));
 
         // 验证 MerchantService.addDish 方法被调用一次
         verify(merchantService, times(1)).addDish(
@@ -225,16 +234,14 @@ public class MerchantControllerTest {
                 .andExpect(jsonPath("$.content[0].price").value(dish1.getPrice().doubleValue()))
                 .andExpect(jsonPath("$.content[0].description").value(dish1.getDescription()))
                 .andExpect(jsonPath("$.content[0].imageUrl").value(dish1.getImageUrl()))
-                .andExpect(jsonPath("$.content[0].merchant.id").value(merchant.getId()))
-                .andExpect(jsonPath("$.content[0].merchant.merchantName").value(merchant.getMerchantName()))
+                .andExpect(jsonPath("$.content[0].merchantId").value(merchant.getId()))
                 // 验证第二个菜品
                 .andExpect(jsonPath("$.content[1].id").value(dish2.getId()))
                 .andExpect(jsonPath("$.content[1].name").value(dish2.getName()))
                 .andExpect(jsonPath("$.content[1].price").value(dish2.getPrice().doubleValue()))
                 .andExpect(jsonPath("$.content[1].description").value(dish2.getDescription()))
                 .andExpect(jsonPath("$.content[1].imageUrl").value(dish2.getImageUrl()))
-                .andExpect(jsonPath("$.content[1].merchant.id").value(merchant.getId()))
-                .andExpect(jsonPath("$.content[1].merchant.merchantName").value(merchant.getMerchantName()));
+                .andExpect(jsonPath("$.content[1].merchantId").value(merchant.getId()));
 
         // 验证 MerchantService.getMenu 方法被调用一次
         verify(merchantService, times(1)).getMenu(eq(merchantId), eq(page), eq(size));
@@ -303,6 +310,93 @@ public class MerchantControllerTest {
         verify(merchantService, times(1)).getMenu(eq(merchantId), eq(page), eq(size));
     }
 
+    /**
+     * 5.1 测试获取菜单（ETag 已变化）
+     * GET /merchants/menu
+     */
+    @Test
+    @DisplayName("GET /merchants/menu - ETag 变化时重新返回菜单")
+    public void testGetMenu_ETagChanged() throws Exception {
+        // 准备数据
+        Long merchantId = 1L;
+        int page = 0;
+        int size = 10;
+
+        Dish dish = new Dish();
+        dish.setId(1L);
+        dish.setName("宫保鸡丁");
+
+        PageResponse<Dish> pageResponse = new PageResponse<>(Arrays.asList(dish), page, size, 1, 1, true);
+
+        // Mock MerchantService 的 menuETag 和 getMenu 方法
+        when(merchantService.menuETag(merchantId, page, size)).thenReturn("\"menu-1-1-0-10\"");
+        when(merchantService.getMenu(merchantId, page, size)).thenReturn(pageResponse);
+
+        // 执行请求并验证响应
+        mockMvc.perform(get("/merchants/menu")
+                        .param("merchantId", merchantId.toString())
+                        .param("page", String.valueOf(page))
+                        .param("size", String.valueOf(size))
+                        .header("If-None-Match", "\"menu-1-0-0-10\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"menu-1-1-0-10\""))
+                .andExpect(jsonPath("$.content.length()").value(1));
+
+        // 验证 MerchantService.getMenu 方法被调用一次
+        verify(merchantService, times(1)).getMenu(merchantId, page, size);
+    }
+
+    /**
+     * 5.2 测试批量导入菜品
+     * POST /merchants/menu/import
+     */
+    @Test
+    @DisplayName("POST /merchants/menu/import - 按 Content-Type 选择 CSV 或 JSON Lines 导入")
+    public void testImportDishes_Success() throws Exception {
+        // 准备数据
+        DishImportResult result = new DishImportResult();
+        result.setImported(2);
+        result.setFailed(1);
+        result.getErrors().add(new DishImportResult.RowError(3, "价格格式错误"));
+
+        // Mock MenuImportService 的导入方法
+        when(menuImportService.importCsv(eq(1L), any())).thenReturn(result);
+        when(menuImportService.importJsonLines(eq(1L), any())).thenReturn(new DishImportResult());
+
+        // 执行请求并验证响应
+        mockMvc.perform(post("/merchants/menu/import")
+                        .param("merchantId", "1")
+                        .contentType("text/csv")
+                        .content("name,price\n宫保鸡丁,28\n麻婆豆腐,abc\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(2))
+                .andExpect(jsonPath("$.errors[0].line").value(3))
+                .andExpect(jsonPath("$.errors[0].message").value("价格格式错误"));
+
+        mockMvc.perform(post("/merchants/menu/import")
+                        .param("merchantId", "1")
+                        .contentType("application/x-ndjson")
+                        .content("{\"name\":\"宫保鸡丁\",\"price\":28}\n"))
+                .andExpect(status().isOk());
+
+        verify(menuImportService, times(1)).importCsv(eq(1L), any());
+        verify(menuImportService, times(1)).importJsonLines(eq(1L), any());
+    }
+
+    @Test
+    @DisplayName("POST /merchants/menu/import - 商家不存在")
+    public void testImportDishes_MerchantNotFound() throws Exception {
+        // Mock MenuImportService 抛出异常
+        when(menuImportService.importCsv(eq(99L), any())).thenThrow(new IllegalArgumentException("商家不存在"));
+
+        // 执行请求并验证响应
+        mockMvc.perform(post("/merchants/menu/import")
+                        .param("merchantId", "99")
+                        .contentType("text/csv")
+                        .content("宫保鸡丁,28\n"))
+                .andExpect(status().isBadRequest());
+    }
+
     /**
      * 6. 测试更新菜品成功
      * PUT /merchants/menu/{dishId}
@@ -352,8 +446,7 @@ public class MerchantControllerTest {
                 .andExpect(jsonPath("$.price").value(updatedDish.getPrice().doubleValue()))
                 .andExpect(jsonPath("$.description").value(updatedDish.getDescription()))
                 .andExpect(jsonPath("$.imageUrl").value(updatedDish.getImageUrl()))
-                .andExpect(jsonPath("$.merchant.id").value(merchant.getId()))
-                .andExpect(jsonPath("$.merchant.merchantName").value(merchant.getMerchantName()));
+                .andExpect(jsonPath("$.merchantId").value(merchant.getId()));
 
         // 验证 MerchantService.updateDish 方法被调用一次
         verify(merchantService, times(1)).updateDish(
@@ -406,6 +499,30 @@ public class MerchantControllerTest {
         );
     }
 
+    /**
+     * 7.1 测试更新菜品失败（重试后仍冲突）
+     * PUT /merchants/menu/{dishId}
+     */
+    @Test
+    @DisplayName("PUT /merchants/menu/{dishId} - 更新菜品失败（并发修改冲突）")
+    public void testUpdateDish_Conflict() throws Exception {
+        // 准备数据
+        Long dishId = 1L;
+
+        DishUpdateDTO dishUpdateDTO = new DishUpdateDTO();
+        dishUpdateDTO.setPrice(new BigDecimal("14.99"));
+
+        // Mock MerchantService 的 updateDish 方法在重试耗尽后抛出乐观锁异常
+        when(merchantService.updateDish(eq(dishId), isNull(), eq(dishUpdateDTO.getPrice()), isNull(), isNull()))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Dish.class, dishId));
+
+        // 执行请求并验证响应
+        mockMvc.perform(put("/merchants/menu/{dishId}", dishId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(dishUpdateDTO)))
+                .andExpect(status().isConflict());
+    }
+
     /**
      * 8. 测试删除菜品成功
      * DELETE /merchants/menu/{dishId}
@@ -744,6 +861,94 @@ public class MerchantControllerTest {
         verify(merchantService, times(1)).viewPendingOrders(eq(merchantId), eq(page), eq(size));
     }
 
+    /**
+     * 15.1 测试订阅订单看板
+     * GET /merchants/orders/board/stream
+     */
+    @Test
+    @DisplayName("GET /merchants/orders/board/stream - 订阅订单看板成功")
+    public void testStreamOrderBoard_Success() throws Exception {
+        when(merchantService.subscribeOrderBoard(eq(1L))).thenReturn(new SseEmitter());
+
+        mockMvc.perform(get("/merchants/orders/board/stream")
+                        .param("merchantId", "1"))
+                .andExpect(status().isOk())
+                .andExpect(request().asyncStarted());
+
+        verify(merchantService, times(1)).subscribeOrderBoard(eq(1L));
+    }
+
+    /**
+     * 15.2 测试订阅订单看板失败（连接数已达上限）
+     * GET /merchants/orders/board/stream
+     */
+    @Test
+    @DisplayName("GET /merchants/orders/board/stream - 订阅订单看板失败（连接数已达上限）")
+    public void testStreamOrderBoard_TooManySubscribers() throws Exception {
+        when(merchantService.subscribeOrderBoard(eq(1L)))
+                .thenThrow(new IllegalStateException("看板连接数已达上限"));
+
+        mockMvc.perform(get("/merchants/orders/board/stream")
+                        .param("merchantId", "1"))
+                .andExpect(status().isServiceUnavailable());
+    }
+
+    /**
+     * 15.3 测试查看订单各阶段耗时
+     * GET /merchants/orders/stage-durations
+     */
+    @Test
+    @DisplayName("GET /merchants/orders/stage-durations - 查看订单各阶段耗时成功")
+    public void testGetStageDurations_Success() throws Exception {
+        when(merchantService.getStageDurations(eq(1L), eq(7)))
+                .thenReturn(List.of(new StageDuration(OrderStatus.PREPARING, 3, 60_000, 90_000, 120_000, 120_000)));
+
+        mockMvc.perform(get("/merchants/orders/stage-durations")
+                        .param("merchantId", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].stage").value("PREPARING"))
+                .andExpect(jsonPath("$[0].p90Millis").value(90_000));
+
+        verify(merchantService, times(1)).getStageDurations(eq(1L), eq(7));
+    }
+
+    /**
+     * 15.4 测试查看他人订单的时间线
+     * GET /merchants/orders/{orderId}/timeline
+     */
+    @Test
+    @DisplayName("GET /merchants/orders/{orderId}/timeline - 查看订单时间线失败（无权访问）")
+    public void testGetOrderTimeline_NotFound() throws Exception {
+        when(merchantService.getOrderTimeline(eq(2L), eq(1L)))
+                .thenThrow(new IllegalArgumentException("无权访问该订单"));
+
+        mockMvc.perform(get("/merchants/orders/{orderId}/timeline", 1L)
+                        .param("merchantId", "2"))
+                .andExpect(status().isNotFound());
+    }
+
+    /**
+     * 15.5 测试按菜品查看销量
+     * GET /merchants/sales/dishes
+     */
+    @Test
+    @DisplayName("GET /merchants/sales/dishes - 按菜品查看销量成功")
+    public void testGetDishSales_Success() throws Exception {
+        when(merchantService.getDishSales(eq(1L), eq(new Date(1_000L)), eq(new Date(2_000L))))
+                .thenReturn(List.of(new DishSales(3L, "宫保鸡丁", 4, new BigDecimal("74.00"))));
+
+        mockMvc.perform(get("/merchants/sales/dishes")
+                        .param("merchantId", "1")
+                        .param("startDate", "1000")
+                        .param("endDate", "2000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].dishId").value(3))
+                .andExpect(jsonPath("$[0].quantity").value(4))
+                .andExpect(jsonPath("$[0].revenue").value(74.0));
+
+        verify(merchantService, times(1)).getDishSales(eq(1L), eq(new Date(1_000L)), eq(new Date(2_000L)));
+    }
+
     /**
      * 16. 测试接受订单成功
      * PUT /merchants/orders/{orderId}/accept
@@ -846,7 +1051,7 @@ public class MerchantControllerTest {
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 // 验证更新后的订单信息
                 .andExpect(jsonPath("$.id").value(updatedOrder.getId()))
-                .andExpect(jsonPath("$.deliveryMan").value(updatedOrder.getDeliveryMan()))
+                .andExpect(jsonPath("$.deliveryManId").value(updatedOrder.getDeliveryMan().getId()))
                 .andExpect(jsonPath("$.status").value(updatedOrder.getStatus().toString()))
                 .andExpect(jsonPath("$.totalPrice").value(updatedOrder.getTotalPrice().doubleValue()))
                 .andExpect(jsonPath("$.deliveryLocation").value(updatedOrder.getDeliveryLocation()))
@@ -884,6 +1089,30 @@ public class MerchantControllerTest {
         verify(merchantService, times(1)).requestDelivery(eq(orderId), eq(requestDeliveryDTO.getDeliveryManId()));
     }
 
+    /**
+     * 19.1 测试请求送餐冲突（订单已分配送餐员）
+     * PUT /merchants/orders/{orderId}/requestDelivery
+     */
+    @Test
+    @DisplayName("PUT /merchants/orders/{orderId}/requestDelivery - 订单已分配送餐员返回 409")
+    public void testRequestDelivery_Conflict() throws Exception {
+        // 准备数据
+        Long orderId = 1L;
+
+        RequestDeliveryDTO requestDeliveryDTO = new RequestDeliveryDTO();
+        requestDeliveryDTO.setDeliveryManId(2L);
+
+        // Mock MerchantService 的 requestDelivery 方法抛出 IllegalStateException
+        when(merchantService.requestDelivery(eq(orderId), eq(requestDeliveryDTO.getDeliveryManId())))
+                .thenThrow(new IllegalStateException("订单已分配送餐员"));
+
+        // 执行请求并验证响应
+        mockMvc.perform(put("/merchants/orders/{orderId}/requestDelivery", orderId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(requestDeliveryDTO)))
+                .andExpect(status().isConflict());
+    }
+
     /**
      * 20. 测试上传菜品图片成功
      * POST /merchants/images/upload
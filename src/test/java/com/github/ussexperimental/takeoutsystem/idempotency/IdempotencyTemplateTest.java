@@ -0,0 +1,188 @@
+package com.github.ussexperimental.takeoutsystem.idempotency;
+
+import com.github.ussexperimental.takeoutsystem.entity.IdempotencyRecord;
+import com.github.ussexperimental.takeoutsystem.repository.IdempotencyRecordRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = Replace.NONE)
+@Import({IdempotencyTemplate.class, SimpleMeterRegistry.class})
+// 幂等键在模板开启的独立事务中写入，并发测试的各线程才能互相看到结果
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class IdempotencyTemplateTest {
+
+    private static final String FINGERPRINT = IdempotencyTemplate.fingerprint(1L, List.of(1L, 2L), "地址");
+
+    @Autowired
+    private IdempotencyTemplate idempotency;
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    private final AtomicInteger executions = new AtomicInteger();
+
+    private final AtomicLong nextId = new AtomicLong(100);
+
+    @BeforeEach
+    public void setUp() {
+        idempotency.clear();
+        idempotencyRecordRepository.deleteAllInBatch();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        idempotencyRecordRepository.deleteAllInBatch();
+    }
+
+    // 新建资源的操作，资源即其ID
+    private Long execute(String key, String fingerprint, Supplier<Long> action) {
+        return idempotency.execute("createOrder", 1L, key, fingerprint, action, id -> id, id -> id);
+    }
+
+    private Long create() {
+        executions.incrementAndGet();
+        return nextId.incrementAndGet();
+    }
+
+    @Test
+    @DisplayName("测试重复请求 - 只执行一次，返回第一次的结果")
+    public void testReplay() {
+        // 调用方法
+        Long first = execute("key-1", FINGERPRINT, this::create);
+        Long cached = execute("key-1", FINGERPRINT, this::create);
+        // 清空内存中的结果，模拟其他实例或重启后的请求
+        idempotency.clear();
+        Long stored = execute("key-1", FINGERPRINT, this::create);
+        Long other = execute("key-2", FINGERPRINT, this::create);
+
+        // 验证
+        assertEquals(first, cached);
+        assertEquals(first, stored);
+        assertNotEquals(first, other);
+        assertEquals(2, executions.get());
+        assertEquals(first, idempotencyRecordRepository.findById("createOrder:1:key-1").orElseThrow().getResourceId());
+    }
+
+    @Test
+    @DisplayName("测试同一个键用于参数不同的请求")
+    public void testFingerprintMismatch() {
+        execute("key-1", FINGERPRINT, this::create);
+
+        IllegalStateException exception = assertThrows(IllegalStateException.class, () -> {
+            execute("key-1", IdempotencyTemplate.fingerprint(2L, List.of(1L, 2L), "地址"), this::create);
+        });
+
+        assertEquals("幂等键已用于其他请求", exception.getMessage());
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    @DisplayName("测试执行失败 - 不留下记录，同一个键重试时重新执行")
+    public void testFailureNotRecorded() {
+        // 调用方法：第一次失败
+        assertThrows(IllegalArgumentException.class, () -> execute("key-1", FINGERPRINT, () -> {
+            executions.incrementAndGet();
+            throw new IllegalArgumentException("菜品不存在");
+        }));
+        assertFalse(idempotencyRecordRepository.existsById("createOrder:1:key-1"));
+
+        // 验证
+        assertNotNull(execute("key-1", FINGERPRINT, this::create));
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    @DisplayName("测试幂等键无效")
+    public void testInvalidKey() {
+        assertThrows(IllegalArgumentException.class, () -> execute(" ", FINGERPRINT, this::create));
+        assertThrows(IllegalArgumentException.class,
+                () -> execute("k".repeat(IdempotencyTemplate.MAX_KEY_LENGTH + 1), FINGERPRINT, this::create));
+        assertEquals(0, executions.get());
+    }
+
+    @Test
+    @DisplayName("测试并发重复请求 - 合并为一次执行，所有请求得到同一结果")
+    public void testConcurrentDuplicates() throws Exception {
+        // 准备数据
+        int requests = 16;
+        CountDownLatch ready = new CountDownLatch(requests);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(requests);
+
+        // 调用方法：所有请求就绪后同时提交同一个键，操作执行期间其他请求到达
+        List<Future<Long>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < requests; i++) {
+                results.add(executor.submit(() -> {
+                    ready.countDown();
+                    start.await();
+                    return execute("key-1", FINGERPRINT, () -> {
+                        try {
+                            Thread.sleep(200);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return create();
+                    });
+                }));
+            }
+            assertTrue(ready.await(30, TimeUnit.SECONDS));
+            start.countDown();
+
+            // 验证
+            HashSet<Long> ids = new HashSet<>();
+            for (Future<Long> result : results) {
+                ids.add(result.get(30, TimeUnit.SECONDS));
+            }
+            assertEquals(1, ids.size());
+            assertEquals(1, executions.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("测试删除过期的幂等键")
+    public void testPurge() {
+        // 准备数据
+        execute("key-1", FINGERPRINT, this::create);
+        IdempotencyRecord expired = new IdempotencyRecord();
+        expired.setId("createOrder:1:expired");
+        expired.setFingerprint(FINGERPRINT);
+        expired.setResourceId(1L);
+        expired.setCreatedAt(new Date(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(25)));
+        idempotencyRecordRepository.save(expired);
+        ReflectionTestUtils.setField(idempotency, "ttlHours", 24L);
+
+        // 调用方法并验证
+        assertEquals(1, idempotency.purge());
+        assertTrue(idempotencyRecordRepository.existsById("createOrder:1:key-1"));
+    }
+}
@@ -0,0 +1,111 @@
+package com.github.ussexperimental.takeoutsystem.jdbc;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class DataSourceBulkheadTest {
+
+    private DataSourceBulkhead bulkhead;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private Connection physical;
+
+    private DataSource dataSource;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        bulkhead = new DataSourceBulkhead();
+        ReflectionTestUtils.setField(bulkhead, "maxConcurrent", 1);
+        ReflectionTestUtils.setField(bulkhead, "timeoutMillis", 50L);
+        bulkhead.init();
+        meterRegistry = new SimpleMeterRegistry();
+        bulkhead.bindTo(meterRegistry);
+
+        physical = mock(Connection.class);
+        DataSource target = mock(DataSource.class);
+        when(target.getConnection()).thenReturn(physical);
+        dataSource = (DataSource) bulkhead.postProcessAfterInitialization(target, "dataSource");
+    }
+
+    private double active() {
+        return meterRegistry.get("db.bulkhead.active").gauge().value();
+    }
+
+    // 在另一个线程中取连接并立即关闭
+    private void connectFromOtherThread() throws Exception {
+        try {
+            CompletableFuture.runAsync(() -> {
+                try (Connection ignored = dataSource.getConnection()) {
+                    // 只验证能否取到连接
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }).get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw (Exception) e.getCause().getCause();
+        }
+    }
+
+    @Test
+    @DisplayName("测试隔离舱 - 许可用完时其他线程等待超时，连接关闭后归还许可")
+    public void testGetConnection_Exhausted() throws Exception {
+        // 准备数据：当前线程占用唯一的许可
+        Connection connection = dataSource.getConnection();
+        assertEquals(1.0, active());
+
+        // 调用方法并断言异常
+        SQLTransientConnectionException exception = assertThrows(SQLTransientConnectionException.class,
+                this::connectFromOtherThread);
+
+        assertEquals("数据库连接繁忙，请稍后重试", exception.getMessage());
+        assertEquals(1.0, meterRegistry.get("db.bulkhead.rejected").functionCounter().count());
+
+        // 关闭后其他线程可以取到连接
+        connection.close();
+        verify(physical).close();
+        assertEquals(0.0, active());
+        assertDoesNotThrow(this::connectFromOtherThread);
+    }
+
+    @Test
+    @DisplayName("测试隔离舱 - 同一线程的嵌套连接不占用许可")
+    public void testGetConnection_Nested() throws Exception {
+        // 调用方法：外层连接占用许可，嵌套连接（如 REQUIRES_NEW）不再等待
+        Connection outer = dataSource.getConnection();
+        Connection nested = dataSource.getConnection();
+        assertEquals(1.0, active());
+
+        // 验证：嵌套连接关闭后许可仍被外层占用
+        nested.close();
+        assertEquals(1.0, active());
+        outer.close();
+        assertEquals(0.0, active());
+    }
+
+    @Test
+    @DisplayName("测试隔离舱 - 重复关闭连接只归还一次许可")
+    public void testClose_Twice() throws Exception {
+        Connection connection = dataSource.getConnection();
+
+        connection.close();
+        connection.close();
+
+        assertEquals(0.0, active());
+        assertEquals(1, ((Semaphore) ReflectionTestUtils.getField(bulkhead, "permits")).availablePermits());
+    }
+}
@@ -0,0 +1,172 @@
+package com.github.ussexperimental.takeoutsystem.order;
+
+import com.github.ussexperimental.takeoutsystem.dto.OrderSummary;
+import com.github.ussexperimental.takeoutsystem.dto.PageResponse;
+import com.github.ussexperimental.takeoutsystem.entity.DeliveryMan;
+import com.github.ussexperimental.takeoutsystem.entity.Order;
+import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+import com.github.ussexperimental.takeoutsystem.event.OrderStatusChangedEvent;
+import com.github.ussexperimental.takeoutsystem.repository.OrderRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class DispatchPoolTest {
+
+    @InjectMocks
+    private DispatchPool dispatchPool;
+
+    @Mock
+    private OrderRepository orderRepository;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    private static Order order(long id, long orderTime, OrderStatus status) {
+        Order order = new Order();
+        order.setId(id);
+        order.setOrderTime(new Date(orderTime));
+        order.setStatus(status);
+        return order;
+    }
+
+    @Test
+    @DisplayName("测试全量加载和分页 - 按下单时间降序、ID降序")
+    public void testRebuildAndPage() {
+        // 准备数据：订单2和3下单时间相同
+        when(orderRepository.findAllByStatusAndDeliveryManIsNull(OrderStatus.REQUESTING_DELIVERY)).thenReturn(List.of(
+                order(1L, 1_000L, OrderStatus.REQUESTING_DELIVERY),
+                order(2L, 2_000L, OrderStatus.REQUESTING_DELIVERY),
+                order(3L, 2_000L, OrderStatus.REQUESTING_DELIVERY),
+                order(4L, 3_000L, OrderStatus.REQUESTING_DELIVERY),
+                order(5L, 500L, OrderStatus.REQUESTING_DELIVERY)));
+
+        // 调用方法
+        assertFalse(dispatchPool.isReady());
+        dispatchPool.rebuild();
+
+        // 验证
+        assertTrue(dispatchPool.isReady());
+        PageResponse<OrderSummary> first = dispatchPool.page(0, 2);
+        assertEquals(List.of(4L, 3L), ids(first));
+        assertEquals(5, first.getTotalElements());
+        assertEquals(3, first.getTotalPages());
+        assertFalse(first.isLast());
+
+        PageResponse<OrderSummary> last = dispatchPool.page(2, 2);
+        assertEquals(List.of(5L), ids(last));
+        assertTrue(last.isLast());
+
+        assertTrue(dispatchPool.page(3, 2).getContent().isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> dispatchPool.page(0, 0));
+    }
+
+    @Test
+    @DisplayName("测试状态变更事件 - 进入待接单状态时加入，离开时移除")
+    public void testOnOrderStatusChanged() {
+        // 准备数据
+        Order requesting = order(1L, 1_000L, OrderStatus.REQUESTING_DELIVERY);
+        when(orderRepository.findListingById(1L)).thenReturn(Optional.of(requesting));
+
+        // 进入待接单状态
+        dispatchPool.onOrderStatusChanged(new OrderStatusChangedEvent(1L, null, OrderStatus.PREPARING, OrderStatus.REQUESTING_DELIVERY));
+        assertEquals(1, dispatchPool.size());
+
+        // 读取时已被接单（事件处理晚于接单提交），不加入
+        Order claimed = order(2L, 2_000L, OrderStatus.DELIVERING);
+        claimed.setDeliveryMan(new DeliveryMan());
+        when(orderRepository.findListingById(2L)).thenReturn(Optional.of(claimed));
+        dispatchPool.onOrderStatusChanged(new OrderStatusChangedEvent(2L, null, OrderStatus.PREPARING, OrderStatus.REQUESTING_DELIVERY));
+        assertEquals(1, dispatchPool.size());
+
+        // 离开待接单状态
+        dispatchPool.onOrderStatusChanged(new OrderStatusChangedEvent(1L, null, OrderStatus.REQUESTING_DELIVERY, OrderStatus.DELIVERING));
+        assertEquals(0, dispatchPool.size());
+
+        // 与可接单池无关的状态变更不查询数据库
+        dispatchPool.onOrderStatusChanged(new OrderStatusChangedEvent(3L, null, OrderStatus.DELIVERING, OrderStatus.DELIVERED));
+        verify(orderRepository, never()).findListingById(3L);
+    }
+
+    @Test
+    @DisplayName("测试接单 - 事务回滚后订单放回池中")
+    public void testClaimRollback() {
+        // 准备数据
+        dispatchPool.add(OrderSummary.from(order(1L, 1_000L, OrderStatus.REQUESTING_DELIVERY)));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            assertTrue(dispatchPool.claim(1L));
+            assertFalse(dispatchPool.claim(1L));
+            assertEquals(0, dispatchPool.size());
+
+            // 模拟事务回滚
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, TransactionSynchronization.STATUS_ROLLED_BACK);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // 验证
+        assertEquals(List.of(1L), ids(dispatchPool.page(0, 10)));
+    }
+
+    @Test
+    @DisplayName("测试并发接单 - 同一订单只有一人摘除成功")
+    public void testConcurrentClaim() throws Exception {
+        // 准备数据
+        int claimers = 100;
+        dispatchPool.add(OrderSummary.from(order(1L, 1_000L, OrderStatus.REQUESTING_DELIVERY)));
+
+        ExecutorService executor = Executors.newFixedThreadPool(claimers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < claimers; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return dispatchPool.claim(1L);
+                }));
+            }
+            start.countDown();
+
+            // 验证
+            int successes = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get(30, TimeUnit.SECONDS)) {
+                    successes++;
+                }
+            }
+            assertEquals(1, successes);
+            assertEquals(0, dispatchPool.size());
+            assertTrue(dispatchPool.page(0, 10).getContent().isEmpty());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<Long> ids(PageResponse<OrderSummary> page) {
+        return page.getContent().stream().map(OrderSummary::id).toList();
+    }
+}
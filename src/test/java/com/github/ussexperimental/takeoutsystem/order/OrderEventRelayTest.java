@@ -0,0 +1,178 @@
+package com.github.ussexperimental.takeoutsystem.order;
+
+import com.github.ussexperimental.takeoutsystem.entity.OrderEvent;
+import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+import com.github.ussexperimental.takeoutsystem.repository.OrderEventRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// 不启动后台投递线程，由测试直接调用 relayBatch
+@DataJpaTest(properties = "order.outbox.relay-threads=0")
+@AutoConfigureTestDatabase(replace = Replace.NONE)
+@Import(OrderEventRelay.class)
+// 每批事件在独立事务中认领和删除，并发测试的各线程才能互相看到结果
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class OrderEventRelayTest {
+
+    @Autowired
+    private OrderEventRelay orderEventRelay;
+
+    @Autowired
+    private OrderEventRepository orderEventRepository;
+
+    private final List<Long> delivered = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        orderEventRepository.deleteAllInBatch();
+        ReflectionTestUtils.setField(orderEventRelay, "batchSize", 2);
+        ReflectionTestUtils.setField(orderEventRelay, "handlers",
+                List.<OrderEventHandler>of(events -> events.forEach(event -> delivered.add(event.getOrderId()))));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        orderEventRepository.deleteAllInBatch();
+    }
+
+    private void append(long orderId) {
+        orderEventRepository.save(OrderEvent.of(orderId, OrderStatus.PENDING_CONFIRMATION, OrderStatus.PREPARING));
+    }
+
+    @Test
+    @DisplayName("测试投递 - 按写入顺序分批投递，投递后删除")
+    public void testRelayBatch() {
+        // 准备数据
+        for (long orderId = 1; orderId <= 3; orderId++) {
+            append(orderId);
+        }
+
+        // 调用方法并验证
+        assertEquals(2, orderEventRelay.relayBatch());
+        assertEquals(1, orderEventRelay.relayBatch());
+        assertEquals(0, orderEventRelay.relayBatch());
+
+        assertEquals(List.of(1L, 2L, 3L), delivered);
+        assertEquals(0, orderEventRepository.count());
+    }
+
+    @Test
+    @DisplayName("测试投递 - 处理失败时事件保留并记录失败次数，之后重新投递")
+    public void testRelayBatch_HandlerFailure() {
+        // 准备数据
+        append(1L);
+        ReflectionTestUtils.setField(orderEventRelay, "handlers", List.<OrderEventHandler>of(events -> {
+            throw new IllegalStateException("处理失败");
+        }));
+
+        // 调用方法并验证
+        assertEquals(0, orderEventRelay.relayBatch());
+        OrderEvent failed = orderEventRepository.findAll().get(0);
+        assertEquals(1, failed.getAttempts());
+        assertTrue(failed.getLastError().contains("处理失败"));
+        assertNull(failed.getDeadAt());
+
+        // 恢复后重新投递
+        ReflectionTestUtils.setField(orderEventRelay, "handlers",
+                List.<OrderEventHandler>of(events -> events.forEach(event -> delivered.add(event.getOrderId()))));
+        assertEquals(1, orderEventRelay.relayBatch());
+        assertEquals(List.of(1L), delivered);
+        assertEquals(0, orderEventRepository.count());
+    }
+
+    @Test
+    @DisplayName("测试投递 - 无法处理的事件不影响其他订单，失败达到次数上限后移出投递")
+    public void testRelayBatch_PoisonEvent() {
+        // 准备数据：订单 2 的事件始终处理失败，订单 2 之后还有一个事件
+        ReflectionTestUtils.setField(orderEventRelay, "maxAttempts", 2);
+        ReflectionTestUtils.setField(orderEventRelay, "handlers", List.<OrderEventHandler>of(events -> {
+            if (events.stream().anyMatch(event -> event.getOrderId() == 2L && event.getToStatus() == OrderStatus.PREPARING)) {
+                throw new IllegalStateException("处理失败");
+            }
+            events.forEach(event -> delivered.add(event.getOrderId()));
+        }));
+        append(1L);
+        append(2L);
+        orderEventRepository.save(OrderEvent.of(2L, OrderStatus.PREPARING, OrderStatus.DELIVERING));
+        append(3L);
+
+        // 调用方法：第一批中订单 1 单独投递成功
+        assertEquals(1, orderEventRelay.relayBatch());
+        assertEquals(List.of(1L), delivered);
+
+        // 第二批中订单 2 第二次失败后移出，订单 2 之后的事件不越过它投递
+        assertEquals(0, orderEventRelay.relayBatch());
+        assertEquals(List.of(1L), delivered);
+
+        // 之后继续投递其余事件
+        assertEquals(2, orderEventRelay.relayBatch());
+        assertEquals(0, orderEventRelay.relayBatch());
+
+        // 验证
+        assertEquals(List.of(1L, 2L, 3L), delivered);
+        List<OrderEvent> remaining = orderEventRepository.findAll();
+        assertEquals(1, remaining.size());
+        assertEquals(2L, remaining.get(0).getOrderId());
+        assertEquals(2, remaining.get(0).getAttempts());
+        assertNotNull(remaining.get(0).getDeadAt());
+    }
+
+    @Test
+    @DisplayName("测试并发投递 - 多个投递线程同时认领，每个事件只投递一次")
+    public void testConcurrentRelay() throws Exception {
+        // 准备数据
+        int total = 200;
+        for (long orderId = 1; orderId <= total; orderId++) {
+            append(orderId);
+        }
+        ReflectionTestUtils.setField(orderEventRelay, "batchSize", 10);
+
+        // 调用方法
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> {
+                    while (orderEventRepository.count() > 0) {
+                        orderEventRelay.relayBatch();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // 验证
+        Set<Long> unique = new HashSet<>(delivered);
+        assertEquals(total, delivered.size());
+        assertEquals(total, unique.size());
+        assertEquals(1L, Collections.min(unique));
+        assertEquals(0, orderEventRepository.count());
+    }
+}
@@ -0,0 +1,237 @@
+package com.github.ussexperimental.takeoutsystem.order;
+
+import com.github.ussexperimental.takeoutsystem.entity.Customer;
+import com.github.ussexperimental.takeoutsystem.entity.DeliveryMan;
+import com.github.ussexperimental.takeoutsystem.entity.Merchant;
+import com.github.ussexperimental.takeoutsystem.entity.Order;
+import com.github.ussexperimental.takeoutsystem.entity.OrderEvent;
+import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+import com.github.ussexperimental.takeoutsystem.entity.enums.UserType;
+import com.github.ussexperimental.takeoutsystem.event.OrderStatusChangedEvent;
+import com.github.ussexperimental.takeoutsystem.repository.OrderEventRepository;
+import com.github.ussexperimental.takeoutsystem.repository.OrderRepository;
+import com.github.ussexperimental.takeoutsystem.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = Replace.NONE)
+@Import(OrderStateMachine.class)
+@RecordApplicationEvents
+// 每次状态变更在独立事务中提交，并发测试的各线程才能互相看到结果
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class OrderStateMachineTest {
+
+    private static final int CLAIMERS = 200;
+
+    @Autowired
+    private OrderStateMachine orderStateMachine;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OrderEventRepository orderEventRepository;
+
+    @Autowired
+    private ApplicationEvents events;
+
+    private Customer customer;
+
+    private Merchant merchant;
+
+    @BeforeEach
+    public void setUp() {
+        String suffix = UUID.randomUUID().toString();
+
+        customer = new Customer();
+        customer.setUsername("state-customer-" + suffix);
+        customer.setPassword("password123");
+        customer.setUserType(UserType.CUSTOMER);
+        userRepository.save(customer);
+
+        merchant = new Merchant();
+        merchant.setUsername("state-merchant-" + suffix);
+        merchant.setPassword("password123");
+        merchant.setUserType(UserType.MERCHANT);
+        userRepository.save(merchant);
+    }
+
+    private Order saveOrder(OrderStatus status) {
+        Order order = new Order();
+        order.setCustomer(customer);
+        order.setMerchant(merchant);
+        order.setTotalPrice(BigDecimal.TEN);
+        order.setOrderTime(new Date());
+        order.setStatus(status);
+        return orderRepository.save(order);
+    }
+
+    private DeliveryMan saveDeliveryMan() {
+        DeliveryMan deliveryMan = new DeliveryMan();
+        deliveryMan.setUsername("state-deliveryman-" + UUID.randomUUID());
+        deliveryMan.setPassword("password123");
+        deliveryMan.setUserType(UserType.DELIVERYMAN);
+        return userRepository.save(deliveryMan);
+    }
+
+    // 发件箱中该订单的事件（目标状态）
+    private List<OrderStatus> outbox(Long orderId) {
+        return orderEventRepository.findAll().stream()
+                .filter(event -> event.getOrderId().equals(orderId))
+                .map(OrderEvent::getToStatus)
+                .toList();
+    }
+
+    @Test
+    @DisplayName("测试状态变更规则")
+    public void testCanTransition() {
+        assertTrue(OrderStateMachine.canTransition(OrderStatus.PENDING_CONFIRMATION, OrderStatus.PREPARING));
+        assertTrue(OrderStateMachine.canTransition(OrderStatus.PREPARING, OrderStatus.DELIVERING));
+        assertTrue(OrderStateMachine.canTransition(OrderStatus.REQUESTING_DELIVERY, OrderStatus.DELIVERING));
+        assertTrue(OrderStateMachine.canTransition(OrderStatus.DELIVERED, OrderStatus.REVIEWED));
+        assertTrue(OrderStateMachine.canTransition(OrderStatus.PENDING_CONFIRMATION, OrderStatus.CANCELLED));
+        assertTrue(OrderStateMachine.canTransition(OrderStatus.DELIVERED, OrderStatus.COMPLETED));
+
+        assertFalse(OrderStateMachine.canTransition(OrderStatus.PENDING_CONFIRMATION, OrderStatus.DELIVERED));
+        assertFalse(OrderStateMachine.canTransition(OrderStatus.DELIVERING, OrderStatus.PREPARING));
+        assertFalse(OrderStateMachine.canTransition(OrderStatus.REVIEWED, OrderStatus.DELIVERED));
+        assertFalse(OrderStateMachine.canTransition(OrderStatus.DELIVERED, OrderStatus.DELIVERED));
+        assertFalse(OrderStateMachine.canTransition(OrderStatus.PREPARING, OrderStatus.CANCELLED));
+        assertFalse(OrderStateMachine.canTransition(OrderStatus.COMPLETED, OrderStatus.REVIEWED));
+        assertFalse(OrderStateMachine.canTransition(null, OrderStatus.PREPARING));
+
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+            orderStateMachine.transition(1L, OrderStatus.DELIVERED, OrderStatus.PREPARING);
+        });
+        assertEquals("订单状态不能从 DELIVERED 变更为 PREPARING", exception.getMessage());
+    }
+
+    @Test
+    @DisplayName("测试条件更新 - 原状态或归属不符时不更新")
+    public void testTransition() {
+        // 准备数据
+        Order order = saveOrder(OrderStatus.PENDING_CONFIRMATION);
+
+        // 不属于该商家
+        assertFalse(orderStateMachine.transitionForMerchant(order.getId(), merchant.getId() + 1000,
+                OrderStatus.PENDING_CONFIRMATION, OrderStatus.PREPARING));
+        // 原状态不符
+        assertFalse(orderStateMachine.transition(order.getId(), OrderStatus.PREPARING, OrderStatus.DELIVERING));
+
+        assertTrue(orderStateMachine.transitionForMerchant(order.getId(), merchant.getId(),
+                OrderStatus.PENDING_CONFIRMATION, OrderStatus.PREPARING));
+        // 重复请求不会再次生效
+        assertFalse(orderStateMachine.transitionForMerchant(order.getId(), merchant.getId(),
+                OrderStatus.PENDING_CONFIRMATION, OrderStatus.PREPARING));
+        assertEquals(OrderStatus.PREPARING, orderRepository.findById(order.getId()).orElseThrow().getStatus());
+        // 只有成功的变更发布事件
+        assertEquals(List.of(new OrderStatusChangedEvent(order.getId(), merchant.getId(), OrderStatus.PENDING_CONFIRMATION, OrderStatus.PREPARING)),
+                events.stream(OrderStatusChangedEvent.class).toList());
+        // 成功的变更同时写入订单事件发件箱
+        assertEquals(List.of(OrderStatus.PREPARING), outbox(order.getId()));
+
+        // 订单不存在
+        assertFalse(orderStateMachine.transition(-1L, OrderStatus.PREPARING, OrderStatus.DELIVERING));
+    }
+
+    @Test
+    @DisplayName("测试批量变更 - 只变更仍为原状态的订单")
+    public void testTransitionAll() {
+        // 准备数据
+        Order pending1 = saveOrder(OrderStatus.PENDING_CONFIRMATION);
+        Order confirmed = saveOrder(OrderStatus.PREPARING);
+        Order pending2 = saveOrder(OrderStatus.PENDING_CONFIRMATION);
+
+        // 调用方法
+        List<Long> changed = orderStateMachine.transitionAll(
+                List.of(pending2.getId(), confirmed.getId(), pending1.getId()),
+                OrderStatus.PENDING_CONFIRMATION, OrderStatus.CANCELLED);
+
+        // 验证
+        assertEquals(List.of(pending1.getId(), pending2.getId()), changed);
+        assertEquals(OrderStatus.CANCELLED, orderRepository.findById(pending1.getId()).orElseThrow().getStatus());
+        assertEquals(OrderStatus.CANCELLED, orderRepository.findById(pending2.getId()).orElseThrow().getStatus());
+        assertEquals(OrderStatus.PREPARING, orderRepository.findById(confirmed.getId()).orElseThrow().getStatus());
+        assertEquals(List.of(OrderStatus.CANCELLED), outbox(pending1.getId()));
+        assertEquals(List.of(), outbox(confirmed.getId()));
+        assertEquals(2, events.stream(OrderStatusChangedEvent.class).count());
+
+        // 已取消的订单不会再次变更
+        assertEquals(List.of(), orderStateMachine.transitionAll(List.of(pending1.getId()),
+                OrderStatus.PENDING_CONFIRMATION, OrderStatus.CANCELLED));
+    }
+
+    @Test
+    @DisplayName("测试并发抢单 - 数百名外卖员同时接同一订单只有一人成功")
+    public void testConcurrentClaim() throws Exception {
+        // 准备数据
+        Order order = saveOrder(OrderStatus.REQUESTING_DELIVERY);
+        List<DeliveryMan> deliveryMen = new ArrayList<>();
+        for (int i = 0; i < CLAIMERS; i++) {
+            deliveryMen.add(saveDeliveryMan());
+        }
+
+        // 所有线程就绪后同时抢单
+        ExecutorService executor = Executors.newFixedThreadPool(CLAIMERS);
+        CountDownLatch ready = new CountDownLatch(CLAIMERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        try {
+            for (DeliveryMan deliveryMan : deliveryMen) {
+                results.add(executor.submit(() -> {
+                    ready.countDown();
+                    start.await();
+                    return orderStateMachine.assignDeliveryMan(order.getId(), deliveryMan,
+                            OrderStatus.REQUESTING_DELIVERY, OrderStatus.DELIVERING);
+                }));
+            }
+            assertTrue(ready.await(30, TimeUnit.SECONDS));
+            start.countDown();
+
+            // 验证：恰好一人成功，订单归属于成功的外卖员
+            Long winner = null;
+            int successes = 0;
+            for (int i = 0; i < CLAIMERS; i++) {
+                if (results.get(i).get(60, TimeUnit.SECONDS)) {
+                    successes++;
+                    winner = deliveryMen.get(i).getId();
+                }
+            }
+            assertEquals(1, successes);
+
+            Order claimed = orderRepository.findById(order.getId()).orElseThrow();
+            assertEquals(OrderStatus.DELIVERING, claimed.getStatus());
+            assertEquals(winner, claimed.getDeliveryMan().getId());
+            assertEquals(List.of(OrderStatus.DELIVERING), outbox(order.getId()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.github.ussexperimental.takeoutsystem.order;
+
+import com.github.ussexperimental.takeoutsystem.entity.Customer;
+import com.github.ussexperimental.takeoutsystem.entity.Merchant;
+import com.github.ussexperimental.takeoutsystem.entity.Order;
+import com.github.ussexperimental.takeoutsystem.entity.OrderEvent;
+import com.github.ussexperimental.takeoutsystem.entity.OrderStatusHistory;
+import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+import com.github.ussexperimental.takeoutsystem.entity.enums.UserType;
+import com.github.ussexperimental.takeoutsystem.repository.OrderRepository;
+import com.github.ussexperimental.takeoutsystem.repository.OrderStatusHistoryRepository;
+import com.github.ussexperimental.takeoutsystem.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = Replace.NONE)
+@Import(OrderStatusHistoryRecorder.class)
+public class OrderStatusHistoryRecorderTest {
+
+    @Autowired
+    private OrderStatusHistoryRecorder recorder;
+
+    @Autowired
+    private OrderStatusHistoryRepository orderStatusHistoryRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private Merchant merchant;
+
+    private Order order;
+
+    @BeforeEach
+    public void setUp() {
+        String suffix = UUID.randomUUID().toString();
+
+        Customer customer = new Customer();
+        customer.setUsername("history-customer-" + suffix);
+        customer.setPassword("password123");
+        customer.setUserType(UserType.CUSTOMER);
+        userRepository.save(customer);
+
+        merchant = new Merchant();
+        merchant.setUsername("history-merchant-" + suffix);
+        merchant.setPassword("password123");
+        merchant.setUserType(UserType.MERCHANT);
+        userRepository.save(merchant);
+
+        order = new Order();
+        order.setCustomer(customer);
+        order.setMerchant(merchant);
+        order.setTotalPrice(BigDecimal.TEN);
+        order.setOrderTime(new Date());
+        order.setStatus(OrderStatus.DELIVERING);
+        orderRepository.save(order);
+    }
+
+    private OrderEvent event(OrderStatus from, OrderStatus to, long at) {
+        OrderEvent event = OrderEvent.of(order.getId(), from, to);
+        event.setCreatedAt(new Date(at));
+        return event;
+    }
+
+    @Test
+    @DisplayName("测试记录状态历史 - 计算每个阶段的停留时长，跨批次延续")
+    public void testHandle() {
+        // 准备数据
+        long start = 1_700_000_000_000L;
+
+        // 调用方法：同一批中两次变更，下一批中再变更一次
+        recorder.handle(List.of(
+                event(null, OrderStatus.PENDING_CONFIRMATION, start),
+                event(OrderStatus.PENDING_CONFIRMATION, OrderStatus.PREPARING, start + 60_000)));
+        recorder.handle(List.of(
+                event(OrderStatus.PREPARING, OrderStatus.DELIVERING, start + 300_000)));
+
+        // 验证
+        List<OrderStatusHistory> history = orderStatusHistoryRepository.findByOrderIdOrderByChangedAtAscIdAsc(order.getId());
+        assertEquals(3, history.size());
+        assertNull(history.get(0).getStageMillis());
+        assertEquals(60_000L, history.get(1).getStageMillis());
+        assertEquals(240_000L, history.get(2).getStageMillis());
+        assertEquals(OrderStatus.PREPARING, history.get(2).getFromStatus());
+        assertTrue(history.stream().allMatch(row -> merchant.getId().equals(row.getMerchantId())));
+    }
+
+    @Test
+    @DisplayName("测试记录状态历史 - 缺少进入原状态的记录时不计算停留时长")
+    public void testHandle_WithoutPreviousChange() {
+        recorder.handle(List.of(event(OrderStatus.PREPARING, OrderStatus.DELIVERING, 1_700_000_000_000L)));
+
+        List<OrderStatusHistory> history = orderStatusHistoryRepository.findByOrderIdOrderByChangedAtAscIdAsc(order.getId());
+        assertEquals(1, history.size());
+        assertNull(history.get(0).getStageMillis());
+    }
+
+    @Test
+    @DisplayName("测试阶段耗时查询 - 次数和最大值在数据库中聚合，样本从最近的开始读取")
+    public void testStageQueries() {
+        // 准备数据：待确认阶段两个样本（60 秒、30 秒），备餐阶段一个样本
+        long start = 1_700_000_000_000L;
+        recorder.handle(List.of(
+                event(null, OrderStatus.PENDING_CONFIRMATION, start),
+                event(OrderStatus.PENDING_CONFIRMATION, OrderStatus.PREPARING, start + 60_000),
+                event(OrderStatus.PREPARING, OrderStatus.PENDING_CONFIRMATION, start + 120_000),
+                event(OrderStatus.PENDING_CONFIRMATION, OrderStatus.PREPARING, start + 150_000)));
+        Date since = new Date(start);
+
+        // 调用方法
+        List<OrderStatusHistoryRepository.StageTotal> totals = orderStatusHistoryRepository.sumStages(merchant.getId(), since);
+        List<Long> latest = orderStatusHistoryRepository.findStageMillis(
+                merchant.getId(), OrderStatus.PENDING_CONFIRMATION, since, Limit.of(1));
+
+        // 验证
+        assertEquals(2, totals.size());
+        OrderStatusHistoryRepository.StageTotal pending = totals.stream()
+                .filter(total -> total.getStage() == OrderStatus.PENDING_CONFIRMATION).findFirst().orElseThrow();
+        assertEquals(2L, pending.getCount());
+        assertEquals(60_000L, pending.getMaxMillis());
+        assertEquals(List.of(30_000L), latest);
+    }
+}
@@ -0,0 +1,155 @@
+package com.github.ussexperimental.takeoutsystem.order;
+
+import com.github.ussexperimental.takeoutsystem.dto.OrderSummary;
+import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+import com.github.ussexperimental.takeoutsystem.event.OrderCreatedEvent;
+import com.github.ussexperimental.takeoutsystem.event.OrderStatusChangedEvent;
+import com.github.ussexperimental.takeoutsystem.repository.OrderRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class OrderTimeoutSchedulerTest {
+
+    private static final long CONFIRM_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    private static final long COMPLETE_MILLIS = TimeUnit.HOURS.toMillis(24);
+
+    @InjectMocks
+    private OrderTimeoutScheduler scheduler;
+
+    @Mock
+    private OrderStateMachine orderStateMachine;
+
+    @Mock
+    private OrderRepository orderRepository;
+
+    private long now;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(scheduler, "batchSize", 2);
+        scheduler.init();
+        now = System.currentTimeMillis();
+        when(orderStateMachine.transitionAll(anyCollection(), any(), any()))
+                .thenAnswer(invocation -> List.copyOf(invocation.<List<Long>>getArgument(0)));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    private static OrderSummary summary(long id, long orderTime) {
+        return new OrderSummary(id, 3L, "customer", 1L, "merchant", null, null,
+                BigDecimal.TEN, OrderStatus.PENDING_CONFIRMATION, new Date(orderTime), null, "地址");
+    }
+
+    private static OrderRepository.StatusEntry entry(long orderId, Date enteredAt) {
+        return new OrderRepository.StatusEntry() {
+            @Override
+            public Long getOrderId() {
+                return orderId;
+            }
+
+            @Override
+            public Date getEnteredAt() {
+                return enteredAt;
+            }
+        };
+    }
+
+    @Test
+    @DisplayName("测试超时取消 - 待确认订单到期后分批取消，确认过的订单不取消")
+    public void testCancelUnconfirmed() {
+        // 准备数据：三笔订单待确认，其中一笔随后被确认
+        for (long id = 1; id <= 3; id++) {
+            scheduler.onOrderCreated(new OrderCreatedEvent(summary(id, now)));
+        }
+        scheduler.onOrderStatusChanged(new OrderStatusChangedEvent(2L, null, OrderStatus.PENDING_CONFIRMATION, OrderStatus.PREPARING));
+        assertEquals(2, scheduler.pendingCount());
+
+        // 调用方法：到期前不变更
+        scheduler.advance(now + CONFIRM_MILLIS - 2_000);
+        verifyNoInteractions(orderStateMachine);
+        scheduler.advance(now + CONFIRM_MILLIS + 1_000);
+
+        // 验证
+        verify(orderStateMachine).transitionAll(List.of(1L, 3L), OrderStatus.PENDING_CONFIRMATION, OrderStatus.CANCELLED);
+        assertEquals(0, scheduler.pendingCount());
+    }
+
+    @Test
+    @DisplayName("测试超时完成 - 已送达订单到期后自动完成，每批不超过批量大小")
+    public void testCompleteDelivered() {
+        // 准备数据
+        for (long id = 1; id <= 3; id++) {
+            scheduler.onOrderStatusChanged(new OrderStatusChangedEvent(id, null, OrderStatus.DELIVERING, OrderStatus.DELIVERED));
+        }
+
+        // 调用方法
+        scheduler.advance(System.currentTimeMillis() + COMPLETE_MILLIS + 1_000);
+
+        // 验证
+        verify(orderStateMachine).transitionAll(List.of(1L, 2L), OrderStatus.DELIVERED, OrderStatus.COMPLETED);
+        verify(orderStateMachine).transitionAll(List.of(3L), OrderStatus.DELIVERED, OrderStatus.COMPLETED);
+    }
+
+    @Test
+    @DisplayName("测试变更失败 - 这批订单稍后重试")
+    public void testRetryOnFailure() {
+        // 准备数据
+        scheduler.onOrderCreated(new OrderCreatedEvent(summary(1L, now)));
+        when(orderStateMachine.transitionAll(anyCollection(), any(), any()))
+                .thenThrow(new CannotAcquireLockException("锁等待超时"))
+                .thenReturn(List.of(1L));
+
+        // 调用方法
+        long expiredAt = now + CONFIRM_MILLIS + 1_000;
+        scheduler.advance(expiredAt);
+        assertEquals(1, scheduler.pendingCount());
+        scheduler.advance(expiredAt + TimeUnit.SECONDS.toMillis(30) + 1_000);
+
+        // 验证
+        verify(orderStateMachine, times(2)).transitionAll(List.of(1L), OrderStatus.PENDING_CONFIRMATION, OrderStatus.CANCELLED);
+        assertEquals(0, scheduler.pendingCount());
+    }
+
+    @Test
+    @DisplayName("测试启动恢复 - 分批读取订单，从进入状态的时间算起")
+    public void testRecover() {
+        // 模拟仓库行为：待确认订单分两批读取，其中一笔没有状态历史
+        when(orderRepository.findStatusEntries(eq(OrderStatus.PENDING_CONFIRMATION), eq(0L), any(Limit.class)))
+                .thenReturn(List.of(entry(1L, new Date(now - CONFIRM_MILLIS)), entry(2L, null)));
+        when(orderRepository.findStatusEntries(eq(OrderStatus.PENDING_CONFIRMATION), eq(2L), any(Limit.class)))
+                .thenReturn(List.of());
+        when(orderRepository.findStatusEntries(eq(OrderStatus.DELIVERED), anyLong(), any(Limit.class)))
+                .thenReturn(List.of(entry(5L, new Date(now))));
+
+        // 调用方法
+        scheduler.recover();
+        assertEquals(3, scheduler.pendingCount());
+        scheduler.advance(now + 2_000);
+
+        // 验证：已过期的订单立即取消，其余订单仍在计时
+        verify(orderStateMachine).transitionAll(List.of(1L), OrderStatus.PENDING_CONFIRMATION, OrderStatus.CANCELLED);
+        assertEquals(2, scheduler.pendingCount());
+    }
+}
@@ -0,0 +1,115 @@
+package com.github.ussexperimental.takeoutsystem.ratelimit;
+
+import com.github.ussexperimental.takeoutsystem.ratelimit.RateLimiter.Group;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class RateLimitFilterTest {
+
+    @InjectMocks
+    private RateLimitFilter rateLimitFilter;
+
+    @Mock
+    private RateLimiter rateLimiter;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    private static MockHttpServletRequest request(String method, String uri, String queryString) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, uri);
+        request.setQueryString(queryString);
+        request.setRemoteAddr("10.0.0.1");
+        return request;
+    }
+
+    @Test
+    @DisplayName("测试限流过滤器 - 超出速率时返回 429 和 Retry-After，不进入控制器")
+    public void testDoFilter_Throttled() throws Exception {
+        // 模拟需要等待 1.2 秒
+        when(rateLimiter.tryAcquire(Group.CUSTOMER, 1L, "10.0.0.1")).thenReturn(TimeUnit.MILLISECONDS.toNanos(1200));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        // 调用方法
+        rateLimitFilter.doFilter(request("GET", "/customers/orders", "customerId=1&page=0"), response, chain);
+
+        // 验证：向上取整为 2 秒
+        assertEquals(429, response.getStatus());
+        assertEquals("2", response.getHeader("Retry-After"));
+        assertNull(chain.getRequest());
+    }
+
+    @Test
+    @DisplayName("测试限流过滤器 - 按用户ID和客户端IP限流，未传用户ID或不是数字时只按IP")
+    public void testDoFilter_Key() throws Exception {
+        // 模拟放行
+        when(rateLimiter.tryAcquire(any(), any(), anyString())).thenReturn(0L);
+
+        // 调用方法
+        MockFilterChain chain = new MockFilterChain();
+        rateLimitFilter.doFilter(request("GET", "/merchants/menu", "merchantId=7"), new MockHttpServletResponse(), chain);
+        rateLimitFilter.doFilter(request("GET", "/customers/orders", "customerId=abc"), new MockHttpServletResponse(), new MockFilterChain());
+        rateLimitFilter.doFilter(request("GET", "/admin/users", "page=0"), new MockHttpServletResponse(), new MockFilterChain());
+
+        // 验证
+        assertNotNull(chain.getRequest());
+        verify(rateLimiter).tryAcquire(Group.MERCHANT, 7L, "10.0.0.1");
+        verify(rateLimiter).tryAcquire(Group.CUSTOMER, null, "10.0.0.1");
+        verify(rateLimiter).tryAcquire(Group.ADMIN, null, "10.0.0.1");
+    }
+
+    @Test
+    @DisplayName("测试限流过滤器 - 编码路径和路径参数按路由后的路径分组，不能绕过限流")
+    public void testDoFilter_EncodedAndMatrixPath() throws Exception {
+        // 模拟拒绝
+        when(rateLimiter.tryAcquire(any(), any(), anyString())).thenReturn(TimeUnit.SECONDS.toNanos(1));
+
+        // 调用方法
+        MockHttpServletResponse encoded = new MockHttpServletResponse();
+        rateLimitFilter.doFilter(request("GET", "/%63ustomers/orders", "customerId=1"), encoded, new MockFilterChain());
+        MockHttpServletResponse matrix = new MockHttpServletResponse();
+        rateLimitFilter.doFilter(request("GET", "/customers;x=1/orders", "customerId=1"), matrix, new MockFilterChain());
+
+        // 验证
+        assertEquals(429, encoded.getStatus());
+        assertEquals(429, matrix.getStatus());
+        verify(rateLimiter, times(2)).tryAcquire(Group.CUSTOMER, 1L, "10.0.0.1");
+    }
+
+    @Test
+    @DisplayName("测试限流过滤器 - 下单由控制器按请求体中的顾客ID限流，过滤器不按IP限流")
+    public void testDoFilter_CreateOrder() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+
+        rateLimitFilter.doFilter(request("POST", "/customers/orders", null), new MockHttpServletResponse(), chain);
+
+        assertNotNull(chain.getRequest());
+        verifyNoInteractions(rateLimiter);
+    }
+
+    @Test
+    @DisplayName("测试限流过滤器 - 不属于任何分组的路径不限流")
+    public void testDoFilter_Ungrouped() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+
+        rateLimitFilter.doFilter(request("GET", "/actuator/health", null), new MockHttpServletResponse(), chain);
+
+        assertNotNull(chain.getRequest());
+        verifyNoInteractions(rateLimiter);
+    }
+}
@@ -0,0 +1,185 @@
+package com.github.ussexperimental.takeoutsystem.ratelimit;
+
+import com.github.ussexperimental.takeoutsystem.ratelimit.RateLimiter.Group;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimiterTest {
+
+    private RateLimiter rateLimiter;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void setUp() {
+        rateLimiter = new RateLimiter();
+        // 每秒 1 个令牌，突发 3 个；顾客分组最多 2 个桶；每个IP突发新建 2 个调用方
+        ReflectionTestUtils.setField(rateLimiter, "customerRate", 1.0);
+        ReflectionTestUtils.setField(rateLimiter, "customerBurst", 3);
+        ReflectionTestUtils.setField(rateLimiter, "maxKeys", 2);
+        ReflectionTestUtils.setField(rateLimiter, "newKeyRate", 1.0);
+        ReflectionTestUtils.setField(rateLimiter, "newKeyBurst", 2);
+        rateLimiter.init();
+        meterRegistry = new SimpleMeterRegistry();
+        rateLimiter.bindTo(meterRegistry);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        rateLimiter.shutdown();
+    }
+
+    private double count(String name) {
+        return meterRegistry.get(name).tag("group", "customer").functionCounter().count();
+    }
+
+    @Test
+    @DisplayName("测试令牌桶 - 突发容量用完后拒绝，按生成间隔恢复")
+    public void testTokenBucket() {
+        // 准备数据：每秒 10 个令牌，容量 2
+        long now = 0;
+        TokenBucket bucket = new TokenBucket(10, 2, now);
+
+        // 调用方法并验证
+        assertEquals(0, bucket.tryAcquire(now));
+        assertEquals(0, bucket.tryAcquire(now));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.tryAcquire(now));
+
+        // 100 毫秒后恢复一个令牌
+        now += TimeUnit.MILLISECONDS.toNanos(100);
+        assertEquals(0, bucket.tryAcquire(now));
+        assertTrue(bucket.tryAcquire(now) > 0);
+
+        // 装满之后才算空闲
+        assertFalse(bucket.isIdle(now, 0));
+        assertTrue(bucket.isIdle(now + TimeUnit.MILLISECONDS.toNanos(200), 0));
+    }
+
+    @Test
+    @DisplayName("测试限流 - 每个调用方（用户ID和IP）各自一个桶，超出后拒绝并计数")
+    public void testTryAcquire() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, rateLimiter.tryAcquire(Group.CUSTOMER, 1L, "10.0.0.1"));
+        }
+        assertTrue(rateLimiter.tryAcquire(Group.CUSTOMER, 1L, "10.0.0.1") > 0);
+
+        // 其他IP冒用同一个用户ID不受影响，也不会耗尽原调用方的令牌；其他分组不受影响
+        assertEquals(0, rateLimiter.tryAcquire(Group.CUSTOMER, 1L, "10.0.0.2"));
+        assertEquals(0, rateLimiter.tryAcquire(Group.MERCHANT, 1L, "10.0.0.1"));
+
+        assertEquals(4.0, count("rate.limit.allowed"));
+        assertEquals(1.0, count("rate.limit.rejected"));
+        assertEquals(2.0, meterRegistry.get("rate.limit.keys").tag("group", "customer").gauge().value());
+    }
+
+    @Test
+    @DisplayName("测试限流 - 同一IP不断更换用户ID时，超出新建上限后共用该IP的桶")
+    public void testTryAcquire_RotatingIds() {
+        ReflectionTestUtils.setField(rateLimiter, "maxKeys", 10);
+
+        // 调用方法：前两个用户ID各自建桶
+        assertEquals(0, rateLimiter.tryAcquire(Group.CUSTOMER, 1L, "10.0.0.1"));
+        assertEquals(0, rateLimiter.tryAcquire(Group.CUSTOMER, 2L, "10.0.0.1"));
+
+        // 之后的新用户ID共用IP桶，容量 3
+        for (long id = 3; id < 6; id++) {
+            assertEquals(0, rateLimiter.tryAcquire(Group.CUSTOMER, id, "10.0.0.1"));
+        }
+        assertTrue(rateLimiter.tryAcquire(Group.CUSTOMER, 6L, "10.0.0.1") > 0);
+        assertTrue(rateLimiter.tryAcquire(Group.CUSTOMER, null, "10.0.0.1") > 0);
+        assertEquals(4.0, meterRegistry.get("rate.limit.new.keys.throttled").functionCounter().count());
+
+        // 已有的桶和其他IP不受影响
+        assertEquals(0, rateLimiter.tryAcquire(Group.CUSTOMER, 1L, "10.0.0.1"));
+        assertEquals(0, rateLimiter.tryAcquire(Group.CUSTOMER, 7L, "10.0.0.2"));
+    }
+
+    @Test
+    @DisplayName("测试限流 - 桶数达到上限后淘汰最久未访问的桶，空闲的桶被清除")
+    public void testTryAcquire_EvictAndSweep() {
+        // 准备数据：两个调用方占满上限，之后再访问第一个
+        rateLimiter.tryAcquire(Group.CUSTOMER, 1L, "10.0.0.1");
+        rateLimiter.tryAcquire(Group.CUSTOMER, 2L, "10.0.0.2");
+        rateLimiter.tryAcquire(Group.CUSTOMER, 1L, "10.0.0.1");
+
+        // 调用方法：新调用方得到自己的桶，淘汰最久未访问的调用方 2
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, rateLimiter.tryAcquire(Group.CUSTOMER, 3L, "10.0.0.3"));
+        }
+        assertEquals(2.0, meterRegistry.get("rate.limit.keys").tag("group", "customer").gauge().value());
+        assertEquals(1.0, count("rate.limit.evicted"));
+        // 调用方 1 的桶仍在：第三次取令牌成功，第四次被拒绝
+        assertEquals(0, rateLimiter.tryAcquire(Group.CUSTOMER, 1L, "10.0.0.1"));
+        assertTrue(rateLimiter.tryAcquire(Group.CUSTOMER, 1L, "10.0.0.1") > 0);
+
+        // 空闲时间为 0 时，装满的桶才会被清除；刚用过的桶未装满，保留
+        ReflectionTestUtils.setField(rateLimiter, "idleSeconds", 0L);
+        rateLimiter.sweep();
+        assertEquals(2.0, meterRegistry.get("rate.limit.keys").tag("group", "customer").gauge().value());
+
+        ReflectionTestUtils.setField(rateLimiter, "idleSeconds", -10L);
+        rateLimiter.sweep();
+        assertEquals(0.0, meterRegistry.get("rate.limit.keys").tag("group", "customer").gauge().value());
+    }
+
+    @Test
+    @DisplayName("测试并发限流 - 多线程同时取令牌，放行数不超过容量")
+    public void testConcurrentTryAcquire() throws Exception {
+        AtomicInteger allowed = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 100; j++) {
+                        if (rateLimiter.tryAcquire(Group.CUSTOMER, 1L, "10.0.0.1") == 0) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // 测试在 1 秒内结束时最多放行 3 个，超过 1 秒时最多再补充几个令牌
+        assertTrue(allowed.get() >= 3 && allowed.get() <= 5, "放行数: " + allowed.get());
+    }
+
+    @Test
+    @DisplayName("测试 Retry-After - 等待时间向上取整为秒，至少 1 秒")
+    public void testRetryAfterSeconds() {
+        assertEquals(1, RateLimiter.retryAfterSeconds(1));
+        assertEquals(1, RateLimiter.retryAfterSeconds(TimeUnit.SECONDS.toNanos(1)));
+        assertEquals(2, RateLimiter.retryAfterSeconds(TimeUnit.MILLISECONDS.toNanos(1001)));
+    }
+
+    @Test
+    @DisplayName("测试限流分组 - 按路径前缀匹配")
+    public void testGroupOf() {
+        assertEquals(Group.CUSTOMER, Group.of("/customers/orders"));
+        assertEquals(Group.MERCHANT, Group.of("/merchants/menu"));
+        assertEquals(Group.DELIVERYMAN, Group.of("/deliverymen/orders/available"));
+        assertEquals(Group.ADMIN, Group.of("/admin/users"));
+        assertEquals(Group.CUSTOMER, Group.of("/customers"));
+        assertNull(Group.of("/customersx"));
+        assertNull(Group.of("/actuator/health"));
+    }
+}
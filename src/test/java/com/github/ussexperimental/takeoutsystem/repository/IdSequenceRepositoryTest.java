@@ -0,0 +1,80 @@
+package com.github.ussexperimental.takeoutsystem.repository;
+
+import com.github.ussexperimental.takeoutsystem.entity.Customer;
+import com.github.ussexperimental.takeoutsystem.entity.IdSequences;
+import com.github.ussexperimental.takeoutsystem.entity.enums.UserType;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = Replace.NONE)
+@Import(IdSequenceRepository.class)
+// 主键分配在独立事务中提交，测试本身不能包在事务里
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class IdSequenceRepositoryTest {
+
+    @Autowired
+    private IdSequenceRepository idSequenceRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    @DisplayName("测试序列对齐到 max(id) + 1 并按块分配")
+    public void testAlignAndAllocate() {
+        // 准备数据
+        jdbcTemplate.execute("create table if not exists id_align_test (id bigint primary key)");
+        jdbcTemplate.update("delete from id_align_test");
+        jdbcTemplate.update("insert into id_align_test (id) values (41)");
+
+        // 对齐后从 42 开始分配
+        assertEquals(42L, idSequenceRepository.alignToMaxId("align_test", "id_align_test"));
+        assertEquals(42L, idSequenceRepository.allocate("align_test", 10));
+        assertEquals(52L, idSequenceRepository.allocate("align_test", 1));
+
+        // 再次对齐不会让序列回退
+        idSequenceRepository.alignToMaxId("align_test", "id_align_test");
+        assertEquals(53L, idSequenceRepository.allocate("align_test", 1));
+    }
+
+    @Test
+    @DisplayName("测试 Hibernate 按 pooled-lo 从序列表分配主键")
+    public void testHibernatePooledLo() {
+        idSequenceRepository.alignToMaxId(IdSequences.USER, "user");
+        Long next = nextValue(IdSequences.USER);
+
+        // 同一块内的主键连续分配，序列表只前进一次
+        Long first = userRepository.save(customer("id-seq-user-1")).getId();
+        Long second = userRepository.save(customer("id-seq-user-2")).getId();
+
+        assertEquals(next, first);
+        assertEquals(first + 1, second);
+        assertEquals(next + IdSequences.ALLOCATION_SIZE, nextValue(IdSequences.USER));
+    }
+
+    private Long nextValue(String sequence) {
+        return jdbcTemplate.queryForObject(
+                "select next_val from id_sequence where sequence_name = ?", Long.class, sequence);
+    }
+
+    private static Customer customer(String username) {
+        Customer customer = new Customer();
+        customer.setUsername(username);
+        customer.setPassword("password123");
+        customer.setUserType(UserType.CUSTOMER);
+        return customer;
+    }
+}
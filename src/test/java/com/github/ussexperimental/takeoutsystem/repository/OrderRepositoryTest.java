@@ -0,0 +1,379 @@
+package com.github.ussexperimental.takeoutsystem.repository;
+
+import com.github.ussexperimental.takeoutsystem.dto.PageCursor;
+import com.github.ussexperimental.takeoutsystem.entity.Customer;
+import com.github.ussexperimental.takeoutsystem.entity.DeliveryMan;
+import com.github.ussexperimental.takeoutsystem.entity.Dish;
+import com.github.ussexperimental.takeoutsystem.entity.Merchant;
+import com.github.ussexperimental.takeoutsystem.entity.Order;
+import com.github.ussexperimental.takeoutsystem.entity.OrderItem;
+import com.github.ussexperimental.takeoutsystem.entity.OrderStatusHistory;
+import com.github.ussexperimental.takeoutsystem.entity.Review;
+import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+import com.github.ussexperimental.takeoutsystem.entity.enums.UserType;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureTestDatabase(replace = Replace.NONE)
+public class OrderRepositoryTest {
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Customer customer;
+
+    private Merchant merchant;
+
+    @BeforeEach
+    public void setUp() {
+        customer = new Customer();
+        customer.setUsername("keyset-customer");
+        customer.setPassword("password123");
+        customer.setUserType(UserType.CUSTOMER);
+        userRepository.save(customer);
+
+        merchant = new Merchant();
+        merchant.setUsername("keyset-merchant");
+        merchant.setPassword("password123");
+        merchant.setUserType(UserType.MERCHANT);
+        userRepository.save(merchant);
+    }
+
+    private Order saveOrder(long orderTime) {
+        return saveOrder(new Date(orderTime));
+    }
+
+    private Order saveOrder(Date orderTime) {
+        Order order = new Order();
+        order.setCustomer(customer);
+        order.setMerchant(merchant);
+        order.setTotalPrice(BigDecimal.TEN);
+        order.setOrderTime(orderTime);
+        order.setStatus(OrderStatus.PENDING_CONFIRMATION);
+        return orderRepository.save(order);
+    }
+
+    @Test
+    @DisplayName("测试游标分页查询顾客订单 - 同一时间的订单按ID区分，不重不漏")
+    public void testFindByCustomerBefore() {
+        // 准备数据：两笔订单下单时间相同
+        Order oldest = saveOrder(1_000L);
+        Order tie1 = saveOrder(2_000L);
+        Order tie2 = saveOrder(2_000L);
+        Order newest = saveOrder(3_000L);
+
+        // 逐页读取，每页2条
+        List<Order> first = orderRepository.findByCustomerOrderByOrderTimeDescIdDesc(customer, Limit.of(2));
+        assertEquals(List.of(newest.getId(), tie2.getId()), ids(first));
+
+        Order last = first.get(1);
+        List<Order> second = orderRepository.findByCustomerBefore(customer, last.getOrderTime(), last.getId(), Limit.of(2));
+        assertEquals(List.of(tie1.getId(), oldest.getId()), ids(second));
+
+        last = second.get(1);
+        assertTrue(orderRepository.findByCustomerBefore(customer, last.getOrderTime(), last.getId(), Limit.of(2)).isEmpty());
+    }
+
+    @Test
+    @DisplayName("测试游标分页查询顾客订单 - 下单时间为空的历史订单排在最后，不重不漏")
+    public void testFindByCustomerBefore_NullOrderTime() {
+        // 准备数据：两笔历史订单没有下单时间
+        Order legacy1 = saveOrder((Date) null);
+        Order older = saveOrder(1_000L);
+        Order legacy2 = saveOrder((Date) null);
+        Order newest = saveOrder(2_000L);
+
+        // 逐页读取，每页1条，游标经过编码和解析
+        List<Long> read = new ArrayList<>();
+        List<Order> page = orderRepository.findByCustomerOrderByOrderTimeDescIdDesc(customer, Limit.of(1));
+        while (!page.isEmpty()) {
+            Order last = page.get(0);
+            read.add(last.getId());
+            PageCursor cursor = PageCursor.decodeTimed(PageCursor.of(last.getOrderTime(), last.getId()).encode());
+            page = orderRepository.findByCustomerBefore(customer, cursor.date(), cursor.id(), Limit.of(1));
+        }
+
+        // 验证：与按页码分页的顺序一致
+        assertEquals(List.of(newest.getId(), older.getId(), legacy2.getId(), legacy1.getId()), read);
+    }
+
+    @Test
+    @DisplayName("测试游标分页查询商家订单 - 限定时间范围")
+    public void testFindByMerchantAndOrderTimeBetweenBefore() {
+        // 准备数据
+        saveOrder(1_000L);
+        Order inRange1 = saveOrder(2_000L);
+        Order inRange2 = saveOrder(3_000L);
+        saveOrder(9_000L);
+
+        List<Order> orders = orderRepository.findByMerchantAndOrderTimeBetweenBefore(
+                merchant, new Date(1_500L), new Date(5_000L), new Date(9_000L), Long.MAX_VALUE, Limit.of(10));
+
+        assertEquals(List.of(inRange2.getId(), inRange1.getId()), ids(orders));
+    }
+
+    @Test
+    @DisplayName("测试订单列表查询 - SQL 条数不随订单数增长")
+    public void testListingStatementCount() {
+        // 准备数据：12 笔订单，每笔 2 个菜品、1 个评价，均已分配送餐员
+        DeliveryMan deliveryMan = new DeliveryMan();
+        deliveryMan.setUsername("graph-deliveryman");
+        deliveryMan.setPassword("password123");
+        deliveryMan.setUserType(UserType.DELIVERYMAN);
+        userRepository.save(deliveryMan);
+
+        List<Dish> dishes = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            Dish dish = new Dish();
+            dish.setMerchant(merchant);
+            dish.setName("菜品" + i);
+            dish.setPrice(BigDecimal.ONE);
+            dishes.add(entityManager.persist(dish));
+        }
+        for (int i = 0; i < 12; i++) {
+            Order order = saveOrder(1_000L * i);
+            order.setItems(new ArrayList<>(dishes.stream().map(dish -> OrderItem.of(dish, 1)).toList()));
+            order.setDeliveryMan(deliveryMan);
+            Review review = new Review();
+            review.setOrder(order);
+            review.setRating(5);
+            entityManager.persist(review);
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        // 调用方法并访问列表序列化时会读取的关联
+        Page<Order> page = orderRepository.findByCustomer(entityManager.find(Customer.class, customer.getId()),
+                PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, "orderTime")));
+        for (Order order : page.getContent()) {
+            assertEquals(2, order.getItems().size());
+            assertEquals(5, order.getReview().getRating());
+            assertEquals("graph-deliveryman", order.getDeliveryMan().getUsername());
+            assertEquals("keyset-merchant", order.getMerchant().getUsername());
+        }
+
+        // 验证：顾客、订单列表、总数、明细批量加载各一条
+        assertEquals(10, page.getContent().size());
+        assertEquals(4, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    @DisplayName("测试查询订单详情 - 明细和评价随订单一起加载，明细不受菜品修改影响")
+    public void testFindDetailById() {
+        // 准备数据
+        Dish dish = new Dish();
+        dish.setMerchant(merchant);
+        dish.setName("宫保鸡丁");
+        dish.setPrice(BigDecimal.TEN);
+        entityManager.persist(dish);
+        Order order = saveOrder(1_000L);
+        order.setItems(new ArrayList<>(List.of(OrderItem.of(dish, 2))));
+        entityManager.flush();
+        dish.setName("宫保鸡丁（新）");
+        dish.setPrice(BigDecimal.ONE);
+        entityManager.flush();
+        entityManager.clear();
+
+        // 调用方法
+        Order found = orderRepository.findDetailById(order.getId()).orElseThrow();
+        entityManager.clear();
+
+        // 验证：会话清空后仍可读取明细，名称和单价是下单时的快照
+        assertTrue(Hibernate.isInitialized(found.getItems()));
+        OrderItem item = found.getItems().get(0);
+        assertEquals(dish.getId(), item.getDishId());
+        assertEquals("宫保鸡丁", item.getDishName());
+        assertEquals(2, item.getQuantity());
+        assertEquals(1_000L, item.getUnitPriceCents());
+        assertNull(found.getReview());
+    }
+
+    @Test
+    @DisplayName("测试乐观锁 - 条件更新递增版本号，基于旧版本的保存失败")
+    public void testVersionConflict() {
+        // 准备数据
+        Order order = saveOrder(1_000L);
+        entityManager.flush();
+        entityManager.clear();
+        Order stale = orderRepository.findById(order.getId()).orElseThrow();
+        Long version = stale.getVersion();
+
+        // 调用方法：条件更新后持久化上下文被清空，stale 成为旧版本的游离对象
+        assertEquals(1, orderRepository.compareAndSetStatus(order.getId(),
+                OrderStatus.PENDING_CONFIRMATION, OrderStatus.PREPARING));
+
+        // 验证
+        assertEquals(version + 1, orderRepository.findById(order.getId()).orElseThrow().getVersion());
+        entityManager.clear();
+        stale.setStatus(OrderStatus.REVIEWED);
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> orderRepository.saveAndFlush(stale));
+    }
+
+    private static List<Long> ids(List<Order> orders) {
+        List<Long> ids = new ArrayList<>();
+        for (Order order : orders) {
+            ids.add(order.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    @DisplayName("测试按状态分批读取订单及进入该状态的时间")
+    public void testFindStatusEntries() {
+        // 准备数据：第一笔订单有状态历史，第二笔没有，第三笔状态不同
+        Order withHistory = saveOrder(1_000L);
+        Order withoutHistory = saveOrder(2_000L);
+        Order delivered = saveOrder(3_000L);
+        delivered.setStatus(OrderStatus.DELIVERED);
+        orderRepository.save(delivered);
+        Order last = saveOrder(4_000L);
+
+        OrderStatusHistory entered = new OrderStatusHistory();
+        entered.setOrderId(withHistory.getId());
+        entered.setToStatus(OrderStatus.PENDING_CONFIRMATION);
+        entered.setChangedAt(new Date(5_000L));
+        entityManager.persist(entered);
+
+        // 调用方法：每批2条
+        List<OrderRepository.StatusEntry> first = orderRepository.findStatusEntries(
+                OrderStatus.PENDING_CONFIRMATION, withHistory.getId() - 1, Limit.of(2));
+        List<OrderRepository.StatusEntry> second = orderRepository.findStatusEntries(
+                OrderStatus.PENDING_CONFIRMATION, first.get(1).getOrderId(), Limit.of(2));
+
+        // 验证
+        assertEquals(List.of(withHistory.getId(), withoutHistory.getId()),
+                first.stream().map(OrderRepository.StatusEntry::getOrderId).toList());
+        assertEquals(5_000L, first.get(0).getEnteredAt().getTime());
+        assertNull(first.get(1).getEnteredAt());
+        assertEquals(List.of(last.getId()), second.stream().map(OrderRepository.StatusEntry::getOrderId).toList());
+    }
+
+    @Test
+    @DisplayName("测试按菜品统计销量 - 只读明细快照，不计已取消的订单")
+    public void testSumDishSales() {
+        // 准备数据：菜品之后被删除，统计仍使用下单时的名称和单价
+        Dish rice = new Dish();
+        rice.setMerchant(merchant);
+        rice.setName("米饭");
+        rice.setPrice(new BigDecimal("2.00"));
+        entityManager.persist(rice);
+        Dish chicken = new Dish();
+        chicken.setMerchant(merchant);
+        chicken.setName("宫保鸡丁");
+        chicken.setPrice(new BigDecimal("18.50"));
+        entityManager.persist(chicken);
+
+        Order first = saveOrder(1_000L);
+        first.setItems(new ArrayList<>(List.of(OrderItem.of(chicken, 1), OrderItem.of(rice, 2))));
+        Order second = saveOrder(2_000L);
+        second.setItems(new ArrayList<>(List.of(OrderItem.of(rice, 3))));
+        Order cancelled = saveOrder(3_000L);
+        cancelled.setStatus(OrderStatus.CANCELLED);
+        cancelled.setItems(new ArrayList<>(List.of(OrderItem.of(chicken, 5))));
+        Order outOfRange = saveOrder(9_000L);
+        outOfRange.setItems(new ArrayList<>(List.of(OrderItem.of(chicken, 1))));
+        entityManager.flush();
+        entityManager.remove(rice);
+        entityManager.flush();
+        entityManager.clear();
+
+        // 调用方法
+        List<OrderRepository.DishSalesRow> rows = orderRepository.sumDishSales(
+                merchant.getId(), new Date(0L), new Date(5_000L), OrderStatus.CANCELLED);
+
+        // 验证：按销售额降序
+        assertEquals(2, rows.size());
+        assertEquals(chicken.getId(), rows.get(0).getDishId());
+        assertEquals(1L, rows.get(0).getQuantity());
+        assertEquals(1_850L, rows.get(0).getRevenueCents());
+        assertEquals("米饭", rows.get(1).getDishName());
+        assertEquals(5L, rows.get(1).getQuantity());
+        assertEquals(1_000L, rows.get(1).getRevenueCents());
+    }
+
+    @Test
+    @DisplayName("测试下单校验查询 - 一条 SQL 查出顾客、商家和菜品的所属商家与价格")
+    public void testFindIntakeRows() {
+        // 准备数据：一个本店菜品，一个其他商家的菜品
+        Merchant other = new Merchant();
+        other.setUsername("intake-other-merchant");
+        other.setPassword("password123");
+        other.setUserType(UserType.MERCHANT);
+        userRepository.save(other);
+
+        Dish own = new Dish();
+        own.setMerchant(merchant);
+        own.setName("宫保鸡丁");
+        own.setPrice(new BigDecimal("18.50"));
+        entityManager.persist(own);
+        Dish foreign = new Dish();
+        foreign.setMerchant(other);
+        foreign.setName("汉堡");
+        foreign.setPrice(BigDecimal.TEN);
+        entityManager.persist(foreign);
+        entityManager.flush();
+        entityManager.clear();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        // 调用方法
+        List<OrderRepository.IntakeRow> rows = orderRepository.findIntakeRows(
+                customer.getId(), merchant.getId(), List.of(own.getId(), foreign.getId(), -1L));
+
+        // 验证
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(2, rows.size());
+        assertTrue(rows.stream().allMatch(row -> customer.getId().equals(row.getCustomerId())
+                && merchant.getId().equals(row.getMerchantId())
+                && "keyset-customer".equals(row.getCustomerName())));
+        OrderRepository.IntakeRow ownRow = rows.stream().filter(row -> own.getId().equals(row.getDishId())).findFirst().orElseThrow();
+        assertEquals(merchant.getId(), ownRow.getDishMerchantId());
+        assertEquals("宫保鸡丁", ownRow.getDishName());
+        assertEquals(0, new BigDecimal("18.50").compareTo(ownRow.getDishPrice()));
+        OrderRepository.IntakeRow foreignRow = rows.stream().filter(row -> foreign.getId().equals(row.getDishId())).findFirst().orElseThrow();
+        assertEquals(other.getId(), foreignRow.getDishMerchantId());
+
+        // 顾客不存在时没有结果，商家不存在时商家ID为空，菜品都不存在时只有一行
+        assertTrue(orderRepository.findIntakeRows(-1L, merchant.getId(), List.of(own.getId())).isEmpty());
+        assertNull(orderRepository.findIntakeRows(customer.getId(), -1L, List.of(own.getId())).get(0).getMerchantId());
+        List<OrderRepository.IntakeRow> none = orderRepository.findIntakeRows(customer.getId(), merchant.getId(), List.of(-1L));
+        assertEquals(1, none.size());
+        assertNull(none.get(0).getDishId());
+    }
+}
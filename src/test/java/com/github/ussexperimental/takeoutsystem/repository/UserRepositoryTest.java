@@ -27,6 +27,9 @@ public class UserRepositoryTest {
     @Autowired
     private RoleRepository roleRepository;
 
+    @Autowired
+    private MerchantRepository merchantRepository;
+
     @Test
     @DisplayName("测试根据用户名查找用户")
     public void testFindByUsername() {
@@ -76,4 +79,28 @@ public class UserRepositoryTest {
         Optional<User> deletedMerchant = userRepository.findByUsername("merchant1");
         assertFalse(deletedMerchant.isPresent());
     }
+
+    @Test
+    @DisplayName("测试递增商家菜单版本号")
+    public void testIncrementMenuVersion() {
+        // 创建并保存角色和商家
+        Role role = new Role();
+        role.setRoleType(RoleType.MERCHANT);
+        roleRepository.save(role);
+
+        Merchant merchant = new Merchant();
+        merchant.setUsername("merchant2");
+        merchant.setPassword("password456");
+        merchant.setRole(role);
+        merchant.setUserType(UserType.MERCHANT);
+        merchantRepository.save(merchant);
+
+        // 验证：新商家版本号为 0，每次递增 1，商家不存在时没有版本号
+        assertEquals(Optional.of(0L), merchantRepository.findMenuVersionById(merchant.getId()));
+        assertEquals(1, merchantRepository.incrementMenuVersion(merchant.getId()));
+        merchantRepository.incrementMenuVersion(merchant.getId());
+        assertEquals(Optional.of(2L), merchantRepository.findMenuVersionById(merchant.getId()));
+        assertEquals(0, merchantRepository.incrementMenuVersion(-1L));
+        assertFalse(merchantRepository.findMenuVersionById(-1L).isPresent());
+    }
 }
@@ -0,0 +1,130 @@
+package com.github.ussexperimental.takeoutsystem.retry;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class OptimisticRetryTemplateTest {
+
+    @InjectMocks
+    private OptimisticRetryTemplate optimisticRetry;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(optimisticRetry, "maxAttempts", 3);
+        ReflectionTestUtils.setField(optimisticRetry, "initialBackoffMillis", 1L);
+        ReflectionTestUtils.setField(optimisticRetry, "maxBackoffMillis", 2L);
+
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+    }
+
+    @Test
+    @DisplayName("测试冲突后重试成功 - 每次尝试独立事务")
+    public void testRetryAfterConflict() {
+        // 准备数据：前两次尝试冲突
+        AtomicInteger attempts = new AtomicInteger();
+
+        // 调用方法
+        String result = optimisticRetry.execute("updateDish", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new ObjectOptimisticLockingFailureException("Dish", 1L);
+            }
+            return "ok";
+        });
+
+        // 验证：失败的两次回滚，最后一次提交
+        assertEquals("ok", result);
+        assertEquals(3, attempts.get());
+        verify(transactionManager, times(3)).getTransaction(any());
+        verify(transactionManager, times(2)).rollback(any());
+        verify(transactionManager, times(1)).commit(any());
+        assertEquals(1, count("optimistic.lock.calls", "updateDish"));
+        assertEquals(2, count("optimistic.lock.conflicts", "updateDish"));
+        assertEquals(0, count("optimistic.lock.exhausted", "updateDish"));
+    }
+
+    @Test
+    @DisplayName("测试重试耗尽 - 抛出最后一次的冲突")
+    public void testRetryExhausted() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        ObjectOptimisticLockingFailureException exception = assertThrows(ObjectOptimisticLockingFailureException.class, () -> {
+            optimisticRetry.execute("reviewOrder", () -> {
+                attempts.incrementAndGet();
+                throw new ObjectOptimisticLockingFailureException("Order", 1L);
+            });
+        });
+
+        assertEquals(1L, exception.getIdentifier());
+        assertEquals(3, attempts.get());
+        assertEquals(3, count("optimistic.lock.conflicts", "reviewOrder"));
+        assertEquals(1, count("optimistic.lock.exhausted", "reviewOrder"));
+    }
+
+    @Test
+    @DisplayName("测试其他异常不重试")
+    public void testNoRetryOnOtherException() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+            optimisticRetry.execute("updateDish", () -> {
+                attempts.incrementAndGet();
+                throw new IllegalArgumentException("菜品不存在");
+            });
+        });
+
+        assertEquals("菜品不存在", exception.getMessage());
+        assertEquals(1, attempts.get());
+        verify(transactionManager, times(1)).rollback(any());
+        assertEquals(0, count("optimistic.lock.conflicts", "updateDish"));
+    }
+
+    @Test
+    @DisplayName("测试已在事务中 - 只执行一次且不另开事务")
+    public void testInsideTransaction() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        try {
+            AtomicInteger attempts = new AtomicInteger();
+
+            assertThrows(ObjectOptimisticLockingFailureException.class, () -> {
+                optimisticRetry.execute("updateDish", () -> {
+                    attempts.incrementAndGet();
+                    throw new ObjectOptimisticLockingFailureException("Dish", 1L);
+                });
+            });
+
+            assertEquals(1, attempts.get());
+            verify(transactionManager, never()).getTransaction(any());
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+    }
+
+    private double count(String name, String operation) {
+        var counter = meterRegistry.find(name).tag("operation", operation).counter();
+        return counter == null ? 0 : counter.count();
+    }
+}
@@ -0,0 +1,125 @@
+package com.github.ussexperimental.takeoutsystem.search;
+
+import com.github.ussexperimental.takeoutsystem.dto.DishIndexRow;
+import com.github.ussexperimental.takeoutsystem.repository.DishRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class DishPriceIndexTest {
+
+    private DishPriceIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        index = new DishPriceIndex();
+        index.put(1L, new BigDecimal("18.00"));
+        index.put(2L, new BigDecimal("9.90"));
+        index.put(3L, new BigDecimal("25.5"));
+        index.put(4L, new BigDecimal("9.90"));
+        index.put(5L, new BigDecimal("12.00"));
+    }
+
+    @Test
+    @DisplayName("测试价格区间查询 - 闭区间，按价格和ID升序")
+    public void testRange() {
+        DishPriceIndex.RangeResult result = index.range(new BigDecimal("9.9"), new BigDecimal("18"), 0, 10);
+
+        assertEquals(4, result.total());
+        assertEquals(List.of(2L, 4L, 5L, 1L), result.ids());
+        assertEquals(0, index.range(new BigDecimal("30"), null, 0, 10).total());
+        assertEquals(0, index.range(new BigDecimal("20"), new BigDecimal("10"), 0, 10).total());
+    }
+
+    @Test
+    @DisplayName("测试价格区间查询 - 分页")
+    public void testRange_Paging() {
+        DishPriceIndex.RangeResult result = index.range(null, null, 2, 2);
+
+        assertEquals(5, result.total());
+        assertEquals(List.of(5L, 1L), result.ids());
+        assertTrue(index.range(null, null, 5, 2).ids().isEmpty());
+    }
+
+    @Test
+    @DisplayName("测试最便宜的菜品")
+    public void testCheapest() {
+        assertEquals(List.of(2L, 4L, 5L), index.cheapest(3));
+        assertEquals(5, index.cheapest(100).size());
+    }
+
+    @Test
+    @DisplayName("测试增量更新 - 改价和删除")
+    public void testUpdateAndRemove() {
+        index.put(3L, new BigDecimal("1.00"));
+        index.remove(2L);
+        index.remove(99L);
+
+        assertEquals(4, index.size());
+        assertEquals(List.of(3L, 4L, 5L, 1L), index.cheapest(10));
+
+        index.put(2L, new BigDecimal("100"));
+        index.put(2L, new BigDecimal("12.00"));
+        // 同价按ID升序
+        assertEquals(List.of(3L, 4L, 2L, 5L, 1L), index.cheapest(10));
+    }
+
+    @Test
+    @DisplayName("测试价格换算为分")
+    public void testToCents() {
+        assertEquals(990L, DishPriceIndex.toCents(new BigDecimal("9.9")));
+        assertEquals(1001L, DishPriceIndex.toCents(new BigDecimal("10.005")));
+        assertEquals(0L, DishPriceIndex.toCents(BigDecimal.ZERO));
+        // 超出 long 范围时截断
+        assertEquals(Long.MAX_VALUE, DishPriceIndex.toCents(new BigDecimal("1e30")));
+        assertEquals(Long.MIN_VALUE + 1, DishPriceIndex.toCents(new BigDecimal("-1e30")));
+    }
+
+    @Test
+    @DisplayName("测试价格区间查询 - 极大的价格和偏移量")
+    public void testRange_Huge() {
+        DishPriceIndex.RangeResult result = index.range(new BigDecimal("-1e30"), new BigDecimal("1e30"), 0, 10);
+        assertEquals(5, result.total());
+        assertEquals(0, index.range(new BigDecimal("1e30"), null, 0, 10).total());
+
+        result = index.range(null, null, Integer.MAX_VALUE, 10);
+        assertEquals(5, result.total());
+        assertTrue(result.ids().isEmpty());
+    }
+
+    @Test
+    @DisplayName("测试重建失败后重试")
+    public void testRebuild_Retry() throws Exception {
+        // 模拟仓库行为：第一次读取失败，重试时成功
+        DishRepository dishRepository = mock(DishRepository.class);
+        when(dishRepository.findIndexRows(anyLong(), any(Limit.class)))
+                .thenThrow(new IllegalStateException("数据库不可用"))
+                .thenReturn(List.of(new DishIndexRow(6L, "水煮鱼", "麻辣", new BigDecimal("1.00"))));
+        ReflectionTestUtils.setField(index, "dishRepository", dishRepository);
+        ReflectionTestUtils.setField(index, "rebuildRetrySeconds", 0L);
+
+        try {
+            // 调用方法
+            index.rebuild();
+
+            // 验证：重试成功后就绪
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!index.isReady()) {
+                assertTrue(System.nanoTime() < deadline, "等待重建超时");
+                Thread.sleep(10);
+            }
+            assertEquals(List.of(6L), index.cheapest(10));
+        } finally {
+            index.shutdown();
+        }
+    }
+}
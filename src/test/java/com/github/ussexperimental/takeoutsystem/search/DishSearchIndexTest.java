@@ -0,0 +1,110 @@
+package com.github.ussexperimental.takeoutsystem.search;
+
+import com.github.ussexperimental.takeoutsystem.dto.DishIndexRow;
+import com.github.ussexperimental.takeoutsystem.repository.DishRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class DishSearchIndexTest {
+
+    private DishSearchIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        index = new DishSearchIndex();
+        index.index(1L, "宫保鸡丁", "经典川菜，鸡肉配花生");
+        index.index(2L, "麻婆豆腐", "麻辣鲜香");
+        index.index(3L, "鸡蛋炒饭", "家常炒饭");
+        index.index(4L, "Chicken Burger", "炸鸡汉堡");
+    }
+
+    @Test
+    @DisplayName("测试分词 - 中文二元组和英文前缀")
+    public void testTokenizer() {
+        assertEquals(List.of("宫保", "保鸡"), DishTokenizer.queryTokens("宫保鸡"));
+        assertEquals(List.of("鸡"), DishTokenizer.queryTokens("鸡"));
+        assertEquals(List.of("chick", "宫保"), DishTokenizer.queryTokens("Ｃｈｉｃｋ 宫保"));
+        assertTrue(DishTokenizer.indexTokens("Chicken").containsAll(List.of("c", "ch", "chicken")));
+        assertTrue(DishTokenizer.indexTokens("鸡丁").containsAll(List.of("鸡", "丁", "鸡丁")));
+        assertTrue(DishTokenizer.queryTokens("  ,，").isEmpty());
+    }
+
+    @Test
+    @DisplayName("测试搜索 - 名称命中排在描述命中之前")
+    public void testSearch_Ranking() {
+        DishSearchIndex.SearchResult result = index.search("鸡", 0, 10);
+
+        assertEquals(3, result.total());
+        // 1 和 3 名称命中，4 仅描述命中；同分按ID降序
+        assertEquals(List.of(3L, 1L, 4L), result.ids());
+    }
+
+    @Test
+    @DisplayName("测试搜索 - 须包含全部词元")
+    public void testSearch_AllTokensRequired() {
+        assertEquals(List.of(1L), index.search("宫保鸡丁", 0, 10).ids());
+        assertEquals(List.of(4L), index.search("chick", 0, 10).ids());
+        assertEquals(0, index.search("宫保豆腐", 0, 10).total());
+    }
+
+    @Test
+    @DisplayName("测试搜索 - 分页")
+    public void testSearch_Paging() {
+        DishSearchIndex.SearchResult result = index.search("鸡", 1, 1);
+
+        assertEquals(3, result.total());
+        assertEquals(List.of(1L), result.ids());
+        assertTrue(index.search("鸡", 3, 10).ids().isEmpty());
+    }
+
+    @Test
+    @DisplayName("测试增量更新和删除")
+    public void testUpdateAndRemove() {
+        index.index(2L, "鱼香肉丝", "下饭菜");
+        index.remove(3L);
+
+        assertEquals(0, index.search("豆腐", 0, 10).total());
+        assertEquals(List.of(2L), index.search("鱼香", 0, 10).ids());
+        assertEquals(List.of(1L, 4L), index.search("鸡", 0, 10).ids());
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    @DisplayName("测试全量重建 - 失败后索引保持未就绪并自动重试")
+    public void testRebuild_Retry() throws Exception {
+        // 模拟仓库行为：第一次读取失败，重试时成功
+        DishRepository dishRepository = mock(DishRepository.class);
+        when(dishRepository.findIndexRows(anyLong(), any(Limit.class)))
+                .thenThrow(new IllegalStateException("数据库不可用"))
+                .thenReturn(List.of(new DishIndexRow(5L, "水煮鱼", "麻辣", BigDecimal.TEN)));
+        ReflectionTestUtils.setField(index, "dishRepository", dishRepository);
+        ReflectionTestUtils.setField(index, "rebuildRetrySeconds", 0L);
+
+        try {
+            // 调用方法
+            index.rebuild();
+
+            // 验证：重试成功后就绪，重建期间的增量记录已清理
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!index.isReady()) {
+                assertTrue(System.nanoTime() < deadline, "等待重建超时");
+                Thread.sleep(10);
+            }
+            assertNull(ReflectionTestUtils.getField(index, "touchedDuringRebuild"));
+            assertEquals(List.of(5L), index.search("水煮", 0, 10).ids());
+            assertEquals(1, index.size());
+        } finally {
+            index.shutdown();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.github.ussexperimental.takeoutsystem.service;
 
+import com.github.ussexperimental.takeoutsystem.cache.ApproximateCountCache;
 import com.github.ussexperimental.takeoutsystem.dto.PageResponse;
 import com.github.ussexperimental.takeoutsystem.entity.Customer;
 import com.github.ussexperimental.takeoutsystem.entity.Merchant;
@@ -7,6 +8,7 @@ import com.github.ussexperimental.takeoutsystem.entity.Role;
 import com.github.ussexperimental.takeoutsystem.entity.User;
 import com.github.ussexperimental.takeoutsystem.entity.enums.RoleType;
 import com.github.ussexperimental.takeoutsystem.entity.enums.UserType;
+import com.github.ussexperimental.takeoutsystem.event.UserDeletedEvent;
 import com.github.ussexperimental.takeoutsystem.repository.RoleRepository;
 import com.github.ussexperimental.takeoutsystem.repository.UserRepository;
 import com.github.ussexperimental.takeoutsystem.service.impl.AdminServiceImpl;
@@ -17,6 +19,8 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
@@ -40,6 +44,12 @@ public class AdminServiceTest {
     @Mock
     private RoleRepository roleRepository;
 
+    @Mock
+    private ApproximateCountCache countCache;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.openMocks(this);
@@ -184,6 +194,61 @@ public class AdminServiceTest {
         verify(userRepository, times(1)).findAll(any(Pageable.class));
     }
 
+    @Test
+    @DisplayName("测试游标分页获取用户 - 多取一条判断下一页")
+    public void testGetAllUsers_Cursor() {
+        // 准备数据
+        User user9 = new Customer();
+        user9.setId(9L);
+        User user7 = new Customer();
+        user7.setId(7L);
+        User user4 = new Customer();
+        user4.setId(4L);
+
+        // 模拟仓库行为
+        when(userRepository.findAllByOrderByIdDesc(Limit.of(3))).thenReturn(Arrays.asList(user9, user7, user4));
+        when(userRepository.findByIdLessThanOrderByIdDesc(7L, Limit.of(3))).thenReturn(Arrays.asList(user4));
+
+        // 调用方法：第一页
+        PageResponse<User> first = adminService.getAllUsers("", 2);
+
+        // 验证
+        assertEquals(Arrays.asList(user9, user7), first.getContent());
+        assertFalse(first.isLast());
+        assertEquals(-1, first.getTotalElements());
+        assertNotNull(first.getNextCursor());
+        verify(userRepository, never()).findAll(any(Pageable.class));
+
+        // 调用方法：第二页
+        PageResponse<User> second = adminService.getAllUsers(first.getNextCursor(), 2);
+
+        // 验证
+        assertEquals(Arrays.asList(user4), second.getContent());
+        assertTrue(second.isLast());
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    @DisplayName("测试游标分页获取用户 - 游标无效")
+    public void testGetAllUsers_InvalidCursor() {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+            adminService.getAllUsers("不是游标", 10);
+        });
+
+        assertEquals("分页游标无效", exception.getMessage());
+    }
+
+    @Test
+    @DisplayName("测试游标分页获取用户 - 每页大小超出上限")
+    public void testGetAllUsers_CursorSizeTooLarge() {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+            adminService.getAllUsers("", Integer.MAX_VALUE);
+        });
+
+        assertEquals("分页参数无效", exception.getMessage());
+        verifyNoInteractions(userRepository);
+    }
+
     @Test
     @DisplayName("测试根据用户ID获取用户 - 成功")
     public void testGetUserById_Success() {
@@ -362,6 +427,7 @@ public class AdminServiceTest {
         // 验证
         verify(userRepository, times(1)).existsById(userId);
         verify(userRepository, times(1)).deleteById(userId);
+        verify(eventPublisher, times(1)).publishEvent(new UserDeletedEvent(userId));
     }
 
     @Test
@@ -382,6 +448,7 @@ public class AdminServiceTest {
 
         verify(userRepository, times(1)).existsById(userId);
         verify(userRepository, never()).deleteById(anyLong());
+        verifyNoInteractions(eventPublisher);
     }
 
     // 根据需要添加更多测试方法，例如测试 getAllUsers 的不同场景
@@ -1,20 +1,35 @@
 package com.github.ussexperimental.takeoutsystem.service;
 
+import com.github.ussexperimental.takeoutsystem.cache.ApproximateCountCache;
+import com.github.ussexperimental.takeoutsystem.cache.MenuCache;
+import com.github.ussexperimental.takeoutsystem.dto.OrderCreateDTO;
+import com.github.ussexperimental.takeoutsystem.dto.OrderCreateResult;
 import com.github.ussexperimental.takeoutsystem.dto.PageResponse;
 import com.github.ussexperimental.takeoutsystem.entity.*;
 import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+import com.github.ussexperimental.takeoutsystem.event.OrderCreatedEvent;
+import com.github.ussexperimental.takeoutsystem.event.OrderStatusChangedEvent;
 import com.github.ussexperimental.takeoutsystem.repository.*;
+import com.github.ussexperimental.takeoutsystem.idempotency.IdempotencyTemplate;
+import com.github.ussexperimental.takeoutsystem.retry.OptimisticRetryTemplate;
+import com.github.ussexperimental.takeoutsystem.search.DishPriceIndex;
+import com.github.ussexperimental.takeoutsystem.search.DishSearchIndex;
 import com.github.ussexperimental.takeoutsystem.service.impl.CustomerServiceImpl;
+import com.github.ussexperimental.takeoutsystem.stream.OrderStatusStream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -39,9 +54,40 @@ public class CustomerServiceTest {
     @Mock
     private ReviewRepository reviewRepository;
 
+    @Mock
+    private OrderEventRepository orderEventRepository;
+
+    @Mock
+    private MenuCache menuCache;
+
+    @Mock
+    private ApproximateCountCache countCache;
+
+    @Mock
+    private DishSearchIndex dishSearchIndex;
+
+    @Mock
+    private DishPriceIndex dishPriceIndex;
+
+    @Mock
+    private OptimisticRetryTemplate optimisticRetry;
+
+    @Mock
+    private OrderStatusStream orderStatusStream;
+
+    @Mock
+    private IdempotencyTemplate idempotency;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.openMocks(this);
+
+        // 模拟重试模板：直接执行一次操作
+        when(optimisticRetry.execute(anyString(), any())).thenAnswer(invocation ->
+                invocation.<Supplier<?>>getArgument(1).get());
     }
 
     // 1. 测试 viewMenu 方法
@@ -116,8 +162,197 @@ public class CustomerServiceTest {
         verify(dishRepository, never()).findByMerchant(any(Merchant.class), any(Pageable.class));
     }
 
+    @Test
+    @DisplayName("测试查看菜单 - 命中缓存")
+    public void testViewMenu_CacheHit() {
+        // 准备数据
+        Long merchantId = 1L;
+        int page = 0;
+        int size = 10;
+
+        PageResponse<Dish> cachedMenu = new PageResponse<>(Collections.emptyList(), page, size, 0, 0, true);
+
+        // 模拟缓存行为
+        when(menuCache.get(merchantId, page, size)).thenReturn(cachedMenu);
+
+        // 调用方法
+        PageResponse<Dish> response = customerService.viewMenu(merchantId, page, size);
+
+        // 验证
+        assertSame(cachedMenu, response);
+        verify(merchantRepository, never()).findById(anyLong());
+        verify(dishRepository, never()).findByMerchant(any(Merchant.class), any(Pageable.class));
+    }
+
+    // 1.1 测试 searchDishes 方法
+
+    @Test
+    @DisplayName("测试搜索菜品 - 按索引排序分页返回")
+    public void testSearchDishes_Success() {
+        // 准备数据
+        Dish dish1 = new Dish();
+        dish1.setId(1L);
+        dish1.setName("宫保鸡丁");
+
+        Dish dish3 = new Dish();
+        dish3.setId(3L);
+        dish3.setName("鸡蛋炒饭");
+
+        // 模拟索引和仓库行为
+        when(dishSearchIndex.isReady()).thenReturn(true);
+        when(dishSearchIndex.search("鸡", 0, 2)).thenReturn(new DishSearchIndex.SearchResult(Arrays.asList(3L, 1L), 3));
+        when(dishRepository.findAllById(Arrays.asList(3L, 1L))).thenReturn(Arrays.asList(dish1, dish3));
+
+        // 调用方法
+        PageResponse<Dish> response = customerService.searchDishes("鸡", 0, 2);
+
+        // 验证：保持索引给出的顺序
+        assertEquals(Arrays.asList(dish3, dish1), response.getContent());
+        assertEquals(3, response.getTotalElements());
+        assertEquals(2, response.getTotalPages());
+        assertFalse(response.isLast());
+        verify(dishRepository, never()).findByNameContaining(anyString(), any(Pageable.class));
+    }
+
+    @Test
+    @DisplayName("测试搜索菜品 - 索引未就绪时退回数据库查询")
+    public void testSearchDishes_IndexNotReady() {
+        // 准备数据
+        Page<Dish> dishPage = new PageImpl<>(Collections.emptyList(), PageRequest.of(0, 10), 0);
+
+        // 模拟索引和仓库行为
+        when(dishSearchIndex.isReady()).thenReturn(false);
+        when(dishRepository.findByNameContaining("鸡", PageRequest.of(0, 10, Sort.by("id").descending())))
+                .thenReturn(dishPage);
+
+        // 调用方法
+        PageResponse<Dish> response = customerService.searchDishes(" 鸡 ", 0, 10);
+
+        // 验证
+        assertTrue(response.getContent().isEmpty());
+        verify(dishSearchIndex, never()).search(anyString(), anyInt(), anyInt());
+    }
+
+    @Test
+    @DisplayName("测试搜索菜品 - 页码很大时起始位置不溢出，返回空页")
+    public void testSearchDishes_LargePage() {
+        // 模拟索引行为
+        when(dishSearchIndex.isReady()).thenReturn(true);
+        when(dishSearchIndex.search("鸡", Integer.MAX_VALUE, 100)).thenReturn(new DishSearchIndex.SearchResult(List.of(), 3));
+
+        // 调用方法
+        PageResponse<Dish> response = customerService.searchDishes("鸡", Integer.MAX_VALUE, 100);
+
+        // 验证
+        assertTrue(response.getContent().isEmpty());
+        assertTrue(response.isLast());
+    }
+
+    @Test
+    @DisplayName("测试搜索菜品 - 关键词为空")
+    public void testSearchDishes_BlankKeyword() {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+            customerService.searchDishes(" ", 0, 10);
+        });
+
+        assertEquals("搜索关键词不能为空", exception.getMessage());
+    }
+
+    // 1.2 测试 browseDishesByPrice 方法
+
+    @Test
+    @DisplayName("测试按价格浏览菜品 - 按索引价格顺序分页返回")
+    public void testBrowseDishesByPrice_Success() {
+        // 准备数据
+        Dish cheap = new Dish();
+        cheap.setId(7L);
+        cheap.setPrice(new BigDecimal("8.00"));
+
+        Dish expensive = new Dish();
+        expensive.setId(2L);
+        expensive.setPrice(new BigDecimal("12.50"));
+
+        BigDecimal min = new BigDecimal("5");
+        BigDecimal max = new BigDecimal("20");
+
+        // 模拟索引和仓库行为
+        when(dishPriceIndex.isReady()).thenReturn(true);
+        when(dishPriceIndex.range(min, max, 2, 2)).thenReturn(new DishPriceIndex.RangeResult(Arrays.asList(7L, 2L), 5));
+        when(dishRepository.findAllById(Arrays.asList(7L, 2L))).thenReturn(Arrays.asList(expensive, cheap));
+
+        // 调用方法
+        PageResponse<Dish> response = customerService.browseDishesByPrice(min, max, 1, 2);
+
+        // 验证：保持索引给出的价格顺序
+        assertEquals(Arrays.asList(cheap, expensive), response.getContent());
+        assertEquals(5, response.getTotalElements());
+        assertEquals(3, response.getTotalPages());
+        assertFalse(response.isLast());
+        verify(dishRepository, never()).findByPriceBetween(any(), any(), any(Pageable.class));
+    }
+
+    @Test
+    @DisplayName("测试按价格浏览菜品 - 索引未就绪时退回数据库查询")
+    public void testBrowseDishesByPrice_IndexNotReady() {
+        // 准备数据
+        Pageable pageable = PageRequest.of(0, 10, Sort.by("price").ascending().and(Sort.by("id").ascending()));
+        Page<Dish> dishPage = new PageImpl<>(Collections.emptyList(), pageable, 0);
+
+        // 模拟索引和仓库行为
+        when(dishPriceIndex.isReady()).thenReturn(false);
+        when(dishRepository.findByPriceBetween(eq(BigDecimal.ZERO), any(BigDecimal.class), eq(pageable)))
+                .thenReturn(dishPage);
+
+        // 调用方法
+        PageResponse<Dish> response = customerService.browseDishesByPrice(null, null, 0, 10);
+
+        // 验证
+        assertTrue(response.getContent().isEmpty());
+        verify(dishPriceIndex, never()).range(any(), any(), anyInt(), anyInt());
+    }
+
+    @Test
+    @DisplayName("测试按价格浏览菜品 - 页码很大")
+    public void testBrowseDishesByPrice_LargePage() {
+        // 模拟索引行为
+        when(dishPriceIndex.isReady()).thenReturn(true);
+        when(dishPriceIndex.range(null, null, Integer.MAX_VALUE, 100)).thenReturn(new DishPriceIndex.RangeResult(List.of(), 3));
+
+        // 调用方法
+        PageResponse<Dish> response = customerService.browseDishesByPrice(null, null, Integer.MAX_VALUE, 100);
+
+        // 验证
+        assertTrue(response.getContent().isEmpty());
+        assertTrue(response.isLast());
+    }
+
+    @Test
+    @DisplayName("测试按价格浏览菜品 - 价格区间无效")
+    public void testBrowseDishesByPrice_InvalidRange() {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+            customerService.browseDishesByPrice(new BigDecimal("20"), new BigDecimal("10"), 0, 10);
+        });
+
+        assertEquals("价格区间无效", exception.getMessage());
+    }
+
     // 2. 测试 createOrder 方法
 
+    // 下单校验查询的一行结果
+    private static OrderRepository.IntakeRow intakeRow(Long customerId, Long merchantId, String merchantName,
+                                                       Long dishId, String dishName, String price, Long dishMerchantId) {
+        OrderRepository.IntakeRow row = mock(OrderRepository.IntakeRow.class);
+        when(row.getCustomerId()).thenReturn(customerId);
+        when(row.getCustomerName()).thenReturn("customer1");
+        when(row.getMerchantId()).thenReturn(merchantId);
+        when(row.getMerchantName()).thenReturn(merchantName);
+        when(row.getDishId()).thenReturn(dishId);
+        when(row.getDishName()).thenReturn(dishName);
+        when(row.getDishPrice()).thenReturn(price != null ? new BigDecimal(price) : null);
+        when(row.getDishMerchantId()).thenReturn(dishMerchantId);
+        return row;
+    }
+
     @Test
     @DisplayName("测试创建订单 - 成功")
     public void testCreateOrder_Success() {
@@ -128,44 +363,12 @@ public class CustomerServiceTest {
         Date deliveryTime = new GregorianCalendar(2024, Calendar.DECEMBER, 25, 18, 0).getTime();
         String deliveryLocation = "123 Main St";
 
-        Customer customer = new Customer();
-        customer.setId(customerId);
-        customer.setUsername("customer1");
-
-        Merchant merchant = new Merchant();
-        merchant.setId(merchantId);
-        merchant.setUsername("merchant1");
-
-        Dish dish1 = new Dish();
-        dish1.setId(1L);
-        dish1.setName("宫保鸡丁");
-        dish1.setPrice(new BigDecimal("25.50"));
-        dish1.setMerchant(merchant);
-
-        Dish dish2 = new Dish();
-        dish2.setId(2L);
-        dish2.setName("麻婆豆腐");
-        dish2.setPrice(new BigDecimal("20.00"));
-        dish2.setMerchant(merchant);
-
-        List<Dish> dishes = Arrays.asList(dish1, dish2);
-        BigDecimal totalPrice = new BigDecimal("45.50");
-
-        Order order = new Order();
-        order.setId(1L);
-        order.setCustomer(customer);
-        order.setMerchant(merchant);
-        order.setDishes(dishes);
-        order.setDeliveryTime(deliveryTime);
-        order.setDeliveryLocation(deliveryLocation);
-        order.setOrderTime(new Date());
-        order.setStatus(OrderStatus.PENDING_CONFIRMATION);
-        order.setTotalPrice(totalPrice);
+        List<OrderRepository.IntakeRow> rows = Arrays.asList(
+                intakeRow(customerId, merchantId, "川菜馆", 1L, "宫保鸡丁", "25.50", merchantId),
+                intakeRow(customerId, merchantId, "川菜馆", 2L, "麻婆豆腐", "20.00", merchantId));
 
         // 模拟仓库行为
-        when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
-        when(merchantRepository.findById(merchantId)).thenReturn(Optional.of(merchant));
-        when(dishRepository.findAllById(dishIds)).thenReturn(dishes);
+        when(orderRepository.findIntakeRows(customerId, merchantId, dishIds)).thenReturn(rows);
         when(orderRepository.save(any(Order.class))).thenAnswer(invocation -> {
             Order savedOrder = invocation.getArgument(0);
             savedOrder.setId(1L);
@@ -178,18 +381,60 @@ public class CustomerServiceTest {
         // 验证
         assertNotNull(createdOrder);
         assertEquals(1L, createdOrder.getId());
-        assertEquals(customer, createdOrder.getCustomer());
-        assertEquals(merchant, createdOrder.getMerchant());
-        assertEquals(dishes, createdOrder.getDishes());
+        assertEquals(customerId, createdOrder.getCustomer().getId());
+        assertEquals("customer1", createdOrder.getCustomer().getUsername());
+        assertEquals(merchantId, createdOrder.getMerchant().getId());
+        assertEquals("川菜馆", createdOrder.getMerchant().getMerchantName());
+        assertEquals(2, createdOrder.getItems().size());
+        assertEquals("麻婆豆腐", createdOrder.getItems().get(1).getDishName());
         assertEquals(deliveryTime, createdOrder.getDeliveryTime());
         assertEquals(deliveryLocation, createdOrder.getDeliveryLocation());
         assertEquals(OrderStatus.PENDING_CONFIRMATION, createdOrder.getStatus());
-        assertEquals(totalPrice, createdOrder.getTotalPrice());
+        assertEquals(new BigDecimal("45.50"), createdOrder.getTotalPrice());
 
-        verify(customerRepository, times(1)).findById(customerId);
-        verify(merchantRepository, times(1)).findById(merchantId);
-        verify(dishRepository, times(1)).findAllById(dishIds);
+        // 除校验查询外不查询顾客、商家和菜品
+        verify(orderRepository, times(1)).findIntakeRows(customerId, merchantId, dishIds);
+        verifyNoInteractions(customerRepository, merchantRepository, dishRepository);
         verify(orderRepository, times(1)).save(any(Order.class));
+        verify(orderEventRepository, times(1)).save(argThat(event ->
+                event.getOrderId().equals(1L) && event.getFromStatus() == null
+                        && event.getToStatus() == OrderStatus.PENDING_CONFIRMATION));
+        verify(eventPublisher, times(1)).publishEvent(argThat((Object event) ->
+                event instanceof OrderCreatedEvent created
+                        && created.order().id().equals(1L)
+                        && created.order().merchantId().equals(merchantId)
+                        && created.order().customerName().equals("customer1")));
+    }
+
+    @Test
+    @DisplayName("测试创建订单 - 同一菜品出现多次合并为一行明细，保存下单时的名称和单价")
+    public void testCreateOrder_Quantity() {
+        // 准备数据：宫保鸡丁点三份，米饭一份；查询结果中每个菜品一行
+        Long customerId = 1L;
+        Long merchantId = 2L;
+        List<Long> dishIds = Arrays.asList(1L, 2L, 1L, 1L);
+
+        List<OrderRepository.IntakeRow> rows = Arrays.asList(
+                intakeRow(customerId, merchantId, "川菜馆", 2L, "米饭", "2.00", merchantId),
+                intakeRow(customerId, merchantId, "川菜馆", 1L, "宫保鸡丁", "25.5", merchantId));
+
+        // 模拟仓库行为
+        when(orderRepository.findIntakeRows(customerId, merchantId, dishIds)).thenReturn(rows);
+        when(orderRepository.save(any(Order.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // 调用方法
+        Order createdOrder = customerService.createOrder(customerId, merchantId, dishIds, new Date(), "123 Main St");
+
+        // 验证：明细按第一次出现的顺序排列
+        List<OrderItem> items = createdOrder.getItems();
+        assertEquals(2, items.size());
+        assertEquals(1L, items.get(0).getDishId());
+        assertEquals("宫保鸡丁", items.get(0).getDishName());
+        assertEquals(3, items.get(0).getQuantity());
+        assertEquals(2_550L, items.get(0).getUnitPriceCents());
+        assertEquals(2L, items.get(1).getDishId());
+        assertEquals(1, items.get(1).getQuantity());
+        assertEquals(new BigDecimal("78.50"), createdOrder.getTotalPrice());
     }
 
     @Test
@@ -199,22 +444,16 @@ public class CustomerServiceTest {
         Long customerId = 100L;
         Long merchantId = 2L;
         List<Long> dishIds = Arrays.asList(1L, 2L);
-        Date deliveryTime = new Date();
-        String deliveryLocation = "123 Main St";
 
         // 模拟仓库行为
-        when(customerRepository.findById(customerId)).thenReturn(Optional.empty());
+        when(orderRepository.findIntakeRows(customerId, merchantId, dishIds)).thenReturn(Collections.emptyList());
 
         // 调用方法并断言异常
         IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
-            customerService.createOrder(customerId, merchantId, dishIds, deliveryTime, deliveryLocation);
+            customerService.createOrder(customerId, merchantId, dishIds, new Date(), "123 Main St");
         });
 
         assertEquals("顾客不存在", exception.getMessage());
-
-        verify(customerRepository, times(1)).findById(customerId);
-        verify(merchantRepository, never()).findById(anyLong());
-        verify(dishRepository, never()).findAllById(anyList());
         verify(orderRepository, never()).save(any(Order.class));
     }
 
@@ -225,66 +464,108 @@ public class CustomerServiceTest {
         Long customerId = 1L;
         Long merchantId = 100L;
         List<Long> dishIds = Arrays.asList(1L, 2L);
-        Date deliveryTime = new Date();
-        String deliveryLocation = "123 Main St";
 
-        Customer customer = new Customer();
-        customer.setId(customerId);
-        customer.setUsername("customer1");
+        List<OrderRepository.IntakeRow> rows = List.of(
+                intakeRow(customerId, null, null, 1L, "宫保鸡丁", "25.50", 2L));
 
         // 模拟仓库行为
-        when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
-        when(merchantRepository.findById(merchantId)).thenReturn(Optional.empty());
+        when(orderRepository.findIntakeRows(customerId, merchantId, dishIds)).thenReturn(rows);
 
         // 调用方法并断言异常
         IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
-            customerService.createOrder(customerId, merchantId, dishIds, deliveryTime, deliveryLocation);
+            customerService.createOrder(customerId, merchantId, dishIds, new Date(), "123 Main St");
         });
 
         assertEquals("商家不存在", exception.getMessage());
-
-        verify(customerRepository, times(1)).findById(customerId);
-        verify(merchantRepository, times(1)).findById(merchantId);
-        verify(dishRepository, never()).findAllById(anyList());
         verify(orderRepository, never()).save(any(Order.class));
     }
 
     @Test
     @DisplayName("测试创建订单 - 菜品不存在")
     public void testCreateOrder_DishesNotFound() {
-        // 准备数据
+        // 准备数据：菜品 100 存在，200 不存在
         Long customerId = 1L;
         Long merchantId = 2L;
         List<Long> dishIds = Arrays.asList(100L, 200L);
-        Date deliveryTime = new Date();
-        String deliveryLocation = "123 Main St";
-
-        Customer customer = new Customer();
-        customer.setId(customerId);
-        customer.setUsername("customer1");
 
-        Merchant merchant = new Merchant();
-        merchant.setId(merchantId);
-        merchant.setUsername("merchant1");
+        List<OrderRepository.IntakeRow> rows = List.of(
+                intakeRow(customerId, merchantId, "川菜馆", 100L, "宫保鸡丁", "25.50", merchantId));
 
         // 模拟仓库行为
-        when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
-        when(merchantRepository.findById(merchantId)).thenReturn(Optional.of(merchant));
-        when(dishRepository.findAllById(dishIds)).thenReturn(Collections.emptyList());
+        when(orderRepository.findIntakeRows(customerId, merchantId, dishIds)).thenReturn(rows);
 
         // 调用方法并断言异常
         IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
-            customerService.createOrder(customerId, merchantId, dishIds, deliveryTime, deliveryLocation);
+            customerService.createOrder(customerId, merchantId, dishIds, new Date(), "123 Main St");
         });
 
         assertEquals("菜品不存在", exception.getMessage());
+        verify(orderRepository, never()).save(any(Order.class));
+    }
 
-        verify(customerRepository, times(1)).findById(customerId);
-        verify(merchantRepository, times(1)).findById(merchantId);
-        verify(dishRepository, times(1)).findAllById(dishIds);
+    @Test
+    @DisplayName("测试创建订单 - 菜品不属于该商家")
+    public void testCreateOrder_DishOfOtherMerchant() {
+        // 准备数据
+        Long customerId = 1L;
+        Long merchantId = 2L;
+        List<Long> dishIds = Arrays.asList(1L, 3L);
+
+        List<OrderRepository.IntakeRow> rows = Arrays.asList(
+                intakeRow(customerId, merchantId, "川菜馆", 1L, "宫保鸡丁", "25.50", merchantId),
+                intakeRow(customerId, merchantId, "川菜馆", 3L, "汉堡", "30.00", 9L));
+
+        // 模拟仓库行为
+        when(orderRepository.findIntakeRows(customerId, merchantId, dishIds)).thenReturn(rows);
+
+        // 调用方法并断言异常
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+            customerService.createOrder(customerId, merchantId, dishIds, new Date(), "123 Main St");
+        });
+
+        assertEquals("菜品不属于该商家", exception.getMessage());
         verify(orderRepository, never()).save(any(Order.class));
     }
 
+    @Test
+    @DisplayName("测试批量创建订单 - 校验不通过的请求不影响同批其他请求，通过的订单一起插入")
+    public void testCreateOrders() {
+        // 准备数据
+        OrderCreateDTO valid = new OrderCreateDTO();
+        valid.setCustomerId(1L);
+        valid.setMerchantId(2L);
+        valid.setDishIds(List.of(1L));
+        OrderCreateDTO invalid = new OrderCreateDTO();
+        invalid.setCustomerId(1L);
+        invalid.setMerchantId(3L);
+        invalid.setDishIds(List.of(1L));
+
+        List<OrderRepository.IntakeRow> validRows = List.of(intakeRow(1L, 2L, "川菜馆", 1L, "宫保鸡丁", "25.50", 2L));
+        List<OrderRepository.IntakeRow> invalidRows = List.of(intakeRow(1L, 3L, "面馆", 1L, "宫保鸡丁", "25.50", 2L));
+
+        // 模拟仓库行为
+        when(orderRepository.findIntakeRows(1L, 2L, List.of(1L))).thenReturn(validRows);
+        when(orderRepository.findIntakeRows(1L, 3L, List.of(1L))).thenReturn(invalidRows);
+        when(orderRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Order> orders = invocation.getArgument(0);
+            orders.forEach(order -> order.setId(7L));
+            return orders;
+        });
+
+        // 调用方法
+        List<OrderCreateResult> results = customerService.createOrders(List.of(valid, invalid));
+
+        // 验证
+        assertEquals(2, results.size());
+        assertEquals(7L, results.get(0).order().getId());
+        assertNull(results.get(1).order());
+        assertEquals("菜品不属于该商家", results.get(1).error());
+        verify(orderRepository, times(1)).saveAll(argThat((List<Order> orders) -> orders.size() == 1));
+        verify(orderEventRepository, times(1)).saveAll(argThat((List<OrderEvent> events) ->
+                events.size() == 1 && events.get(0).getOrderId().equals(7L)));
+        verify(eventPublisher, times(1)).publishEvent(any(OrderCreatedEvent.class));
+    }
+
     // 3. 测试 getMyOrders 方法
 
     @Test
@@ -333,6 +614,36 @@ public class CustomerServiceTest {
         verify(orderRepository, times(1)).findByCustomer(customer, PageRequest.of(page, size, Sort.by("orderTime").descending()));
     }
 
+    @Test
+    @DisplayName("测试获取顾客的所有订单 - 不执行 COUNT，总数取近似值")
+    public void testGetMyOrders_WithoutTotal() {
+        // 准备数据
+        Customer customer = new Customer();
+        customer.setId(1L);
+
+        Order order = new Order();
+        order.setId(1L);
+        Pageable pageable = PageRequest.of(0, 1, Sort.by("orderTime").descending());
+        Slice<Order> orderSlice = new SliceImpl<>(Arrays.asList(order), pageable, true);
+
+        // 模拟仓库和缓存行为
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customer));
+        when(orderRepository.findSliceByCustomer(customer, pageable)).thenReturn(orderSlice);
+        when(countCache.get(eq("customer-orders"), eq(1L), any())).thenReturn(5L);
+
+        // 调用方法
+        PageResponse<Order> response = customerService.getMyOrders(1L, 0, 1, false);
+
+        // 验证
+        assertEquals(1, response.getContent().size());
+        assertEquals(5, response.getTotalElements());
+        assertEquals(5, response.getTotalPages());
+        assertTrue(response.isApproximateTotal());
+        assertFalse(response.isLast());
+        verify(orderRepository, never()).findByCustomer(any(Customer.class), any(Pageable.class));
+        verify(orderRepository, never()).countByCustomer(any(Customer.class));
+    }
+
     @Test
     @DisplayName("测试获取顾客的所有订单 - 顾客不存在")
     public void testGetMyOrders_CustomerNotFound() {
@@ -374,7 +685,7 @@ public class CustomerServiceTest {
         order.setStatus(OrderStatus.DELIVERED);
 
         // 模拟仓库行为
-        when(orderRepository.findById(orderId)).thenReturn(Optional.of(order));
+        when(orderRepository.findDetailById(orderId)).thenReturn(Optional.of(order));
 
         // 调用方法
         Order foundOrder = customerService.getOrderDetails(customerId, orderId);
@@ -384,7 +695,7 @@ public class CustomerServiceTest {
         assertEquals(orderId, foundOrder.getId());
         assertEquals(customer, foundOrder.getCustomer());
 
-        verify(orderRepository, times(1)).findById(orderId);
+        verify(orderRepository, times(1)).findDetailById(orderId);
     }
 
     @Test
@@ -395,7 +706,7 @@ public class CustomerServiceTest {
         Long orderId = 100L;
 
         // 模拟仓库行为
-        when(orderRepository.findById(orderId)).thenReturn(Optional.empty());
+        when(orderRepository.findDetailById(orderId)).thenReturn(Optional.empty());
 
         // 调用方法并断言异常
         IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
@@ -404,7 +715,7 @@ public class CustomerServiceTest {
 
         assertEquals("订单不存在", exception.getMessage());
 
-        verify(orderRepository, times(1)).findById(orderId);
+        verify(orderRepository, times(1)).findDetailById(orderId);
     }
 
     @Test
@@ -428,7 +739,7 @@ public class CustomerServiceTest {
         order.setStatus(OrderStatus.DELIVERED);
 
         // 模拟仓库行为
-        when(orderRepository.findById(orderId)).thenReturn(Optional.of(order));
+        when(orderRepository.findDetailById(orderId)).thenReturn(Optional.of(order));
 
         // 调用方法并断言异常
         IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
@@ -437,7 +748,46 @@ public class CustomerServiceTest {
 
         assertEquals("无权访问该订单", exception.getMessage());
 
-        verify(orderRepository, times(1)).findById(orderId);
+        verify(orderRepository, times(1)).findDetailById(orderId);
+    }
+
+    @Test
+    @DisplayName("测试订阅订单状态 - 成功")
+    public void testSubscribeOrderStatus_Success() {
+        // 准备数据
+        Long customerId = 1L;
+        Long orderId = 1L;
+        SseEmitter emitter = new SseEmitter();
+
+        // 模拟仓库行为
+        when(orderRepository.findCustomerIdById(orderId)).thenReturn(Optional.of(customerId));
+        when(orderRepository.findStatusById(orderId)).thenReturn(Optional.of(OrderStatus.PREPARING));
+        when(orderStatusStream.subscribe(eq(orderId), eq("abc-3"), any())).thenAnswer(invocation -> {
+            assertEquals(OrderStatus.PREPARING, invocation.<Supplier<OrderStatus>>getArgument(2).get());
+            return emitter;
+        });
+
+        // 调用方法
+        SseEmitter result = customerService.subscribeOrderStatus(customerId, orderId, "abc-3");
+
+        // 验证
+        assertSame(emitter, result);
+        verify(orderRepository, never()).findDetailById(anyLong());
+    }
+
+    @Test
+    @DisplayName("测试订阅订单状态 - 无权访问")
+    public void testSubscribeOrderStatus_UnauthorizedAccess() {
+        // 模拟仓库行为
+        when(orderRepository.findCustomerIdById(1L)).thenReturn(Optional.of(2L));
+
+        // 调用方法并断言异常
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+            customerService.subscribeOrderStatus(1L, 1L, null);
+        });
+
+        assertEquals("无权访问该订单", exception.getMessage());
+        verifyNoInteractions(orderStatusStream);
     }
 
     // 5. 测试 reviewOrder 方法
@@ -455,9 +805,13 @@ public class CustomerServiceTest {
         customer.setId(customerId);
         customer.setUsername("customer1");
 
+        Merchant merchant = new Merchant();
+        merchant.setId(2L);
+
         Order order = new Order();
         order.setId(orderId);
         order.setCustomer(customer);
+        order.setMerchant(merchant);
         order.setStatus(OrderStatus.DELIVERED);
         order.setReview(null);
 
@@ -486,6 +840,10 @@ public class CustomerServiceTest {
         verify(orderRepository, times(1)).findById(orderId);
         verify(reviewRepository, times(1)).save(any(Review.class));
         verify(orderRepository, times(1)).save(order);
+        verify(orderEventRepository, times(1)).save(argThat(event ->
+                event.getFromStatus() == OrderStatus.DELIVERED && event.getToStatus() == OrderStatus.REVIEWED));
+        verify(eventPublisher, times(1)).publishEvent(
+                new OrderStatusChangedEvent(orderId, 2L, OrderStatus.DELIVERED, OrderStatus.REVIEWED));
     }
 
 
@@ -543,6 +901,8 @@ public class CustomerServiceTest {
         verify(orderRepository, times(1)).findById(orderId);
         verify(reviewRepository, times(1)).save(existingReview);
         verify(orderRepository, times(1)).save(order);
+        // 状态未变化，不发布状态变更事件
+        verifyNoInteractions(orderEventRepository, eventPublisher);
     }
 
     @Test
@@ -642,4 +1002,25 @@ public class CustomerServiceTest {
     // 6. 其他测试方法根据需要添加
 
     // 例如，更多的测试用例可以覆盖边界情况和异常情况
+
+    @Test
+    @DisplayName("测试带幂等键创建订单 - 重复请求读取第一次创建的订单，不再创建")
+    public void testCreateOrder_IdempotencyKeyReplayed() {
+        // 准备数据
+        Order existing = new Order();
+        existing.setId(7L);
+
+        // 模拟幂等模板：该键已执行过，按记下的订单ID读取
+        when(idempotency.execute(eq("createOrder"), eq(1L), eq("key-1"), anyString(), any(), any(), any()))
+                .thenAnswer(invocation -> invocation.<Function<Long, Order>>getArgument(6).apply(7L));
+        when(orderRepository.findDetailById(7L)).thenReturn(Optional.of(existing));
+
+        // 调用方法
+        Order order = customerService.createOrder(1L, 2L, List.of(1L), null, "地址", "key-1");
+
+        // 验证
+        assertSame(existing, order);
+        verifyNoInteractions(customerRepository);
+        verify(orderRepository, never()).save(any(Order.class));
+    }
 }
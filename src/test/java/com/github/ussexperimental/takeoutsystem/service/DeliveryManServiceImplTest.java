@@ -1,17 +1,25 @@
 package com.github.ussexperimental.takeoutsystem.service;
 
+import com.github.ussexperimental.takeoutsystem.cache.ApproximateCountCache;
+import com.github.ussexperimental.takeoutsystem.dto.OrderSummary;
 import com.github.ussexperimental.takeoutsystem.dto.PageResponse;
 import com.github.ussexperimental.takeoutsystem.entity.DeliveryMan;
 import com.github.ussexperimental.takeoutsystem.entity.Order;
 import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+import com.github.ussexperimental.takeoutsystem.event.UserDeletedEvent;
+import com.github.ussexperimental.takeoutsystem.order.DispatchPool;
+import com.github.ussexperimental.takeoutsystem.order.OrderStateMachine;
 import com.github.ussexperimental.takeoutsystem.repository.DeliveryManRepository;
 import com.github.ussexperimental.takeoutsystem.repository.OrderRepository;
 import com.github.ussexperimental.takeoutsystem.service.impl.DeliveryManServiceImpl;
+import com.github.ussexperimental.takeoutsystem.stream.AvailableOrderStream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.mockito.*;
 import org.springframework.data.domain.*;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.*;
 
@@ -29,6 +37,18 @@ public class DeliveryManServiceImplTest {
     @Mock
     private OrderRepository orderRepository;
 
+    @Mock
+    private ApproximateCountCache countCache;
+
+    @Mock
+    private OrderStateMachine orderStateMachine;
+
+    @Mock
+    private DispatchPool dispatchPool;
+
+    @Mock
+    private AvailableOrderStream availableOrderStream;
+
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.openMocks(this);
@@ -63,13 +83,13 @@ public class DeliveryManServiceImplTest {
         List<Order> availableOrders = Arrays.asList(order1, order2);
         Page<Order> orderPage = new PageImpl<>(availableOrders, PageRequest.of(page, size, Sort.by("orderTime").descending()), availableOrders.size());
 
-        // 模拟仓库行为
-        when(deliveryManRepository.findById(deliveryManId)).thenReturn(Optional.of(deliveryMan));
+        // 模拟仓库行为：可接单池尚未加载完成，查询数据库
+        when(deliveryManRepository.existsById(deliveryManId)).thenReturn(true);
         when(orderRepository.findByStatusAndDeliveryManIsNull(OrderStatus.REQUESTING_DELIVERY, PageRequest.of(page, size, Sort.by("orderTime").descending())))
                 .thenReturn(orderPage);
 
         // 调用方法
-        PageResponse<Order> response = deliveryManService.viewAvailableOrders(deliveryManId, page, size);
+        PageResponse<OrderSummary> response = deliveryManService.viewAvailableOrders(deliveryManId, page, size);
 
         // 验证
         assertNotNull(response);
@@ -80,10 +100,62 @@ public class DeliveryManServiceImplTest {
         assertEquals(1, response.getTotalPages());
         assertTrue(response.isLast());
 
-        verify(deliveryManRepository, times(1)).findById(deliveryManId);
+        assertEquals(1L, response.getContent().get(0).id());
+        verify(deliveryManRepository, times(1)).existsById(deliveryManId);
         verify(orderRepository, times(1)).findByStatusAndDeliveryManIsNull(OrderStatus.REQUESTING_DELIVERY, PageRequest.of(page, size, Sort.by("orderTime").descending()));
     }
 
+    @Test
+    @DisplayName("测试查看可接单列表 - 从可接单池读取，外卖员只验证一次")
+    public void testViewAvailableOrders_FromPool() {
+        // 准备数据
+        Long deliveryManId = 1L;
+        PageResponse<OrderSummary> pooled = new PageResponse<>(List.of(), 0, 10, 0, 0, true);
+
+        // 模拟可接单池已加载完成
+        when(deliveryManRepository.existsById(deliveryManId)).thenReturn(true);
+        when(dispatchPool.isReady()).thenReturn(true);
+        when(dispatchPool.page(0, 10)).thenReturn(pooled);
+
+        // 调用方法：连续轮询两次
+        deliveryManService.viewAvailableOrders(deliveryManId, 0, 10);
+        PageResponse<OrderSummary> response = deliveryManService.viewAvailableOrders(deliveryManId, 0, 10);
+
+        // 验证：不查询订单，外卖员只查询一次
+        assertSame(pooled, response);
+        verify(deliveryManRepository, times(1)).existsById(deliveryManId);
+        verify(orderRepository, never()).findByStatusAndDeliveryManIsNull(any(OrderStatus.class), any(Pageable.class));
+    }
+
+    @Test
+    @DisplayName("测试查看可接单列表 - 外卖员被删除或验证过期后重新验证")
+    public void testViewAvailableOrders_RecheckDeliveryMan() {
+        // 准备数据
+        Long deliveryManId = 1L;
+
+        // 模拟仓库行为
+        when(deliveryManRepository.existsById(deliveryManId)).thenReturn(true);
+        when(dispatchPool.isReady()).thenReturn(true);
+        deliveryManService.viewAvailableOrders(deliveryManId, 0, 10);
+
+        // 删除用户后不再视为已验证
+        deliveryManService.onUserDeleted(new UserDeletedEvent(deliveryManId));
+        when(deliveryManRepository.existsById(deliveryManId)).thenReturn(false);
+
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+            deliveryManService.viewAvailableOrders(deliveryManId, 0, 10);
+        });
+        assertEquals("外卖员不存在", exception.getMessage());
+
+        // 验证过期后重新查询（其他节点删除的外卖员）
+        ReflectionTestUtils.setField(deliveryManService, "knownTtlSeconds", 0L);
+        when(deliveryManRepository.existsById(deliveryManId)).thenReturn(true);
+        deliveryManService.viewAvailableOrders(deliveryManId, 0, 10);
+        deliveryManService.viewAvailableOrders(deliveryManId, 0, 10);
+
+        verify(deliveryManRepository, times(4)).existsById(deliveryManId);
+    }
+
     @Test
     @DisplayName("测试查看可接单列表 - 外卖员不存在")
     public void testViewAvailableOrders_DeliveryManNotFound() {
@@ -93,7 +165,7 @@ public class DeliveryManServiceImplTest {
         int size = 10;
 
         // 模拟仓库行为
-        when(deliveryManRepository.findById(deliveryManId)).thenReturn(Optional.empty());
+        when(deliveryManRepository.existsById(deliveryManId)).thenReturn(false);
 
         // 调用方法并断言异常
         IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
@@ -102,10 +174,40 @@ public class DeliveryManServiceImplTest {
 
         assertEquals("外卖员不存在", exception.getMessage());
 
-        verify(deliveryManRepository, times(1)).findById(deliveryManId);
+        verify(deliveryManRepository, times(1)).existsById(deliveryManId);
         verify(orderRepository, never()).findByStatusAndDeliveryManIsNull(any(OrderStatus.class), any(Pageable.class));
     }
 
+    @Test
+    @DisplayName("测试订阅可接单推送 - 成功")
+    public void testSubscribeAvailableOrders_Success() {
+        // 准备数据
+        Long deliveryManId = 1L;
+        SseEmitter emitter = new SseEmitter();
+
+        // 模拟仓库行为
+        when(deliveryManRepository.existsById(deliveryManId)).thenReturn(true);
+        when(availableOrderStream.subscribe()).thenReturn(emitter);
+
+        // 调用方法并验证
+        assertSame(emitter, deliveryManService.subscribeAvailableOrders(deliveryManId));
+    }
+
+    @Test
+    @DisplayName("测试订阅可接单推送 - 外卖员不存在")
+    public void testSubscribeAvailableOrders_DeliveryManNotFound() {
+        // 模拟仓库行为
+        when(deliveryManRepository.existsById(100L)).thenReturn(false);
+
+        // 调用方法并断言异常
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+            deliveryManService.subscribeAvailableOrders(100L);
+        });
+
+        assertEquals("外卖员不存在", exception.getMessage());
+        verify(availableOrderStream, never()).subscribe();
+    }
+
     // 2. 测试 confirmPickup 方法
 
     @Test
@@ -131,10 +233,11 @@ public class DeliveryManServiceImplTest {
         updatedOrder.setDeliveryMan(deliveryMan);
         updatedOrder.setOrderTime(order.getOrderTime());
 
-        // 模拟仓库行为
+        // 模拟仓库行为：条件更新成功后读取更新后的订单
         when(deliveryManRepository.findById(deliveryManId)).thenReturn(Optional.of(deliveryMan));
-        when(orderRepository.findById(orderId)).thenReturn(Optional.of(order));
-        when(orderRepository.save(order)).thenReturn(updatedOrder);
+        when(orderStateMachine.assignDeliveryMan(orderId, deliveryMan, OrderStatus.REQUESTING_DELIVERY, OrderStatus.DELIVERING))
+                .thenReturn(true);
+        when(orderRepository.findById(orderId)).thenReturn(Optional.of(updatedOrder));
 
         // 调用方法
         Order result = deliveryManService.confirmPickup(deliveryManId, orderId);
@@ -145,8 +248,43 @@ public class DeliveryManServiceImplTest {
         assertEquals(deliveryMan, result.getDeliveryMan());
 
         verify(deliveryManRepository, times(1)).findById(deliveryManId);
+        verify(orderStateMachine, times(1))
+                .assignDeliveryMan(orderId, deliveryMan, OrderStatus.REQUESTING_DELIVERY, OrderStatus.DELIVERING);
         verify(orderRepository, times(1)).findById(orderId);
-        verify(orderRepository, times(1)).save(order);
+        verify(orderRepository, never()).save(any(Order.class));
+    }
+
+    @Test
+    @DisplayName("测试确认取餐 - 可接单池中已没有该订单，不发起更新")
+    public void testConfirmPickup_NotInPool() {
+        // 准备数据
+        Long deliveryManId = 2L;
+        Long orderId = 1L;
+
+        DeliveryMan deliveryMan = new DeliveryMan();
+        deliveryMan.setId(deliveryManId);
+
+        DeliveryMan winner = new DeliveryMan();
+        winner.setId(1L);
+
+        Order order = new Order();
+        order.setId(orderId);
+        order.setStatus(OrderStatus.DELIVERING);
+        order.setDeliveryMan(winner);
+
+        // 模拟仓库行为：订单已被其他外卖员从池中摘除
+        when(deliveryManRepository.findById(deliveryManId)).thenReturn(Optional.of(deliveryMan));
+        when(dispatchPool.isReady()).thenReturn(true);
+        when(dispatchPool.claim(orderId)).thenReturn(false);
+        when(orderRepository.findById(orderId)).thenReturn(Optional.of(order));
+
+        // 调用方法并断言异常
+        IllegalStateException exception = assertThrows(IllegalStateException.class, () -> {
+            deliveryManService.confirmPickup(deliveryManId, orderId);
+        });
+
+        assertEquals("订单已被其他外卖员接单", exception.getMessage());
+        verify(orderStateMachine, never()).assignDeliveryMan(anyLong(), any(), any(), any());
     }
 
     @Test
@@ -256,10 +394,11 @@ public class DeliveryManServiceImplTest {
         updatedOrder.setDeliveryMan(deliveryMan);
         updatedOrder.setOrderTime(order.getOrderTime());
 
-        // 模拟仓库行为
+        // 模拟仓库行为：条件更新成功后读取更新后的订单
         when(deliveryManRepository.findById(deliveryManId)).thenReturn(Optional.of(deliveryMan));
-        when(orderRepository.findById(orderId)).thenReturn(Optional.of(order));
-        when(orderRepository.save(order)).thenReturn(updatedOrder);
+        when(orderStateMachine.transitionForDeliveryMan(orderId, deliveryManId, OrderStatus.DELIVERING, OrderStatus.DELIVERED))
+                .thenReturn(true);
+        when(orderRepository.findById(orderId)).thenReturn(Optional.of(updatedOrder));
 
         // 调用方法
         Order result = deliveryManService.confirmDelivery(deliveryManId, orderId);
@@ -269,8 +408,10 @@ public class DeliveryManServiceImplTest {
         assertEquals(OrderStatus.DELIVERED, result.getStatus());
 
         verify(deliveryManRepository, times(1)).findById(deliveryManId);
+        verify(orderStateMachine, times(1))
+                .transitionForDeliveryMan(orderId, deliveryManId, OrderStatus.DELIVERING, OrderStatus.DELIVERED);
         verify(orderRepository, times(1)).findById(orderId);
-        verify(orderRepository, times(1)).save(order);
+        verify(orderRepository, never()).save(any(Order.class));
     }
 
     @Test
@@ -526,8 +667,8 @@ public class DeliveryManServiceImplTest {
         when(deliveryManRepository.findById(deliveryManId)).thenReturn(Optional.of(deliveryMan));
         when(orderRepository.findById(orderId)).thenReturn(Optional.of(order));
 
-        // 调用方法并断言异常
-        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+        // 调用方法并断言异常：条件更新失败，按冲突处理
+        IllegalStateException exception = assertThrows(IllegalStateException.class, () -> {
             deliveryManService.confirmPickup(deliveryManId, orderId);
         });
 
@@ -0,0 +1,171 @@
+package com.github.ussexperimental.takeoutsystem.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.ussexperimental.takeoutsystem.dto.DishImportResult;
+import com.github.ussexperimental.takeoutsystem.entity.IdSequences;
+import com.github.ussexperimental.takeoutsystem.event.DishChangedEvent;
+import com.github.ussexperimental.takeoutsystem.repository.IdSequenceRepository;
+import com.github.ussexperimental.takeoutsystem.repository.MerchantRepository;
+import com.github.ussexperimental.takeoutsystem.service.impl.MenuImportServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class MenuImportServiceImplTest {
+
+    @InjectMocks
+    private MenuImportServiceImpl menuImportService;
+
+    @Mock
+    private MerchantRepository merchantRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private IdSequenceRepository idSequenceRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    // 每次批量插入的行数
+    private final AtomicInteger batches = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(menuImportService, "batchSize", 2);
+
+        when(merchantRepository.existsById(1L)).thenReturn(true);
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+
+        // 模拟主键分配和 JDBC 批量插入：记录每批行数，主键从 100 开始连续分配
+        AtomicLong nextId = new AtomicLong(100);
+        when(idSequenceRepository.allocate(eq(IdSequences.DISH), anyInt()))
+                .thenAnswer(invocation -> nextId.getAndAdd(invocation.<Integer>getArgument(1)));
+        when(jdbcTemplate.batchUpdate(anyString(), any(BatchPreparedStatementSetter.class))).thenAnswer(invocation -> {
+            batches.incrementAndGet();
+            BatchPreparedStatementSetter setter = invocation.getArgument(1);
+            PreparedStatement statement = mock(PreparedStatement.class);
+            for (int i = 0; i < setter.getBatchSize(); i++) {
+                setter.setValues(statement, i);
+            }
+            return new int[setter.getBatchSize()];
+        });
+    }
+
+    @Test
+    @DisplayName("测试导入 CSV - 表头、引号字段和逐行错误")
+    public void testImportCsv() throws Exception {
+        // 准备数据：第3行价格错误，第4行名称为空，第5行描述中含逗号和换行
+        String csv = "name,price,description,imageUrl\n"
+                + "宫保鸡丁,28.00,经典川菜,\n"
+                + "麻婆豆腐,abc,,\n"
+                + ",12,,\n"
+                + "\"鸡蛋\"\"炒饭\"\"\",15.5,\"家常,\n好吃\",/img/1.png\n";
+
+        // 调用方法
+        DishImportResult result = menuImportService.importCsv(1L, new StringReader(csv));
+
+        // 验证
+        assertEquals(2, result.getImported());
+        assertEquals(2, result.getFailed());
+        assertEquals(3, result.getErrors().get(0).getLine());
+        assertEquals("价格格式错误", result.getErrors().get(0).getMessage());
+        assertEquals(4, result.getErrors().get(1).getLine());
+        assertEquals("菜品名称不能为空", result.getErrors().get(1).getMessage());
+
+        ArgumentCaptor<DishChangedEvent> events = ArgumentCaptor.forClass(DishChangedEvent.class);
+        verify(eventPublisher, times(2)).publishEvent(events.capture());
+        DishChangedEvent last = events.getAllValues().get(1);
+        assertEquals(101L, last.dishId());
+        assertEquals("鸡蛋\"炒饭\"", last.name());
+        assertEquals("家常,\n好吃", last.description());
+        assertEquals(new BigDecimal("15.5"), last.price());
+        assertEquals(1, batches.get());
+    }
+
+    @Test
+    @DisplayName("测试导入 JSON Lines - 按批次提交")
+    public void testImportJsonLines() throws Exception {
+        // 准备数据：5 行有效，1 行 JSON 格式错误，1 行价格为负
+        StringBuilder lines = new StringBuilder();
+        for (int i = 1; i <= 5; i++) {
+            lines.append("{\"name\":\"菜品").append(i).append("\",\"price\":").append(i).append("}\n");
+        }
+        lines.append("{not json}\n");
+        lines.append("\n");
+        lines.append("{\"name\":\"负价\",\"price\":-1}\n");
+
+        // 调用方法
+        DishImportResult result = menuImportService.importJsonLines(1L, new StringReader(lines.toString()));
+
+        // 验证：每批2条，共3批
+        assertEquals(5, result.getImported());
+        assertEquals(2, result.getFailed());
+        assertEquals(6, result.getErrors().get(0).getLine());
+        assertEquals("JSON 格式错误", result.getErrors().get(0).getMessage());
+        assertEquals(8, result.getErrors().get(1).getLine());
+        assertEquals(3, batches.get());
+        verify(transactionManager, times(3)).commit(any());
+    }
+
+    @Test
+    @DisplayName("测试导入 - 单批写入失败只影响该批")
+    public void testImport_BatchFailure() throws Exception {
+        // 模拟第一批写入失败
+        when(jdbcTemplate.batchUpdate(anyString(), any(BatchPreparedStatementSetter.class)))
+                .thenThrow(new DataIntegrityViolationException("外键约束"))
+                .thenReturn(new int[1]);
+
+        // 调用方法
+        DishImportResult result = menuImportService.importCsv(1L, new StringReader("a,1\nb,2\nc,3\n"));
+
+        // 验证
+        assertEquals(1, result.getImported());
+        assertEquals(2, result.getFailed());
+        assertEquals(List.of(1L, 2L), result.getErrors().stream().map(DishImportResult.RowError::getLine).toList());
+        assertEquals("写入数据库失败", result.getErrors().get(0).getMessage());
+        verify(transactionManager, times(1)).rollback(any());
+        verify(eventPublisher, times(1)).publishEvent(any(DishChangedEvent.class));
+    }
+
+    @Test
+    @DisplayName("测试导入 - 商家不存在")
+    public void testImport_MerchantNotFound() {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+            menuImportService.importCsv(99L, new StringReader("宫保鸡丁,28\n"));
+        });
+
+        assertEquals("商家不存在", exception.getMessage());
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), any(BatchPreparedStatementSetter.class));
+    }
+}
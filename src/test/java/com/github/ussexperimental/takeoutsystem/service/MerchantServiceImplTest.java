@@ -1,25 +1,38 @@
 package com.github.ussexperimental.takeoutsystem.service;
 
+import com.github.ussexperimental.takeoutsystem.cache.ApproximateCountCache;
+import com.github.ussexperimental.takeoutsystem.cache.MenuCache;
+import com.github.ussexperimental.takeoutsystem.dto.DishSales;
 import com.github.ussexperimental.takeoutsystem.dto.PageResponse;
+import com.github.ussexperimental.takeoutsystem.dto.StageDuration;
 import com.github.ussexperimental.takeoutsystem.entity.DeliveryMan;
 import com.github.ussexperimental.takeoutsystem.entity.Dish;
 import com.github.ussexperimental.takeoutsystem.entity.Merchant;
 import com.github.ussexperimental.takeoutsystem.entity.Order;
 import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+import com.github.ussexperimental.takeoutsystem.event.DishChangedEvent;
+import com.github.ussexperimental.takeoutsystem.order.OrderStateMachine;
 import com.github.ussexperimental.takeoutsystem.repository.DeliveryManRepository;
 import com.github.ussexperimental.takeoutsystem.repository.DishRepository;
 import com.github.ussexperimental.takeoutsystem.repository.MerchantRepository;
 import com.github.ussexperimental.takeoutsystem.repository.OrderRepository;
+import com.github.ussexperimental.takeoutsystem.repository.OrderStatusHistoryRepository;
+import com.github.ussexperimental.takeoutsystem.retry.OptimisticRetryTemplate;
 import com.github.ussexperimental.takeoutsystem.service.MerchantService;
 import com.github.ussexperimental.takeoutsystem.service.impl.MerchantServiceImpl;
+import com.github.ussexperimental.takeoutsystem.stream.MerchantOrderBoard;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.mockito.*;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.*;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -41,9 +54,34 @@ public class MerchantServiceImplTest {
     @Mock
     private DeliveryManRepository deliveryManRepository;
 
+    @Mock
+    private MenuCache menuCache;
+
+    @Mock
+    private ApproximateCountCache countCache;
+
+    @Mock
+    private OrderStateMachine orderStateMachine;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private OptimisticRetryTemplate optimisticRetry;
+
+    @Mock
+    private MerchantOrderBoard merchantOrderBoard;
+
+    @Mock
+    private OrderStatusHistoryRepository orderStatusHistoryRepository;
+
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.openMocks(this);
+
+        // 模拟重试模板：直接执行一次操作
+        when(optimisticRetry.execute(anyString(), any())).thenAnswer(invocation ->
+                invocation.<Supplier<?>>getArgument(1).get());
     }
 
     // 1. 测试 addDish 方法
@@ -92,6 +130,7 @@ public class MerchantServiceImplTest {
 
         verify(merchantRepository, times(1)).findById(merchantId);
         verify(dishRepository, times(1)).save(any(Dish.class));
+        verify(merchantRepository, times(1)).incrementMenuVersion(merchantId);
     }
 
     @Test
@@ -190,6 +229,33 @@ public class MerchantServiceImplTest {
         verify(dishRepository, never()).findByMerchant(any(Merchant.class), any(Pageable.class));
     }
 
+    @Test
+    @DisplayName("测试获取菜单 - 未命中缓存时写入缓存")
+    public void testGetMenu_PutsIntoCache() {
+        // 准备数据
+        Long merchantId = 1L;
+        int page = 0;
+        int size = 10;
+
+        Merchant merchant = new Merchant();
+        merchant.setId(merchantId);
+
+        Page<Dish> dishPage = new PageImpl<>(Collections.emptyList(), PageRequest.of(page, size), 0);
+
+        // 模拟仓库和缓存行为
+        when(menuCache.get(merchantId, page, size)).thenReturn(null);
+        when(menuCache.version(merchantId)).thenReturn(3L);
+        when(merchantRepository.findById(merchantId)).thenReturn(Optional.of(merchant));
+        when(dishRepository.findByMerchant(merchant, PageRequest.of(page, size, Sort.by("id").descending())))
+                .thenReturn(dishPage);
+
+        // 调用方法
+        PageResponse<Dish> response = merchantService.getMenu(merchantId, page, size);
+
+        // 验证：使用加载前读取的版本号写入缓存
+        verify(menuCache, times(1)).put(merchantId, page, size, 3L, response);
+    }
+
     // 3. 测试 updateDish 方法
 
     @Test
@@ -290,6 +356,8 @@ public class MerchantServiceImplTest {
         // 验证
         verify(dishRepository, times(1)).findById(dishId);
         verify(dishRepository, times(1)).delete(dish);
+        verify(eventPublisher, times(1)).publishEvent(DishChangedEvent.deleted(dish));
+        verify(merchantRepository, times(1)).incrementMenuVersion(dish.getMerchant().getId());
     }
 
     @Test
@@ -507,6 +575,38 @@ public class MerchantServiceImplTest {
         verify(orderRepository, never()).findByMerchantAndStatus(any(Merchant.class), any(OrderStatus.class), any(Pageable.class));
     }
 
+    @Test
+    @DisplayName("测试订阅订单看板 - 成功")
+    public void testSubscribeOrderBoard_Success() {
+        // 准备数据
+        SseEmitter emitter = new SseEmitter();
+
+        // 模拟仓库行为
+        when(merchantRepository.existsById(1L)).thenReturn(true);
+        when(merchantOrderBoard.subscribe(1L)).thenReturn(emitter);
+
+        // 调用方法
+        SseEmitter result = merchantService.subscribeOrderBoard(1L);
+
+        // 验证
+        assertSame(emitter, result);
+    }
+
+    @Test
+    @DisplayName("测试订阅订单看板 - 商家不存在")
+    public void testSubscribeOrderBoard_MerchantNotFound() {
+        // 模拟仓库行为
+        when(merchantRepository.existsById(100L)).thenReturn(false);
+
+        // 调用方法并断言异常
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+            merchantService.subscribeOrderBoard(100L);
+        });
+
+        assertEquals("商家不存在", exception.getMessage());
+        verifyNoInteractions(merchantOrderBoard);
+    }
+
     // 7. 测试 acceptOrder 方法
 
     @Test
@@ -532,10 +632,11 @@ public class MerchantServiceImplTest {
         updatedOrder.setStatus(OrderStatus.PREPARING);
         updatedOrder.setOrderTime(order.getOrderTime());
 
-        // 模拟仓库行为
+        // 模拟仓库行为：条件更新成功后读取更新后的订单
         when(merchantRepository.findById(merchantId)).thenReturn(Optional.of(merchant));
-        when(orderRepository.findById(orderId)).thenReturn(Optional.of(order));
-        when(orderRepository.save(order)).thenReturn(updatedOrder);
+        when(orderStateMachine.transitionForMerchant(orderId, merchantId, OrderStatus.PENDING_CONFIRMATION, OrderStatus.PREPARING))
+                .thenReturn(true);
+        when(orderRepository.findById(orderId)).thenReturn(Optional.of(updatedOrder));
 
         // 调用方法
         Order result = merchantService.acceptOrder(merchantId, orderId);
@@ -545,8 +646,10 @@ public class MerchantServiceImplTest {
         assertEquals(OrderStatus.PREPARING, result.getStatus());
 
         verify(merchantRepository, times(1)).findById(merchantId);
+        verify(orderStateMachine, times(1))
+                .transitionForMerchant(orderId, merchantId, OrderStatus.PENDING_CONFIRMATION, OrderStatus.PREPARING);
         verify(orderRepository, times(1)).findById(orderId);
-        verify(orderRepository, times(1)).save(order);
+        verify(orderRepository, never()).save(any(Order.class));
     }
 
     @Test
@@ -691,10 +794,11 @@ public class MerchantServiceImplTest {
         updatedOrder.setStatus(OrderStatus.DELIVERING);
         updatedOrder.setDeliveryMan(deliveryMan);
 
-        // 模拟仓库行为
-        when(orderRepository.findById(orderId)).thenReturn(Optional.of(order));
+        // 模拟仓库行为：条件更新成功后读取更新后的订单
         when(deliveryManRepository.findById(deliveryManId)).thenReturn(Optional.of(deliveryMan));
-        when(orderRepository.save(order)).thenReturn(updatedOrder);
+        when(orderStateMachine.assignDeliveryMan(orderId, deliveryMan, OrderStatus.PREPARING, OrderStatus.DELIVERING))
+                .thenReturn(true);
+        when(orderRepository.findById(orderId)).thenReturn(Optional.of(updatedOrder));
 
         // 调用方法
         Order result = merchantService.requestDelivery(orderId, deliveryManId);
@@ -704,9 +808,11 @@ public class MerchantServiceImplTest {
         assertEquals(OrderStatus.DELIVERING, result.getStatus());
         assertEquals(deliveryMan, result.getDeliveryMan());
 
-        verify(orderRepository, times(1)).findById(orderId);
         verify(deliveryManRepository, times(1)).findById(deliveryManId);
-        verify(orderRepository, times(1)).save(order);
+        verify(orderStateMachine, times(1))
+                .assignDeliveryMan(orderId, deliveryMan, OrderStatus.PREPARING, OrderStatus.DELIVERING);
+        verify(orderRepository, times(1)).findById(orderId);
+        verify(orderRepository, never()).save(any(Order.class));
     }
 
     @Test
@@ -716,7 +822,11 @@ public class MerchantServiceImplTest {
         Long orderId = 100L;
         Long deliveryManId = 1L;
 
-        // 模拟仓库行为
+        DeliveryMan deliveryMan = new DeliveryMan();
+        deliveryMan.setId(deliveryManId);
+
+        // 模拟仓库行为：条件更新失败后读取订单确定原因
+        when(deliveryManRepository.findById(deliveryManId)).thenReturn(Optional.of(deliveryMan));
         when(orderRepository.findById(orderId)).thenReturn(Optional.empty());
 
         // 调用方法并断言异常
@@ -726,8 +836,8 @@ public class MerchantServiceImplTest {
 
         assertEquals("订单不存在", exception.getMessage());
 
+        verify(deliveryManRepository, times(1)).findById(deliveryManId);
         verify(orderRepository, times(1)).findById(orderId);
-        verify(deliveryManRepository, never()).findById(anyLong());
         verify(orderRepository, never()).save(any(Order.class));
     }
 
@@ -754,8 +864,9 @@ public class MerchantServiceImplTest {
 
         assertEquals("送餐员不存在", exception.getMessage());
 
-        verify(orderRepository, times(1)).findById(orderId);
         verify(deliveryManRepository, times(1)).findById(deliveryManId);
+        verify(orderStateMachine, never()).assignDeliveryMan(anyLong(), any(), any(), any());
+        verify(orderRepository, never()).findById(anyLong());
         verify(orderRepository, never()).save(any(Order.class));
     }
 
@@ -776,6 +887,7 @@ public class MerchantServiceImplTest {
         order.setDeliveryMan(null);
 
         // 模拟仓库行为
+        when(deliveryManRepository.findById(deliveryManId)).thenReturn(Optional.of(deliveryMan));
         when(orderRepository.findById(orderId)).thenReturn(Optional.of(order));
 
         // 调用方法并断言异常
@@ -785,8 +897,166 @@ public class MerchantServiceImplTest {
 
         assertEquals("订单当前状态无法请求送餐", exception.getMessage());
 
+        verify(deliveryManRepository, times(1)).findById(deliveryManId);
         verify(orderRepository, times(1)).findById(orderId);
-        verify(deliveryManRepository, never()).findById(anyLong());
         verify(orderRepository, never()).save(any(Order.class));
     }
+
+    @Test
+    @DisplayName("测试请求送餐 - 订单已分配送餐员")
+    public void testRequestDelivery_AlreadyAssigned() {
+        // 准备数据
+        Long orderId = 1L;
+        Long deliveryManId = 1L;
+
+        DeliveryMan deliveryMan = new DeliveryMan();
+        deliveryMan.setId(deliveryManId);
+
+        DeliveryMan otherDeliveryMan = new DeliveryMan();
+        otherDeliveryMan.setId(2L);
+
+        Order order = new Order();
+        order.setId(orderId);
+        order.setStatus(OrderStatus.PREPARING);
+        order.setDeliveryMan(otherDeliveryMan);
+
+        // 模拟仓库行为：状态仍为备餐中，但条件更新因已有送餐员而失败
+        when(deliveryManRepository.findById(deliveryManId)).thenReturn(Optional.of(deliveryMan));
+        when(orderRepository.findById(orderId)).thenReturn(Optional.of(order));
+
+        // 调用方法并断言异常
+        IllegalStateException exception = assertThrows(IllegalStateException.class, () -> {
+            merchantService.requestDelivery(orderId, deliveryManId);
+        });
+
+        assertEquals("订单已分配送餐员", exception.getMessage());
+    }
+
+    // 9. 测试订单时间线和阶段耗时
+
+    private static OrderStatusHistoryRepository.StageTotal total(OrderStatus stage, long count, long maxMillis) {
+        return new OrderStatusHistoryRepository.StageTotal() {
+            @Override
+            public OrderStatus getStage() {
+                return stage;
+            }
+
+            @Override
+            public Long getCount() {
+                return count;
+            }
+
+            @Override
+            public Long getMaxMillis() {
+                return maxMillis;
+            }
+        };
+    }
+
+    @Test
+    @DisplayName("测试阶段耗时 - 按状态计算百分位，次数和最大值取数据库聚合")
+    public void testGetStageDurations_Success() {
+        // 准备数据：待确认 1~100 秒（最近的在前），备餐中 1 个样本
+        List<Long> pending = new ArrayList<>();
+        for (long second = 100; second >= 1; second--) {
+            pending.add(second * 1000);
+        }
+
+        // 模拟仓库行为：聚合结果的顺序与状态先后无关
+        when(merchantRepository.existsById(1L)).thenReturn(true);
+        when(orderStatusHistoryRepository.sumStages(eq(1L), any(Date.class))).thenReturn(List.of(
+                total(OrderStatus.PREPARING, 1, 600_000),
+                total(OrderStatus.PENDING_CONFIRMATION, 100, 100_000)));
+        when(orderStatusHistoryRepository.findStageMillis(eq(1L), eq(OrderStatus.PENDING_CONFIRMATION), any(Date.class), any(Limit.class)))
+                .thenReturn(pending);
+        when(orderStatusHistoryRepository.findStageMillis(eq(1L), eq(OrderStatus.PREPARING), any(Date.class), any(Limit.class)))
+                .thenReturn(List.of(600_000L));
+
+        // 调用方法
+        List<StageDuration> durations = merchantService.getStageDurations(1L, 7);
+
+        // 验证
+        assertEquals(List.of(
+                new StageDuration(OrderStatus.PENDING_CONFIRMATION, 100, 50_000, 90_000, 99_000, 100_000),
+                new StageDuration(OrderStatus.PREPARING, 1, 600_000, 600_000, 600_000, 600_000)
+        ), durations);
+    }
+
+    @Test
+    @DisplayName("测试阶段耗时 - 样本数超过上限时只按最近的样本计算百分位")
+    public void testGetStageDurations_SampleCap() {
+        // 准备数据：共 1000 个样本，只读取最近的 10 个
+        ReflectionTestUtils.setField(merchantService, "maxStageSamples", 10);
+        when(merchantRepository.existsById(1L)).thenReturn(true);
+        when(orderStatusHistoryRepository.sumStages(eq(1L), any(Date.class)))
+                .thenReturn(List.of(total(OrderStatus.PREPARING, 1000, 3_600_000)));
+        when(orderStatusHistoryRepository.findStageMillis(eq(1L), eq(OrderStatus.PREPARING), any(Date.class), eq(Limit.of(10))))
+                .thenReturn(List.of(10L, 9L, 8L, 7L, 6L, 5L, 4L, 3L, 2L, 1L));
+
+        // 调用方法
+        List<StageDuration> durations = merchantService.getStageDurations(1L, 7);
+
+        // 验证
+        assertEquals(List.of(new StageDuration(OrderStatus.PREPARING, 1000, 5, 9, 10, 3_600_000)), durations);
+    }
+
+    @Test
+    @DisplayName("测试阶段耗时 - 统计天数无效")
+    public void testGetStageDurations_InvalidDays() {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+            merchantService.getStageDurations(1L, 0);
+        });
+
+        assertEquals("统计天数无效", exception.getMessage());
+        verifyNoInteractions(orderStatusHistoryRepository);
+    }
+
+    @Test
+    @DisplayName("测试订单时间线 - 无权访问")
+    public void testGetOrderTimeline_UnauthorizedAccess() {
+        // 模拟仓库行为
+        when(orderRepository.findMerchantIdById(1L)).thenReturn(Optional.of(2L));
+
+        // 调用方法并断言异常
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+            merchantService.getOrderTimeline(1L, 1L);
+        });
+
+        assertEquals("无权访问该订单", exception.getMessage());
+        verifyNoInteractions(orderStatusHistoryRepository);
+    }
+
+    @Test
+    @DisplayName("测试按菜品统计销量 - 金额由分转换为元，不计已取消的订单")
+    public void testGetDishSales_Success() {
+        // 准备数据
+        Date start = new Date(1_000L);
+        Date end = new Date(2_000L);
+        OrderRepository.DishSalesRow row = mock(OrderRepository.DishSalesRow.class);
+        when(row.getDishId()).thenReturn(3L);
+        when(row.getDishName()).thenReturn("宫保鸡丁");
+        when(row.getQuantity()).thenReturn(4L);
+        when(row.getRevenueCents()).thenReturn(7_400L);
+
+        // 模拟仓库行为
+        when(merchantRepository.existsById(1L)).thenReturn(true);
+        when(orderRepository.sumDishSales(1L, start, end, OrderStatus.CANCELLED)).thenReturn(List.of(row));
+
+        // 调用方法
+        List<DishSales> sales = merchantService.getDishSales(1L, start, end);
+
+        // 验证
+        assertEquals(List.of(new DishSales(3L, "宫保鸡丁", 4, new BigDecimal("74.00"))), sales);
+    }
+
+    @Test
+    @DisplayName("测试按菜品统计销量 - 时间范围无效")
+    public void testGetDishSales_InvalidRange() {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+            merchantService.getDishSales(1L, new Date(2_000L), new Date(1_000L));
+        });
+
+        assertEquals("统计时间范围无效", exception.getMessage());
+        verifyNoInteractions(orderRepository);
+    }
 }
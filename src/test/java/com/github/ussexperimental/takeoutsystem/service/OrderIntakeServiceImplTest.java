@@ -0,0 +1,171 @@
+package com.github.ussexperimental.takeoutsystem.service;
+
+import com.github.ussexperimental.takeoutsystem.dto.OrderCreateDTO;
+import com.github.ussexperimental.takeoutsystem.dto.OrderCreateResult;
+import com.github.ussexperimental.takeoutsystem.dto.OrderIntakeStatus;
+import com.github.ussexperimental.takeoutsystem.dto.OrderIntakeStatus.State;
+import com.github.ussexperimental.takeoutsystem.entity.Order;
+import com.github.ussexperimental.takeoutsystem.service.impl.OrderIntakeServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class OrderIntakeServiceImplTest {
+
+    @InjectMocks
+    private OrderIntakeServiceImpl orderIntakeService;
+
+    @Mock
+    private CustomerService customerService;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        // 不启动写入线程，由测试直接调用 writeBatch
+        ReflectionTestUtils.setField(orderIntakeService, "queueCapacity", 2);
+        ReflectionTestUtils.setField(orderIntakeService, "accepting", true);
+        orderIntakeService.init();
+        meterRegistry = new SimpleMeterRegistry();
+        orderIntakeService.bindTo(meterRegistry);
+    }
+
+    private static OrderCreateDTO request(long customerId) {
+        OrderCreateDTO request = new OrderCreateDTO();
+        request.setCustomerId(customerId);
+        request.setMerchantId(2L);
+        request.setDishIds(List.of(1L));
+        return request;
+    }
+
+    private static Order order(long id) {
+        Order order = new Order();
+        order.setId(id);
+        return order;
+    }
+
+    private int writeBatch() throws InterruptedException {
+        return (int) ReflectionTestUtils.invokeMethod(orderIntakeService, "writeBatch", 0L);
+    }
+
+    @Test
+    @DisplayName("测试异步下单 - 排队的请求一批写入，按令牌查询结果")
+    public void testSubmitAndWriteBatch() throws Exception {
+        // 调用方法：两个请求入队
+        OrderIntakeStatus first = orderIntakeService.submit(request(1L));
+        OrderIntakeStatus second = orderIntakeService.submit(request(3L));
+        assertEquals(State.QUEUED, first.state());
+        assertEquals(State.QUEUED, orderIntakeService.getStatus(3L, second.token()).state());
+
+        // 模拟批量创建：第一个成功，第二个校验不通过
+        when(customerService.createOrders(anyList())).thenReturn(List.of(
+                OrderCreateResult.created(order(9L)), OrderCreateResult.rejected("菜品不存在")));
+
+        // 写入一批
+        assertEquals(2, writeBatch());
+        assertEquals(0, writeBatch());
+
+        // 验证
+        OrderIntakeStatus created = orderIntakeService.getStatus(1L, first.token());
+        assertEquals(State.CREATED, created.state());
+        assertEquals(9L, created.orderId());
+        OrderIntakeStatus rejected = orderIntakeService.getStatus(3L, second.token());
+        assertEquals(State.REJECTED, rejected.state());
+        assertEquals("菜品不存在", rejected.reason());
+        verify(customerService, times(1)).createOrders(argThat(requests -> requests.size() == 2));
+        assertEquals(1.0, meterRegistry.get("order.intake.created").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("order.intake.invalid").functionCounter().count());
+        assertEquals(2.0, meterRegistry.get("order.intake.batch.size").summary().max());
+    }
+
+    @Test
+    @DisplayName("测试异步下单 - 排队已满时拒绝并计数")
+    public void testSubmit_QueueFull() {
+        // 准备数据：队列容量为 2
+        orderIntakeService.submit(request(1L));
+        orderIntakeService.submit(request(1L));
+
+        // 调用方法并断言异常
+        IllegalStateException exception = assertThrows(IllegalStateException.class, () -> {
+            orderIntakeService.submit(request(1L));
+        });
+
+        assertEquals("下单排队已满", exception.getMessage());
+        assertEquals(2, orderIntakeService.queueDepth());
+        assertEquals(2.0, meterRegistry.get("order.intake.queue.depth").gauge().value());
+        assertEquals(1.0, meterRegistry.get("order.intake.rejected").functionCounter().count());
+    }
+
+    @Test
+    @DisplayName("测试异步下单 - 批量写入失败时逐个重新创建")
+    public void testWriteBatch_FallbackToSingle() throws Exception {
+        // 准备数据
+        OrderIntakeStatus first = orderIntakeService.submit(request(1L));
+        OrderIntakeStatus second = orderIntakeService.submit(request(3L));
+
+        // 模拟批量写入失败，逐个创建时第一个成功、第二个仍然失败
+        when(customerService.createOrders(anyList())).thenThrow(new DataAccessResourceFailureException("连接断开"));
+        when(customerService.createOrder(eq(1L), eq(2L), anyList(), any(), any())).thenReturn(order(9L));
+        when(customerService.createOrder(eq(3L), eq(2L), anyList(), any(), any()))
+                .thenThrow(new DataAccessResourceFailureException("连接断开"));
+
+        // 调用方法
+        assertEquals(2, writeBatch());
+
+        // 验证
+        assertEquals(State.CREATED, orderIntakeService.getStatus(1L, first.token()).state());
+        assertEquals(State.FAILED, orderIntakeService.getStatus(3L, second.token()).state());
+        assertEquals(1.0, meterRegistry.get("order.intake.failed").functionCounter().count());
+    }
+
+    @Test
+    @DisplayName("测试异步下单 - 未启用时同步创建订单")
+    public void testSubmit_Disabled() {
+        // 准备数据
+        ReflectionTestUtils.setField(orderIntakeService, "accepting", false);
+        when(customerService.createOrder(eq(1L), eq(2L), anyList(), any(), any())).thenReturn(order(9L));
+
+        // 调用方法
+        OrderIntakeStatus status = orderIntakeService.submit(request(1L));
+
+        // 验证
+        assertEquals(State.CREATED, status.state());
+        assertEquals(9L, status.orderId());
+        assertEquals(0, orderIntakeService.queueDepth());
+    }
+
+    @Test
+    @DisplayName("测试异步下单 - 令牌只能由下单的顾客查询，结果过期后清除")
+    public void testGetStatus_OtherCustomerAndExpired() throws Exception {
+        // 准备数据
+        OrderIntakeStatus status = orderIntakeService.submit(request(1L));
+        when(customerService.createOrders(anyList())).thenReturn(List.of(OrderCreateResult.created(order(9L))));
+        writeBatch();
+
+        // 其他顾客查询
+        assertThrows(IllegalArgumentException.class, () -> orderIntakeService.getStatus(2L, status.token()));
+
+        // 保留时间已过：已完成的结果被清除
+        ReflectionTestUtils.setField(orderIntakeService, "resultRetentionSeconds", -1L);
+        ReflectionTestUtils.invokeMethod(orderIntakeService, "expire");
+
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+            orderIntakeService.getStatus(1L, status.token());
+        });
+
+        assertEquals("下单令牌不存在", exception.getMessage());
+    }
+}
@@ -0,0 +1,223 @@
+package com.github.ussexperimental.takeoutsystem.stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.ussexperimental.takeoutsystem.dto.OrderSummary;
+import com.github.ussexperimental.takeoutsystem.dto.PageResponse;
+import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+import com.github.ussexperimental.takeoutsystem.order.DispatchPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class AvailableOrderStreamTest {
+
+    @InjectMocks
+    private AvailableOrderStream availableOrderStream;
+
+    @Mock
+    private DispatchPool dispatchPool;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(availableOrderStream, "bufferSize", 4);
+        ReflectionTestUtils.setField(availableOrderStream, "snapshotSize", 0);
+        ReflectionTestUtils.setField(availableOrderStream, "maxSubscribers", 3);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        availableOrderStream.shutdown();
+    }
+
+    private static OrderSummary order(long id) {
+        return new OrderSummary(id, 1L, "customer", 2L, "merchant", null, null,
+                BigDecimal.TEN, OrderStatus.REQUESTING_DELIVERY, new Date(1_000L), null, "地址");
+    }
+
+    @Test
+    @DisplayName("测试推送 - 事件按顺序到达每个连接")
+    public void testBroadcast() throws Exception {
+        // 准备数据
+        RecordingEmitter first = new RecordingEmitter();
+        RecordingEmitter second = new RecordingEmitter();
+        subscribe(first);
+        subscribe(second);
+
+        // 调用方法
+        availableOrderStream.added(order(1L));
+        availableOrderStream.removed(1L);
+        availableOrderStream.sendHeartbeat();
+
+        // 验证
+        for (RecordingEmitter emitter : List.of(first, second)) {
+            await(() -> emitter.events.size() == 3);
+            assertTrue(emitter.events.get(0).startsWith("event:added\ndata:{\"id\":1,"));
+            assertEquals("event:removed\ndata:1\n\n", emitter.events.get(1));
+            assertEquals(":heartbeat\n\n", emitter.events.get(2));
+        }
+    }
+
+    @Test
+    @DisplayName("测试慢连接 - 缓冲满后断开，不影响其他连接")
+    public void testSlowSubscriberDropped() throws Exception {
+        // 准备数据：slow 的第一次发送一直阻塞
+        BlockingEmitter slow = new BlockingEmitter();
+        RecordingEmitter fast = new RecordingEmitter();
+        subscribe(slow);
+        subscribe(fast);
+
+        // 调用方法：slow 的 1 个事件阻塞在发送中，4 个填满缓冲，第 6 个溢出；fast 每个事件都及时读走
+        for (long id = 1; id <= 6; id++) {
+            availableOrderStream.removed(id);
+            if (id == 1) {
+                assertTrue(slow.sending.await(5, TimeUnit.SECONDS));
+            }
+            int sent = (int) id;
+            await(() -> fast.events.size() == sent);
+        }
+
+        // 验证
+        assertEquals(1, availableOrderStream.subscriberCount());
+        slow.release.countDown();
+    }
+
+    @Test
+    @DisplayName("测试连接数上限")
+    public void testMaxSubscribers() {
+        for (int i = 0; i < 3; i++) {
+            subscribe(new RecordingEmitter());
+        }
+
+        IllegalStateException exception = assertThrows(IllegalStateException.class, () -> {
+            availableOrderStream.register(new RecordingEmitter());
+        });
+
+        assertEquals("推送连接数已达上限", exception.getMessage());
+    }
+
+    @Test
+    @DisplayName("测试连接数上限 - 并发注册不超过上限")
+    public void testMaxSubscribers_Concurrent() throws Exception {
+        // 准备数据
+        int threads = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger accepted = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        // 调用方法：同时注册
+        try {
+            for (int i = 0; i < threads; i++) {
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                        availableOrderStream.register(new RecordingEmitter());
+                        accepted.incrementAndGet();
+                    } catch (IllegalStateException | InterruptedException e) {
+                        // 超出上限
+                    }
+                });
+            }
+            start.countDown();
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+
+        // 验证
+        assertEquals(3, accepted.get());
+        assertEquals(3, availableOrderStream.subscriberCount());
+    }
+
+    @Test
+    @DisplayName("测试订阅 - 读取初始订单期间被接走的订单，removed 事件排在初始订单之后")
+    public void testSubscribe_RemovedDuringSnapshot() throws Exception {
+        // 准备数据
+        ReflectionTestUtils.setField(availableOrderStream, "snapshotSize", 2);
+        RecordingEmitter emitter = new RecordingEmitter();
+
+        // 模拟可接单池：读取初始订单后、发送前，订单 1 被接走
+        when(dispatchPool.page(0, 2)).thenAnswer(invocation -> {
+            PageResponse<OrderSummary> page = new PageResponse<>(List.of(order(1L)), 0, 2, 1, 1, true);
+            availableOrderStream.removed(1L);
+            return page;
+        });
+
+        // 调用方法
+        availableOrderStream.subscribe(emitter);
+
+        // 验证：先收到 added 1 再收到 removed 1，客户端最终不会显示订单 1
+        await(() -> emitter.events.size() == 2);
+        assertTrue(emitter.events.get(0).startsWith("event:added\ndata:{\"id\":1,"));
+        assertEquals("event:removed\ndata:1\n\n", emitter.events.get(1));
+    }
+
+    private void subscribe(SseEmitter emitter) {
+        availableOrderStream.join(availableOrderStream.register(emitter));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "等待推送超时");
+            Thread.sleep(10);
+        }
+    }
+
+    // 记录发送的事件文本
+    private static class RecordingEmitter extends SseEmitter {
+
+        final List<String> events = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void send(Set<DataWithMediaType> items) throws IOException {
+            events.add(items.stream().map(item -> item.getData().toString()).collect(Collectors.joining()));
+        }
+    }
+
+    // 模拟读取很慢的客户端：第一次发送阻塞到 release
+    private static class BlockingEmitter extends SseEmitter {
+
+        final CountDownLatch sending = new CountDownLatch(1);
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void send(Set<DataWithMediaType> items) throws IOException {
+            sending.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.github.ussexperimental.takeoutsystem.stream;
+
+import com.github.ussexperimental.takeoutsystem.dto.OrderSummary;
+import com.github.ussexperimental.takeoutsystem.entity.Merchant;
+import com.github.ussexperimental.takeoutsystem.entity.Order;
+import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+import com.github.ussexperimental.takeoutsystem.event.OrderCreatedEvent;
+import com.github.ussexperimental.takeoutsystem.event.OrderStatusChangedEvent;
+import com.github.ussexperimental.takeoutsystem.repository.OrderRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class MerchantOrderBoardTest {
+
+    @InjectMocks
+    private MerchantOrderBoard merchantOrderBoard;
+
+    @Mock
+    private OrderRepository orderRepository;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(merchantOrderBoard, "maxSubscribersPerMerchant", 2);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        merchantOrderBoard.shutdown();
+    }
+
+    private static Order order(long id, OrderStatus status) {
+        Merchant merchant = new Merchant();
+        merchant.setId(1L);
+        Order order = new Order();
+        order.setId(id);
+        order.setMerchant(merchant);
+        order.setStatus(status);
+        order.setOrderTime(new Date(id * 1_000L));
+        return order;
+    }
+
+    private static OrderSummary summary(long id, OrderStatus status) {
+        return new OrderSummary(id, 3L, "customer", 1L, "merchant", null, null,
+                BigDecimal.TEN, status, new Date(id * 1_000L), null, "地址");
+    }
+
+    @Test
+    @DisplayName("测试看板 - 快照只查询一次，之后推送新订单和状态变更")
+    public void testSnapshotAndDeltas() throws Exception {
+        // 模拟仓库行为
+        when(orderRepository.findByMerchant_IdAndStatusInOrderByOrderTimeAscIdAsc(eq(1L), anyCollection()))
+                .thenReturn(List.of(order(1L, OrderStatus.PENDING_CONFIRMATION)));
+
+        // 调用方法
+        RecordingEmitter first = new RecordingEmitter();
+        merchantOrderBoard.register(1L, first);
+        merchantOrderBoard.onOrderCreated(new OrderCreatedEvent(summary(2L, OrderStatus.PENDING_CONFIRMATION)));
+        merchantOrderBoard.onOrderStatusChanged(
+                new OrderStatusChangedEvent(1L, 1L, OrderStatus.PENDING_CONFIRMATION, OrderStatus.PREPARING));
+        merchantOrderBoard.onOrderStatusChanged(
+                new OrderStatusChangedEvent(1L, 1L, OrderStatus.PREPARING, OrderStatus.DELIVERING));
+        RecordingEmitter second = new RecordingEmitter();
+        merchantOrderBoard.register(1L, second);
+
+        // 验证：第二个连接的快照来自内存，已送出的订单不在快照中
+        await(() -> first.events.size() == 4 && second.events.size() == 1);
+        assertTrue(first.events.get(0).startsWith("event:snapshot\ndata:[OrderSummary[id=1,"));
+        assertTrue(first.events.get(1).startsWith("event:created\ndata:OrderSummary[id=2,"));
+        assertTrue(first.events.get(2).contains("OrderStatusUpdate[orderId=1, from=PENDING_CONFIRMATION, status=PREPARING]"));
+        assertTrue(first.events.get(3).contains("status=DELIVERING"));
+        assertTrue(second.events.get(0).startsWith("event:snapshot\ndata:[OrderSummary[id=2,"));
+        assertFalse(second.events.get(0).contains("id=1,"));
+        verify(orderRepository, times(1)).findByMerchant_IdAndStatusInOrderByOrderTimeAscIdAsc(eq(1L), anyCollection());
+    }
+
+    @Test
+    @DisplayName("测试看板 - 不在看板上的订单的状态变更不查询数据库")
+    public void testUnrelatedStatusChangeIgnored() {
+        // 模拟仓库行为
+        when(orderRepository.findByMerchant_IdAndStatusInOrderByOrderTimeAscIdAsc(eq(1L), anyCollection()))
+                .thenReturn(List.of());
+        merchantOrderBoard.register(1L, new RecordingEmitter());
+
+        // 调用方法
+        merchantOrderBoard.onOrderStatusChanged(
+                new OrderStatusChangedEvent(5L, null, OrderStatus.DELIVERING, OrderStatus.DELIVERED));
+
+        // 验证
+        verify(orderRepository, never()).findMerchantIdById(anyLong());
+    }
+
+    @Test
+    @DisplayName("测试看板 - 快照在看板的锁外查询，查询期间提交的状态变更合并到快照上")
+    public void testSnapshotQueriedOutsideLock() throws Exception {
+        // 模拟仓库行为：查询快照期间另一个线程提交订单 1 的状态变更，持有看板的锁查询时会等待超时
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            when(orderRepository.findByMerchant_IdAndStatusInOrderByOrderTimeAscIdAsc(eq(1L), anyCollection()))
+                    .thenAnswer(invocation -> {
+                        executor.submit(() -> merchantOrderBoard.onOrderStatusChanged(
+                                new OrderStatusChangedEvent(1L, 1L, OrderStatus.PENDING_CONFIRMATION, OrderStatus.PREPARING)))
+                                .get(5, TimeUnit.SECONDS);
+                        return List.of(order(1L, OrderStatus.PENDING_CONFIRMATION));
+                    });
+
+            // 调用方法
+            RecordingEmitter emitter = new RecordingEmitter();
+            merchantOrderBoard.register(1L, emitter);
+
+            // 验证
+            await(() -> emitter.events.size() == 1);
+            assertTrue(emitter.events.get(0).contains("id=1,"));
+            assertTrue(emitter.events.get(0).contains("status=PREPARING"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("测试看板 - 订单经状态变更进入看板时按事件中的商家推送，不查询所属商家")
+    public void testOrderEntersBoard() throws Exception {
+        // 模拟仓库行为
+        when(orderRepository.findByMerchant_IdAndStatusInOrderByOrderTimeAscIdAsc(eq(1L), anyCollection()))
+                .thenReturn(List.of());
+        when(orderRepository.findListingById(7L)).thenReturn(Optional.of(order(7L, OrderStatus.PENDING_CONFIRMATION)));
+        RecordingEmitter emitter = new RecordingEmitter();
+        merchantOrderBoard.register(1L, emitter);
+
+        // 调用方法
+        merchantOrderBoard.onOrderStatusChanged(
+                new OrderStatusChangedEvent(7L, 1L, OrderStatus.PENDING, OrderStatus.PENDING_CONFIRMATION));
+
+        // 验证
+        await(() -> emitter.events.size() == 2);
+        assertTrue(emitter.events.get(1).startsWith("event:created\ndata:OrderSummary[id=7,"));
+        verify(orderRepository, never()).findMerchantIdById(anyLong());
+    }
+
+    @Test
+    @DisplayName("测试看板 - 最后一个连接断开后移除看板")
+    public void testBoardEvicted() {
+        // 模拟仓库行为
+        when(orderRepository.findByMerchant_IdAndStatusInOrderByOrderTimeAscIdAsc(eq(1L), anyCollection()))
+                .thenReturn(List.of(order(1L, OrderStatus.PREPARING)));
+        SseSubscriber subscriber = merchantOrderBoard.register(1L, new RecordingEmitter());
+
+        // 调用方法：心跳发现连接已断开
+        subscriber.close();
+        merchantOrderBoard.sendHeartbeat();
+
+        // 验证
+        assertEquals(0, merchantOrderBoard.boardCount());
+        assertEquals(0, merchantOrderBoard.subscriberCount());
+    }
+
+    @Test
+    @DisplayName("测试看板 - 每个商家的连接数上限")
+    public void testMaxSubscribersPerMerchant() {
+        // 模拟仓库行为
+        when(orderRepository.findByMerchant_IdAndStatusInOrderByOrderTimeAscIdAsc(anyLong(), anyCollection()))
+                .thenReturn(List.of());
+        merchantOrderBoard.register(1L, new RecordingEmitter());
+        merchantOrderBoard.register(1L, new RecordingEmitter());
+
+        IllegalStateException exception = assertThrows(IllegalStateException.class, () -> {
+            merchantOrderBoard.register(1L, new RecordingEmitter());
+        });
+
+        assertEquals("看板连接数已达上限", exception.getMessage());
+        // 其他商家不受影响
+        assertNotNull(merchantOrderBoard.register(2L, new RecordingEmitter()));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "等待推送超时");
+            Thread.sleep(10);
+        }
+    }
+
+    // 记录发送的事件文本
+    private static class RecordingEmitter extends SseEmitter {
+
+        final List<String> events = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void send(Set<DataWithMediaType> items) throws IOException {
+            events.add(items.stream().map(item -> item.getData().toString()).collect(Collectors.joining()));
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.github.ussexperimental.takeoutsystem.stream;
+
+import com.github.ussexperimental.takeoutsystem.entity.enums.OrderStatus;
+import com.github.ussexperimental.takeoutsystem.event.OrderStatusChangedEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderStatusStreamTest {
+
+    private OrderStatusStream orderStatusStream;
+
+    @BeforeEach
+    public void setUp() {
+        orderStatusStream = new OrderStatusStream();
+        ReflectionTestUtils.setField(orderStatusStream, "bufferSize", 8);
+        ReflectionTestUtils.setField(orderStatusStream, "replaySize", 4);
+        ReflectionTestUtils.setField(orderStatusStream, "idleRetentionSeconds", 0L);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        orderStatusStream.shutdown();
+    }
+
+    @Test
+    @DisplayName("测试订阅 - 先收到当前状态，之后收到状态变更，过时的变更被忽略")
+    public void testSubscribe() throws Exception {
+        // 准备数据
+        RecordingEmitter emitter = new RecordingEmitter();
+        orderStatusStream.register(1L, emitter, null, () -> OrderStatus.PREPARING);
+
+        // 调用方法：重复或倒退的状态不推送，其他订单的变更不推送
+        orderStatusStream.onOrderStatusChanged(
+                new OrderStatusChangedEvent(1L, null, OrderStatus.PREPARING, OrderStatus.REQUESTING_DELIVERY));
+        orderStatusStream.onOrderStatusChanged(
+                new OrderStatusChangedEvent(1L, null, OrderStatus.PENDING_CONFIRMATION, OrderStatus.PREPARING));
+        orderStatusStream.onOrderStatusChanged(
+                new OrderStatusChangedEvent(2L, null, OrderStatus.PREPARING, OrderStatus.DELIVERING));
+
+        // 验证
+        await(() -> emitter.events.size() == 2);
+        Thread.sleep(50);
+        assertEquals(2, emitter.events.size());
+        assertTrue(emitter.events.get(0).contains("event:status\ndata:OrderStatusUpdate[orderId=1, from=null, status=PREPARING]"));
+        assertTrue(emitter.events.get(1).contains("status=REQUESTING_DELIVERY"));
+        assertEquals(1, orderStatusStream.channelCount());
+    }
+
+    @Test
+    @DisplayName("测试重连 - 补发 Last-Event-ID 之后的状态变更，不重复发送")
+    public void testReconnectWithLastEventId() throws Exception {
+        // 准备数据：第一次连接收到两个事件后断开
+        RecordingEmitter first = new RecordingEmitter();
+        SseSubscriber subscriber = orderStatusStream.register(1L, first, null, () -> OrderStatus.PREPARING);
+        orderStatusStream.onOrderStatusChanged(
+                new OrderStatusChangedEvent(1L, null, OrderStatus.PREPARING, OrderStatus.REQUESTING_DELIVERY));
+        await(() -> first.events.size() == 2);
+        String lastEventId = first.lastEventId();
+        subscriber.close();
+
+        // 断开期间订单状态继续变更
+        orderStatusStream.onOrderStatusChanged(
+                new OrderStatusChangedEvent(1L, null, OrderStatus.REQUESTING_DELIVERY, OrderStatus.DELIVERING));
+        orderStatusStream.onOrderStatusChanged(
+                new OrderStatusChangedEvent(1L, null, OrderStatus.DELIVERING, OrderStatus.DELIVERED));
+
+        // 调用方法
+        RecordingEmitter second = new RecordingEmitter();
+        orderStatusStream.register(1L, second, lastEventId, () -> OrderStatus.DELIVERED);
+
+        // 验证
+        await(() -> second.events.size() == 2);
+        Thread.sleep(50);
+        assertEquals(2, second.events.size());
+        assertTrue(second.events.get(0).contains("status=DELIVERING"));
+        assertTrue(second.events.get(1).contains("status=DELIVERED"));
+    }
+
+    @Test
+    @DisplayName("测试重连 - 无法识别的 Last-Event-ID 只推送当前状态")
+    public void testReconnectWithUnknownLastEventId() throws Exception {
+        RecordingEmitter emitter = new RecordingEmitter();
+        orderStatusStream.register(1L, emitter, "previous-run-5", () -> OrderStatus.DELIVERING);
+
+        await(() -> emitter.events.size() == 1);
+        assertTrue(emitter.events.get(0).contains("status=DELIVERING"));
+    }
+
+    @Test
+    @DisplayName("测试清理 - 没有连接的订单频道被清理")
+    public void testEvictIdleChannels() {
+        // 准备数据
+        RecordingEmitter emitter = new RecordingEmitter();
+        SseSubscriber subscriber = orderStatusStream.register(1L, emitter, null, () -> OrderStatus.PREPARING);
+        orderStatusStream.register(2L, new RecordingEmitter(), null, () -> OrderStatus.PREPARING);
+        subscriber.close();
+
+        // 调用方法：心跳发现连接已断开，之后清理
+        orderStatusStream.sendHeartbeat();
+        orderStatusStream.evictIdleChannels();
+
+        // 验证：仍有连接的订单保留
+        assertEquals(1, orderStatusStream.channelCount());
+    }
+
+    @Test
+    @DisplayName("测试连接数上限 - 每个订单的连接数超出上限时拒绝，断开后可重新连接")
+    public void testMaxSubscribersPerOrder() {
+        ReflectionTestUtils.setField(orderStatusStream, "maxSubscribersPerOrder", 2);
+        SseSubscriber subscriber = orderStatusStream.register(1L, new RecordingEmitter(), null, () -> OrderStatus.PREPARING);
+        orderStatusStream.register(1L, new RecordingEmitter(), null, () -> OrderStatus.PREPARING);
+
+        IllegalStateException exception = assertThrows(IllegalStateException.class, () -> {
+            orderStatusStream.register(1L, new RecordingEmitter(), null, () -> OrderStatus.PREPARING);
+        });
+
+        // 验证：被拒绝的连接不占用名额，其他订单不受影响
+        assertEquals("推送连接数已达上限", exception.getMessage());
+        assertEquals(2, orderStatusStream.subscriberCount());
+        orderStatusStream.register(2L, new RecordingEmitter(), null, () -> OrderStatus.PREPARING);
+
+        // 连接断开后由心跳移除，释放名额
+        subscriber.close();
+        orderStatusStream.sendHeartbeat();
+        orderStatusStream.register(1L, new RecordingEmitter(), null, () -> OrderStatus.PREPARING);
+        assertEquals(3, orderStatusStream.subscriberCount());
+    }
+
+    @Test
+    @DisplayName("测试连接数上限 - 并发注册不超过节点上限")
+    public void testMaxSubscribers_Concurrent() throws Exception {
+        // 准备数据
+        ReflectionTestUtils.setField(orderStatusStream, "maxSubscribers", 3);
+        int threads = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger accepted = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        // 调用方法：同时订阅不同的订单
+        try {
+            for (int i = 0; i < threads; i++) {
+                long orderId = i;
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                        orderStatusStream.register(orderId, new RecordingEmitter(), null, () -> OrderStatus.PREPARING);
+                        accepted.incrementAndGet();
+                    } catch (IllegalStateException | InterruptedException e) {
+                        // 超出上限
+                    }
+                });
+            }
+            start.countDown();
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+
+        // 验证
+        assertEquals(3, accepted.get());
+        assertEquals(3, orderStatusStream.subscriberCount());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "等待推送超时");
+            Thread.sleep(10);
+        }
+    }
+
+    // 记录发送的事件文本
+    private static class RecordingEmitter extends SseEmitter {
+
+        final List<String> events = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void send(Set<DataWithMediaType> items) throws IOException {
+            events.add(items.stream().map(item -> item.getData().toString()).collect(Collectors.joining()));
+        }
+
+        String lastEventId() {
+            String event = events.get(events.size() - 1);
+            return event.substring("id:".length(), event.indexOf('\n'));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.ussexperimental.takeoutsystem.timer;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimingWheelTest {
+
+    @Test
+    @DisplayName("测试到期 - 不早于到期时间，最多晚一个刻度，按到期先后取出")
+    public void testAdvance() {
+        // 准备数据：刻度 1 秒，每层 4 格，共 3 层（最高层覆盖 64 秒）
+        TimingWheel<String> wheel = new TimingWheel<>(1_000, 4, 3, 0);
+        wheel.schedule("b", 10_000);
+        wheel.schedule("a", 2_500);
+        wheel.schedule("c", 50_000);
+
+        // 调用方法并验证
+        assertEquals(List.of(), wheel.advance(2_999));
+        assertEquals(List.of("a"), wheel.advance(3_000));
+        assertEquals(List.of(), wheel.advance(9_999));
+        assertEquals(List.of("b"), wheel.advance(10_000));
+        assertEquals(List.of("c"), wheel.advance(60_000));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    @DisplayName("测试取消 - 取消后不再到期，重复取消返回 false")
+    public void testCancel() {
+        TimingWheel<String> wheel = new TimingWheel<>(1_000, 4, 3, 0);
+        TimingWheel.Timeout<String> cancelled = wheel.schedule("cancelled", 30_000);
+        wheel.schedule("kept", 30_000);
+
+        assertTrue(wheel.cancel(cancelled));
+        assertFalse(wheel.cancel(cancelled));
+        assertFalse(cancelled.isPending());
+
+        assertEquals(List.of("kept"), wheel.advance(30_000));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    @DisplayName("测试超出最高层范围和已过期的任务")
+    public void testOutOfRange() {
+        // 最高层只覆盖 64 秒
+        TimingWheel<String> wheel = new TimingWheel<>(1_000, 4, 3, 100_000);
+        wheel.schedule("far", 100_000 + 1_000_000);
+        wheel.schedule("overdue", 50_000);
+
+        assertEquals(List.of("overdue"), wheel.advance(101_000));
+        assertEquals(List.of(), wheel.advance(1_099_999));
+        assertEquals(List.of("far"), wheel.advance(1_100_000));
+    }
+
+    @Test
+    @DisplayName("测试随机到期时间 - 每个任务恰好在到期刻度取出，取消的任务不取出")
+    public void testRandomDeadlines() {
+        // 准备数据
+        Random random = new Random(42);
+        TimingWheel<Integer> wheel = new TimingWheel<>(10, 8, 4, 0);
+        Map<Integer, Long> deadlines = new HashMap<>();
+        List<TimingWheel.Timeout<Integer>> timeouts = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            // 部分任务超出最高层范围（8^4 个刻度）
+            long deadline = 1 + (long) (random.nextDouble() * 60_000);
+            deadlines.put(i, deadline);
+            timeouts.add(wheel.schedule(i, deadline));
+        }
+        for (int i = 0; i < 20_000; i += 3) {
+            assertTrue(wheel.cancel(timeouts.get(i)));
+            deadlines.remove(i);
+        }
+
+        // 调用方法：以不规则的步长推进
+        Map<Integer, Long> firedAt = new HashMap<>();
+        long now = 0;
+        while (now < 61_000) {
+            now += 1 + random.nextInt(50);
+            for (Integer fired : wheel.advance(now)) {
+                assertNull(firedAt.put(fired, now));
+            }
+        }
+
+        // 验证：到期刻度 = 向上取整(到期时间 / 刻度)，在跨过该刻度的那次推进中取出
+        assertEquals(deadlines.keySet(), firedAt.keySet());
+        deadlines.forEach((id, deadline) -> {
+            long deadlineTick = (deadline + 9) / 10 * 10;
+            assertTrue(firedAt.get(id) >= deadlineTick, "任务 " + id + " 提前到期");
+            assertTrue(firedAt.get(id) < deadlineTick + 51, "任务 " + id + " 到期过晚");
+        });
+        assertEquals(0, wheel.size());
+    }
+}